@@ -0,0 +1,109 @@
+package backend;
+
+/**
+ * Control de bitrate adaptativo del lado cliente.
+ *
+ * Después de cada segmento se estima el goodput (media móvil exponencial de lo que midió
+ * Go-Back-N) y se simula el buffer de un reproductor que empieza a sonar con STARTUP segmentos
+ * y consume audio en tiempo real mientras se descarga el siguiente. La regla:
+ *  - el bitrate candidato es el mayor que cabe en SAFETY veces el goodput estimado;
+ *  - con el buffer por debajo de LOW segmentos se baja al mínimo para no detener la reproducción;
+ *  - para subir, solo un escalón y solo con el buffer por encima de HIGH segmentos.
+ * Bajar es inmediato y subir es prudente: en un enlace lento el audio sigue sonando a menor
+ * calidad en lugar de quedarse esperando datos.
+ */
+public class AbrController {
+    private static final double SAFETY = 0.8; // Fracción del goodput que se usa
+    private static final double EWMA = 0.3; // Peso de la última medición
+    private static final double STARTUP = 2; // Segmentos antes de empezar a reproducir
+    private static final double LOW = 1; // Segmentos de buffer bajo los que se baja al mínimo
+    private static final double HIGH = 4; // Segmentos de buffer necesarios para subir
+
+    private final int[] rates; // kbit/s, de menor a mayor
+    private final double segmentSeconds;
+    private int level = 0; // Se empieza por el bitrate más bajo: arranque rápido
+    private double throughputKbps = -1;
+    private double bufferSeconds = 0;
+    private boolean playing = false;
+    private boolean started = false;
+    private int stalls = 0;
+    private double stallSeconds = 0;
+    private int switches = 0;
+
+    public AbrController(int[] rates, double segmentSeconds) {
+        this.rates = rates;
+        this.segmentSeconds = segmentSeconds;
+    }
+
+    /** Bitrate del siguiente segmento. */
+    public int nextRate() {
+        return rates[level];
+    }
+
+    /**
+     * Registra un segmento recibido y elige el bitrate del siguiente.
+     *
+     * @param stats          estadísticas de Go-Back-N del segmento
+     * @param elapsedSeconds tiempo total para obtenerlo (handshake incluido)
+     * @param mediaSeconds   duración de audio del segmento
+     */
+    public void onSegment(ReceiveStats stats, double elapsedSeconds, double mediaSeconds) {
+        double sample = stats.goodputKbps();
+        throughputKbps = throughputKbps < 0 ? sample : EWMA * sample + (1 - EWMA) * throughputKbps;
+
+        // El reproductor consumió audio mientras se descargaba el segmento
+        if (playing) {
+            bufferSeconds -= elapsedSeconds;
+            if (bufferSeconds < 0) {
+                stalls++;
+                stallSeconds += -bufferSeconds;
+                bufferSeconds = 0;
+                playing = false;
+            }
+        } else if (started) {
+            stallSeconds += elapsedSeconds; // Seguía detenido esperando datos
+        }
+        bufferSeconds += mediaSeconds;
+        if (!playing && bufferSeconds >= STARTUP * segmentSeconds) {
+            playing = true;
+            started = true;
+        }
+
+        int candidate = 0;
+        while (candidate + 1 < rates.length && rates[candidate + 1] <= SAFETY * throughputKbps) {
+            candidate++;
+        }
+        int next;
+        if (bufferSeconds < LOW * segmentSeconds) {
+            next = 0;
+        } else if (candidate > level) {
+            next = bufferSeconds >= HIGH * segmentSeconds ? level + 1 : level;
+        } else {
+            next = candidate;
+        }
+        if (next != level) {
+            switches++;
+            level = next;
+        }
+    }
+
+    public double getThroughputKbps() {
+        return throughputKbps;
+    }
+
+    public double getBufferSeconds() {
+        return bufferSeconds;
+    }
+
+    public int getStalls() {
+        return stalls;
+    }
+
+    public double getStallSeconds() {
+        return stallSeconds;
+    }
+
+    public int getSwitches() {
+        return switches;
+    }
+}
@@ -0,0 +1,104 @@
+package backend;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Escalera de versiones de una pista (lado servidor), cortadas en segmentos alineados a tramas.
+ *
+ * Las versiones se codifican de antemano (pista.mp3, pista@64.mp3, pista@32.mp3...); el bitrate
+ * de cada una se mide de sus tramas. El segmento i de cada versión va de la primera trama que
+ * empieza en i * segment ms hasta la primera que empieza en (i + 1) * segment ms, de modo que
+ * concatenar segmentos de versiones distintas da un MP3 continuo.
+ */
+public class AbrLadder {
+    public static final int DEFAULT_SEGMENT = 2000; // ms
+
+    private static class Rendition {
+        final byte[] data;
+        final int[] cuts; // cuts[i] = inicio del segmento i; cuts[segments] = fin del archivo
+
+        Rendition(byte[] data, int[] cuts) {
+            this.data = data;
+            this.cuts = cuts;
+        }
+    }
+
+    private final String trackId;
+    private final int durationMillis;
+    private final int segmentMillis;
+    private final int segments;
+    private final TreeMap<Integer, Rendition> renditions = new TreeMap<>(); // Por kbit/s
+
+    private AbrLadder(String trackId, int durationMillis, int segmentMillis, int segments) {
+        this.trackId = trackId;
+        this.durationMillis = durationMillis;
+        this.segmentMillis = segmentMillis;
+        this.segments = segments;
+    }
+
+    /**
+     * Lee y corta todas las versiones de la pista. La duración (y el número de segmentos)
+     * la da el archivo original.
+     */
+    public static AbrLadder build(SongCatalog catalog, String trackId, int segmentMillis) throws IOException {
+        Mp3Player player = new Mp3Player();
+        AbrLadder ladder = null;
+        for (File file : catalog.renditions(trackId)) {
+            byte[] data = player.leerArchivoMP3(file.getAbsolutePath());
+            if (data == null) {
+                throw new IOException("No se pudo leer la versión: " + file.getName());
+            }
+            Mp3Frames frames = Mp3Frames.parse(data);
+            if (frames.getFrameCount() == 0) {
+                System.err.println("Versión sin tramas MP3 reconocibles, se omite: " + file.getName());
+                continue;
+            }
+            if (ladder == null) {
+                long segmentMicros = segmentMillis * 1000L;
+                int segments = (int) ((frames.getDurationMicros() + segmentMicros - 1) / segmentMicros);
+                ladder = new AbrLadder(trackId, (int) (frames.getDurationMicros() / 1000), segmentMillis, segments);
+            }
+            ladder.renditions.putIfAbsent(frames.averageKbps(), new Rendition(data, ladder.cut(frames, data.length)));
+        }
+        if (ladder == null) {
+            throw new IOException("La pista no tiene versiones utilizables: " + trackId);
+        }
+        return ladder;
+    }
+
+    private int[] cut(Mp3Frames frames, int length) {
+        int[] cuts = new int[segments + 1];
+        for (int i = 1; i < segments; i++) {
+            int frame = frames.frameAtTime(i * segmentMillis * 1000L);
+            cuts[i] = frame < frames.getFrameCount() ? frames.offsetOf(frame) : length;
+        }
+        cuts[segments] = length; // El primer segmento incluye la etiqueta ID3 y el último todo lo que sigue
+        return cuts;
+    }
+
+    public boolean hasRate(int kbps) {
+        return renditions.containsKey(kbps);
+    }
+
+    /** Bytes del segmento {@code index} de la versión de {@code kbps}. */
+    public byte[] segment(int kbps, int index) {
+        Rendition r = renditions.get(kbps);
+        return Arrays.copyOfRange(r.data, r.cuts[index], r.cuts[index + 1]);
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public Manifest toManifest() {
+        int[] rates = new int[renditions.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Rendition> e : renditions.entrySet()) {
+            rates[i++] = e.getKey();
+        }
+        return new Manifest(trackId, durationMillis, segmentMillis, segments, rates);
+    }
+}
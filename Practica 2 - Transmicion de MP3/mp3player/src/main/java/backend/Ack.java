@@ -0,0 +1,54 @@
+package backend;
+import java.nio.ByteBuffer;
+
+/**
+ * Formato binario del ACK acumulativo: [TYPE (1 byte)][sesión (4 bytes)][último seq en orden (4 bytes)].
+ * El primer byte no es ASCII para no confundirse con los mensajes de control en texto
+ * (READY, PROBE_ACK...) que comparten el mismo socket; la sesión descarta ACKs de una
+ * transferencia anterior.
+ */
+public final class Ack {
+    public static final byte TYPE = (byte) 0xA5;
+    public static final int SIZE = 9;
+
+    private Ack() {
+    }
+
+    /** Escribe el ACK en {@code buffer} (de al menos SIZE bytes) sin reservar memoria. */
+    public static void encode(byte[] buffer, int session, int ackNum) {
+        buffer[0] = TYPE;
+        putInt(buffer, 1, session);
+        putInt(buffer, 5, ackNum);
+    }
+
+    /** Igual que {@link #encode(byte[], int, int)}, dejando el buffer listo para enviarse. */
+    public static void encode(ByteBuffer buffer, int session, int ackNum) {
+        buffer.clear();
+        buffer.put(TYPE).putInt(session).putInt(ackNum);
+        buffer.flip();
+    }
+
+    public static boolean isAck(byte[] data, int length) {
+        return length == SIZE && data[0] == TYPE;
+    }
+
+    public static int session(byte[] data) {
+        return getInt(data, 1);
+    }
+
+    public static int decode(byte[] data) {
+        return getInt(data, 5);
+    }
+
+    private static void putInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+
+    private static int getInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,89 @@
+package backend;
+
+/**
+ * Política de ACK retardado del receptor.
+ *
+ * Los paquetes en orden se confirman de forma acumulativa cada {@code every} paquetes
+ * o al vencer {@code delayMs} desde el primero sin confirmar, lo que ocurra antes.
+ * Se confirma de inmediato solo cuando hace falta: al detectar un hueco (un ACK por hueco,
+ * no uno por cada paquete fuera de orden), al llenarlo y con el último paquete.
+ */
+public class AckPolicy {
+    private final int every;
+    private final long delayNanos;
+
+    private int unacked = 0;
+    private long firstUnackedAt = 0;
+    private boolean gapReported = false;
+
+    public AckPolicy(int every, int delayMs) {
+        this.every = Math.max(1, every);
+        this.delayNanos = Math.max(0, delayMs) * 1_000_000L;
+    }
+
+    /**
+     * Política configurada con -Dmp3.ackEvery (2 por defecto) y -Dmp3.ackDelay en ms (20 por defecto).
+     * Con ackEvery=1 se vuelve al comportamiento clásico de un ACK por paquete.
+     */
+    public static AckPolicy fromSystemProperties() {
+        return new AckPolicy(Integer.getInteger("mp3.ackEvery", 2), Integer.getInteger("mp3.ackDelay", 20));
+    }
+
+    /**
+     * Llegó (o se reconstruyó) el paquete esperado.
+     * @param filledGap true si antes se había detectado un hueco (el paquete lo llena)
+     * @param last      true si con este paquete se completa la transferencia
+     * @return true si hay que enviar el ACK ahora
+     */
+    public boolean onInOrder(boolean filledGap, boolean last) {
+        gapReported = false;
+        if (unacked++ == 0) {
+            firstUnackedAt = System.nanoTime();
+        }
+        return filledGap || last || unacked >= every;
+    }
+
+    /**
+     * Llegó un paquete posterior al esperado.
+     * @return true solo para el primero de cada hueco
+     */
+    public boolean onGap() {
+        if (gapReported) return false;
+        gapReported = true;
+        return true;
+    }
+
+    /**
+     * Llegó un duplicado: no fuerza un ACK, pero garantiza uno antes de {@code delayMs}
+     * por si el ACK anterior se perdió.
+     */
+    public void onDuplicate() {
+        if (unacked++ == 0) {
+            firstUnackedAt = System.nanoTime();
+        }
+    }
+
+    public boolean isGapReported() {
+        return gapReported;
+    }
+
+    /** Hay un ACK pendiente. */
+    public boolean pending() {
+        return unacked > 0;
+    }
+
+    /** Milisegundos hasta que venza el ACK pendiente (mínimo 1 para usar como timeout). */
+    public int millisUntilDue() {
+        long remaining = firstUnackedAt + delayNanos - System.nanoTime();
+        return (int) Math.max(1, remaining / 1_000_000L);
+    }
+
+    public boolean due() {
+        return pending() && System.nanoTime() - firstUnackedAt >= delayNanos;
+    }
+
+    /** Se envió un ACK acumulativo. */
+    public void sent() {
+        unacked = 0;
+    }
+}
@@ -0,0 +1,121 @@
+package backend;
+import java.io.IOException;
+import java.net.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hilo que recibe los ACKs de una transferencia mientras el emisor envía a su ritmo.
+ *
+ * Los ACKs son acumulativos, así que basta con publicar el mayor recibido (y cuándo llegó);
+ * cada ACK nuevo despierta al hilo emisor. Si el cliente repite su solicitud porque se perdió
+ * el ACCEPT, se lo reenvía desde aquí. Lo que llega de otra dirección se ignora: no es de esta
+ * transferencia ni debe provocar un ACCEPT repetido.
+ *
+ * El hilo termina en cuanto llega el ACK del último paquete: lo que el cliente envíe después
+ * (p. ej. la solicitud del siguiente segmento) debe quedar en el socket para el servidor.
+ */
+public class AckReader implements Runnable {
+    private static final int POLL = 20; // ms entre revisiones de la señal de parada
+
+    private final DatagramSocket socket;
+    private final byte[] accept;
+    private final InetAddress clientAddress;
+    private final int clientPort;
+    private final int session;
+    private final int finalAck;
+    private final Thread sender;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile int highestAck = Integer.MIN_VALUE;
+    private volatile long ackNanos;
+    private volatile int acksReceived = 0;
+    private volatile IOException failure;
+
+    /**
+     * @param session  ID de sesión; los ACKs de otra sesión se ignoran
+     * @param finalAck ACK que confirma toda la transferencia (Integer.MIN_VALUE si no hay nada que enviar)
+     * @param sender   hilo al que se despierta con cada ACK nuevo
+     */
+    public AckReader(DatagramSocket socket, byte[] accept, InetAddress clientAddress, int clientPort,
+                     int session, int finalAck, Thread sender) {
+        this.socket = socket;
+        this.accept = accept;
+        this.clientAddress = clientAddress;
+        this.clientPort = clientPort;
+        this.session = session;
+        this.finalAck = finalAck;
+        this.sender = sender;
+        this.thread = new Thread(this, "mp3-acks");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() throws IOException {
+        socket.setSoTimeout(POLL);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        byte[] buffer = new byte[256];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (running && highestAck < finalAck) {
+            try {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                if (packet.getPort() != clientPort || !clientAddress.equals(packet.getAddress())) continue;
+                if (Ack.isAck(buffer, packet.getLength())) {
+                    if (Ack.session(buffer) != session) continue; // Rezagado de otra transferencia
+                    int ackNum = Ack.decode(buffer);
+                    acksReceived++;
+                    if (ackNum > highestAck) {
+                        ackNanos = System.nanoTime();
+                        highestAck = ackNum;
+                        LockSupport.unpark(sender);
+                    }
+                } else if (Handshake.startsWith(buffer, packet.getLength(), Handshake.READY)
+                        || Handshake.startsWith(buffer, packet.getLength(), PartialDownload.RESUME)
+                        || Handshake.startsWith(buffer, packet.getLength(), AdaptiveDownload.SEGMENT)) {
+                    // El ACCEPT se perdió y el cliente repite la solicitud
+                    socket.send(new DatagramPacket(accept, accept.length, clientAddress, clientPort));
+                }
+            } catch (SocketTimeoutException e) {
+                // Solo para revisar si hay que parar
+            } catch (IOException e) {
+                if (running) {
+                    failure = e;
+                    LockSupport.unpark(sender);
+                }
+                return;
+            }
+        }
+    }
+
+    /** Mayor ACK recibido (Integer.MIN_VALUE si aún ninguno). */
+    public int highestAck() {
+        return highestAck;
+    }
+
+    /** Instante de llegada del mayor ACK. */
+    public long ackNanos() {
+        return ackNanos;
+    }
+
+    public int getAcksReceived() {
+        return acksReceived;
+    }
+
+    /** Relanza en el hilo emisor el error del socket, si lo hubo. */
+    public void check() throws IOException {
+        if (failure != null) throw failure;
+    }
+
+    /** Detiene el hilo; al volver, el socket ya no tiene otro lector. */
+    public void stop() {
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package backend;
+import java.io.File;
+import java.io.IOException;
+import java.net.*;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * Streaming adaptativo: la pista se descarga segmento a segmento y AbrController elige el
+ * bitrate de cada uno.
+ *
+ * Cliente -> MANIFEST|pista (ver Manifest)
+ * Cliente -> SEGMENT|pista|rate=R|index=i|mtu=D[|payload=P]  y el handshake normal de Session
+ *
+ * Cada segmento es una transferencia Go-Back-N corta. El primero sondea el tamaño de datagrama;
+ * los siguientes repiten el payload acordado para no volver a sondear. Los segmentos se
+ * reciben en {@code <salida>.seg} y se añaden en orden al final del archivo de salida.
+ * El canal queda conectado al servidor toda la descarga: si se conectara en cada segmento se
+ * descartarían los primeros paquetes, que llegan justo después del ACCEPT.
+ */
+public class AdaptiveDownload {
+    public static final String SEGMENT = "SEGMENT";
+
+    private AdaptiveDownload() {
+    }
+
+    /**
+     * @return true si se recibieron todos los segmentos
+     */
+    public static boolean download(DatagramChannel channel, InetAddress serverAddress, int serverPort,
+                                   String trackId, File output) throws IOException {
+        DatagramSocket socket = channel.socket();
+        channel.connect(new InetSocketAddress(serverAddress, serverPort));
+        try {
+            return download(channel, socket, serverAddress, serverPort, trackId, output);
+        } finally {
+            channel.disconnect();
+        }
+    }
+
+    private static boolean download(DatagramChannel channel, DatagramSocket socket, InetAddress serverAddress,
+                                    int serverPort, String trackId, File output) throws IOException {
+        Manifest manifest = Manifest.fetch(socket, serverAddress, serverPort, trackId);
+        if (manifest == null || manifest.getRates().length == 0) return false;
+
+        AbrController abr = new AbrController(manifest.getRates(), manifest.getSegmentMillis() / 1000.0);
+        File part = new File(output.getPath() + ".seg");
+        int payloadSize = 0;
+        long mediaBits = 0;
+        long start = System.nanoTime();
+        // Una muestra por segmento con el buffer que lleva el controlador (ver Telemetry)
+        Telemetry.Recorder telemetry = Telemetry.recorder("abr", trackId);
+
+        System.out.println("=== Streaming adaptativo ===\n");
+        try (FileChannel out = FileChannel.open(output.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int i = 0; i < manifest.getSegments(); i++) {
+                int rate = abr.nextRate();
+                Handshake request = new Handshake(SEGMENT, trackId)
+                        .with("rate", rate)
+                        .with("index", i)
+                        .with("mtu", Session.configuredMaxDatagram());
+                if (payloadSize > 0) request.with("payload", payloadSize);
+
+                long segmentStart = System.nanoTime();
+                Session session = Session.open(socket, serverAddress, serverPort, request);
+                if (session == null) return false;
+                payloadSize = session.getPayloadSize();
+
+                ReceiveStats stats;
+                try (PacketFile packets = new PacketFile(part, payloadSize, session.getTotalPackets(), new BitSet())) {
+                    stats = GoBackNReceiver.receive(channel, serverAddress, serverPort, session, packets);
+                }
+                if (stats.isCorrupt()) {
+                    System.out.println("⚠ Segmento " + i + " dañado (SHA-256 distinto): se detiene el streaming");
+                    return false;
+                }
+                if (!stats.isComplete()) {
+                    System.out.println("⚠ Segmento " + i + " incompleto: se detiene el streaming");
+                    return false;
+                }
+                try (FileChannel in = FileChannel.open(part.toPath(), StandardOpenOption.READ)) {
+                    long size = in.size();
+                    for (long done = 0; done < size; ) {
+                        done += in.transferTo(done, size - done, out);
+                    }
+                }
+
+                double elapsed = (System.nanoTime() - segmentStart) / 1e9;
+                double media = manifest.segmentDuration(i) / 1000.0;
+                abr.onSegment(stats, elapsed, media);
+                mediaBits += (long) (rate * 1000 * media);
+                telemetry.set(Telemetry.Metric.GOODPUT_KBPS, stats.goodputKbps())
+                        .set(Telemetry.Metric.PROGRESS, (i + 1) / (double) manifest.getSegments())
+                        .set(Telemetry.Metric.BUFFER_S, abr.getBufferSeconds())
+                        .emit(System.nanoTime());
+                System.out.printf("▶ Segmento %d/%d a %d kbit/s | goodput %.0f kbit/s (estimado %.0f) | "
+                                + "buffer %.1f s | siguiente: %d kbit/s%n",
+                        i + 1, manifest.getSegments(), rate, stats.goodputKbps(), abr.getThroughputKbps(),
+                        abr.getBufferSeconds(), abr.nextRate());
+            }
+        } finally {
+            part.delete();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println("\n=== Estadísticas del streaming adaptativo ===");
+        System.out.println("Tiempo total: " + String.format("%.2f", seconds) + " segundos");
+        System.out.println("Bitrate medio: " + String.format("%.0f kbit/s",
+                mediaBits / 1000.0 / Math.max(0.001, manifest.getDurationMillis() / 1000.0)));
+        System.out.println("Cambios de bitrate: " + abr.getSwitches());
+        System.out.println("Interrupciones de reproducción: " + abr.getStalls()
+                + String.format(" (%.1f s)", abr.getStallSeconds()));
+        return true;
+    }
+}
@@ -0,0 +1,222 @@
+package backend;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.*;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Barre redes degradadas (ImpairmentProxy) y mide cada modo de ARQ sobre ellas:
+ * Go-Back-N con distintas ventanas, Go-Back-N con FEC y el modo en vivo.
+ *
+ * Usa el emisor real (GoBackNSender) y el receptor real (GoBackNReceiver) sobre loopback,
+ * con el proxy en medio. Las retransmisiones se cuentan en el proxy, con los paquetes de
+ * datos que salen del servidor. Todas las semillas son fijas: cada corrida es reproducible.
+ *
+ * Uso: java backend.ArqBenchmark [pista] [corridas]
+ *   -Dmp3.timeout=T cambia el timeout inicial de todos los modos.
+ */
+public class ArqBenchmark {
+    private static final int HEADER_SIZE = PacketHeader.SIZE;
+    private static final int RECEIVE_TIMEOUT = 10000; // ms sin datos; más allá se considera que no completó
+    private static final int LIVE_DELAY = 500; // ms de retardo de reproducción en vivo
+    private static final double LIVE_SPEED = 10; // La canción en vivo corre 10 veces más rápido
+    private static final int SCENARIOS = 9;
+
+    /** Un modo de ARQ a medir. */
+    private static class Mode {
+        final String name;
+        final int window;
+        final int fecK;
+        final boolean live;
+
+        Mode(String name, int window, int fecK, boolean live) {
+            this.name = name;
+            this.window = window;
+            this.fecK = fecK;
+            this.live = live;
+        }
+    }
+
+    private static final Mode[] MODES = {
+            new Mode("GBN w=4", 4, 0, false),
+            new Mode("GBN w=10", 10, 0, false),
+            new Mode("GBN w=32", 32, 0, false),
+            new Mode("GBN+FEC4 w=10", 10, 4, false),
+            new Mode("En vivo w=10", 10, 0, true),
+    };
+
+    /** Resultado de una transferencia. */
+    private static class Result implements Comparable<Result> {
+        boolean complete;
+        double seconds;
+        double mbps;
+        double retransmitted; // % de paquetes de datos enviados de más
+        double parity; // % de paquetes de paridad sobre los de datos
+        int skipped;
+
+        @Override
+        public int compareTo(Result o) {
+            return Double.compare(seconds, o.seconds);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String trackId = args.length > 0 ? args[0] : SongCatalog.DEFAULT_TRACK;
+        int runs = args.length > 1 ? Math.max(1, Integer.parseInt(args[1])) : 1;
+        SongCatalog catalog = SongCatalog.fromResources();
+        if (catalog.resolve(trackId) == null) {
+            System.err.println("Pista no encontrada: " + trackId + " (disponibles: " + catalog.list() + ")");
+            return;
+        }
+        byte[] song = catalog.read(trackId);
+
+        PrintStream console = System.out;
+        console.println("=== Modos de ARQ en redes degradadas ===");
+        console.println("Pista: " + trackId + " (" + song.length / 1024 + " KB) | timeout inicial: "
+                + GoBackNSender.TIMEOUT + " ms | en vivo a " + (int) LIVE_SPEED + "x con "
+                + LIVE_DELAY + " ms de retardo | mediana de " + runs + " corrida(s)\n");
+        console.printf("%-15s %9s %12s %10s %9s  %s%n",
+                "Modo", "Tiempo", "Goodput", "Retransm.", "Paridad", "Resultado");
+
+        // Una corrida descartada para que el JIT no penalice al primer escenario
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            run(song, MODES[1], scenario(0, 0));
+        } finally {
+            System.setOut(console);
+        }
+
+        for (int scenario = 0; scenario < SCENARIOS; scenario++) {
+            console.println("--- " + scenario(scenario, 0)[1].describe() + " ---");
+            for (Mode mode : MODES) {
+                Result[] results = new Result[runs];
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                try {
+                    for (int r = 0; r < runs; r++) {
+                        results[r] = run(song, mode, scenario(scenario, r));
+                    }
+                } finally {
+                    System.setOut(console);
+                }
+                Arrays.sort(results);
+                Result m = results[runs / 2];
+                String outcome = !m.complete ? "no completó"
+                        : mode.live ? "saltados: " + m.skipped
+                        : "completó";
+                console.printf("%-15s %8.2fs %12s %9.1f%% %8.1f%%  %s%n", mode.name, m.seconds,
+                        mode.live || !m.complete ? "-" : String.format("%.1f Mbit/s", m.mbps),
+                        m.retransmitted, m.parity, outcome);
+            }
+            console.println();
+        }
+    }
+
+    /**
+     * Degradación de cada escenario: {hacia el servidor (ACKs), hacia el cliente (datos)}.
+     * Los ACKs sufren el mismo retardo que los datos pero no se pierden, salvo en el enlace limitado.
+     */
+    private static Impairment[] scenario(int scenario, int run) {
+        long seed = 1000L * scenario + run;
+        Impairment up = Impairment.none(seed);
+        Impairment down = Impairment.none(seed + 1);
+        switch (scenario) {
+            case 0:
+                break; // Loopback sin degradación: referencia
+            case 1:
+                down.loss(LossModel.random(0.01, seed));
+                break;
+            case 2:
+                down.loss(LossModel.random(0.05, seed));
+                break;
+            case 3:
+                down.loss(LossModel.burst(0.01, 0.3, 0.0, 0.8, seed)); // Ráfagas de ~3 paquetes
+                break;
+            case 4:
+                up.delay(20, 0);
+                down.delay(20, 0);
+                break;
+            case 5:
+                // Un jitter mayor que la separación entre paquetes también los reordena
+                up.delay(20, 5);
+                down.delay(20, 5);
+                break;
+            case 6:
+                up.delay(10, 0);
+                down.delay(10, 0).reorder(0.05);
+                break;
+            case 7:
+                down.duplicate(0.05);
+                break;
+            default:
+                // Enlace de 8 Mbit/s con cola de 50 ms, 10 ms de retardo y algo de pérdida en ambos sentidos
+                up.delay(10, 0).loss(LossModel.random(0.005, seed + 2));
+                down.delay(10, 0).rate(8000, 50).loss(LossModel.random(0.005, seed + 3));
+                break;
+        }
+        return new Impairment[]{up, down};
+    }
+
+    private static Result run(byte[] song, Mode mode, Impairment[] impairment) throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        int payload = Session.payloadFor(Session.DEFAULT_DATAGRAM, HEADER_SIZE, mode.fecK);
+        Mp3Player player = new Mp3Player();
+        byte[][] packets = mode.live ? player.fragmentarPorTramas(song, payload) : player.fragmentarMP3(song, payload);
+        byte[][] parities = mode.fecK > 0 ? Fec.encode(packets, mode.fecK) : null;
+        LiveSchedule live = mode.live ? new LiveSchedule(packets, LIVE_DELAY, LIVE_SPEED) : null;
+        int datagram = payload + HEADER_SIZE + (mode.fecK > 0 ? Fec.PARITY_HEADER : 0);
+        Session session = new Session("benchmark", datagram, payload, packets.length, mode.fecK,
+                mode.live ? "" : ContentHash.of(packets), false, mode.live ? LIVE_DELAY : 0, 1);
+
+        DatagramSocket serverSocket = new DatagramSocket(0, loopback);
+        DatagramChannel clientChannel = DatagramChannel.open().bind(new InetSocketAddress(loopback, 0));
+        clientChannel.socket().setSoTimeout(RECEIVE_TIMEOUT);
+        ImpairmentProxy proxy = new ImpairmentProxy(0, new InetSocketAddress(loopback, serverSocket.getLocalPort()),
+                (InetSocketAddress) clientChannel.getLocalAddress(), impairment[0], impairment[1]).start();
+        // Conectado antes de que el emisor arranque: conectar después vaciaría la cola de recepción
+        clientChannel.connect(new InetSocketAddress(loopback, proxy.getPort()));
+
+        // El servidor ve al proxy como cliente; un puerto nuevo por corrida evita reusar métricas del camino
+        GoBackNSender gbn = new GoBackNSender(serverSocket, session, packets, parities, null, live, new byte[0],
+                loopback, proxy.getServerSidePort()).tuning(mode.window, GoBackNSender.TIMEOUT);
+        Thread sender = new Thread(() -> {
+            try {
+                gbn.run();
+            } catch (IOException e) {
+                // El receptor abandonó o se cerró el socket
+            }
+        });
+        sender.setDaemon(true);
+
+        File file = File.createTempFile("arq-benchmark", ".part");
+        file.deleteOnExit();
+        Result result = new Result();
+        long start = System.nanoTime();
+        sender.start();
+        try (Closeable sink = mode.live ? new LiveSink(file, packets.length)
+                : new PacketFile(file, payload, packets.length, new BitSet())) {
+            ReceiveStats stats = GoBackNReceiver.receive(clientChannel, loopback, proxy.getPort(), session,
+                    (PacketSink) sink);
+            result.complete = stats.isComplete();
+            result.skipped = stats.getSkipped();
+        }
+        result.seconds = (System.nanoTime() - start) / 1e9;
+        result.mbps = song.length * 8 / 1e6 / result.seconds;
+
+        // Si el último ACK se perdió el emisor seguiría reintentando: al cerrar su socket se rinde
+        sender.join(1000);
+        serverSocket.close();
+        proxy.close();
+        clientChannel.close();
+        file.delete();
+
+        int sent = packets.length - result.skipped;
+        result.retransmitted = 100.0 * Math.max(0, proxy.getDataPackets() - sent) / Math.max(1, sent);
+        result.parity = 100.0 * proxy.getParityPackets() / Math.max(1, sent);
+        return result;
+    }
+}
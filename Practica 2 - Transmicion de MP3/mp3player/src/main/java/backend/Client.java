@@ -1,167 +1,118 @@
 package backend;
 import java.net.*;
+import java.nio.channels.DatagramChannel;
 import java.io.*;
-import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 public class Client {
-    private static final int HEADER_SIZE = 8; // 4 bytes seq + 4 bytes total
+    private static final int FEC_K = Fec.clampK(Integer.getInteger("mp3.fec", 0)); // 0 = sin FEC
+    private static final boolean LIVE = Boolean.getBoolean("mp3.live"); // Modo en vivo (ver LiveSchedule)
+    private static final int LIVE_DELAY = Integer.getInteger("mp3.live.delay", LiveSchedule.DEFAULT_DELAY); // ms
+    private static final boolean ABR = Boolean.getBoolean("mp3.abr"); // Bitrate adaptativo (ver AdaptiveDownload)
+    private static final int STREAMS = Stripes.configured(); // Flujos en paralelo (ver Stripes)
 
     public static void main(String[] args) {
         try {
             // Puerto donde el cliente escucha
             int clientPort = 5678;
-            DatagramSocket clientSocket = new DatagramSocket(clientPort);
-            clientSocket.setReuseAddress(true);
+            // Canal en lugar de DatagramSocket: la recepción usa un buffer directo reutilizado
+            DatagramChannel channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(clientPort));
+            DatagramSocket clientSocket = channel.socket();
             clientSocket.setSoTimeout(30000); // Timeout de 30 segundos
             
             System.out.println("Cliente iniciado en el puerto: " + clientSocket.getLocalPort());
             System.out.println("Usando protocolo Go-Back-N ARQ");
 
-            // Enviar mensaje READY al servidor
-            String readyMsg = "READY";
+            String trackId = args.length > 0 ? args[0] : SongCatalog.DEFAULT_TRACK;
             InetAddress serverAddress = InetAddress.getByName("localhost");
-            int serverPort = 1234;
-            
-            DatagramPacket readyPacket = new DatagramPacket(
-                readyMsg.getBytes(), 
-                readyMsg.length(), 
-                serverAddress, 
-                serverPort
-            );
-            clientSocket.send(readyPacket);
-            System.out.println("Mensaje READY enviado al servidor\n");
+            int serverPort = Integer.getInteger("mp3.port", 1234); // Otro puerto para pasar por ImpairmentProxy
+
+            if (ABR) {
+                // Segmento a segmento, con el bitrate que permita el enlace
+                File output = outputFile(trackId + "_recibida");
+                if (AdaptiveDownload.download(channel, serverAddress, serverPort, trackId, output)) {
+                    System.out.println("\n✓ Archivo MP3 recibido: " + output.getAbsolutePath());
+                    System.out.println("Tamaño: " + (output.length() / 1024) + " KB");
+                }
+                channel.close();
+                return;
+            }
+
+            // Handshake: READY con la pista solicitada y el mayor datagrama que aceptamos,
+            // o RESUME si quedó una descarga parcial de la misma pista (en vivo no se reanuda)
+            File output = outputFile(trackId + (LIVE ? "_vivo" : "_recibida"));
+            PartialDownload partial = LIVE ? null : PartialDownload.load(output);
+            Handshake ready = partial != null && partial.isFor(trackId)
+                    ? partial.toResume()
+                    : Handshake.ready(trackId);
+            ready.with("mtu", Session.configuredMaxDatagram());
+            if (FEC_K > 0) ready.with("fec", FEC_K);
+            if (STREAMS > 1) ready.with("streams", STREAMS);
+            if (LIVE) ready.with("live", 1).with("delay", LIVE_DELAY);
+
+            Session session = Session.open(clientSocket, serverAddress, serverPort, ready);
 
             // Recibir con Go-Back-N
-            receiveGoBackN(clientSocket, serverAddress, serverPort);
+            if (session != null && session.isLive()) {
+                receiveLive(channel, serverAddress, serverPort, session, output);
+            } else if (session != null) {
+                ReceiveStats stats;
+                try (PacketFile packets = PartialDownload.open(output, session, partial)) {
+                    stats = session.getStreams() > 1
+                            ? Stripes.receive(serverAddress, session, packets, clientSocket.getSoTimeout())
+                            : GoBackNReceiver.receive(channel, serverAddress, serverPort, session, packets);
+                    if (!stats.isComplete() && !stats.isCorrupt()) {
+                        PartialDownload.save(output, session, packets.getReceived());
+                    }
+                }
+                if (stats.isCorrupt()) {
+                    // No tiene sentido reanudar sobre datos que no coinciden con el original
+                    PartialDownload.delete(output);
+                } else if (stats.isComplete()) {
+                    reconstructFile(output);
+                }
+            }
 
-            clientSocket.close();
+            channel.close();
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
     
-    private static void receiveGoBackN(DatagramSocket socket, InetAddress serverAddress, 
-                                       int serverPort) throws IOException {
-        int expectedSeqNum = 0; // Número de secuencia esperado
-        int totalPackets = -1; // Total de paquetes (se lee del primer paquete)
-        byte[][] receivedPackets = null;
-        
-        byte[] receiveBuffer = new byte[7000]; // Buffer para recibir paquetes
-        
-        System.out.println("=== Iniciando recepción Go-Back-N ===\n");
-        long startTime = System.currentTimeMillis();
-        int packetsReceived = 0;
-        int duplicates = 0;
-        
-        while (expectedSeqNum < totalPackets || totalPackets == -1) {
-            DatagramPacket packet = new DatagramPacket(receiveBuffer, receiveBuffer.length);
-            
-            try {
-                socket.receive(packet);
-                packetsReceived++;
-                
-                // Extraer header
-                ByteBuffer buffer = ByteBuffer.wrap(packet.getData(), 0, packet.getLength());
-                int seqNum = buffer.getInt();
-                int total = buffer.getInt();
-                
-                // Inicializar array si es el primer paquete
-                if (totalPackets == -1) {
-                    totalPackets = total;
-                    receivedPackets = new byte[totalPackets][];
-                    System.out.println("Total de paquetes a recibir: " + totalPackets + "\n");
-                }
-                
-                // Extraer datos
-                int dataLength = packet.getLength() - HEADER_SIZE;
-                byte[] data = new byte[dataLength];
-                buffer.get(data);
-                
-                if (seqNum == expectedSeqNum) {
-                    // Paquete esperado: guardar y avanzar
-                    receivedPackets[seqNum] = data;
-                    expectedSeqNum++;
-                    
-                    // Enviar ACK acumulativo
-                    sendAck(socket, expectedSeqNum - 1, serverAddress, serverPort);
-                    
-                    // Mostrar progreso cada 50 paquetes
-                    if (expectedSeqNum % 50 == 0) {
-                        double progress = (expectedSeqNum * 100.0) / totalPackets;
-                        System.out.printf("Recibido: %.1f%% (%d/%d paquetes)\n", 
-                                        progress, expectedSeqNum, totalPackets);
-                    }
-                    
-                } else if (seqNum < expectedSeqNum) {
-                    // Paquete duplicado: reenviar ACK
-                    duplicates++;
-                    sendAck(socket, expectedSeqNum - 1, serverAddress, serverPort);
-                    
-                } else {
-                    // Paquete fuera de orden: descartar y reenviar último ACK
-                    System.out.println("⚠ Paquete fuera de orden: " + seqNum + 
-                                     " (esperado: " + expectedSeqNum + ")");
-                    sendAck(socket, expectedSeqNum - 1, serverAddress, serverPort);
-                }
-                
-            } catch (SocketTimeoutException e) {
-                System.out.println("⚠ Timeout esperando paquetes");
-                break;
-            }
-        }
-        
-        long endTime = System.currentTimeMillis();
-        double timeSeconds = (endTime - startTime) / 1000.0;
-        
-        // Reconstruir archivo
-        if (expectedSeqNum == totalPackets) {
-            reconstructFile(receivedPackets);
-            
-            System.out.println("\n=== Estadísticas de recepción ===");
-            System.out.println("✓ Archivo recibido completamente");
-            System.out.println("Tiempo total: " + String.format("%.2f", timeSeconds) + " segundos");
-            System.out.println("Paquetes recibidos: " + packetsReceived);
-            System.out.println("Duplicados: " + duplicates);
-        } else {
-            System.out.println("\n⚠ Recepción incompleta: " + expectedSeqNum + "/" + totalPackets);
+    /**
+     * Modo en vivo: los paquetes se escriben en orden según llegan y los que el servidor
+     * salta por plazo vencido se pierden como tramas completas, sin detener la reproducción.
+     */
+    private static void receiveLive(DatagramChannel channel, InetAddress serverAddress, int serverPort,
+                                    Session session, File output) throws IOException {
+        try (LiveSink sink = new LiveSink(output, session.getTotalPackets())) {
+            GoBackNReceiver.receive(channel, serverAddress, serverPort, session, sink);
         }
+        System.out.println("\n✓ Audio en vivo guardado: " + output.getAbsolutePath());
+        System.out.println("Tamaño: " + (output.length() / 1024) + " KB");
     }
-    
-    private static void sendAck(DatagramSocket socket, int ackNum, 
-                               InetAddress address, int port) throws IOException {
-        String ackMsg = "ACK:" + ackNum;
-        byte[] ackData = ackMsg.getBytes();
-        DatagramPacket ackPacket = new DatagramPacket(ackData, ackData.length, address, port);
-        socket.send(ackPacket);
-    }
-    
-    private static void reconstructFile(byte[][] packets) throws IOException {
+
+    private static File outputFile(String name) {
         // Determinar ruta donde guardar el archivo
         var resource = Client.class.getClassLoader().getResource("song/");
-        String outputPath;
         
         if (resource != null) {
             // Guardar en resources/song/
-            File resourceDir = new File(resource.getFile());
-            outputPath = new File(resourceDir, "cancion_recibida.mp3").getAbsolutePath();
-        } else {
-            // Guardar en directorio actual
-            outputPath = "cancion_recibida.mp3";
-        }
-        
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        for (byte[] packet : packets) {
-            if (packet != null) {
-                baos.write(packet);
-            }
+            // getFile() viene codificado como URL (espacios como %20)
+            File resourceDir = new File(URLDecoder.decode(resource.getFile(), StandardCharsets.UTF_8));
+            return new File(resourceDir, name + ".mp3");
         }
+        // Guardar en directorio actual
+        return new File(name + ".mp3");
+    }
+    
+    private static void reconstructFile(File output) throws IOException {
+        // Los paquetes ya están en su posición dentro del .part: basta con renombrarlo
+        PartialDownload.complete(output);
         
-        FileOutputStream fos = new FileOutputStream(outputPath);
-        baos.writeTo(fos);
-        fos.close();
-        baos.close();
-        
-        System.out.println("\n✓ Archivo MP3 reconstruido: " + outputPath);
-        System.out.println("Tamaño: " + (baos.size() / 1024) + " KB");
+        System.out.println("\n✓ Archivo MP3 reconstruido: " + output.getAbsolutePath());
+        System.out.println("Tamaño: " + (output.length() / 1024) + " KB");
     }
 }
@@ -2,7 +2,7 @@ package backend;
 
 import java.io.*;
 import java.net.*;
-import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 
 import javafx.application.Application;
 import javafx.application.Platform;
@@ -13,17 +13,23 @@ import javafx.stage.Stage;
 public class ClientWebView extends Application {
     private static volatile boolean downloadComplete = false;
     private static String songPath = null;
-    private static final int HEADER_SIZE = 8; // 4 bytes seq + 4 bytes total
+    private static final int FEC_K = Fec.clampK(Integer.getInteger("mp3.fec", 0)); // 0 = sin FEC
+    private static final boolean ABR = Boolean.getBoolean("mp3.abr"); // Bitrate adaptativo (ver AdaptiveDownload)
+    private static final int STREAMS = Stripes.configured(); // Flujos en paralelo (ver Stripes)
+    private static volatile WebView view; // Interfaz donde se muestra la telemetría
 
     public static void main(String[] args) {
         // Forzar uso de software rendering en lugar de hardware
         System.setProperty("prism.order", "sw");
         System.setProperty("prism.verbose", "true");
+
+        // Cada muestra de la telemetría del receptor se pasa a la interfaz (ver js/telemetry.js)
+        Telemetry.setListener(ClientWebView::showTelemetry);
         
         // Iniciar descarga en hilo separado
         new Thread(() -> {
             try {
-                downloadSong();
+                downloadSong(args.length > 0 ? args[0] : SongCatalog.DEFAULT_TRACK);
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -33,28 +39,66 @@ public class ClientWebView extends Application {
         launch(args);
     }
 
-    private static void downloadSong() {
+    private static void downloadSong(String trackId) {
         try {
             // Puerto donde el cliente escucha
             int clientPort = 5678;
-            DatagramSocket clientSocket = new DatagramSocket(clientPort);
-            clientSocket.setReuseAddress(true);
+            // Canal en lugar de DatagramSocket: la recepción usa un buffer directo reutilizado
+            DatagramChannel channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(clientPort));
+            DatagramSocket clientSocket = channel.socket();
             clientSocket.setSoTimeout(30000); // Timeout de 30 segundos
             
             System.out.println("Cliente UDP iniciado en el puerto: " + clientSocket.getLocalPort());
             System.out.println("Usando protocolo Go-Back-N ARQ");
             
-            // Enviar mensaje READY al servidor para indicar que estamos listos
-            byte[] readyMsg = "READY".getBytes();
+            File outputFile = outputFile();
             InetAddress serverAddress = InetAddress.getByName("127.0.0.1");
-            DatagramPacket readyPacket = new DatagramPacket(readyMsg, readyMsg.length, serverAddress, 1234);
-            clientSocket.send(readyPacket);
-            System.out.println("Mensaje READY enviado al servidor\n");
+
+            if (ABR) {
+                // Segmento a segmento: en un enlace lento baja el bitrate en lugar de detenerse
+                if (AdaptiveDownload.download(channel, serverAddress, 1234, trackId, outputFile)) {
+                    songPath = outputFile.getAbsolutePath();
+                    System.out.println("\n✓ Archivo MP3 recibido: " + songPath);
+                }
+                channel.close();
+                downloadComplete = true;
+                return;
+            }
+
+            // Handshake: READY con la pista solicitada y el mayor datagrama que aceptamos,
+            // o RESUME si quedó una descarga parcial de la misma pista
+            PartialDownload partial = PartialDownload.load(outputFile);
+            Handshake ready = partial != null && partial.isFor(trackId)
+                    ? partial.toResume()
+                    : Handshake.ready(trackId);
+            ready.with("mtu", Session.configuredMaxDatagram());
+            if (FEC_K > 0) ready.with("fec", FEC_K);
+            if (STREAMS > 1) ready.with("streams", STREAMS);
+
+            Session session = Session.open(clientSocket, serverAddress, 1234, ready);
 
             // Recibir con Go-Back-N
-            receiveGoBackN(clientSocket, serverAddress, 1234);
+            if (session != null) {
+                ReceiveStats stats;
+                try (PacketFile packets = PartialDownload.open(outputFile, session, partial)) {
+                    stats = session.getStreams() > 1
+                            ? Stripes.receive(serverAddress, session, packets, clientSocket.getSoTimeout())
+                            : GoBackNReceiver.receive(channel, serverAddress, 1234, session, packets);
+                    if (!stats.isComplete() && !stats.isCorrupt()) {
+                        PartialDownload.save(outputFile, session, packets.getReceived());
+                    }
+                }
+                if (stats.isCorrupt()) {
+                    // No tiene sentido reanudar sobre datos que no coinciden con el original
+                    PartialDownload.delete(outputFile);
+                } else if (stats.isComplete()) {
+                    reconstructFile(outputFile);
+                }
+            }
             
-            clientSocket.close();
+            channel.close();
             downloadComplete = true;
 
         } catch (Exception e) {
@@ -62,123 +106,29 @@ public class ClientWebView extends Application {
         }
     }
     
-    private static void receiveGoBackN(DatagramSocket socket, InetAddress serverAddress, 
-                                       int serverPort) throws IOException {
-        int expectedSeqNum = 0; // Número de secuencia esperado
-        int totalPackets = -1; // Total de paquetes (se lee del primer paquete)
-        byte[][] receivedPackets = null;
-        
-        byte[] receiveBuffer = new byte[7000]; // Buffer para recibir paquetes
-        
-        System.out.println("=== Iniciando recepción Go-Back-N ===\n");
-        long startTime = System.currentTimeMillis();
-        int packetsReceived = 0;
-        int duplicates = 0;
-        
-        while (expectedSeqNum < totalPackets || totalPackets == -1) {
-            DatagramPacket packet = new DatagramPacket(receiveBuffer, receiveBuffer.length);
-            
-            try {
-                socket.receive(packet);
-                packetsReceived++;
-                
-                // Extraer header
-                ByteBuffer buffer = ByteBuffer.wrap(packet.getData(), 0, packet.getLength());
-                int seqNum = buffer.getInt();
-                int total = buffer.getInt();
-                
-                // Inicializar array si es el primer paquete
-                if (totalPackets == -1) {
-                    totalPackets = total;
-                    receivedPackets = new byte[totalPackets][];
-                    System.out.println("Total de paquetes a recibir: " + totalPackets + "\n");
-                }
-                
-                // Extraer datos
-                int dataLength = packet.getLength() - HEADER_SIZE;
-                byte[] data = new byte[dataLength];
-                buffer.get(data);
-                
-                if (seqNum == expectedSeqNum) {
-                    // Paquete esperado: guardar y avanzar
-                    receivedPackets[seqNum] = data;
-                    expectedSeqNum++;
-                    
-                    // Enviar ACK acumulativo
-                    sendAck(socket, expectedSeqNum - 1, serverAddress, serverPort);
-                    
-                    // Mostrar progreso cada 50 paquetes
-                    if (expectedSeqNum % 50 == 0) {
-                        double progress = (expectedSeqNum * 100.0) / totalPackets;
-                        System.out.printf("Recibido: %.1f%% (%d/%d paquetes)\n", 
-                                        progress, expectedSeqNum, totalPackets);
-                    }
-                    
-                } else if (seqNum < expectedSeqNum) {
-                    // Paquete duplicado: reenviar ACK
-                    duplicates++;
-                    sendAck(socket, expectedSeqNum - 1, serverAddress, serverPort);
-                    
-                } else {
-                    // Paquete fuera de orden: descartar y reenviar último ACK
-                    sendAck(socket, expectedSeqNum - 1, serverAddress, serverPort);
-                }
-                
-            } catch (SocketTimeoutException e) {
-                System.out.println("⚠ Timeout esperando paquetes");
-                break;
-            }
-        }
-        
-        long endTime = System.currentTimeMillis();
-        double timeSeconds = (endTime - startTime) / 1000.0;
-        
-        // Reconstruir archivo
-        if (expectedSeqNum == totalPackets) {
-            reconstructFile(receivedPackets);
-            
-            System.out.println("\n=== Estadísticas de recepción ===");
-            System.out.println("✓ Archivo recibido completamente");
-            System.out.println("Tiempo total: " + String.format("%.2f", timeSeconds) + " segundos");
-            System.out.println("Paquetes recibidos: " + packetsReceived);
-            System.out.println("Duplicados: " + duplicates);
-        } else {
-            System.out.println("\n⚠ Recepción incompleta: " + expectedSeqNum + "/" + totalPackets);
-        }
-    }
-    
-    private static void sendAck(DatagramSocket socket, int ackNum, 
-                               InetAddress address, int port) throws IOException {
-        String ackMsg = "ACK:" + ackNum;
-        byte[] ackData = ackMsg.getBytes();
-        DatagramPacket ackPacket = new DatagramPacket(ackData, ackData.length, address, port);
-        socket.send(ackPacket);
-    }
-    
-    private static void reconstructFile(byte[][] packets) throws IOException {
+    private static File outputFile() {
         // Guardar en resources/song/
         File songDir = new File("src/main/resources/song");
         if (!songDir.exists()) {
             songDir.mkdirs();
         }
-        
-        File outputFile = new File(songDir, "cancion_recibida.mp3");
-        
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        for (byte[] packet : packets) {
-            if (packet != null) {
-                baos.write(packet);
-            }
-        }
-        
-        try (FileOutputStream fos = new FileOutputStream(outputFile)) {
-            baos.writeTo(fos);
-        }
-        baos.close();
+        return new File(songDir, "cancion_recibida.mp3");
+    }
+    
+    private static void reconstructFile(File outputFile) throws IOException {
+        // Los paquetes ya están en su posición dentro del .part: basta con renombrarlo
+        PartialDownload.complete(outputFile);
         
         songPath = outputFile.getAbsolutePath();
         System.out.println("\n✓ Archivo MP3 reconstruido: " + songPath);
-        System.out.println("Tamaño: " + (baos.size() / 1024) + " KB");
+        System.out.println("Tamaño: " + (outputFile.length() / 1024) + " KB");
+    }
+
+    private static void showTelemetry(String sample) {
+        WebView webView = view;
+        if (webView == null) return; // La interfaz aún no se ha creado
+        Platform.runLater(() -> webView.getEngine().executeScript(
+                "window.mostrarTelemetria && mostrarTelemetria(" + sample + ")"));
     }
 
     @Override
@@ -198,6 +148,7 @@ public class ClientWebView extends Application {
             String url = htmlFile.toURI().toString();
             System.out.println("Cargando interfaz web: " + url);
             webView.getEngine().load(url);
+            view = webView;
 
             // Configurar escena y ventana
             Scene scene = new Scene(webView, 1000, 700);
@@ -0,0 +1,37 @@
+package backend;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 del contenido de una canción, usado como identidad del archivo
+ * (una transferencia parcial solo se reanuda si el contenido no cambió).
+ */
+public final class ContentHash {
+    private ContentHash() {
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    public static String of(byte[][] packets) {
+        MessageDigest digest = newDigest();
+        for (byte[] p : packets) {
+            digest.update(p);
+        }
+        return toHex(digest.digest());
+    }
+
+    public static String toHex(byte[] hash) {
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,180 @@
+package backend;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Corrección de errores hacia adelante (FEC) con paridad XOR.
+ * Cada grupo de K paquetes de datos consecutivos lleva un paquete de paridad;
+ * si del grupo se pierde un solo paquete, el receptor lo reconstruye sin retransmisión.
+ *
+ * Paquete de paridad: [seq = PARITY_SEQ][grupo][k (2 bytes)][XOR de longitudes (2 bytes)][XOR de datos]
+ * Los datos más cortos del grupo (el último paquete del archivo) se rellenan con ceros.
+ */
+public class Fec {
+    public static final int PARITY_SEQ = -1; // Número de secuencia reservado para paridad
+    public static final int PARITY_HEADER = 4; // k + XOR de longitudes
+    public static final int MIN_K = 2;
+    public static final int MAX_K = 64;
+
+    /**
+     * Ajusta el K solicitado al rango soportado; 0 o negativo desactiva FEC.
+     */
+    public static int clampK(int k) {
+        if (k <= 0) return 0;
+        return Math.max(MIN_K, Math.min(MAX_K, k));
+    }
+
+    public static int groupOf(int seq, int k) {
+        return seq / k;
+    }
+
+    public static int groupStart(int group, int k) {
+        return group * k;
+    }
+
+    /** Fin (exclusivo) del grupo. */
+    public static int groupEnd(int group, int k, int totalPackets) {
+        return Math.min((group + 1) * k, totalPackets);
+    }
+
+    /** Indica si tras enviar {@code seq} corresponde enviar la paridad de su grupo. */
+    public static boolean closesGroup(int seq, int k, int totalPackets) {
+        return seq == groupEnd(groupOf(seq, k), k, totalPackets) - 1;
+    }
+
+    /**
+     * Calcula el payload de paridad (sin el header de 8 bytes) de un grupo.
+     */
+    public static byte[] parity(byte[][] packets, int group, int k) {
+        int start = groupStart(group, k);
+        int end = groupEnd(group, k, packets.length);
+
+        int maxLen = 0;
+        int lenXor = 0;
+        for (int i = start; i < end; i++) {
+            maxLen = Math.max(maxLen, packets[i].length);
+            lenXor ^= packets[i].length;
+        }
+
+        byte[] out = new byte[PARITY_HEADER + maxLen];
+        out[0] = (byte) (k >>> 8);
+        out[1] = (byte) k;
+        out[2] = (byte) (lenXor >>> 8);
+        out[3] = (byte) lenXor;
+        for (int i = start; i < end; i++) {
+            xorInto(out, PARITY_HEADER, packets[i], 0, packets[i].length);
+        }
+        return out;
+    }
+
+    /**
+     * Paridades de todos los grupos de la canción, calculadas una vez por transferencia.
+     */
+    public static byte[][] encode(byte[][] packets, int k) {
+        int groups = (packets.length + k - 1) / k;
+        byte[][] parities = new byte[groups][];
+        for (int g = 0; g < groups; g++) {
+            parities[g] = parity(packets, g, k);
+        }
+        return parities;
+    }
+
+    /**
+     * Intenta reconstruir el paquete faltante de un grupo a partir de su paridad.
+     *
+     * @param received paquetes recibidos hasta ahora (null = faltante)
+     * @param group    grupo al que pertenece la paridad
+     * @param parity   buffer posicionado al inicio del payload de paridad
+     * @return el número de secuencia reconstruido, o -1 si faltan 0 o más de 1 paquetes
+     */
+    public static int recover(byte[][] received, int group, ByteBuffer parity) {
+        int k = parity.getShort() & 0xFFFF;
+        int lenXor = parity.getShort() & 0xFFFF;
+        if (k < MIN_K) return -1;
+
+        int start = groupStart(group, k);
+        int end = groupEnd(group, k, received.length);
+        int missing = -1;
+        for (int i = start; i < end; i++) {
+            if (received[i] == null) {
+                if (missing != -1) return -1; // Más de una pérdida: XOR no alcanza
+                missing = i;
+            }
+        }
+        if (missing == -1) return -1;
+
+        byte[] acc = new byte[parity.remaining()];
+        parity.get(acc);
+        for (int i = start; i < end; i++) {
+            if (i != missing) {
+                lenXor ^= received[i].length;
+                xorInto(acc, 0, received[i], 0, received[i].length);
+            }
+        }
+        if (lenXor > acc.length) return -1; // Paridad corrupta o de otra transferencia
+
+        byte[] data = new byte[lenXor];
+        System.arraycopy(acc, 0, data, 0, lenXor);
+        received[missing] = data;
+        return missing;
+    }
+
+    /**
+     * Igual que {@link #recover(byte[][], int, ByteBuffer)}, pero con los paquetes en disco.
+     * La XOR se acumula sobre el propio buffer de la paridad y el paquete reconstruido se
+     * escribe en {@code store}, sin reservar memoria.
+     *
+     * @param scratch buffer de al menos un payload para leer los demás paquetes del grupo
+     */
+    public static int recover(PacketSink store, int group, ByteBuffer parity, ByteBuffer scratch) throws IOException {
+        int k = parity.getShort() & 0xFFFF;
+        int lenXor = parity.getShort() & 0xFFFF;
+        if (k < MIN_K) return -1;
+
+        int start = groupStart(group, k);
+        int end = groupEnd(group, k, store.getTotalPackets());
+        int missing = -1;
+        for (int i = start; i < end; i++) {
+            if (!store.has(i)) {
+                if (missing != -1) return -1; // Más de una pérdida: XOR no alcanza
+                missing = i;
+            }
+        }
+        if (missing == -1) return -1;
+
+        int accStart = parity.position();
+        int accLength = parity.remaining();
+        for (int i = start; i < end; i++) {
+            if (i != missing) {
+                int length = store.length(i);
+                if (length > accLength || length > scratch.capacity()) return -1;
+                lenXor ^= length;
+                scratch.clear();
+                store.read(i, scratch);
+                xorInto(parity, accStart, scratch, length);
+            }
+        }
+        if (lenXor > accLength) return -1; // Paridad corrupta o de otra transferencia
+
+        parity.limit(accStart + lenXor);
+        store.write(missing, parity);
+        return missing;
+    }
+
+    /** XOR de {@code len} bytes de {@code src} (desde 0) sobre {@code dst} (desde dstOff), de 8 en 8. */
+    private static void xorInto(ByteBuffer dst, int dstOff, ByteBuffer src, int len) {
+        int i = 0;
+        for (; i + Long.BYTES <= len; i += Long.BYTES) {
+            dst.putLong(dstOff + i, dst.getLong(dstOff + i) ^ src.getLong(i));
+        }
+        for (; i < len; i++) {
+            dst.put(dstOff + i, (byte) (dst.get(dstOff + i) ^ src.get(i)));
+        }
+    }
+
+    private static void xorInto(byte[] dst, int dstOff, byte[] src, int srcOff, int len) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] ^= src[srcOff + i];
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package backend;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Benchmark de la paridad XOR bajo pérdida aleatoria y en ráfagas.
+ * Simula una pasada de envío (datos + paridades) con los modelos de LossModel,
+ * reconstruye con Fec.recover tal como lo hace el receptor y estima cuántos
+ * timeouts de Go-Back-N quedan pendientes con y sin FEC.
+ *
+ * Uso: java backend.FecBenchmark [paquetes] [tamañoPayload]
+ */
+public class FecBenchmark {
+    private static final int WINDOW_SIZE = 10; // Mismos valores que Server
+    private static final int TIMEOUT = 500;
+    private static final int RUNS = 20;
+
+    public static void main(String[] args) {
+        int packets = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int payload = args.length > 1 ? Integer.parseInt(args[1]) : 6492;
+
+        byte[][] data = new byte[packets][];
+        Random random = new Random(42);
+        for (int i = 0; i < packets; i++) {
+            // El último paquete es más corto, como al fragmentar un MP3 real
+            data[i] = new byte[i == packets - 1 ? payload / 3 : payload];
+            random.nextBytes(data[i]);
+        }
+
+        System.out.println("=== Benchmark FEC (paridad XOR) ===");
+        System.out.println("Paquetes: " + packets + " x " + payload + " bytes | " + RUNS + " corridas por caso");
+        System.out.println("Costo estimado por timeout de Go-Back-N: " + TIMEOUT + " ms\n");
+        System.out.printf("%-36s %4s %9s %9s %10s %10s %9s%n",
+                "Pérdida", "K", "Overhead", "Perdidos", "Recuperad.", "Residual", "Timeouts");
+
+        int[] ks = {0, 4, 8, 16};
+        for (int scenario = 0; scenario < 5; scenario++) {
+            for (int k : ks) {
+                long lost = 0, recovered = 0, residual = 0, stalls = 0;
+                String description = null;
+                for (int run = 0; run < RUNS; run++) {
+                    LossModel loss = scenario(scenario, run);
+                    description = loss.describe();
+                    long[] r = simulate(data, k, loss);
+                    lost += r[0];
+                    recovered += r[1];
+                    residual += r[2];
+                    stalls += r[3];
+                }
+                double overhead = k == 0 ? 0 : 100.0 / k;
+                System.out.printf("%-36s %4s %8.1f%% %9.1f %10.1f %10.1f %9.1f%n",
+                        description, k == 0 ? "-" : String.valueOf(k), overhead,
+                        lost / (double) RUNS, recovered / (double) RUNS,
+                        residual / (double) RUNS, stalls / (double) RUNS);
+            }
+            System.out.println();
+        }
+
+        throughput(data, 8);
+    }
+
+    private static LossModel scenario(int scenario, long seed) {
+        switch (scenario) {
+            case 0: return LossModel.random(0.01, seed);
+            case 1: return LossModel.random(0.05, seed);
+            case 2: return LossModel.random(0.10, seed);
+            case 3: return LossModel.burst(0.01, 0.5, 0.0, 0.8, seed); // Ráfagas cortas
+            default: return LossModel.burst(0.005, 0.1, 0.0, 0.9, seed); // Ráfagas largas
+        }
+    }
+
+    /**
+     * Una pasada de transmisión.
+     * @return {perdidos, recuperados por FEC, perdidos sin recuperar, timeouts estimados}
+     */
+    private static long[] simulate(byte[][] data, int k, LossModel loss) {
+        int total = data.length;
+        byte[][] received = new byte[total][];
+        byte[][] parities = k > 0 ? Fec.encode(data, k) : null;
+        long lost = 0, recovered = 0;
+
+        for (int seq = 0; seq < total; seq++) {
+            if (loss.drop()) {
+                lost++;
+            } else {
+                received[seq] = data[seq];
+            }
+            if (k > 0 && Fec.closesGroup(seq, k, total)) {
+                int group = Fec.groupOf(seq, k);
+                if (!loss.drop()) {
+                    int rebuilt = Fec.recover(received, group, ByteBuffer.wrap(parities[group]));
+                    if (rebuilt >= 0) {
+                        if (!Arrays.equals(received[rebuilt], data[rebuilt])) {
+                            throw new IllegalStateException("Reconstrucción incorrecta del paquete " + rebuilt);
+                        }
+                        recovered++;
+                    }
+                }
+            }
+        }
+
+        // Cada hueco restante detiene la ventana hasta el timeout; los huecos que caen
+        // dentro de la misma ventana retransmitida se resuelven con ese mismo timeout
+        long residual = 0, stalls = 0;
+        int coveredUntil = -1;
+        for (int seq = 0; seq < total; seq++) {
+            if (received[seq] == null) {
+                residual++;
+                if (seq >= coveredUntil) {
+                    stalls++;
+                    coveredUntil = seq + WINDOW_SIZE;
+                }
+            }
+        }
+        return new long[] {lost, recovered, residual, stalls};
+    }
+
+    private static void throughput(byte[][] data, int k) {
+        long bytes = 0;
+        for (byte[] d : data) bytes += d.length;
+
+        // Calentamiento para que el JIT compile el XOR
+        for (int i = 0; i < 5; i++) Fec.encode(data, k);
+
+        long start = System.nanoTime();
+        int iterations = 20;
+        for (int i = 0; i < iterations; i++) Fec.encode(data, k);
+        double encodeSeconds = (System.nanoTime() - start) / 1e9;
+
+        byte[][] received = data.clone();
+        byte[][] parities = Fec.encode(data, k);
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (int g = 0; g < parities.length; g++) {
+                int victim = Fec.groupStart(g, k);
+                received[victim] = null;
+                Fec.recover(received, g, ByteBuffer.wrap(parities[g]));
+            }
+        }
+        double recoverSeconds = (System.nanoTime() - start) / 1e9;
+
+        double mb = bytes * iterations / (1024.0 * 1024.0);
+        System.out.printf("Codificación K=%d: %.0f MB/s | Reconstrucción (1 pérdida por grupo): %.0f MB/s%n",
+                k, mb / encodeSeconds, mb / recoverSeconds);
+    }
+}
@@ -0,0 +1,335 @@
+package backend;
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.MessageDigest;
+import java.util.zip.CRC32C;
+
+/**
+ * Lado receptor de Go-Back-N compartido por Client y ClientWebView.
+ * Con FEC activo también guarda los paquetes fuera de orden de los grupos
+ * pendientes para poder reconstruir una pérdida con el paquete de paridad.
+ *
+ * El bucle no reserva memoria por datagrama: se recibe en un ByteBuffer directo
+ * reutilizado y cada payload se escribe directamente en su posición del archivo.
+ *
+ * Cada datagrama se valida con su cabecera (ver PacketHeader): los de otra sesión o con CRC32C
+ * incorrecto se descartan antes de tocar el archivo. El SHA-256 del archivo completo se calcula
+ * sobre la marcha con el prefijo recibido en orden, así que al terminar la verificación ya está
+ * hecha sin releer la canción (solo se releen de disco los paquetes que no llegaron en orden).
+ */
+public class GoBackNReceiver {
+    public static final int HEADER_SIZE = PacketHeader.SIZE;
+
+    private GoBackNReceiver() {
+    }
+
+    /**
+     * Recibe la canción completa.
+     *
+     * El canal se conecta al servidor durante la recepción (así read() no crea una dirección
+     * por datagrama y se descarta el tráfico ajeno). Conectar vacía la cola de recepción, así que
+     * quien encadena varias transferencias puede dejarlo conectado desde antes del handshake.
+     * El timeout de inactividad es el SO_TIMEOUT configurado en {@code channel.socket()}.
+     *
+     * @param session parámetros acordados en el handshake (tamaño de datagrama, total, FEC)
+     * @param packets destino de los paquetes; al reanudar ya trae los de la descarga parcial
+     *                y solo se esperan los huecos
+     * @return las estadísticas de la recepción; isComplete() indica si llegaron todos los paquetes
+     */
+    public static ReceiveStats receive(DatagramChannel channel, InetAddress serverAddress, int serverPort,
+                                  Session session, PacketSink packets) throws IOException {
+        int totalPackets = session.getTotalPackets();
+        int expectedSeqNum = packets.firstMissing(0); // Número de secuencia esperado
+        int fecK = session.getFecK();
+        boolean fec = fecK > 0;
+
+        // Buffer del tamaño negociado: nada mayor puede llegar del servidor
+        ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(session.getDatagramSize());
+        // SHA-256 incremental del prefijo en orden (en vivo hay huecos: no hay archivo que verificar)
+        MessageDigest digest = !session.isLive() && !session.getSha256().isEmpty() ? ContentHash.newDigest() : null;
+        int hashed = 0; // Paquetes ya incluidos en el SHA-256
+        // Con FEC, los demás paquetes del grupo se releen de disco aquí para reconstruir
+        // (y para el SHA-256, los que se guardaron fuera de orden o venían de una descarga parcial)
+        ByteBuffer scratch = fec || digest != null ? ByteBuffer.allocateDirect(session.getPayloadSize()) : null;
+        CRC32C crc = new CRC32C();
+        int sessionId = session.getSessionId();
+
+        System.out.println("=== Iniciando recepción Go-Back-N ===\n");
+        if (fec) {
+            System.out.println("FEC: 1 paquete de paridad cada " + fecK + " de datos\n");
+        }
+        long startTime = System.nanoTime();
+        long bytes = 0;
+        int packetsReceived = 0;
+        int duplicates = 0;
+        int outOfOrder = 0;
+        int parityReceived = 0;
+        int recovered = 0;
+        int skipped = 0;
+        int rejected = 0;
+
+        // ACKs binarios retardados; el buffer del ACK se reutiliza en cada envío
+        AckPolicy ackPolicy = AckPolicy.fromSystemProperties();
+        ByteBuffer ackBuffer = ByteBuffer.allocateDirect(Ack.SIZE);
+        int acksSent = 0;
+        int idleTimeout = channel.socket().getSoTimeout(); // Timeout de inactividad configurado por el cliente
+
+        // Telemetría: tasas del intervalo desde la muestra anterior y nivel del buffer de reproducción,
+        // suponiendo que se empieza a reproducir con el primer paquete
+        Telemetry.Recorder telemetry = Telemetry.recorder("receptor", Integer.toHexString(sessionId));
+        double mediaSeconds = session.getDurationMillis() / 1000.0;
+        long playStart = -1;
+        long sampledBytes = 0;
+        int sampledPackets = 0;
+        int sampledDuplicates = 0;
+        int sampledOutOfOrder = 0;
+
+        System.out.println("Total de paquetes a recibir: " + totalPackets + "\n");
+
+        boolean wasConnected = channel.isConnected();
+        if (!wasConnected) {
+            channel.connect(new InetSocketAddress(serverAddress, serverPort));
+        }
+        channel.configureBlocking(false);
+        Selector selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+
+        try {
+            if (digest != null) {
+                hashed = hashPrefix(digest, packets, hashed, expectedSeqNum, scratch);
+            }
+            long idleSince = System.nanoTime();
+            while (expectedSeqNum < totalPackets) {
+                if (telemetry.isEnabled()) {
+                    long now = System.nanoTime();
+                    if (telemetry.due(now)) {
+                        double interval = telemetry.interval(now);
+                        int received = Math.max(1, packetsReceived - sampledPackets);
+                        telemetry.set(Telemetry.Metric.GOODPUT_KBPS, (bytes - sampledBytes) * 8 / interval / 1000)
+                                .set(Telemetry.Metric.DUPLICATES, (duplicates - sampledDuplicates) / (double) received)
+                                .set(Telemetry.Metric.OUT_OF_ORDER, (outOfOrder - sampledOutOfOrder) / (double) received)
+                                .set(Telemetry.Metric.PROGRESS, expectedSeqNum / (double) totalPackets)
+                                .set(Telemetry.Metric.BUFFER_S, mediaSeconds > 0 && playStart >= 0
+                                        ? mediaSeconds * expectedSeqNum / totalPackets - (now - playStart) / 1e9
+                                        : Double.NaN)
+                                .emit(now);
+                        sampledBytes = bytes;
+                        sampledPackets = packetsReceived;
+                        sampledDuplicates = duplicates;
+                        sampledOutOfOrder = outOfOrder;
+                    }
+                }
+                receiveBuffer.clear();
+                if (!read(channel, receiveBuffer)) {
+                    // Nada pendiente: mientras haya un ACK pendiente solo esperamos hasta su vencimiento
+                    int timeout = ackPolicy.pending() ? ackPolicy.millisUntilDue() : idleTimeout;
+                    if (telemetry.isEnabled()) {
+                        // ...y tampoco más allá de la siguiente muestra
+                        int untilSample = (int) Math.max(1, telemetry.nanosUntilDue(System.nanoTime()) / 1_000_000);
+                        timeout = timeout > 0 ? Math.min(timeout, untilSample) : untilSample;
+                    }
+                    if (selector.select(timeout) > 0) {
+                        selector.selectedKeys().clear();
+                        continue;
+                    }
+                    if (ackPolicy.pending()) {
+                        sendAck(channel, ackBuffer, sessionId, expectedSeqNum - 1);
+                        acksSent++;
+                        ackPolicy.sent();
+                        continue;
+                    }
+                    if (idleTimeout > 0 && System.nanoTime() - idleSince >= idleTimeout * 1_000_000L) {
+                        System.out.println("⚠ Timeout esperando paquetes");
+                        break;
+                    }
+                    continue; // Despertar espurio del selector
+                }
+                idleSince = System.nanoTime();
+                receiveBuffer.flip();
+                if (!PacketHeader.verify(receiveBuffer, crc, sessionId)) {
+                    // Sondas o mensajes de control tardíos, rezagados de otra sesión o datagramas dañados
+                    if (receiveBuffer.limit() >= HEADER_SIZE && receiveBuffer.get(0) == PacketHeader.VERSION) {
+                        rejected++;
+                    }
+                    continue;
+                }
+                packetsReceived++;
+                if (playStart < 0 && telemetry.isEnabled()) {
+                    playStart = System.nanoTime();
+                }
+
+                // Extraer header
+                int seqNum = PacketHeader.seq(receiveBuffer);
+                int total = PacketHeader.total(receiveBuffer);
+                boolean ackNow = false;
+
+                if (seqNum == Fec.PARITY_SEQ) {
+                    // Paquete de paridad: el segundo entero es el número de grupo
+                    parityReceived++;
+                    if (fec) {
+                        int rebuilt = Fec.recover(packets, total, receiveBuffer, scratch);
+                        if (rebuilt >= 0) {
+                            recovered++;
+                            bytes += packets.length(rebuilt);
+                        }
+                        if (rebuilt == expectedSeqNum) {
+                            // El hueco que frenaba la ventana se llenó sin retransmisión
+                            expectedSeqNum = packets.firstMissing(expectedSeqNum);
+                            ackNow = ackPolicy.onInOrder(true, expectedSeqNum == totalPackets);
+                        }
+                    }
+                } else if (seqNum == LiveSchedule.SKIP_SEQ) {
+                    // En vivo: el servidor abandonó todo lo anterior a la nueva base (plazo vencido)
+                    if (!session.isLive() || total <= expectedSeqNum || total > totalPackets) continue;
+                    for (int s = expectedSeqNum; s < total; s++) {
+                        if (!packets.has(s)) {
+                            packets.skip(s);
+                            skipped++;
+                        }
+                    }
+                    expectedSeqNum = packets.firstMissing(total);
+                    ackNow = ackPolicy.onInOrder(true, expectedSeqNum == totalPackets);
+
+                } else if (seqNum < 0 || seqNum >= totalPackets || total != totalPackets) {
+                    continue; // Sondas PROBE tardías u otros datagramas que no son de esta transferencia
+
+                } else if (seqNum == expectedSeqNum) {
+                    // Paquete esperado: guardar y avanzar (con FEC pueden seguir otros ya guardados)
+                    boolean filledGap = ackPolicy.isGapReported();
+                    bytes += receiveBuffer.remaining();
+                    if (digest != null && seqNum == hashed) {
+                        // Caso normal: se resume directamente del buffer, sin releer de disco
+                        digest.update(receiveBuffer);
+                        receiveBuffer.position(HEADER_SIZE);
+                        hashed++;
+                    }
+                    packets.write(seqNum, receiveBuffer);
+                    expectedSeqNum = packets.firstMissing(expectedSeqNum);
+
+                    // ACK acumulativo según la política de ACK retardado
+                    ackNow = ackPolicy.onInOrder(filledGap, expectedSeqNum == totalPackets);
+
+                    // Mostrar progreso cada 50 paquetes
+                    if (expectedSeqNum % 50 == 0) {
+                        double progress = (expectedSeqNum * 100.0) / totalPackets;
+                        System.out.printf("Recibido: %.1f%% (%d/%d paquetes)\n",
+                                        progress, expectedSeqNum, totalPackets);
+                    }
+
+                } else if (seqNum < expectedSeqNum) {
+                    // Paquete duplicado: el ACK sale a más tardar al vencer el retardo
+                    duplicates++;
+                    ackPolicy.onDuplicate();
+
+                } else {
+                    // Paquete fuera de orden: sin FEC se descarta; con FEC se guarda
+                    // por si la paridad de su grupo permite reconstruir el hueco
+                    outOfOrder++;
+                    if (fec && !packets.has(seqNum)) {
+                        bytes += receiveBuffer.remaining();
+                        packets.write(seqNum, receiveBuffer);
+                    }
+                    // Un ACK inmediato por hueco avisa al emisor sin inundar el camino de vuelta
+                    ackNow = ackPolicy.onGap();
+                }
+
+                if (digest != null && hashed < expectedSeqNum) {
+                    hashed = hashPrefix(digest, packets, hashed, expectedSeqNum, scratch);
+                }
+                if (ackNow || ackPolicy.due()) {
+                    sendAck(channel, ackBuffer, sessionId, expectedSeqNum - 1);
+                    acksSent++;
+                    ackPolicy.sent();
+                }
+            }
+
+            if (expectedSeqNum == totalPackets) {
+                // El último ACK se repite: si se pierde, el emisor reintentaría hasta rendirse
+                for (int i = 0; i < 2; i++) {
+                    sendAck(channel, ackBuffer, sessionId, expectedSeqNum - 1);
+                    acksSent++;
+                }
+            }
+        } finally {
+            selector.close();
+            channel.configureBlocking(true);
+            if (!wasConnected) {
+                channel.disconnect();
+            }
+        }
+
+        double timeSeconds = (System.nanoTime() - startTime) / 1e9;
+        boolean complete = expectedSeqNum == totalPackets;
+        boolean corrupt = complete && digest != null
+                && !ContentHash.toHex(digest.digest()).equals(session.getSha256());
+        ReceiveStats stats = new ReceiveStats(complete && !corrupt, corrupt, timeSeconds, bytes, packetsReceived,
+                duplicates, outOfOrder, recovered, acksSent, skipped, rejected);
+
+        if (corrupt) {
+            System.out.println("\n✗ El SHA-256 del archivo recibido no coincide con el anunciado: se descarta");
+            return stats;
+        }
+        if (!complete) {
+            System.out.println("\n⚠ Recepción incompleta: " + expectedSeqNum + "/" + totalPackets);
+            return stats;
+        }
+
+        System.out.println("\n=== Estadísticas de recepción ===");
+        System.out.println("✓ Archivo recibido completamente"
+                + (digest != null ? " (SHA-256 verificado)" : ""));
+        System.out.println("Tiempo total: " + String.format("%.2f", timeSeconds) + " segundos");
+        System.out.println("Paquetes recibidos: " + packetsReceived);
+        System.out.println("Duplicados: " + duplicates);
+        System.out.println("Fuera de orden: " + outOfOrder);
+        System.out.println("ACKs enviados: " + acksSent + String.format(" (%.2f por paquete)",
+                acksSent / (double) Math.max(1, packetsReceived)));
+        if (fec) {
+            System.out.println("Paridades recibidas: " + parityReceived);
+            System.out.println("Recuperados por FEC: " + recovered);
+        }
+        if (session.isLive()) {
+            System.out.println("Saltados por plazo vencido: " + skipped);
+        }
+        if (rejected > 0) {
+            System.out.println("Descartados (otra sesión o CRC incorrecto): " + rejected);
+        }
+        return stats;
+    }
+
+    /**
+     * Lee un datagrama si hay alguno pendiente.
+     * @return false si no había nada que leer
+     */
+    private static boolean read(DatagramChannel channel, ByteBuffer buffer) throws IOException {
+        try {
+            return channel.read(buffer) > 0;
+        } catch (PortUnreachableException e) {
+            // ICMP de un envío anterior (servidor aún no listo o reiniciado): seguimos esperando
+            return false;
+        }
+    }
+
+    /**
+     * Añade al SHA-256 los paquetes [from, to), releyéndolos del destino.
+     * @return to
+     */
+    private static int hashPrefix(MessageDigest digest, PacketSink packets, int from, int to,
+                                  ByteBuffer scratch) throws IOException {
+        for (int seq = from; seq < to; seq++) {
+            scratch.clear();
+            packets.read(seq, scratch);
+            scratch.flip();
+            digest.update(scratch);
+        }
+        return to;
+    }
+
+    private static void sendAck(DatagramChannel channel, ByteBuffer ackBuffer, int session, int ackNum) throws IOException {
+        Ack.encode(ackBuffer, session, ackNum);
+        channel.write(ackBuffer);
+    }
+}
@@ -0,0 +1,455 @@
+package backend;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+
+/**
+ * Lado emisor de Go-Back-N (ver Server.goBackN).
+ *
+ * Los datagramas salen espaciados por Pacer en lugar de en ráfaga, los ACKs se reciben en otro
+ * hilo (AckReader) y cada paquete enviado tiene su propio plazo de retransmisión en una
+ * TimerWheel, calculado con el RTT medido (RttEstimator). Al vencer el plazo de un paquete
+ * aún sin confirmar se retransmite desde la base de la ventana, como en Go-Back-N clásico.
+ *
+ * El RTT y el ancho de banda medidos se recuerdan por cliente (como el caché de métricas por
+ * destino de TCP): una transferencia corta, como un segmento del streaming adaptativo, no
+ * empieza a ciegas con una ráfaga y un RTO que no corresponden al enlace.
+ *
+ * Cada datagrama (cabecera, CRC y payload) se arma una sola vez, la primera vez que se envía,
+ * y se guarda: una retransmisión solo vuelve a pasar por el socket, así que una tormenta de
+ * retransmisiones cuesta lo mismo que el primer envío. Los datagramas salen en lotes: en cada
+ * turno del Pacer se envía seguido lo que corresponde a ~1 ms al ritmo actual (como los
+ * superpaquetes GSO de Linux), y el hilo se duerme una vez por lote en lugar de por datagrama.
+ */
+public class GoBackNSender implements TimerWheel.Expired {
+    // Tamaño de la ventana Go-Back-N y timeout en ms antes de la primera medición de RTT
+    // (-Dmp3.window y -Dmp3.timeout; ArqBenchmark mide su efecto con distintas redes)
+    public static final int WINDOW_SIZE = Math.max(1, Integer.getInteger("mp3.window", 10));
+    public static final int TIMEOUT = Math.max(1, Integer.getInteger("mp3.timeout", 500));
+    private static final int MIN_RTO = 100; // ms; por encima del retardo de los ACKs retardados
+    private static final int MAX_RTO_FACTOR = 4; // En un enlace lento la ventana tarda en vaciarse
+    private static final int HEADER_SIZE = PacketHeader.SIZE;
+    private static final int MAX_TIMEOUTS = 20; // Timeouts seguidos antes de abandonar al cliente
+    private static final long TICK = 1_000_000L; // Resolución de la rueda de temporizadores (1 ms)
+    private static final int SLOTS = 1024;
+    private static final int MAX_PATHS = 256; // Clientes recordados
+    private static final long BATCH_NANOS = 1_000_000L; // Datos de un lote: ~1 ms al ritmo de envío
+    public static final int MAX_BATCH = Math.max(1, Integer.getInteger("mp3.batch", 16)); // Datagramas por lote
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /** Última medición del camino hacia un cliente. */
+    private static class PathMetrics {
+        final long srtt;
+        final long rttvar;
+        final double bandwidth;
+
+        PathMetrics(long srtt, long rttvar, double bandwidth) {
+            this.srtt = srtt;
+            this.rttvar = rttvar;
+            this.bandwidth = bandwidth;
+        }
+    }
+
+    private static final Map<InetSocketAddress, PathMetrics> PATHS = Collections.synchronizedMap(
+            new LinkedHashMap<InetSocketAddress, PathMetrics>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<InetSocketAddress, PathMetrics> eldest) {
+                    return size() > MAX_PATHS;
+                }
+            });
+
+    private final DatagramSocket socket;
+    private final byte[][] paquetes;
+    private final byte[][] paridades;
+    private final int sessionId;
+    private final int fecK;
+    private final int[] order; // Números de secuencia a enviar, en orden
+    private final LiveSchedule live;
+    private final byte[] accept;
+    private final InetAddress clientAddress;
+    private final int clientPort;
+    private final ByteBuffer out; // Datagrama en construcción, reutilizado en cada envío
+    private final DatagramPacket packet;
+    private final CRC32C crc = new CRC32C();
+    private byte[][] datagrams; // Datagrama ya armado de cada paquete (null = aún no enviado)
+    private byte[][] parityDatagrams;
+
+    // Por posición en order: cuándo se envió, y cuánto se había entregado entonces
+    private final long[] sentAt;
+    private final long[] deliveredAtSend;
+    private final long[] deliveredTimeAtSend;
+    private final boolean[] sent;
+    private final boolean[] retransmitted;
+
+    private int base = 0; // Base de la ventana (posición en order)
+    private int next = 0; // Siguiente posición a enviar
+    private long delivered = 0; // Bytes confirmados
+    private long deliveredTime;
+    private boolean timedOut = false;
+    private int windowSize = WINDOW_SIZE;
+    private int initialTimeout = TIMEOUT;
+    private int maxBatch = MAX_BATCH;
+
+    // Coste del envío (ver SendBenchmark)
+    private int sends = 0; // Llamadas a send(): una por datagrama, cada una una llamada al sistema
+    private int encoded = 0; // Datagramas armados (cabecera y CRC32C)
+    private int wakeups = 0; // Veces que el hilo se durmió
+    private long bytesSent = 0;
+    private long cpuNanos = 0;
+
+    GoBackNSender(DatagramSocket socket, Session session, byte[][] paquetes, byte[][] paridades, int[] pendientes,
+                  LiveSchedule live, byte[] accept, InetAddress clientAddress, int clientPort) {
+        this.socket = socket;
+        this.paquetes = paquetes;
+        this.paridades = paridades;
+        this.sessionId = session.getSessionId();
+        this.fecK = session.getFecK();
+        this.order = pendientes != null ? pendientes : allPackets(paquetes.length);
+        this.live = live;
+        this.accept = accept;
+        this.clientAddress = clientAddress;
+        this.clientPort = clientPort;
+        this.out = ByteBuffer.allocate(HEADER_SIZE + Math.max(maxLength(paquetes), maxLength(paridades)));
+        this.packet = new DatagramPacket(out.array(), 0, clientAddress, clientPort);
+        this.sentAt = new long[order.length];
+        this.deliveredAtSend = new long[order.length];
+        this.deliveredTimeAtSend = new long[order.length];
+        this.sent = new boolean[order.length];
+        this.retransmitted = new boolean[order.length];
+        this.datagrams = new byte[paquetes.length][];
+        this.parityDatagrams = paridades != null ? new byte[paridades.length][] : null;
+    }
+
+    /** Ventana y timeout inicial distintos de los configurados (para los barridos de ArqBenchmark). */
+    GoBackNSender tuning(int windowSize, int timeoutMs) {
+        this.windowSize = Math.max(1, windowSize);
+        this.initialTimeout = Math.max(1, timeoutMs);
+        return this;
+    }
+
+    /**
+     * Camino de envío de antes, para comparar (SendBenchmark): lotes de a lo sumo {@code maxBatch}
+     * datagramas y, sin {@code templates}, cada envío y reenvío se arma de nuevo.
+     */
+    GoBackNSender sendPath(int maxBatch, boolean templates) {
+        this.maxBatch = Math.max(1, maxBatch);
+        if (!templates) {
+            datagrams = null;
+            parityDatagrams = null;
+        }
+        return this;
+    }
+
+    int getSends() {
+        return sends;
+    }
+
+    int getEncoded() {
+        return encoded;
+    }
+
+    int getWakeups() {
+        return wakeups;
+    }
+
+    long getBytesSent() {
+        return bytesSent;
+    }
+
+    /** Tiempo de CPU del hilo emisor durante run() (sin el lector de ACKs). */
+    long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    void run() throws IOException {
+        long cpuStart = THREADS.getCurrentThreadCpuTime();
+        int totalPackets = paquetes.length;
+        int toSend = order.length;
+        int timeout = live != null ? live.retransmitTimeout(initialTimeout) : initialTimeout;
+        // En vivo el plazo de reproducción manda: el RTO no pasa del timeout del calendario
+        RttEstimator rtt = new RttEstimator(Math.min(MIN_RTO, timeout) * 1_000_000L,
+                (live != null ? timeout : MAX_RTO_FACTOR * timeout) * 1_000_000L, timeout * 1_000_000L);
+        InetSocketAddress client = new InetSocketAddress(clientAddress, clientPort);
+        PathMetrics path = PATHS.get(client);
+        Pacer pacer = new Pacer(path != null ? path.bandwidth : Pacer.configuredBandwidth());
+        if (path != null && path.srtt > 0) {
+            rtt.seed(path.srtt, path.rttvar);
+        }
+
+        System.out.println("\n=== Iniciando transmisión Go-Back-N ===");
+        System.out.println("Total de paquetes: " + totalPackets + (toSend < totalPackets ? " (a enviar: " + toSend + ")" : ""));
+        System.out.println("Ventana: " + windowSize + " | Timeout: " + timeout + "ms (inicial; se ajusta al RTT)");
+        System.out.println("Ritmo inicial: " + String.format("%.1f Mbit/s", pacer.getRate() / 1e6)
+                + (path != null ? " (medido en la transferencia anterior)" : ""));
+        if (live != null) {
+            System.out.println("En vivo: los paquetes que vencen su plazo se saltan");
+        }
+        System.out.println(fecK > 0 ? "FEC: 1 paridad XOR cada " + fecK + " paquetes\n" : "FEC: desactivado\n");
+
+        long startTime = System.nanoTime();
+        deliveredTime = startTime;
+        TimerWheel timers = new TimerWheel(TICK, SLOTS, startTime);
+        int totalSent = 0;
+        int retransmissions = 0;
+        int paritySent = 0;
+        int consecutiveTimeouts = 0;
+        int skipped = 0;
+        long skippedMillis = 0;
+        int lastAck = Integer.MIN_VALUE;
+        // Telemetría: tasas del intervalo desde la muestra anterior
+        Telemetry.Recorder telemetry = Telemetry.recorder("emisor", Integer.toHexString(sessionId));
+        int resent = 0; // Envíos de paquetes que ya se habían enviado
+        long sampledDelivered = 0;
+        int sampledSent = 0;
+        int sampledResent = 0;
+        if (live != null) {
+            live.start();
+        }
+
+        AckReader acks = new AckReader(socket, accept, clientAddress, clientPort, sessionId,
+                toSend > 0 ? order[toSend - 1] : Integer.MIN_VALUE, Thread.currentThread());
+        acks.start();
+        try {
+            while (base < toSend) {
+                acks.check();
+                long now = System.nanoTime();
+
+                // ACKs publicados por el otro hilo (binarios y acumulativos)
+                int ackNum = acks.highestAck();
+                if (ackNum != lastAck) {
+                    lastAck = ackNum;
+                    consecutiveTimeouts = 0;
+                    int previousBase = base;
+                    while (base < toSend && order[base] <= ackNum) {
+                        delivered += paquetes[order[base]].length;
+                        base++;
+                    }
+                    if (base != previousBase) {
+                        rtt.onProgress();
+                        long ackAt = acks.ackNanos();
+                        int newest = base - 1;
+                        if (!retransmitted[newest]) {
+                            rtt.sample(ackAt - sentAt[newest]); // Karn: solo paquetes enviados una vez
+                        }
+                        pacer.onDelivery(delivered - deliveredAtSend[newest], ackAt - deliveredTimeAtSend[newest], live != null);
+                        deliveredTime = ackAt;
+
+                        // Mostrar progreso cada 50 paquetes confirmados
+                        if (base / 50 != previousBase / 50 || base == toSend) {
+                            double progress = (base * 100.0) / toSend;
+                            System.out.printf("Progreso: %.1f%% (%d/%d paquetes confirmados)\n",
+                                    progress, base, toSend);
+                        }
+                        if (base == toSend) break;
+                    }
+                }
+
+                // Plazos de retransmisión vencidos
+                timedOut = false;
+                timers.expire(now, this);
+                if (timedOut) {
+                    if (live != null) {
+                        // Lo que ya venció no se retransmite: se salta y se avisa al cliente
+                        int from = base;
+                        while (base < toSend && live.expired(order[base], now)) {
+                            base++;
+                        }
+                        if (base > from) {
+                            skipped += base - from;
+                            skippedMillis += live.mediaMillis(order[from], order[base - 1] + 1);
+                            int newBase = base < toSend ? order[base] : totalPackets;
+                            for (int i = 0; i < (base < toSend ? 1 : 3); i++) {
+                                sendPacket(new byte[0], LiveSchedule.SKIP_SEQ, newBase);
+                            }
+                            System.out.println("⏭ Plazo vencido: saltando paquetes " + order[from] + "-" + (newBase - 1));
+                            next = Math.max(next, base);
+                            if (base == toSend) break;
+                        }
+                    }
+                    // Timeout: retransmitir toda la ventana, más despacio
+                    System.out.println("⚠ TIMEOUT! Retransmitiendo desde paquete " + order[base]);
+                    retransmissions++;
+                    next = base; // Volver a enviar desde base
+                    rtt.backoff();
+                    pacer.onLoss();
+                    if (++consecutiveTimeouts >= MAX_TIMEOUTS) {
+                        throw new IOException("El cliente dejó de responder en el paquete " + order[base]);
+                    }
+                }
+
+                // Enviar paquetes dentro de la ventana, un lote por turno del Pacer
+                long wakeAt = timers.nextDeadlineNanos();
+                while (next < base + windowSize && next < toSend) {
+                    long pace = pacer.untilNextSend(now);
+                    if (pace > 0) {
+                        wakeAt = Math.min(wakeAt, now + pace);
+                        break;
+                    }
+                    int end = Math.min(Math.min(base + windowSize, toSend), next + batchSize(pacer));
+                    int batchBytes = 0;
+                    while (next < end) {
+                        int seqNum = order[next];
+                        if (live != null) {
+                            long wait = live.untilAvailable(seqNum, now);
+                            if (wait > 0) {
+                                wakeAt = Math.min(wakeAt, now + wait); // Aún no "emitido"
+                                break;
+                            }
+                        }
+                        batchBytes += send(datagrams, seqNum, paquetes[seqNum], seqNum, totalPackets);
+                        totalSent++;
+                        if (sent[next]) resent++;
+                        retransmitted[next] = sent[next];
+                        sent[next] = true;
+                        sentAt[next] = now;
+                        deliveredAtSend[next] = delivered;
+                        deliveredTimeAtSend[next] = deliveredTime;
+                        timers.schedule(next, now, now + rtt.getRtoNanos());
+
+                        // Al cerrar un grupo FEC (su último paquete pendiente) enviamos su paridad justo detrás
+                        if (fecK > 0 && closesGroup(order, next, fecK)) {
+                            int group = Fec.groupOf(seqNum, fecK);
+                            batchBytes += send(parityDatagrams, group, paridades[group], Fec.PARITY_SEQ, group);
+                            paritySent++;
+                        }
+                        next++;
+                    }
+                    if (batchBytes == 0) break; // En vivo: el siguiente aún no está disponible
+                    pacer.onSend(batchBytes, now);
+                    now = System.nanoTime();
+                }
+
+                if (telemetry.due(now)) {
+                    double interval = telemetry.interval(now);
+                    telemetry.set(Telemetry.Metric.GOODPUT_KBPS, (delivered - sampledDelivered) * 8 / interval / 1000)
+                            .set(Telemetry.Metric.WINDOW, windowSize)
+                            .set(Telemetry.Metric.IN_FLIGHT, next - base)
+                            .set(Telemetry.Metric.SRTT_MS, rtt.getSrttNanos() < 0 ? Double.NaN : rtt.getSrttNanos() / 1e6)
+                            .set(Telemetry.Metric.RTO_MS, rtt.getRtoNanos() / 1e6)
+                            .set(Telemetry.Metric.PACING_KBPS, pacer.getRate() / 1000)
+                            .set(Telemetry.Metric.LOSS, totalSent > sampledSent
+                                    ? (resent - sampledResent) / (double) (totalSent - sampledSent) : 0)
+                            .set(Telemetry.Metric.PROGRESS, base / (double) toSend)
+                            .emit(now);
+                    sampledDelivered = delivered;
+                    sampledSent = totalSent;
+                    sampledResent = resent;
+                }
+
+                // Dormir hasta el siguiente envío, plazo, muestra o ACK (el lector de ACKs nos despierta)
+                long sleep = Math.min(Math.min(wakeAt - now, timeout * 1_000_000L), telemetry.nanosUntilDue(now));
+                if (sleep > 0 && acks.highestAck() == lastAck) {
+                    wakeups++;
+                    LockSupport.parkNanos(this, sleep);
+                }
+            }
+        } finally {
+            acks.stop();
+        }
+
+        double timeSeconds = (System.nanoTime() - startTime) / 1e9;
+        cpuNanos = THREADS.getCurrentThreadCpuTime() - cpuStart;
+        PATHS.put(client, new PathMetrics(rtt.getSrttNanos(), rtt.getRttvarNanos(), pacer.getBandwidth()));
+
+        System.out.println("\n=== Estadísticas de transmisión ===");
+        System.out.println("Tiempo total: " + String.format("%.2f", timeSeconds) + " segundos");
+        System.out.println("Paquetes enviados: " + totalSent);
+        System.out.println("Retransmisiones: " + retransmissions);
+        System.out.println("ACKs recibidos: " + acks.getAcksReceived());
+        double megabytes = Math.max(1, bytesSent) / 1e6;
+        System.out.println("Envíos al socket: " + sends + String.format(" (%.0f por MB)", sends / megabytes)
+                + " | armados: " + encoded + " | despertares: " + wakeups
+                + String.format(" (%.0f por MB)", wakeups / megabytes)
+                + String.format(" | CPU: %.1f ms/MB", cpuNanos / 1e6 / megabytes));
+        System.out.println("Ritmo final: " + String.format("%.1f Mbit/s", pacer.getRate() / 1e6)
+                + " | RTT suavizado: " + (rtt.getSrttNanos() < 0 ? "-" : String.format("%.2f ms", rtt.getSrttNanos() / 1e6))
+                + " | RTO: " + (rtt.getRtoNanos() / 1_000_000L) + " ms");
+        if (fecK > 0) {
+            System.out.println("Paridades enviadas: " + paritySent);
+        }
+        if (live != null) {
+            System.out.println("Saltados por plazo vencido: " + skipped + " (" + skippedMillis + " ms de audio)");
+        }
+        System.out.println("Eficiencia: " + String.format("%.2f", (toSend * 100.0) / Math.max(1, totalSent)) + "%");
+    }
+
+    /** Plazo de un paquete: solo cuenta si sigue sin confirmar y no se ha reenviado desde entonces. */
+    @Override
+    public void onExpired(int position, long stamp) {
+        if (position >= base && position < next && sentAt[position] == stamp) {
+            timedOut = true;
+        }
+    }
+
+    /** El paquete en la posición {@code i} es el último de su grupo FEC dentro de la lista a enviar. */
+    private static boolean closesGroup(int[] order, int i, int fecK) {
+        return i + 1 == order.length || Fec.groupOf(order[i + 1], fecK) != Fec.groupOf(order[i], fecK);
+    }
+
+    private static int[] allPackets(int totalPackets) {
+        int[] order = new int[totalPackets];
+        for (int i = 0; i < totalPackets; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+
+    private static int maxLength(byte[][] packets) {
+        int max = 0;
+        if (packets != null) {
+            for (byte[] p : packets) {
+                max = Math.max(max, p.length);
+            }
+        }
+        return max;
+    }
+
+    /** Datagramas por lote: los que salen en BATCH_NANOS al ritmo actual, al menos uno. */
+    private int batchSize(Pacer pacer) {
+        long bytes = (long) (pacer.getRate() / 8 * BATCH_NANOS / 1e9);
+        return (int) Math.max(1, Math.min(maxBatch, bytes / (HEADER_SIZE + paquetes[0].length)));
+    }
+
+    /**
+     * Envía el datagrama {@code index} de {@code templates}, armándolo solo la primera vez
+     * (sin plantillas se arma en el buffer compartido en cada envío).
+     * @return bytes enviados
+     */
+    private int send(byte[][] templates, int index, byte[] data, int seqNum, int totalPackets) throws IOException {
+        byte[] datagram = templates != null ? templates[index] : null;
+        if (datagram == null) {
+            ByteBuffer buffer = templates != null ? ByteBuffer.allocate(HEADER_SIZE + data.length) : out;
+            PacketHeader.encode(buffer, crc, sessionId, seqNum, totalPackets, data);
+            encoded++;
+            if (templates == null) {
+                return send(out.array(), out.limit());
+            }
+            datagram = buffer.array();
+            templates[index] = datagram;
+        }
+        return send(datagram, datagram.length);
+    }
+
+    private void sendPacket(byte[] data, int seqNum, int totalPackets) throws IOException {
+        // Cabecera con sesión y CRC32C (ver PacketHeader); en la paridad seq es Fec.PARITY_SEQ
+        // y total el grupo, en el SKIP seq es LiveSchedule.SKIP_SEQ y total la nueva base
+        PacketHeader.encode(out, crc, sessionId, seqNum, totalPackets, data);
+        encoded++;
+        send(out.array(), out.limit());
+    }
+
+    private int send(byte[] datagram, int length) throws IOException {
+        packet.setData(datagram, 0, length);
+        socket.send(packet);
+        sends++;
+        bytesSent += length;
+        return length;
+    }
+}
@@ -0,0 +1,105 @@
+package backend;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Mensaje de control en texto: COMANDO|argumento|clave=valor|clave=valor...
+ * Ejemplos: "READY", "READY|cancion", "ERROR|Pista no encontrada".
+ * Un "READY" sin argumento solicita la pista por defecto.
+ */
+public class Handshake {
+    public static final String READY = "READY";
+    public static final String ERROR = "ERROR";
+
+    private final String command;
+    private final String argument;
+    private final Map<String, String> options = new LinkedHashMap<>();
+
+    public Handshake(String command, String argument) {
+        this.command = command;
+        this.argument = argument;
+    }
+
+    public static Handshake ready(String trackId) {
+        return new Handshake(READY, trackId);
+    }
+
+    public static Handshake error(String reason) {
+        return new Handshake(ERROR, reason);
+    }
+
+    public static Handshake parse(byte[] data, int length) {
+        return parse(new String(data, 0, length, StandardCharsets.UTF_8).trim());
+    }
+
+    public static Handshake parse(String message) {
+        String[] parts = message.split("\\|");
+        String argument = parts.length > 1 && !parts[1].contains("=") ? parts[1] : null;
+        Handshake h = new Handshake(parts[0], argument);
+        for (int i = argument == null ? 1 : 2; i < parts.length; i++) {
+            int eq = parts[i].indexOf('=');
+            if (eq > 0) {
+                h.options.put(parts[i].substring(0, eq), parts[i].substring(eq + 1));
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Indica si un datagrama recibido es un mensaje de control con el comando dado
+     * (los paquetes de datos comienzan con un número de secuencia binario).
+     */
+    public static boolean startsWith(byte[] data, int length, String command) {
+        if (length < command.length()) return false;
+        for (int i = 0; i < command.length(); i++) {
+            if (data[i] != command.charAt(i)) return false;
+        }
+        return length == command.length() || data[command.length()] == '|';
+    }
+
+    public Handshake with(String key, Object value) {
+        options.put(key, String.valueOf(value));
+        return this;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public String getArgument() {
+        return argument;
+    }
+
+    public boolean is(String cmd) {
+        return command.equals(cmd);
+    }
+
+    public String option(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+
+    public int intOption(String key, int defaultValue) {
+        String value = options.get(key);
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public byte[] toBytes() {
+        return toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(command);
+        if (argument != null) sb.append('|').append(argument);
+        for (Map.Entry<String, String> e : options.entrySet()) {
+            sb.append('|').append(e.getKey()).append('=').append(e.getValue());
+        }
+        return sb.toString();
+    }
+}
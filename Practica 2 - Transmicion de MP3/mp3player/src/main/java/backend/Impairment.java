@@ -0,0 +1,148 @@
+package backend;
+import java.util.Random;
+
+/**
+ * Degradaciones que ImpairmentProxy aplica a un sentido del tráfico: pérdida (LossModel),
+ * retardo con jitter, reordenamiento, duplicación y un enlace de ancho de banda limitado
+ * con cola de tamaño fijo (lo que no cabe en la cola se pierde, como en un router).
+ *
+ * Se arma encadenando: {@code Impairment.none().delay(20, 5).reorder(0.02).rate(2000, 100)}.
+ * Varios proxies pueden compartir la misma instancia: comparten entonces el enlace limitado,
+ * como flujos que pasan por el mismo cuello de botella.
+ */
+public class Impairment {
+    private static final int DEFAULT_REORDER_DELAY = 10; // ms extra de un paquete reordenado
+
+    private LossModel loss = LossModel.none();
+    private long delayNanos = 0;
+    private long jitterNanos = 0;
+    private double reorder = 0;
+    private long reorderNanos = DEFAULT_REORDER_DELAY * 1_000_000L;
+    private double duplicate = 0;
+    private long rateBitsPerSecond = 0; // 0 = sin límite
+    private long queueNanos = 0;
+    private long linkFreeAt = 0; // Cuándo termina de serializarse lo encolado
+    private final Random random;
+
+    private Impairment(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /** Sin degradación; la semilla fija el jitter, el reordenamiento y la duplicación. */
+    public static Impairment none(long seed) {
+        return new Impairment(seed);
+    }
+
+    public static Impairment none() {
+        return none(0);
+    }
+
+    /**
+     * Degradación configurada con propiedades del sistema (para usar el proxy desde la línea de comandos):
+     *   -Dmp3.net.loss=P           pérdida aleatoria (0-1)
+     *   -Dmp3.net.burst=P,R        pérdida en ráfagas (Gilbert-Elliott): entrar y salir del estado malo,
+     *                              donde se pierde el 100%; sustituye a mp3.net.loss
+     *   -Dmp3.net.delay=D          retardo en ms
+     *   -Dmp3.net.jitter=J         variación uniforme del retardo, ±J ms
+     *   -Dmp3.net.reorder=P        probabilidad de retener un paquete 10 ms para que lo adelanten
+     *   -Dmp3.net.duplicate=P      probabilidad de entregar un paquete dos veces
+     *   -Dmp3.net.kbps=K           ancho de banda del enlace (0 = sin límite)
+     *   -Dmp3.net.queue=Q          cola del enlace en ms a ese ancho de banda (100 por defecto)
+     */
+    public static Impairment fromSystemProperties(long seed) {
+        Impairment impairment = none(seed);
+        String burst = System.getProperty("mp3.net.burst");
+        if (burst != null) {
+            String[] p = burst.split(",");
+            impairment.loss(LossModel.burst(Double.parseDouble(p[0]), Double.parseDouble(p[1]), 0, 1, seed));
+        } else {
+            impairment.loss(LossModel.random(Double.parseDouble(System.getProperty("mp3.net.loss", "0")), seed));
+        }
+        return impairment
+                .delay(Integer.getInteger("mp3.net.delay", 0), Integer.getInteger("mp3.net.jitter", 0))
+                .reorder(Double.parseDouble(System.getProperty("mp3.net.reorder", "0")))
+                .duplicate(Double.parseDouble(System.getProperty("mp3.net.duplicate", "0")))
+                .rate(Integer.getInteger("mp3.net.kbps", 0), Integer.getInteger("mp3.net.queue", 100));
+    }
+
+    public Impairment loss(LossModel loss) {
+        this.loss = loss;
+        return this;
+    }
+
+    /** Retardo fijo más una variación uniforme de ±jitter (ms). El jitter por sí solo ya reordena. */
+    public Impairment delay(int delayMs, int jitterMs) {
+        this.delayNanos = Math.max(0, delayMs) * 1_000_000L;
+        this.jitterNanos = Math.max(0, jitterMs) * 1_000_000L;
+        return this;
+    }
+
+    /** Con probabilidad {@code p} el paquete se retiene unos ms extra y los siguientes lo adelantan. */
+    public Impairment reorder(double p) {
+        this.reorder = p;
+        return this;
+    }
+
+    public Impairment duplicate(double p) {
+        this.duplicate = p;
+        return this;
+    }
+
+    /**
+     * Enlace de {@code kbps} kbit/s cuya cola admite {@code queueMs} ms de datos;
+     * los paquetes que llegan con la cola llena se pierden.
+     */
+    public Impairment rate(int kbps, int queueMs) {
+        this.rateBitsPerSecond = Math.max(0, kbps) * 1000L;
+        this.queueNanos = Math.max(1, queueMs) * 1_000_000L;
+        return this;
+    }
+
+    synchronized boolean drop() {
+        return loss.drop();
+    }
+
+    synchronized boolean duplicate() {
+        return duplicate > 0 && random.nextDouble() < duplicate;
+    }
+
+    /** Retardo de propagación de un paquete: base, jitter y, si toca, el extra de reordenamiento. */
+    synchronized long propagationNanos() {
+        long nanos = delayNanos;
+        if (jitterNanos > 0) {
+            nanos += (long) ((random.nextDouble() * 2 - 1) * jitterNanos);
+        }
+        if (reorder > 0 && random.nextDouble() < reorder) {
+            nanos += reorderNanos;
+        }
+        return Math.max(0, nanos);
+    }
+
+    /**
+     * Pone un paquete de {@code bytes} en el enlace.
+     * @return cuándo termina de salir, o -1 si la cola está llena y se pierde
+     */
+    synchronized long depart(long now, int bytes) {
+        if (rateBitsPerSecond == 0) return now;
+        long start = Math.max(now, linkFreeAt);
+        if (start - now > queueNanos) return -1;
+        // Tiempo de serialización, contando 28 bytes de cabeceras IP y UDP
+        linkFreeAt = start + (bytes + 28) * 8L * 1_000_000_000L / rateBitsPerSecond;
+        return linkFreeAt;
+    }
+
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        String lossText = loss.describe();
+        if (!lossText.startsWith("aleatoria 0.0%")) sb.append(lossText).append(", ");
+        if (delayNanos > 0 || jitterNanos > 0) {
+            sb.append(delayNanos / 1_000_000).append(" ms");
+            if (jitterNanos > 0) sb.append(" ±").append(jitterNanos / 1_000_000);
+            sb.append(", ");
+        }
+        if (reorder > 0) sb.append(String.format("reordena %.0f%%, ", reorder * 100));
+        if (duplicate > 0) sb.append(String.format("duplica %.0f%%, ", duplicate * 100));
+        if (rateBitsPerSecond > 0) sb.append(rateBitsPerSecond / 1000).append(" kbit/s, ");
+        return sb.length() == 0 ? "sin degradación" : sb.substring(0, sb.length() - 2);
+    }
+}
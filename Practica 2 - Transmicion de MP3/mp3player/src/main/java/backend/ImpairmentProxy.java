@@ -0,0 +1,255 @@
+package backend;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.PriorityQueue;
+
+/**
+ * Proxy UDP que se interpone entre Client y Server y degrada el tráfico de forma reproducible
+ * (ver Impairment): pérdida aleatoria o en ráfagas, retardo, jitter, reordenamiento,
+ * duplicación y ancho de banda limitado. Cada sentido tiene su propia degradación.
+ *
+ * El cliente habla con el puerto del proxy como si fuera el servidor; el proxy reenvía al
+ * servidor desde otro puerto y devuelve las respuestas al último cliente que escribió.
+ * Todo corre en un solo hilo: los datagramas se copian a una cola ordenada por hora de entrega.
+ *
+ * Además cuenta los paquetes de datos y de paridad que salen del servidor antes de degradarlos,
+ * lo que permite medir retransmisiones sin tocar al emisor (ver ArqBenchmark).
+ *
+ * Uso: java backend.ImpairmentProxy [puerto] [puertoServidor]  (1235 y 1234 por defecto)
+ *   con las propiedades -Dmp3.net.* de Impairment.fromSystemProperties, aplicadas en ambos
+ *   sentidos, y el cliente apuntando al proxy con -Dmp3.port=1235.
+ */
+public class ImpairmentProxy implements Runnable, Closeable {
+    private static final int TO_SERVER = 0;
+    private static final int TO_CLIENT = 1;
+
+    /** Un datagrama esperando su hora de entrega. */
+    private static class Delivery implements Comparable<Delivery> {
+        final long at;
+        final long order; // Desempata entregas a la misma hora en orden de llegada
+        final int direction;
+        final byte[] data;
+
+        Delivery(long at, long order, int direction, byte[] data) {
+            this.at = at;
+            this.order = order;
+            this.direction = direction;
+            this.data = data;
+        }
+
+        @Override
+        public int compareTo(Delivery o) {
+            return at != o.at ? Long.compare(at, o.at) : Long.compare(order, o.order);
+        }
+    }
+
+    private final DatagramChannel front; // Hacia el cliente
+    private final DatagramChannel back; // Hacia el servidor
+    private final Selector selector;
+    private final Impairment[] impairments = new Impairment[2];
+    private final PriorityQueue<Delivery> pending = new PriorityQueue<>();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(Session.MAX_UDP_PAYLOAD);
+    private SocketAddress client;
+    private long arrivals = 0;
+    private Thread thread;
+    private volatile boolean running = true;
+
+    private int dataPackets = 0;
+    private int parityPackets = 0;
+    private int dropped = 0;
+    private int queueDrops = 0;
+    private int duplicated = 0;
+
+    /**
+     * @param port     puerto local del proxy (0 = cualquiera libre)
+     * @param server   dirección real del servidor
+     * @param client   cliente fijo, o null para devolver las respuestas al último que escribió
+     */
+    public ImpairmentProxy(int port, InetSocketAddress server, InetSocketAddress client,
+                           Impairment toServer, Impairment toClient) throws IOException {
+        this.front = DatagramChannel.open().bind(new InetSocketAddress(server.getAddress(), port));
+        this.back = DatagramChannel.open().bind(new InetSocketAddress(server.getAddress(), 0));
+        this.back.connect(server);
+        this.client = client;
+        this.impairments[TO_SERVER] = toServer;
+        this.impairments[TO_CLIENT] = toClient;
+        this.selector = Selector.open();
+        front.configureBlocking(false).register(selector, SelectionKey.OP_READ);
+        back.configureBlocking(false).register(selector, SelectionKey.OP_READ);
+    }
+
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 1235;
+        int serverPort = args.length > 1 ? Integer.parseInt(args[1]) : 1234;
+        long seed = Long.getLong("mp3.net.seed", 1);
+        try {
+            InetSocketAddress server = new InetSocketAddress(InetAddress.getByName("localhost"), serverPort);
+            Impairment toServer = Impairment.fromSystemProperties(seed);
+            Impairment toClient = Impairment.fromSystemProperties(seed + 1);
+            ImpairmentProxy proxy = new ImpairmentProxy(port, server, null, toServer, toClient);
+            System.out.println("=== Proxy de red degradada ===");
+            System.out.println("Escuchando en " + proxy.getPort() + " -> servidor " + server);
+            System.out.println("Degradación: " + toClient.describe() + "\n");
+            proxy.run();
+        } catch (IOException e) {
+            System.err.println("Error en el proxy: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /** Arranca el proxy en un hilo daemon. */
+    public ImpairmentProxy start() {
+        thread = new Thread(this, "impairment-proxy");
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) front.getLocalAddress()).getPort();
+    }
+
+    /** Puerto desde el que el proxy habla con el servidor: el servidor lo ve como el cliente. */
+    public int getServerSidePort() throws IOException {
+        return ((InetSocketAddress) back.getLocalAddress()).getPort();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                Delivery head = pending.peek();
+                long wait = head == null ? 0 : head.at - System.nanoTime();
+                if (head == null) {
+                    selector.select(100);
+                } else if (wait >= 1_000_000L) {
+                    selector.select(wait / 1_000_000L);
+                } else if (wait > 0) {
+                    selector.selectNow();
+                }
+                selector.selectedKeys().clear();
+                receive(front, TO_SERVER);
+                receive(back, TO_CLIENT);
+                deliver(System.nanoTime());
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Error en el proxy: " + e.getMessage());
+            }
+        }
+    }
+
+    private void receive(DatagramChannel channel, int direction) throws IOException {
+        while (true) {
+            buffer.clear();
+            SocketAddress from;
+            try {
+                from = channel.receive(buffer);
+            } catch (PortUnreachableException e) {
+                continue; // El servidor aún no escucha: el datagrama ya se dio por perdido
+            }
+            if (from == null) return;
+            buffer.flip();
+            if (direction == TO_SERVER) {
+                client = from;
+            } else {
+                if (client == null) continue;
+                count(buffer);
+            }
+            enqueue(direction, buffer);
+        }
+    }
+
+    /** Cuenta los paquetes de datos y de paridad del servidor por su cabecera. */
+    private void count(ByteBuffer datagram) {
+        if (datagram.remaining() < PacketHeader.SIZE || datagram.get(0) != PacketHeader.VERSION) return;
+        int seq = PacketHeader.seq(datagram);
+        if (seq >= 0) {
+            dataPackets++;
+        } else if (seq == Fec.PARITY_SEQ) {
+            parityPackets++;
+        }
+    }
+
+    private void enqueue(int direction, ByteBuffer datagram) {
+        Impairment impairment = impairments[direction];
+        if (impairment.drop()) {
+            dropped++;
+            return;
+        }
+        byte[] data = new byte[datagram.remaining()];
+        datagram.get(data);
+        int copies = impairment.duplicate() ? 2 : 1;
+        duplicated += copies - 1;
+
+        long now = System.nanoTime();
+        for (int i = 0; i < copies; i++) {
+            long departure = impairment.depart(now, data.length);
+            if (departure < 0) {
+                queueDrops++; // Cola del enlace llena
+                continue;
+            }
+            pending.add(new Delivery(departure + impairment.propagationNanos(), arrivals++, direction, data));
+        }
+    }
+
+    private void deliver(long now) throws IOException {
+        while (!pending.isEmpty() && pending.peek().at <= now) {
+            Delivery d = pending.poll();
+            try {
+                if (d.direction == TO_SERVER) {
+                    back.write(ByteBuffer.wrap(d.data));
+                } else {
+                    front.send(ByteBuffer.wrap(d.data), client);
+                }
+            } catch (PortUnreachableException e) {
+                // Sin nadie escuchando del otro lado: el datagrama se pierde, como en la red
+            }
+        }
+    }
+
+    /** Paquetes de datos (seq >= 0) que envió el servidor, incluidas las retransmisiones. */
+    public int getDataPackets() {
+        return dataPackets;
+    }
+
+    public int getParityPackets() {
+        return parityPackets;
+    }
+
+    /** Datagramas perdidos por el modelo de pérdida, en ambos sentidos. */
+    public int getDropped() {
+        return dropped;
+    }
+
+    /** Datagramas perdidos por cola llena en el enlace limitado. */
+    public int getQueueDrops() {
+        return queueDrops;
+    }
+
+    public int getDuplicated() {
+        return duplicated;
+    }
+
+    /** Detiene el proxy; los contadores quedan disponibles. */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        if (thread != null) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        selector.close();
+        front.close();
+        back.close();
+    }
+}
@@ -0,0 +1,70 @@
+package backend;
+
+/**
+ * Calendario del modo en vivo (lado servidor).
+ *
+ * Cada paquete queda disponible en su instante de la línea de tiempo de la canción, como lo
+ * produciría un codificador en vivo, y vence {@code delay} después: el cliente reproduce con
+ * ese retardo fijo. Un paquete vencido ya no sirve para reproducir, así que en lugar de
+ * retransmitirlo el servidor lo salta y avisa con un paquete SKIP: [SKIP_SEQ][nueva base].
+ */
+public class LiveSchedule {
+    public static final int SKIP_SEQ = -2; // Número de secuencia reservado para SKIP
+    public static final int DEFAULT_DELAY = 500; // ms
+    public static final int MIN_DELAY = 100;
+    public static final int MAX_DELAY = 10000;
+
+    private final long[] mediaNanos; // Inicio de cada paquete en la canción
+    private final long delayNanos;
+    private final double speed;
+    private long startNanos;
+
+    /**
+     * @param packets paquetes alineados a tramas (ver Mp3Player.fragmentarPorTramas)
+     * @param delayMs retardo de reproducción del cliente
+     * @param speed   factor de velocidad de la línea de tiempo (1 = tiempo real)
+     */
+    public LiveSchedule(byte[][] packets, int delayMs, double speed) {
+        this.mediaNanos = new long[packets.length + 1];
+        long micros = 0;
+        for (int i = 0; i < packets.length; i++) {
+            mediaNanos[i] = micros * 1000;
+            micros += Mp3Frames.parse(packets[i]).getDurationMicros();
+        }
+        mediaNanos[packets.length] = micros * 1000;
+        this.delayNanos = clampDelay(delayMs) * 1_000_000L;
+        this.speed = speed > 0 ? speed : 1;
+    }
+
+    public static int clampDelay(int delayMs) {
+        return Math.max(MIN_DELAY, Math.min(MAX_DELAY, delayMs));
+    }
+
+    /** Empieza la emisión (el paquete 0 está disponible ya). */
+    public void start() {
+        startNanos = System.nanoTime();
+    }
+
+    private long at(int seq) {
+        return startNanos + (long) (mediaNanos[seq] / speed);
+    }
+
+    /** Nanosegundos hasta que el paquete esté disponible (0 o negativo si ya lo está). */
+    public long untilAvailable(int seq, long now) {
+        return at(seq) - now;
+    }
+
+    public boolean expired(int seq, long now) {
+        return now - at(seq) > delayNanos;
+    }
+
+    /** Duración en ms de audio de los paquetes [from, to). */
+    public long mediaMillis(int from, int to) {
+        return (mediaNanos[to] - mediaNanos[from]) / 1_000_000L;
+    }
+
+    /** Timeout de retransmisión: unas cuantas oportunidades antes de que venza el plazo. */
+    public int retransmitTimeout(int defaultTimeout) {
+        return (int) Math.max(20, Math.min(defaultTimeout, delayNanos / 4_000_000L));
+    }
+}
@@ -0,0 +1,81 @@
+package backend;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Destino del modo en vivo: escribe los paquetes en orden a medida que llegan, como
+ * los consumiría un reproductor. Los paquetes saltados por el servidor no dejan hueco en
+ * el archivo; con paquetes alineados a tramas, el resultado sigue siendo un MP3 válido
+ * al que solo le faltan algunas tramas.
+ *
+ * Solo admite escritura en orden, así que el modo en vivo no usa FEC.
+ */
+public class LiveSink implements PacketSink, Closeable {
+    private final FileChannel channel;
+    private final int totalPackets;
+    private int next = 0; // Siguiente paquete a escribir
+    private int skipped = 0;
+
+    public LiveSink(File file, int totalPackets) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.totalPackets = totalPackets;
+    }
+
+    @Override
+    public int getTotalPackets() {
+        return totalPackets;
+    }
+
+    @Override
+    public boolean has(int seq) {
+        return seq < next;
+    }
+
+    @Override
+    public int firstMissing(int from) {
+        return Math.max(from, next);
+    }
+
+    @Override
+    public int length(int seq) {
+        throw new UnsupportedOperationException("El modo en vivo no conserva los paquetes escritos");
+    }
+
+    @Override
+    public void write(int seq, ByteBuffer payload) throws IOException {
+        if (seq != next) {
+            throw new IllegalStateException("Paquete " + seq + " fuera de orden (se esperaba " + next + ")");
+        }
+        while (payload.hasRemaining()) {
+            channel.write(payload);
+        }
+        next++;
+    }
+
+    @Override
+    public void read(int seq, ByteBuffer dst) {
+        throw new UnsupportedOperationException("El modo en vivo no conserva los paquetes escritos");
+    }
+
+    @Override
+    public void skip(int seq) {
+        if (seq == next) {
+            next++;
+            skipped++;
+        }
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
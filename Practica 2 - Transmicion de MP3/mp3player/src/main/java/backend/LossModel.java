@@ -0,0 +1,67 @@
+package backend;
+import java.util.Random;
+
+/**
+ * Modelos de pérdida de paquetes para simulaciones y pruebas.
+ * Cada llamada a {@link #drop()} decide si el siguiente paquete se pierde.
+ */
+public abstract class LossModel {
+    protected final Random random;
+
+    protected LossModel(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public abstract boolean drop();
+
+    public abstract String describe();
+
+    /** Sin pérdidas. */
+    public static LossModel none() {
+        return random(0, 0);
+    }
+
+    /** Pérdida aleatoria independiente (Bernoulli) con probabilidad {@code p}. */
+    public static LossModel random(double p, long seed) {
+        return new LossModel(seed) {
+            @Override
+            public boolean drop() {
+                return p > 0 && random.nextDouble() < p;
+            }
+
+            @Override
+            public String describe() {
+                return String.format("aleatoria %.1f%%", p * 100);
+            }
+        };
+    }
+
+    /**
+     * Pérdida en ráfagas con el modelo de Gilbert-Elliott: dos estados (bueno/malo)
+     * con su propia probabilidad de pérdida y probabilidades de transición entre ellos.
+     */
+    public static LossModel burst(double pGoodToBad, double pBadToGood,
+                                  double lossGood, double lossBad, long seed) {
+        return new LossModel(seed) {
+            private boolean bad = false;
+
+            @Override
+            public boolean drop() {
+                if (bad) {
+                    if (random.nextDouble() < pBadToGood) bad = false;
+                } else {
+                    if (random.nextDouble() < pGoodToBad) bad = true;
+                }
+                return random.nextDouble() < (bad ? lossBad : lossGood);
+            }
+
+            @Override
+            public String describe() {
+                // Pérdida media = pérdida de cada estado ponderada por su probabilidad estacionaria
+                double piBad = pGoodToBad / (pGoodToBad + pBadToGood);
+                double mean = piBad * lossBad + (1 - piBad) * lossGood;
+                return String.format("ráfagas %.1f%% (ráfaga media %.1f paq.)", mean * 100, 1 / pBadToGood);
+            }
+        };
+    }
+}
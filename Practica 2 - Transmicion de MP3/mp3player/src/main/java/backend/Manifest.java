@@ -0,0 +1,129 @@
+package backend;
+import java.io.IOException;
+import java.net.*;
+import java.util.Arrays;
+
+/**
+ * Descripción de la escalera de bitrates de una pista para el streaming adaptativo.
+ *
+ * Cliente -> MANIFEST|pista
+ * Servidor -> MANIFEST|pista|duration=ms|segment=ms|segments=N|rates=32,64,128   (o ERROR|motivo)
+ *
+ * Todas las versiones se cortan en los mismos instantes (múltiplos de {@code segment} ms),
+ * así que el cliente puede cambiar de bitrate entre un segmento y el siguiente.
+ */
+public class Manifest {
+    public static final String COMMAND = "MANIFEST";
+
+    private static final int TIMEOUT = 1000; // ms entre reintentos
+    private static final int RETRIES = 5;
+
+    private final String trackId;
+    private final int durationMillis;
+    private final int segmentMillis;
+    private final int segments;
+    private final int[] rates; // kbit/s, de menor a mayor
+
+    public Manifest(String trackId, int durationMillis, int segmentMillis, int segments, int[] rates) {
+        this.trackId = trackId;
+        this.durationMillis = durationMillis;
+        this.segmentMillis = segmentMillis;
+        this.segments = segments;
+        this.rates = rates;
+    }
+
+    public Handshake toHandshake() {
+        StringBuilder list = new StringBuilder();
+        for (int rate : rates) {
+            if (list.length() > 0) list.append(',');
+            list.append(rate);
+        }
+        return new Handshake(COMMAND, trackId)
+                .with("duration", durationMillis)
+                .with("segment", segmentMillis)
+                .with("segments", segments)
+                .with("rates", list);
+    }
+
+    public static Manifest parse(Handshake h) {
+        int[] rates = Arrays.stream(h.option("rates", "").split(","))
+                .filter(s -> !s.isEmpty())
+                .mapToInt(Integer::parseInt)
+                .sorted()
+                .toArray();
+        return new Manifest(h.getArgument(), h.intOption("duration", 0), h.intOption("segment", 0), h.intOption("segments", 0), rates);
+    }
+
+    /**
+     * Pide el manifiesto de la pista, reintentando si el servidor no contesta.
+     *
+     * @return el manifiesto, o null si el servidor lo rechazó o no respondió
+     */
+    public static Manifest fetch(DatagramSocket socket, InetAddress serverAddress, int serverPort,
+                                 String trackId) throws IOException {
+        byte[] request = new Handshake(COMMAND, trackId).toBytes();
+        byte[] buffer = new byte[Session.DEFAULT_DATAGRAM];
+        int originalTimeout = socket.getSoTimeout();
+        socket.setSoTimeout(TIMEOUT);
+
+        try {
+            for (int attempt = 0; attempt <= RETRIES; attempt++) {
+                socket.send(new DatagramPacket(request, request.length, serverAddress, serverPort));
+                long deadline = System.currentTimeMillis() + TIMEOUT;
+                while (System.currentTimeMillis() < deadline) {
+                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    try {
+                        socket.receive(packet);
+                    } catch (SocketTimeoutException e) {
+                        break;
+                    }
+                    if (Handshake.startsWith(packet.getData(), packet.getLength(), COMMAND)) {
+                        Manifest manifest = parse(Handshake.parse(packet.getData(), packet.getLength()));
+                        System.out.println("Manifiesto recibido: " + manifest);
+                        return manifest;
+                    } else if (Handshake.startsWith(packet.getData(), packet.getLength(), Handshake.ERROR)) {
+                        Handshake error = Handshake.parse(packet.getData(), packet.getLength());
+                        System.out.println("⚠ El servidor rechazó la solicitud: " + error.getArgument());
+                        return null;
+                    }
+                    // Datos de una sesión anterior: se ignoran
+                }
+            }
+            System.out.println("⚠ El servidor no respondió al MANIFEST");
+            return null;
+        } finally {
+            socket.setSoTimeout(originalTimeout);
+        }
+    }
+
+    public String getTrackId() {
+        return trackId;
+    }
+
+    public int getDurationMillis() {
+        return durationMillis;
+    }
+
+    /** Duración en ms del segmento {@code index} (el último puede ser más corto). */
+    public int segmentDuration(int index) {
+        return Math.max(0, Math.min(segmentMillis, durationMillis - index * segmentMillis));
+    }
+
+    public int getSegmentMillis() {
+        return segmentMillis;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public int[] getRates() {
+        return rates;
+    }
+
+    @Override
+    public String toString() {
+        return "pista=" + trackId + " segmentos=" + segments + "x" + segmentMillis + "ms bitrates="
+                + Arrays.toString(rates) + " kbit/s";
+    }
+}
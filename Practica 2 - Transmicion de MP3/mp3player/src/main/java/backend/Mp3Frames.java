@@ -0,0 +1,158 @@
+package backend;
+import java.util.Arrays;
+
+/**
+ * Índice de las tramas (frames) MPEG de audio de un archivo MP3.
+ *
+ * Un decodificador solo puede empezar a reproducir en el inicio de una trama, así que un
+ * oyente que se une tarde a la radio descarta los bytes hasta el siguiente inicio de trama.
+ * Se recorre la cadena de cabeceras (sync de 11 bits, versión, capa, bitrate, frecuencia,
+ * padding) saltando una etiqueta ID3v2 inicial; si la cadena se rompe se busca el siguiente sync.
+ */
+public class Mp3Frames {
+    public static final int NO_FRAME = 0xFFFF; // El paquete no contiene inicio de trama
+
+    // Bitrates en kbit/s por [MPEG1 ? 0 : 1][capa - 1][índice]
+    private static final int[][][] BITRATES = {
+            {
+                    {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+                    {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+                    {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320}
+            },
+            {
+                    {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+                    {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},
+                    {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}
+            }
+    };
+    private static final int[] SAMPLE_RATES = {44100, 48000, 32000};
+
+    private final int[] offsets;
+    private final long[] startMicros; // Instante de inicio de cada trama
+    private final long durationMicros;
+    private final int length; // Bytes del archivo analizado
+
+    private Mp3Frames(int[] offsets, long[] startMicros, long durationMicros, int length) {
+        this.offsets = offsets;
+        this.startMicros = startMicros;
+        this.durationMicros = durationMicros;
+        this.length = length;
+    }
+
+    /**
+     * Recorre el archivo completo. Si no encuentra ninguna trama, el índice queda vacío.
+     */
+    public static Mp3Frames parse(byte[] data) {
+        int[] offsets = new int[64];
+        long[] startMicros = new long[64];
+        int count = 0;
+        long durationMicros = 0;
+
+        int pos = id3v2Size(data);
+        while (pos + 4 <= data.length) {
+            int length = frameLength(data, pos);
+            if (length <= 0 || pos + length > data.length) {
+                pos++; // Sin cabecera válida aquí: buscar el siguiente sync
+                continue;
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                startMicros = Arrays.copyOf(startMicros, count * 2);
+            }
+            startMicros[count] = durationMicros;
+            offsets[count++] = pos;
+            durationMicros += frameMicros(data, pos);
+            pos += length;
+        }
+        return new Mp3Frames(Arrays.copyOf(offsets, count), Arrays.copyOf(startMicros, count),
+                durationMicros, data.length);
+    }
+
+    /** Tamaño de la etiqueta ID3v2 al inicio del archivo (0 si no hay). */
+    private static int id3v2Size(byte[] data) {
+        if (data.length < 10 || data[0] != 'I' || data[1] != 'D' || data[2] != '3') return 0;
+        // Tamaño "synchsafe": 4 bytes de 7 bits, más 10 de cabecera (y 10 de pie si el flag lo indica)
+        int size = ((data[6] & 0x7F) << 21) | ((data[7] & 0x7F) << 14) | ((data[8] & 0x7F) << 7) | (data[9] & 0x7F);
+        boolean footer = (data[5] & 0x10) != 0;
+        return Math.min(data.length, 10 + size + (footer ? 10 : 0));
+    }
+
+    /**
+     * Longitud en bytes de la trama que empieza en {@code pos}, o -1 si no hay una cabecera válida.
+     */
+    static int frameLength(byte[] data, int pos) {
+        int b1 = data[pos] & 0xFF;
+        int b2 = data[pos + 1] & 0xFF;
+        int b3 = data[pos + 2] & 0xFF;
+        if (b1 != 0xFF || (b2 & 0xE0) != 0xE0) return -1;
+
+        int version = (b2 >> 3) & 0x3; // 3 = MPEG1, 2 = MPEG2, 0 = MPEG2.5, 1 = reservado
+        int layer = 4 - ((b2 >> 1) & 0x3); // 1, 2, 3 (4 = reservado)
+        int bitrateIndex = (b3 >> 4) & 0xF;
+        int rateIndex = (b3 >> 2) & 0x3;
+        int padding = (b3 >> 1) & 0x1;
+        if (version == 1 || layer == 4 || bitrateIndex == 0 || bitrateIndex == 15 || rateIndex == 3) return -1;
+
+        boolean mpeg1 = version == 3;
+        int bitrate = BITRATES[mpeg1 ? 0 : 1][layer - 1][bitrateIndex] * 1000;
+        int sampleRate = SAMPLE_RATES[rateIndex] >> (mpeg1 ? 0 : version == 2 ? 1 : 2);
+
+        if (layer == 1) {
+            return (12 * bitrate / sampleRate + padding) * 4;
+        }
+        int coefficient = layer == 3 && !mpeg1 ? 72 : 144;
+        return coefficient * bitrate / sampleRate + padding;
+    }
+
+    /** Duración de la trama (válida) que empieza en {@code pos}, en microsegundos. */
+    private static long frameMicros(byte[] data, int pos) {
+        int version = ((data[pos + 1] & 0xFF) >> 3) & 0x3;
+        int layer = 4 - (((data[pos + 1] & 0xFF) >> 1) & 0x3);
+        int rateIndex = ((data[pos + 2] & 0xFF) >> 2) & 0x3;
+        boolean mpeg1 = version == 3;
+        int sampleRate = SAMPLE_RATES[rateIndex] >> (mpeg1 ? 0 : version == 2 ? 1 : 2);
+        int samples = layer == 1 ? 384 : layer == 3 && !mpeg1 ? 576 : 1152;
+        return samples * 1_000_000L / sampleRate;
+    }
+
+    public int getFrameCount() {
+        return offsets.length;
+    }
+
+    public int offsetOf(int frame) {
+        return offsets[frame];
+    }
+
+    public long getDurationMicros() {
+        return durationMicros;
+    }
+
+    public long timeOf(int frame) {
+        return startMicros[frame];
+    }
+
+    /** Primera trama que empieza en {@code micros} o después (getFrameCount() si no hay). */
+    public int frameAtTime(long micros) {
+        int i = Arrays.binarySearch(startMicros, micros);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    /** Bitrate medio en kbit/s (0 si no se reconocieron tramas). */
+    public int averageKbps() {
+        return durationMicros > 0 ? (int) Math.round(length * 8.0 * 1000 / durationMicros) : 0;
+    }
+
+    /**
+     * Primer inicio de trama dentro de [start, start + length), relativo a start;
+     * {@link #NO_FRAME} si no hay ninguno. Sin tramas reconocidas, cada posición cuenta como inicio.
+     */
+    public int firstFrameIn(int start, int length) {
+        if (offsets.length == 0) return 0;
+        int i = Arrays.binarySearch(offsets, start);
+        if (i < 0) i = -i - 1;
+        if (i < offsets.length && offsets[i] < start + length) {
+            return offsets[i] - start;
+        }
+        return NO_FRAME;
+    }
+}
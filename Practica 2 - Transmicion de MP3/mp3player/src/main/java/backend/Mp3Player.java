@@ -2,6 +2,9 @@ package backend;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import javafx.application.Application;
 import javafx.scene.control.Button;
@@ -81,6 +84,53 @@ public class Mp3Player extends Application{
         return fragments;
     }
 
+    /**
+     * Fragmenta respetando las tramas MP3: cada paquete lleva solo tramas completas
+     * (tantas como quepan en tamPackage), así perder un paquete quita tramas enteras
+     * y el decodificador sigue con la siguiente en lugar de leer una trama cortada.
+     * Los bytes anteriores a la primera trama (etiqueta ID3) y las tramas más grandes que
+     * tamPackage se parten como en fragmentarMP3. Sin tramas reconocibles, equivale a fragmentarMP3.
+     */
+    public byte[][] fragmentarPorTramas(byte[] data, int tamPackage) {
+        if (data == null || tamPackage <= 0) return null;
+        Mp3Frames frames = Mp3Frames.parse(data);
+        int count = frames.getFrameCount();
+        if (count == 0) return fragmentarMP3(data, tamPackage);
+
+        List<byte[]> fragments = new ArrayList<>();
+        addSplit(fragments, data, 0, frames.offsetOf(0), tamPackage);
+
+        int frame = 0;
+        while (frame < count) {
+            int start = frames.offsetOf(frame);
+            int end = start;
+            // Cada trama se extiende hasta el inicio de la siguiente (o el final del archivo)
+            while (frame < count && frameEnd(frames, frame, data.length) - start <= tamPackage) {
+                end = frameEnd(frames, frame, data.length);
+                frame++;
+            }
+            if (end == start) {
+                // Trama más grande que el paquete: no queda otra que partirla
+                end = frameEnd(frames, frame, data.length);
+                addSplit(fragments, data, start, end, tamPackage);
+                frame++;
+            } else {
+                fragments.add(Arrays.copyOfRange(data, start, end));
+            }
+        }
+        return fragments.toArray(new byte[0][]);
+    }
+
+    private static int frameEnd(Mp3Frames frames, int frame, int length) {
+        return frame + 1 < frames.getFrameCount() ? frames.offsetOf(frame + 1) : length;
+    }
+
+    private static void addSplit(List<byte[]> fragments, byte[] data, int from, int to, int tamPackage) {
+        for (int start = from; start < to; start += tamPackage) {
+            fragments.add(Arrays.copyOfRange(data, start, Math.min(start + tamPackage, to)));
+        }
+    }
+
 
     public static void main(String[] args) {
         launch(args);
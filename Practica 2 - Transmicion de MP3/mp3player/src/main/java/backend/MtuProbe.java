@@ -0,0 +1,93 @@
+package backend;
+import java.io.IOException;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sondeo del tamaño de datagrama utilizable hacia un cliente.
+ *
+ * El servidor envía datagramas PROBE de tamaños decrecientes (sin superar el máximo
+ * que anunció el cliente) y se queda con el mayor que el cliente confirma con PROBE_ACK.
+ * Java no permite activar el bit DF, así que el sondeo no detecta la MTU exacta de la ruta:
+ * detecta qué tamaños llegan de verdad (p. ej. rutas que descartan fragmentos IP).
+ * Por eso el cliente anuncia por defecto un tamaño que no fragmenta en Ethernet.
+ */
+public class MtuProbe {
+    // Tamaños candidatos de datagrama UDP (sin cabeceras IP/UDP)
+    private static final int[] CANDIDATES = {
+        Session.MAX_UDP_PAYLOAD, // Loopback
+        8972,                    // Jumbo frames (9000 - 28)
+        Session.DEFAULT_DATAGRAM, // Ethernet (1500 - 28)
+        1232,                    // IPv6 mínimo (1280 - 48)
+        Session.MIN_DATAGRAM     // IPv4 mínimo (576 - 28)
+    };
+    private static final int ROUNDS = 2; // Cada tamaño se envía dos veces por si se pierde una sonda
+    private static final int WAIT_MS = 300;
+
+    private MtuProbe() {
+    }
+
+    /**
+     * @return el mayor tamaño confirmado, o {@link Session#MIN_DATAGRAM} si no se confirma ninguno
+     */
+    public static int probe(DatagramSocket socket, InetAddress address, int port,
+                            int clientMax) throws IOException {
+        int originalTimeout = socket.getSoTimeout();
+        int best = 0;
+
+        try {
+            for (int round = 0; round < ROUNDS && best < clientMax; round++) {
+                sendProbe(socket, address, port, clientMax);
+                for (int size : CANDIDATES) {
+                    if (size < clientMax && size > best) {
+                        sendProbe(socket, address, port, size);
+                    }
+                }
+
+                long deadline = System.currentTimeMillis() + WAIT_MS;
+                byte[] buffer = new byte[256];
+                while (best < clientMax) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) break;
+                    socket.setSoTimeout((int) remaining);
+                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    try {
+                        socket.receive(packet);
+                    } catch (SocketTimeoutException e) {
+                        break;
+                    }
+                    if (!packet.getAddress().equals(address) || packet.getPort() != port) continue;
+                    Handshake reply = Handshake.parse(packet.getData(), packet.getLength());
+                    if (reply.is(Session.PROBE_ACK)) {
+                        try {
+                            best = Math.max(best, Integer.parseInt(reply.getArgument()));
+                        } catch (NumberFormatException ignored) {
+                            // Respuesta mal formada: se ignora
+                        }
+                    }
+                    // Los READY repetidos del cliente durante el sondeo se ignoran
+                }
+            }
+        } finally {
+            socket.setSoTimeout(originalTimeout);
+        }
+
+        if (best == 0) {
+            System.out.println("⚠ Sin respuesta a las sondas, usando " + Session.MIN_DATAGRAM + " bytes");
+            return Session.MIN_DATAGRAM;
+        }
+        return Math.min(best, clientMax);
+    }
+
+    private static void sendProbe(DatagramSocket socket, InetAddress address, int port,
+                                  int size) throws IOException {
+        byte[] data = new byte[size];
+        byte[] tag = (Session.PROBE + "|" + size).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(tag, 0, data, 0, tag.length);
+        try {
+            socket.send(new DatagramPacket(data, data.length, address, port));
+        } catch (IOException e) {
+            // El sistema rechaza el tamaño (p. ej. "Message too long"): no es candidato
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package backend;
+import java.nio.ByteBuffer;
+
+/**
+ * Formato binario del NACK de la radio: [TYPE (1 byte)][primer seq (4 bytes)][cantidad (2 bytes)].
+ * Pide la reparación de {@code count} paquetes consecutivos a partir de {@code first}.
+ */
+public final class Nack {
+    public static final byte TYPE = (byte) 0xA6;
+    public static final int SIZE = 7;
+    public static final int MAX_COUNT = 0xFFFF;
+
+    private Nack() {
+    }
+
+    /** Escribe el NACK en {@code buffer}, dejándolo listo para enviarse. */
+    public static void encode(ByteBuffer buffer, int first, int count) {
+        buffer.clear();
+        buffer.put(TYPE).putInt(first).putShort((short) count);
+        buffer.flip();
+    }
+
+    public static boolean isNack(ByteBuffer buffer) {
+        return buffer.remaining() == SIZE && buffer.get(buffer.position()) == TYPE;
+    }
+
+    public static int first(ByteBuffer buffer) {
+        return buffer.getInt(buffer.position() + 1);
+    }
+
+    public static int count(ByteBuffer buffer) {
+        return buffer.getShort(buffer.position() + 5) & 0xFFFF;
+    }
+}
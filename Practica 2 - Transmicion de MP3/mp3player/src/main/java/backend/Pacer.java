@@ -0,0 +1,86 @@
+package backend;
+
+/**
+ * Ritmo de envío del emisor Go-Back-N.
+ *
+ * En lugar de soltar la ventana de golpe (una ráfaga que desborda el buffer del socket del
+ * receptor) cada datagrama sale {@code bytes / ritmo} después del anterior. El ritmo es
+ * PACING_GAIN veces el ancho de banda estimado: el máximo de las últimas muestras de tasa de
+ * entrega (bytes confirmados entre el envío de un paquete y su ACK, dividido entre ese tiempo).
+ * La ganancia mayor que 1 deja sondear si hay más capacidad; la cola que eso pueda formar
+ * está acotada por la ventana. Un timeout reduce la estimación.
+ * Cuando el emisor no tiene qué enviar (en vivo espera a que cada paquete esté disponible) la
+ * tasa medida es la de la aplicación y no la del enlace: esas muestras solo pueden subirla.
+ */
+public class Pacer {
+    private static final double PACING_GAIN = 1.25;
+    private static final double LOSS_FACTOR = 0.5; // Reducción de la estimación ante un timeout
+    private static final double MIN_RATE = 64_000; // bit/s
+    private static final int SAMPLES = 8; // Muestras para el máximo móvil
+    private static final int MAX_CREDIT = 2; // Intervalos que se pueden recuperar tras un retraso
+
+    private final double[] samples = new double[SAMPLES];
+    private int sampleCount = 0;
+    private double bandwidth; // bit/s estimados
+    private long nextSendNanos = 0;
+
+    /**
+     * @param bandwidth ancho de banda supuesto antes de la primera muestra, en bit/s
+     */
+    public Pacer(double bandwidth) {
+        this.bandwidth = Math.max(MIN_RATE, bandwidth);
+    }
+
+    /** Ancho de banda supuesto para un cliente nuevo: -Dmp3.pacing.mbps (100 por defecto). */
+    public static double configuredBandwidth() {
+        return Double.parseDouble(System.getProperty("mp3.pacing.mbps", "100")) * 1e6;
+    }
+
+    /** Nanosegundos hasta que se pueda enviar el siguiente datagrama (0 o negativo: ya). */
+    public long untilNextSend(long now) {
+        return nextSendNanos - now;
+    }
+
+    public void onSend(int bytes, long now) {
+        long interval = (long) (bytes * 8 * 1e9 / getRate());
+        // Tras un retraso (hilo dormido de más) se recupera a lo sumo MAX_CREDIT intervalos
+        nextSendNanos = Math.max(nextSendNanos, now - MAX_CREDIT * interval) + interval;
+    }
+
+    /**
+     * Muestra de tasa de entrega.
+     *
+     * @param bytes        bytes confirmados en el intervalo
+     * @param elapsedNanos duración del intervalo
+     * @param appLimited   el emisor estuvo esperando datos durante el intervalo
+     */
+    public void onDelivery(long bytes, long elapsedNanos, boolean appLimited) {
+        if (bytes <= 0 || elapsedNanos <= 0) return;
+        double sample = bytes * 8 * 1e9 / elapsedNanos;
+        if (appLimited && sample <= bandwidth) return;
+        samples[sampleCount++ % SAMPLES] = sample;
+        double max = 0;
+        for (int i = 0; i < Math.min(sampleCount, SAMPLES); i++) {
+            max = Math.max(max, samples[i]);
+        }
+        bandwidth = Math.max(MIN_RATE, max);
+    }
+
+    /** Timeout de retransmisión: probablemente se envió más rápido de lo que cabe. */
+    public void onLoss() {
+        bandwidth = Math.max(MIN_RATE, bandwidth * LOSS_FACTOR);
+        for (int i = 0; i < SAMPLES; i++) {
+            samples[i] = Math.min(samples[i], bandwidth);
+        }
+    }
+
+    /** Ancho de banda estimado en bit/s. */
+    public double getBandwidth() {
+        return bandwidth;
+    }
+
+    /** Ritmo de envío actual en bit/s. */
+    public double getRate() {
+        return bandwidth * PACING_GAIN;
+    }
+}
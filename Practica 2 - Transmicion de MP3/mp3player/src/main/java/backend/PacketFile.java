@@ -0,0 +1,135 @@
+package backend;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * Paquetes recibidos escritos directamente en disco, cada uno en seq * payload.
+ *
+ * Sustituye al arreglo byte[][] del receptor: la memoria usada es un bit por paquete,
+ * sin importar el tamaño de la canción, y el archivo ya queda en su orden final.
+ *
+ * Varios receptores pueden escribir a la vez (ver StripeSink): las escrituras son posicionales
+ * y solo el mapa de bits se protege con el monitor del objeto.
+ */
+public class PacketFile implements PacketSink, Closeable {
+    private final FileChannel channel;
+    private final BitSet received;
+    private final int payloadSize;
+    private final int totalPackets;
+    private int lastLength = -1; // Longitud del último paquete (el único que puede ser más corto)
+
+    /**
+     * Abre (o crea) el archivo de datos.
+     *
+     * @param received paquetes que ya están en el archivo (vacío para una descarga nueva)
+     */
+    public PacketFile(File file, int payloadSize, int totalPackets, BitSet received) throws IOException {
+        this.channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.received = received;
+        this.payloadSize = payloadSize;
+        this.totalPackets = totalPackets;
+        if (totalPackets > 0 && received.get(totalPackets - 1)) {
+            lastLength = (int) (channel.size() - offset(totalPackets - 1));
+        }
+    }
+
+    private long offset(int seq) {
+        return (long) seq * payloadSize;
+    }
+
+    @Override
+    public synchronized boolean has(int seq) {
+        return received.get(seq);
+    }
+
+    /** Primer paquete faltante desde {@code from} (totalPackets si no falta ninguno). */
+    @Override
+    public synchronized int firstMissing(int from) {
+        return Math.min(received.nextClearBit(from), totalPackets);
+    }
+
+    /** Longitud del paquete {@code seq}, que debe estar recibido. */
+    @Override
+    public synchronized int length(int seq) {
+        return seq == totalPackets - 1 ? lastLength : payloadSize;
+    }
+
+    /**
+     * Escribe el contenido restante de {@code payload} como paquete {@code seq}.
+     * El buffer queda consumido.
+     */
+    @Override
+    public void write(int seq, ByteBuffer payload) throws IOException {
+        int length = payload.remaining();
+        long position = offset(seq);
+        while (payload.hasRemaining()) {
+            position += channel.write(payload, position);
+        }
+        markReceived(seq, length);
+    }
+
+    private synchronized void markReceived(int seq, int length) {
+        if (seq == totalPackets - 1) {
+            lastLength = length;
+        }
+        received.set(seq);
+    }
+
+    /**
+     * Lee el paquete {@code seq} en {@code dst} desde su posición actual.
+     */
+    @Override
+    public void read(int seq, ByteBuffer dst) throws IOException {
+        int limit = dst.limit();
+        dst.limit(dst.position() + length(seq));
+        long position = offset(seq);
+        while (dst.hasRemaining()) {
+            int n = channel.read(dst, position);
+            if (n < 0) throw new IOException("Paquete " + seq + " incompleto en disco");
+            position += n;
+        }
+        dst.limit(limit);
+    }
+
+    public synchronized BitSet getReceived() {
+        return received;
+    }
+
+    @Override
+    public int getTotalPackets() {
+        return totalPackets;
+    }
+
+    /** Una descarga no admite huecos: el servidor solo salta paquetes en modo en vivo. */
+    @Override
+    public void skip(int seq) {
+        throw new IllegalStateException("Paquete " + seq + " saltado en una descarga completa");
+    }
+
+    public boolean isComplete() {
+        return firstMissing(0) == totalPackets;
+    }
+
+    /** Tamaño final del archivo; solo tiene sentido con la descarga completa. */
+    public synchronized long contentLength() {
+        return totalPackets == 0 ? 0 : offset(totalPackets - 1) + lastLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (isComplete()) {
+                // Descarta restos de una descarga anterior más larga
+                channel.truncate(contentLength());
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package backend;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Destino de los paquetes que entrega GoBackNReceiver.
+ *
+ * PacketFile guarda una descarga completa (reanudable y con FEC); LiveSink escribe en orden
+ * para el modo en vivo, donde los paquetes que vencen su plazo se saltan.
+ */
+public interface PacketSink {
+    int getTotalPackets();
+
+    boolean has(int seq);
+
+    /** Primer paquete faltante desde {@code from} (getTotalPackets() si no falta ninguno). */
+    int firstMissing(int from);
+
+    /** Longitud del paquete {@code seq}, que debe estar recibido. */
+    int length(int seq);
+
+    /** Escribe el contenido restante de {@code payload} como paquete {@code seq}. */
+    void write(int seq, ByteBuffer payload) throws IOException;
+
+    /** Lee el paquete {@code seq} en {@code dst} (para reconstruir con FEC). */
+    void read(int seq, ByteBuffer dst) throws IOException;
+
+    /** El emisor abandonó el paquete {@code seq}: cuenta como resuelto sin datos. */
+    void skip(int seq) throws IOException;
+}
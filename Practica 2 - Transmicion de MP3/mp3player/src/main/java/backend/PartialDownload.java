@@ -0,0 +1,148 @@
+package backend;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Properties;
+
+/**
+ * Estado en disco de una descarga incompleta, para reanudarla en lugar de empezar de cero.
+ *
+ * Junto al archivo de salida se guardan:
+ *   salida.part             datos recibidos, cada paquete en seq * payload (ver PacketFile)
+ *   salida.part.properties  pista, SHA-256 del contenido, payload, total y mapa de bits recibidos
+ *
+ * El receptor escribe siempre en salida.part; al completarse se renombra a salida.
+ *
+ * Al reconectar, el cliente envía RESUME|pista|sha256=...|payload=P|have=<mapa en base64>
+ * y el servidor solo transmite los paquetes que faltan.
+ */
+public class PartialDownload {
+    public static final String RESUME = "RESUME";
+
+    private final String trackId;
+    private final String sha256;
+    private final int payloadSize;
+    private final int totalPackets;
+    private final BitSet received;
+
+    private PartialDownload(String trackId, String sha256,
+                            int payloadSize, int totalPackets, BitSet received) {
+        this.trackId = trackId;
+        this.sha256 = sha256;
+        this.payloadSize = payloadSize;
+        this.totalPackets = totalPackets;
+        this.received = received;
+    }
+
+    private static File dataFile(File output) {
+        return new File(output.getPath() + ".part");
+    }
+
+    private static File stateFile(File output) {
+        return new File(output.getPath() + ".part.properties");
+    }
+
+    /**
+     * Carga el estado guardado para {@code output}, o null si no hay uno válido.
+     */
+    public static PartialDownload load(File output) {
+        File state = stateFile(output);
+        if (!state.isFile() || !dataFile(output).isFile()) return null;
+
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(state)) {
+            props.load(in);
+            BitSet received = BitSet.valueOf(Base64.getDecoder().decode(props.getProperty("have", "")));
+            PartialDownload partial = new PartialDownload(
+                    props.getProperty("track"),
+                    props.getProperty("sha256"),
+                    Integer.parseInt(props.getProperty("payload")),
+                    Integer.parseInt(props.getProperty("total")),
+                    received);
+            if (partial.trackId == null || partial.sha256 == null) return null;
+            return partial;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Estado de descarga parcial inválido, se descarta: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Abre el archivo de datos de la sesión: continúa la descarga parcial si el servidor
+     * la aceptó como reanudación, o empieza de cero descartando el estado anterior.
+     */
+    public static PacketFile open(File output, Session session, PartialDownload partial) throws IOException {
+        if (partial != null && partial.matches(session)) {
+            System.out.println("Reanudando descarga: " + partial.received.cardinality() + "/"
+                    + partial.totalPackets + " paquetes ya en disco");
+            return new PacketFile(dataFile(output), session.getPayloadSize(), session.getTotalPackets(),
+                    partial.received);
+        }
+        delete(output);
+        return new PacketFile(dataFile(output), session.getPayloadSize(), session.getTotalPackets(), new BitSet());
+    }
+
+    /**
+     * Guarda el mapa de bits de lo recibido; los datos ya están en el archivo .part.
+     */
+    public static void save(File output, Session session, BitSet received) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("track", session.getTrackId());
+        props.setProperty("sha256", session.getSha256());
+        props.setProperty("payload", String.valueOf(session.getPayloadSize()));
+        props.setProperty("total", String.valueOf(session.getTotalPackets()));
+        props.setProperty("have", Base64.getEncoder().withoutPadding().encodeToString(received.toByteArray()));
+        try (OutputStream out = new FileOutputStream(stateFile(output))) {
+            props.store(out, "Descarga parcial de " + session.getTrackId());
+        }
+        System.out.println("Descarga parcial guardada: " + received.cardinality() + "/" + session.getTotalPackets()
+                + " paquetes (se reanudará en el próximo intento)");
+    }
+
+    /**
+     * Descarga completada: el archivo .part pasa a ser el archivo de salida.
+     */
+    public static void complete(File output) throws IOException {
+        Files.move(dataFile(output).toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        stateFile(output).delete();
+    }
+
+    /** Borra el estado parcial (descarga completada o contenido distinto en el servidor). */
+    public static void delete(File output) {
+        dataFile(output).delete();
+        stateFile(output).delete();
+    }
+
+    public boolean isFor(String trackId) {
+        return this.trackId.equals(trackId);
+    }
+
+    /**
+     * Solicitud RESUME con el mapa de bits de lo que ya tenemos.
+     */
+    public Handshake toResume() {
+        return new Handshake(RESUME, trackId)
+                .with("sha256", sha256)
+                .with("payload", payloadSize)
+                .with("have", Base64.getEncoder().withoutPadding().encodeToString(received.toByteArray()));
+    }
+
+    /**
+     * Indica si la sesión aceptada por el servidor continúa esta descarga.
+     */
+    public boolean matches(Session session) {
+        return session.isResumed()
+                && sha256.equals(session.getSha256())
+                && payloadSize == session.getPayloadSize()
+                && totalPackets == session.getTotalPackets();
+    }
+
+    /**
+     * Decodifica el mapa de bits de un RESUME (lado servidor).
+     */
+    public static BitSet parseHave(Handshake resume) {
+        return BitSet.valueOf(Base64.getDecoder().decode(resume.option("have", "")));
+    }
+}
@@ -0,0 +1,118 @@
+package backend;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.*;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Compara el goodput de Go-Back-N con payloads de 1400, 6500 y 64k bytes bajo pérdida.
+ *
+ * Usa el emisor real (Server.goBackN) y el receptor real (GoBackNReceiver) sobre loopback;
+ * la pérdida se simula en el envío.
+ * La pérdida se aplica por fragmento IP de una ruta con MTU 1500: un datagrama grande
+ * se pierde entero si se pierde cualquiera de sus fragmentos, que es justo el problema
+ * de los datagramas de 6500 bytes fuera de loopback.
+ *
+ * Uso: java backend.PayloadBenchmark [tamañoCancionKB]
+ */
+public class PayloadBenchmark {
+    private static final int HEADER_SIZE = PacketHeader.SIZE;
+    private static final int PATH_MTU = 1500;
+    private static final int IP_HEADER = 20;
+    private static final int UDP_HEADER = 8;
+    private static final int RECEIVE_TIMEOUT = 5000; // ms; más allá se considera que no completó
+    private static final int RUNS = 3; // Se reporta la mediana
+
+    public static void main(String[] args) throws Exception {
+        int songKb = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        byte[] song = new byte[songKb * 1024];
+        new Random(1).nextBytes(song);
+
+        int[] payloads = {1400, 6500 - HEADER_SIZE, Session.MAX_UDP_PAYLOAD - HEADER_SIZE};
+        double[] losses = {0.0, 0.001, 0.005, 0.01};
+
+        PrintStream console = System.out;
+        console.println("=== Goodput según tamaño de payload (ruta MTU " + PATH_MTU + ") ===");
+        console.println("Canción: " + songKb + " KB | pérdida aplicada por fragmento IP | mediana de " + RUNS + " corridas\n");
+        console.printf("%-10s %-10s %11s %14s %12s%n",
+                "Payload", "Pérdida", "Fragmentos", "P(pérdida dg)", "Goodput");
+
+        for (int payload : payloads) {
+            int datagram = payload + HEADER_SIZE;
+            // Cada fragmento IP lleva hasta MTU - 20 bytes del datagrama UDP (datos + cabecera UDP)
+            int perFragment = PATH_MTU - IP_HEADER;
+            int fragments = (datagram + UDP_HEADER + perFragment - 1) / perFragment;
+            for (double loss : losses) {
+                double datagramLoss = 1 - Math.pow(1 - loss, fragments);
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                double[] results = new double[RUNS];
+                try {
+                    for (int r = 0; r < RUNS; r++) {
+                        results[r] = run(song, payload, datagramLoss, r);
+                    }
+                } finally {
+                    System.setOut(console);
+                }
+                Arrays.sort(results);
+                double mbps = results[RUNS / 2];
+                console.printf("%-10d %-10s %11d %13.1f%% %12s%n", payload,
+                        String.format("%.1f%%", loss * 100), fragments, datagramLoss * 100,
+                        mbps < 0 ? "no completó" : String.format("%.1f Mbit/s", mbps));
+            }
+            console.println();
+        }
+    }
+
+    /**
+     * Una transferencia completa.
+     * @return goodput en Mbit/s, o -1 si no completó
+     */
+    private static double run(byte[] song, int payload, double datagramLoss, int seed) throws Exception {
+        byte[][] packets = new Mp3Player().fragmentarMP3(song, payload);
+        Random random = new Random(payload * 31L + (long) (datagramLoss * 1e6) + seed);
+
+        // La pérdida se aplica al enviar: el receptor usa un DatagramChannel, que no se puede interceptar
+        DatagramSocket serverSocket = new DatagramSocket(0, InetAddress.getLoopbackAddress()) {
+            @Override
+            public void send(DatagramPacket p) throws IOException {
+                if (random.nextDouble() >= datagramLoss) super.send(p);
+            }
+        };
+        DatagramChannel clientChannel = DatagramChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        clientChannel.socket().setSoTimeout(RECEIVE_TIMEOUT);
+        int clientPort = clientChannel.socket().getLocalPort();
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        int datagram = payload + HEADER_SIZE;
+
+        Session session = new Session("benchmark", datagram, payload, packets.length, 0, "", false, 0, seed + 1);
+        Thread sender = new Thread(() -> {
+            try {
+                Server.goBackN(serverSocket, session, packets, null, null, null, new byte[0], loopback, clientPort);
+            } catch (IOException e) {
+                // El receptor abandonó o se cerró el socket
+            }
+        });
+        sender.setDaemon(true);
+
+        File file = File.createTempFile("payload-benchmark", ".part");
+        file.deleteOnExit();
+        long start = System.nanoTime();
+        sender.start();
+        boolean complete;
+        try (PacketFile received = new PacketFile(file, payload, packets.length, new BitSet())) {
+            complete = GoBackNReceiver.receive(clientChannel, loopback, serverSocket.getLocalPort(), session, received).isComplete();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        serverSocket.close();
+        clientChannel.close();
+        file.delete();
+        sender.join(1000);
+        return !complete ? -1 : (song.length * 8 / 1e6) / seconds;
+    }
+}
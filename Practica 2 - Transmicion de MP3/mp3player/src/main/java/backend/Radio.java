@@ -0,0 +1,67 @@
+package backend;
+import java.io.IOException;
+import java.net.*;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Parámetros compartidos del modo radio (RadioServer / RadioListener).
+ *
+ * Datos:    [seq global (4 bytes)][paquetes por vuelta (4 bytes)][inicio de trama (2 bytes)][payload]
+ *           El índice dentro de la canción es seq % total; el tercer campo es el offset del primer
+ *           inicio de trama MP3 en el payload, o Mp3Frames.NO_FRAME.
+ * Control:  NACK (ver Nack) al grupo en el puerto de control, que escuchan el servidor y todos
+ *           los oyentes: un oyente que oye el NACK de otro por el mismo paquete suprime el suyo.
+ *           Al terminar la emisión el servidor envía END|siguienteSeq al puerto de datos.
+ *
+ * Configuración: -Dmp3.radio.group (239.255.0.1 por defecto; una dirección de broadcast también sirve),
+ * -Dmp3.radio.port (4446; el de control es el siguiente) y -Dmp3.radio.iface (interfaz de red;
+ * por defecto la de loopback, para pruebas en una sola máquina).
+ */
+public final class Radio {
+    public static final int HEADER_SIZE = 10;
+    public static final String END = "END";
+    public static final int DEFAULT_PORT = 4446;
+
+    private Radio() {
+    }
+
+    public static InetAddress group() throws UnknownHostException {
+        return InetAddress.getByName(System.getProperty("mp3.radio.group", "239.255.0.1"));
+    }
+
+    public static int dataPort() {
+        return Integer.getInteger("mp3.radio.port", DEFAULT_PORT);
+    }
+
+    public static int controlPort() {
+        return dataPort() + 1;
+    }
+
+    public static NetworkInterface networkInterface() throws IOException {
+        String name = System.getProperty("mp3.radio.iface");
+        NetworkInterface iface = name != null
+                ? NetworkInterface.getByName(name)
+                : NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+        if (iface == null) {
+            throw new IOException("Interfaz de red no encontrada: " + name);
+        }
+        return iface;
+    }
+
+    /**
+     * Canal para enviar al grupo; si {@code port} es mayor que 0 además recibe en ese puerto
+     * (uniéndose al grupo si es multicast).
+     */
+    public static DatagramChannel open(InetAddress group, int port, NetworkInterface iface) throws IOException {
+        DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET)
+                .setOption(StandardSocketOptions.SO_REUSEADDR, true)
+                .setOption(StandardSocketOptions.IP_MULTICAST_IF, iface)
+                .setOption(StandardSocketOptions.SO_BROADCAST, !group.isMulticastAddress());
+        channel.bind(new InetSocketAddress(Math.max(0, port)));
+        if (port > 0 && group.isMulticastAddress()) {
+            channel.join(group, iface);
+        }
+        channel.configureBlocking(false);
+        return channel;
+    }
+}
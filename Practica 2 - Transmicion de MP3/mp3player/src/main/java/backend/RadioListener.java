@@ -0,0 +1,339 @@
+package backend;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Oyente del modo radio (ver RadioServer).
+ *
+ * Se une al grupo en cualquier momento y empieza a grabar en el primer paquete que contiene
+ * un inicio de trama MP3. Por defecto graba hasta el final de la vuelta en curso.
+ *
+ * Reparación: al detectar un hueco espera un tiempo aleatorio (0..NACK_BACKOFF) antes de
+ * enviar el NACK al grupo de control; si en ese tiempo oye el NACK de otro oyente por el
+ * mismo paquete, suprime el suyo y espera la reparación. Tras MAX_NACKS intentos el paquete
+ * se da por perdido y la grabación continúa en el siguiente inicio de trama.
+ *
+ * Uso: java backend.RadioListener [archivoSalida]
+ *   -Dmp3.radio.packets=N  paquetes a grabar (0 = hasta el final de la canción)
+ *   -Dmp3.radio.loss=p     pérdida simulada de datos, para probar la reparación en loopback
+ */
+public class RadioListener {
+    private static final int WINDOW = 512; // Paquetes que se pueden reordenar a la vez
+    private static final int NACK_BACKOFF = 20; // ms máximos de espera aleatoria antes de un NACK
+    private static final int REPAIR_WAIT = 150; // ms hasta volver a pedir un paquete
+    private static final int MAX_NACKS = 4;
+    private static final int IDLE_TIMEOUT = 5000; // ms sin datos: la emisión terminó
+
+    private final Random random = new Random();
+    private final LossModel loss;
+    private final OutputStream output;
+    private final int limit;
+
+    // Ventana circular indexada por seq % WINDOW
+    private final byte[][] slots = new byte[WINDOW][];
+    private final int[] slotSeq = new int[WINDOW];
+    private final int[] slotLength = new int[WINDOW];
+    private final int[] slotFrame = new int[WINDOW];
+    private final int[] nackSeq = new int[WINDOW];
+    private final long[] nackAt = new long[WINDOW];
+    private final int[] nackAttempts = new int[WINDOW];
+
+    private final ByteBuffer in = ByteBuffer.allocate(Session.MAX_UDP_PAYLOAD);
+    private final ByteBuffer nackBuffer = ByteBuffer.allocateDirect(Nack.SIZE);
+    private DatagramChannel control;
+    private InetSocketAddress controlTarget;
+
+    private boolean started = false;
+    private boolean resync = true; // Descartar bytes hasta el próximo inicio de trama
+    private int expected; // Siguiente seq a escribir
+    private int highest; // Mayor seq conocido
+    private int stopAt; // Primer seq que ya no se graba
+
+    private int received = 0;
+    private int duplicates = 0;
+    private int repaired = 0;
+    private int lost = 0;
+    private int nacksSent = 0;
+    private int nacksSuppressed = 0;
+    private int simulatedDrops = 0;
+    private long bytesWritten = 0;
+
+    private RadioListener(OutputStream output, int limit, LossModel loss) {
+        this.output = output;
+        this.limit = limit;
+        this.loss = loss;
+        Arrays.fill(slotSeq, -1);
+        Arrays.fill(nackSeq, -1);
+    }
+
+    public static void main(String[] args) {
+        File outputFile = args.length > 0
+                ? new File(args[0])
+                : new File(SongCatalog.fromResources().getSongDir(), "radio_recibida.mp3");
+        double lossRate = Double.parseDouble(System.getProperty("mp3.radio.loss", "0"));
+        LossModel loss = lossRate > 0 ? LossModel.random(lossRate, System.nanoTime()) : LossModel.none();
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+            RadioListener listener = new RadioListener(out, Integer.getInteger("mp3.radio.packets", 0), loss);
+            listener.listen();
+            System.out.println("\n✓ Grabación guardada en: " + outputFile.getAbsolutePath());
+        } catch (IOException e) {
+            System.err.println("Error en el oyente: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void listen() throws IOException {
+        InetAddress group = Radio.group();
+        NetworkInterface iface = Radio.networkInterface();
+        System.out.println("Sintonizando " + group.getHostAddress() + ":" + Radio.dataPort()
+                + " (interfaz " + iface.getName() + ", pérdida simulada: " + loss.describe() + ")");
+
+        try (DatagramChannel data = Radio.open(group, Radio.dataPort(), iface);
+             DatagramChannel controlChannel = Radio.open(group, Radio.controlPort(), iface);
+             Selector selector = Selector.open()) {
+            control = controlChannel;
+            controlTarget = new InetSocketAddress(group, Radio.controlPort());
+            SelectionKey dataKey = data.register(selector, SelectionKey.OP_READ);
+            control.register(selector, SelectionKey.OP_READ);
+
+            long lastData = System.nanoTime();
+            while (!started || expected < stopAt) {
+                long now = System.nanoTime();
+                long nextTimer = started ? runTimers(now) : Long.MAX_VALUE;
+                long idleLeft = IDLE_TIMEOUT * 1_000_000L - (now - lastData);
+                if (idleLeft <= 0) {
+                    System.out.println("⚠ Sin datos de la radio durante " + IDLE_TIMEOUT + " ms");
+                    break;
+                }
+                long timeout = Math.max(1, Math.min(idleLeft, nextTimer - now) / 1_000_000L);
+                if (selector.select(timeout) == 0) continue;
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (key == dataKey) {
+                        if (drainData(data)) lastData = System.nanoTime();
+                    } else {
+                        drainControl();
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        }
+        output.flush();
+
+        System.out.println("\n=== Estadísticas del oyente ===");
+        System.out.println("Paquetes recibidos: " + received);
+        System.out.println("Duplicados: " + duplicates);
+        System.out.println("Reparados por NACK: " + repaired);
+        System.out.println("Perdidos: " + lost);
+        System.out.println("NACKs enviados: " + nacksSent + " | suprimidos: " + nacksSuppressed);
+        if (simulatedDrops > 0) {
+            System.out.println("Pérdidas simuladas: " + simulatedDrops);
+        }
+        System.out.println("Bytes grabados: " + bytesWritten);
+    }
+
+    /** @return true si llegó al menos un paquete de datos */
+    private boolean drainData(DatagramChannel data) throws IOException {
+        boolean any = false;
+        while (true) {
+            in.clear();
+            if (data.receive(in) == null) return any;
+            in.flip();
+            any = true;
+
+            if (Handshake.startsWith(in.array(), in.limit(), Radio.END)) {
+                onEnd(Handshake.parse(in.array(), in.limit()));
+                continue;
+            }
+            if (in.remaining() < Radio.HEADER_SIZE) continue;
+            if (loss.drop()) {
+                simulatedDrops++;
+                continue;
+            }
+            onData(in.getInt(), in.getInt(), in.getShort() & 0xFFFF);
+        }
+    }
+
+    private void onData(int seq, int total, int frame) throws IOException {
+        if (!started) {
+            // Oyente tardío: esperamos un paquete que contenga un inicio de trama
+            if (frame == Mp3Frames.NO_FRAME) return;
+            started = true;
+            expected = seq;
+            highest = seq - 1;
+            stopAt = limit > 0 ? seq + limit : seq + (total - seq % total);
+            System.out.println("Sintonizado en el paquete " + seq + " (" + (seq % total) + "/" + total
+                    + " de la canción) | grabando " + (stopAt - seq) + " paquetes\n");
+        }
+        if (seq < expected) {
+            duplicates++; // Reparación que ya llegó por otra vía
+            return;
+        }
+        if (seq >= stopAt) {
+            markKnown(stopAt); // Fuera de lo que grabamos, pero revela huecos al final
+            return;
+        }
+        // Demasiado adelantado para la ventana: lo más viejo se da por perdido
+        while (seq - expected >= WINDOW) {
+            giveUp();
+        }
+
+        int slot = seq % WINDOW;
+        if (slotSeq[slot] == seq) {
+            duplicates++;
+            return;
+        }
+        if (nackSeq[slot] == seq && nackAttempts[slot] > 0) {
+            repaired++;
+        }
+        int length = in.remaining();
+        if (slots[slot] == null || slots[slot].length < length) {
+            slots[slot] = new byte[length];
+        }
+        in.get(slots[slot], 0, length);
+        slotSeq[slot] = seq;
+        slotLength[slot] = length;
+        slotFrame[slot] = frame;
+        nackSeq[slot] = -1;
+        received++;
+
+        markKnown(seq);
+        highest = Math.max(highest, seq);
+        deliver();
+    }
+
+    /**
+     * El emisor ya llegó a {@code end}: los huecos anteriores se programan para NACK,
+     * cada uno tras una espera aleatoria para dar tiempo a oír el NACK de otro oyente.
+     */
+    private void markKnown(int end) {
+        long now = System.nanoTime();
+        for (int s = Math.max(highest + 1, expected); s < end; s++) {
+            int slot = s % WINDOW;
+            nackSeq[slot] = s;
+            nackAttempts[slot] = 0;
+            nackAt[slot] = now + random.nextInt(NACK_BACKOFF * 1_000_000);
+        }
+        highest = Math.max(highest, end - 1);
+    }
+
+    private void onEnd(Handshake end) throws IOException {
+        int nextSeq = Integer.parseInt(end.getArgument());
+        if (!started) return;
+        stopAt = Math.min(stopAt, nextSeq);
+        markKnown(stopAt);
+        highest = Math.min(highest, stopAt - 1);
+        deliver();
+    }
+
+    /** Escribe los paquetes contiguos a partir de {@code expected}. */
+    private void deliver() throws IOException {
+        while (expected < stopAt && slotSeq[expected % WINDOW] == expected) {
+            int slot = expected % WINDOW;
+            int offset = 0;
+            if (resync) {
+                // Tras unirse o tras una pérdida, solo se retoma en un inicio de trama
+                if (slotFrame[slot] == Mp3Frames.NO_FRAME) {
+                    offset = slotLength[slot];
+                } else {
+                    offset = slotFrame[slot];
+                    resync = false;
+                }
+            }
+            output.write(slots[slot], offset, slotLength[slot] - offset);
+            bytesWritten += slotLength[slot] - offset;
+            slotSeq[slot] = -1;
+            expected++;
+        }
+    }
+
+    /** Da por perdido el paquete {@code expected} y sigue con el siguiente. */
+    private void giveUp() throws IOException {
+        int slot = expected % WINDOW;
+        if (slotSeq[slot] != expected) {
+            lost++;
+            resync = true;
+            nackSeq[slot] = -1;
+            expected++;
+        }
+        deliver();
+    }
+
+    /**
+     * Envía los NACKs vencidos (agrupando paquetes consecutivos) y abandona los agotados.
+     * @return instante del próximo temporizador
+     */
+    private long runTimers(long now) throws IOException {
+        long nextTimer = Long.MAX_VALUE;
+        int rangeStart = -1;
+        int rangeCount = 0;
+        for (int s = expected; s <= highest && s < stopAt; s++) {
+            int slot = s % WINDOW;
+            if (slotSeq[slot] == s || nackSeq[slot] != s) continue;
+            if (nackAt[slot] > now) {
+                nextTimer = Math.min(nextTimer, nackAt[slot]);
+                continue;
+            }
+            if (nackAttempts[slot] >= MAX_NACKS) {
+                if (s == expected) {
+                    giveUp();
+                }
+                continue;
+            }
+            nackAttempts[slot]++;
+            nackAt[slot] = now + REPAIR_WAIT * 1_000_000L;
+            nextTimer = Math.min(nextTimer, nackAt[slot]);
+            if (rangeStart >= 0 && rangeStart + rangeCount == s && rangeCount < Nack.MAX_COUNT) {
+                rangeCount++;
+            } else {
+                sendNack(rangeStart, rangeCount);
+                rangeStart = s;
+                rangeCount = 1;
+            }
+        }
+        sendNack(rangeStart, rangeCount);
+        return nextTimer;
+    }
+
+    private void sendNack(int first, int count) throws IOException {
+        if (count <= 0) return;
+        Nack.encode(nackBuffer, first, count);
+        control.send(nackBuffer, controlTarget);
+        nacksSent++;
+    }
+
+    /**
+     * NACKs del grupo de control (de otros oyentes o el eco de los propios): quien aún no pidió
+     * esos paquetes suprime su NACK y espera la reparación.
+     */
+    private void drainControl() throws IOException {
+        while (true) {
+            in.clear();
+            if (control.receive(in) == null) return;
+            in.flip();
+            if (!Nack.isNack(in) || !started) continue;
+
+            int first = Nack.first(in);
+            int last = first + Nack.count(in);
+            long now = System.nanoTime();
+            for (int s = Math.max(first, expected); s < last && s <= highest; s++) {
+                int slot = s % WINDOW;
+                if (slotSeq[slot] == s || nackSeq[slot] != s) continue;
+                if (nackAttempts[slot] == 0) {
+                    nackAttempts[slot] = 1; // Cuenta como pedido: otro oyente lo hizo por nosotros
+                    nacksSuppressed++;
+                }
+                nackAt[slot] = now + REPAIR_WAIT * 1_000_000L;
+            }
+        }
+    }
+}
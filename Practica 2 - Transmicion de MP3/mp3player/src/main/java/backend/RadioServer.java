@@ -0,0 +1,194 @@
+package backend;
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Arrays;
+
+/**
+ * Modo radio: emite una canción una sola vez a un grupo multicast, sin importar
+ * cuántos oyentes haya, al ritmo de reproducción y en bucle.
+ *
+ * Los oyentes piden por NACK los paquetes que perdieron y la reparación también va al grupo,
+ * así que una sola retransmisión sirve a todos los que perdieron el mismo paquete. Para no
+ * saturar al servidor, una reparación no se repite si ya se hizo hace menos de REPAIR_HOLDDOWN.
+ *
+ * Uso: java backend.RadioServer [pista]
+ *   -Dmp3.radio.speed=N   reproduce N veces más rápido (para pruebas)
+ *   -Dmp3.radio.loops=N   vueltas a emitir (0 = sin fin)
+ *   -Dmp3.radio.payload=P bytes de audio por paquete
+ */
+public class RadioServer {
+    private static final int HISTORY = 1024; // Paquetes recientes que aún se pueden reparar
+    private static final long REPAIR_HOLDDOWN = 40_000_000L; // ns sin repetir la misma reparación
+    private static final int LINGER = 2000; // ms atendiendo NACKs tras el END
+    private static final int FALLBACK_BITRATE = 128_000; // Si no se reconocen tramas MP3
+
+    private final byte[][] paquetes;
+    private final int[] frameStarts;
+    private final InetSocketAddress target;
+    private final ByteBuffer out;
+    private final ByteBuffer in = ByteBuffer.allocateDirect(Session.MAX_UDP_PAYLOAD);
+    private final int[] repairedSeq = new int[HISTORY];
+    private final long[] repairedAt = new long[HISTORY];
+    private DatagramChannel data;
+    private DatagramChannel control;
+    private int nextSeq = 0;
+    private int nacksReceived = 0;
+    private int repairsSent = 0;
+    private int repairsSuppressed = 0;
+
+    private RadioServer(byte[][] paquetes, int[] frameStarts, InetSocketAddress target) {
+        this.paquetes = paquetes;
+        this.frameStarts = frameStarts;
+        this.target = target;
+        this.out = ByteBuffer.allocateDirect(Radio.HEADER_SIZE + maxLength(paquetes));
+        Arrays.fill(repairedSeq, -1);
+    }
+
+    public static void main(String[] args) {
+        String trackId = args.length > 0 ? args[0] : SongCatalog.DEFAULT_TRACK;
+        try {
+            SongCatalog catalog = SongCatalog.fromResources();
+            if (catalog.resolve(trackId) == null) {
+                System.err.println("Pista no encontrada: " + trackId + " (disponibles: " + catalog.list() + ")");
+                return;
+            }
+            byte[] data = catalog.read(trackId);
+            int payloadSize = Integer.getInteger("mp3.radio.payload", Session.DEFAULT_DATAGRAM - Radio.HEADER_SIZE);
+            payloadSize = Math.max(1, Math.min(Session.MAX_UDP_PAYLOAD - Radio.HEADER_SIZE, payloadSize));
+
+            // Paquetes alineados a tramas: un paquete perdido quita tramas enteras
+            byte[][] paquetes = new Mp3Player().fragmentarPorTramas(data, payloadSize);
+            Mp3Frames frames = Mp3Frames.parse(data);
+            int[] frameStarts = new int[paquetes.length];
+            int offset = 0;
+            for (int i = 0; i < paquetes.length; i++) {
+                frameStarts[i] = frames.firstFrameIn(offset, paquetes[i].length);
+                offset += paquetes[i].length;
+            }
+
+            // Ritmo de emisión: la duración de la canción repartida entre sus paquetes
+            long durationMicros = frames.getDurationMicros() > 0
+                    ? frames.getDurationMicros()
+                    : data.length * 8L * 1_000_000L / FALLBACK_BITRATE;
+            double speed = Double.parseDouble(System.getProperty("mp3.radio.speed", "1"));
+            long intervalNanos = (long) (durationMicros * 1000.0 / paquetes.length / speed);
+
+            System.out.println("=== Radio MP3 ===");
+            System.out.println("Pista: " + trackId + " | " + frames.getFrameCount() + " tramas | "
+                    + String.format("%.1f s", durationMicros / 1e6));
+            System.out.println("Grupo: " + Radio.group().getHostAddress() + ":" + Radio.dataPort()
+                    + " (control " + Radio.controlPort() + ") | interfaz " + Radio.networkInterface().getName());
+            System.out.println("Paquetes por vuelta: " + paquetes.length + " | payload: " + payloadSize
+                    + " bytes | intervalo: " + String.format("%.2f ms", intervalNanos / 1e6) + "\n");
+
+            InetSocketAddress target = new InetSocketAddress(Radio.group(), Radio.dataPort());
+            new RadioServer(paquetes, frameStarts, target)
+                    .broadcast(intervalNanos, Integer.getInteger("mp3.radio.loops", 0));
+        } catch (IOException e) {
+            System.err.println("Error en la radio: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void broadcast(long intervalNanos, int loops) throws IOException {
+        InetAddress group = Radio.group();
+        NetworkInterface iface = Radio.networkInterface();
+        int total = paquetes.length;
+
+        try (DatagramChannel dataChannel = Radio.open(group, 0, iface);
+             DatagramChannel controlChannel = Radio.open(group, Radio.controlPort(), iface);
+             Selector selector = Selector.open()) {
+            data = dataChannel;
+            control = controlChannel;
+            control.register(selector, SelectionKey.OP_READ);
+
+            long end = loops > 0 ? (long) loops * total : Long.MAX_VALUE;
+            long next = System.nanoTime();
+            while (nextSeq < end) {
+                long wait = next - System.nanoTime();
+                if (wait <= 0) {
+                    send(nextSeq++);
+                    next += intervalNanos;
+                    if (nextSeq % total == 0) {
+                        System.out.println("Vuelta " + (nextSeq / total) + " completada | NACKs: " + nacksReceived
+                                + " | reparaciones: " + repairsSent + " | suprimidas: " + repairsSuppressed);
+                    }
+                    continue;
+                }
+                int ready = wait >= 1_000_000L ? selector.select(wait / 1_000_000L) : selector.selectNow();
+                if (ready > 0) {
+                    selector.selectedKeys().clear();
+                    serveNacks();
+                }
+            }
+
+            // Fin de la emisión: avisamos el último seq para que los oyentes detecten huecos finales
+            byte[] endMessage = new Handshake(Radio.END, String.valueOf(nextSeq)).toBytes();
+            for (int i = 0; i < 3; i++) {
+                data.send(ByteBuffer.wrap(endMessage), target);
+            }
+            long lingerUntil = System.nanoTime() + LINGER * 1_000_000L;
+            long remaining;
+            while ((remaining = lingerUntil - System.nanoTime()) > 0) {
+                if (selector.select(Math.max(1, remaining / 1_000_000L)) > 0) {
+                    selector.selectedKeys().clear();
+                    serveNacks();
+                }
+            }
+
+            System.out.println("\n=== Emisión terminada ===");
+            System.out.println("Paquetes emitidos: " + nextSeq);
+            System.out.println("NACKs recibidos: " + nacksReceived);
+            System.out.println("Reparaciones enviadas: " + repairsSent);
+            System.out.println("Reparaciones suprimidas: " + repairsSuppressed);
+        }
+    }
+
+    /**
+     * Atiende los NACKs pendientes. Solo se reparan paquetes ya emitidos y aún en el historial.
+     */
+    private void serveNacks() throws IOException {
+        while (true) {
+            in.clear();
+            if (control.receive(in) == null) return;
+            in.flip();
+            if (!Nack.isNack(in)) continue;
+            nacksReceived++;
+
+            int first = Nack.first(in);
+            int last = Math.min(first + Nack.count(in), nextSeq); // exclusivo
+            long now = System.nanoTime();
+            for (int s = Math.max(Math.max(first, 0), nextSeq - HISTORY); s < last; s++) {
+                int slot = s % HISTORY;
+                if (repairedSeq[slot] == s && now - repairedAt[slot] < REPAIR_HOLDDOWN) {
+                    repairsSuppressed++; // Otro oyente ya la pidió: la reparación anterior le sirve
+                    continue;
+                }
+                send(s);
+                repairedSeq[slot] = s;
+                repairedAt[slot] = now;
+                repairsSent++;
+            }
+        }
+    }
+
+    private void send(int seq) throws IOException {
+        int index = seq % paquetes.length;
+        out.clear();
+        out.putInt(seq).putInt(paquetes.length).putShort((short) frameStarts[index]).put(paquetes[index]);
+        out.flip();
+        data.send(out, target);
+    }
+
+    private static int maxLength(byte[][] paquetes) {
+        int max = 0;
+        for (byte[] p : paquetes) {
+            max = Math.max(max, p.length);
+        }
+        return max;
+    }
+}
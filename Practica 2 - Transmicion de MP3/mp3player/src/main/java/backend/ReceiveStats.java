@@ -0,0 +1,114 @@
+package backend;
+
+/**
+ * Resultado de una recepción Go-Back-N: si completó y las estadísticas que ya se muestran
+ * al terminar, para que el cliente pueda medir el enlace (p. ej. el control de bitrate adaptativo).
+ */
+public class ReceiveStats {
+    private final boolean complete;
+    private final boolean corrupt;
+    private final double seconds;
+    private final long bytes;
+    private final int packetsReceived;
+    private final int duplicates;
+    private final int outOfOrder;
+    private final int recovered;
+    private final int acksSent;
+    private final int skipped;
+    private final int rejected;
+
+    public ReceiveStats(boolean complete, boolean corrupt, double seconds, long bytes, int packetsReceived,
+                        int duplicates, int outOfOrder, int recovered, int acksSent, int skipped, int rejected) {
+        this.complete = complete;
+        this.corrupt = corrupt;
+        this.seconds = seconds;
+        this.bytes = bytes;
+        this.packetsReceived = packetsReceived;
+        this.duplicates = duplicates;
+        this.outOfOrder = outOfOrder;
+        this.recovered = recovered;
+        this.acksSent = acksSent;
+        this.skipped = skipped;
+        this.rejected = rejected;
+    }
+
+    /**
+     * Estadísticas de varias recepciones simultáneas (ver Stripes): completa si lo están todas,
+     * dañada si lo está alguna, contadores sumados y el tiempo de la más lenta.
+     */
+    public static ReceiveStats combine(ReceiveStats[] parts) {
+        boolean complete = true;
+        boolean corrupt = false;
+        double seconds = 0;
+        long bytes = 0;
+        int packetsReceived = 0, duplicates = 0, outOfOrder = 0, recovered = 0, acksSent = 0, skipped = 0, rejected = 0;
+        for (ReceiveStats p : parts) {
+            complete &= p.complete;
+            corrupt |= p.corrupt;
+            seconds = Math.max(seconds, p.seconds);
+            bytes += p.bytes;
+            packetsReceived += p.packetsReceived;
+            duplicates += p.duplicates;
+            outOfOrder += p.outOfOrder;
+            recovered += p.recovered;
+            acksSent += p.acksSent;
+            skipped += p.skipped;
+            rejected += p.rejected;
+        }
+        return new ReceiveStats(complete, corrupt, seconds, bytes, packetsReceived, duplicates, outOfOrder,
+                recovered, acksSent, skipped, rejected);
+    }
+
+    /** Llegaron todos los paquetes y, si el servidor anunció un SHA-256, coincide. */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /** Llegaron todos los paquetes pero el SHA-256 no coincide: el archivo no sirve. */
+    public boolean isCorrupt() {
+        return corrupt;
+    }
+
+    public double getSeconds() {
+        return seconds;
+    }
+
+    /** Bytes de audio útiles guardados (sin duplicados ni cabeceras). */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /** Goodput en kbit/s. */
+    public double goodputKbps() {
+        return seconds > 0 ? bytes * 8 / seconds / 1000 : 0;
+    }
+
+    public int getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    public int getDuplicates() {
+        return duplicates;
+    }
+
+    public int getOutOfOrder() {
+        return outOfOrder;
+    }
+
+    public int getRecovered() {
+        return recovered;
+    }
+
+    public int getAcksSent() {
+        return acksSent;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /** Datagramas descartados por ser de otra sesión o tener el CRC32C incorrecto. */
+    public int getRejected() {
+        return rejected;
+    }
+}
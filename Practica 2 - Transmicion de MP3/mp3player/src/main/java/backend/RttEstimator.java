@@ -0,0 +1,80 @@
+package backend;
+
+/**
+ * RTT suavizado y timeout de retransmisión (RTO) al estilo de TCP (RFC 6298):
+ * SRTT y RTTVAR con medias móviles y RTO = SRTT + 4 * RTTVAR acotado.
+ * Solo deben entrar muestras de paquetes enviados una vez (algoritmo de Karn).
+ *
+ * Cada timeout duplica el RTO (como mucho MAX_BACKOFF veces el calculado); en cuanto un ACK
+ * confirma datos nuevos se vuelve al calculado.
+ */
+public class RttEstimator {
+    private static final int MAX_BACKOFF = 4;
+
+    private final long minRto;
+    private final long maxRto;
+    private long srtt = -1; // ns
+    private long rttvar;
+    private long computedRto; // Sin duplicar por timeouts
+    private long rto;
+
+    /**
+     * @param minRtoNanos     cota inferior (por encima del retardo de los ACKs retardados)
+     * @param maxRtoNanos     cota superior
+     * @param initialRtoNanos RTO antes de la primera muestra
+     */
+    public RttEstimator(long minRtoNanos, long maxRtoNanos, long initialRtoNanos) {
+        this.minRto = Math.min(minRtoNanos, maxRtoNanos);
+        this.maxRto = maxRtoNanos;
+        this.computedRto = clamp(initialRtoNanos);
+        this.rto = computedRto;
+    }
+
+    /** Parte de la medición de una transferencia anterior al mismo cliente. */
+    public void seed(long srttNanos, long rttvarNanos) {
+        srtt = srttNanos;
+        rttvar = rttvarNanos;
+        computedRto = clamp(srtt + 4 * rttvar);
+        rto = computedRto;
+    }
+
+    public void sample(long rttNanos) {
+        if (rttNanos <= 0) return;
+        if (srtt < 0) {
+            srtt = rttNanos;
+            rttvar = rttNanos / 2;
+        } else {
+            rttvar = (3 * rttvar + Math.abs(srtt - rttNanos)) / 4;
+            srtt = (7 * srtt + rttNanos) / 8;
+        }
+        computedRto = clamp(srtt + 4 * rttvar);
+        rto = computedRto;
+    }
+
+    /** Tras un timeout se espera el doble antes del siguiente. */
+    public void backoff() {
+        rto = Math.min(Math.min(maxRto, rto * 2), computedRto * MAX_BACKOFF);
+    }
+
+    /** Un ACK confirmó datos nuevos: el camino responde. */
+    public void onProgress() {
+        rto = computedRto;
+    }
+
+    private long clamp(long nanos) {
+        return Math.max(minRto, Math.min(maxRto, nanos));
+    }
+
+    public long getRtoNanos() {
+        return rto;
+    }
+
+    /** RTT suavizado en ns, o -1 sin muestras. */
+    public long getSrttNanos() {
+        return srtt;
+    }
+
+    public long getRttvarNanos() {
+        return rttvar;
+    }
+}
@@ -0,0 +1,148 @@
+package backend;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.*;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Coste del camino de envío de GoBackNSender, por MB enviado: llamadas a send() (una llamada
+ * al sistema por datagrama), datagramas armados, veces que el hilo se durmió y CPU del hilo.
+ *
+ * Compara el camino anterior (cada envío se arma de nuevo, un datagrama por turno del Pacer)
+ * con el actual (datagramas armados una vez y enviados en lotes). La pérdida se aplica al
+ * enviar, como en PayloadBenchmark: con pérdida la mayor parte del trabajo son retransmisiones.
+ *
+ * Uso: java backend.SendBenchmark [pista]
+ */
+public class SendBenchmark {
+    private static final int HEADER_SIZE = PacketHeader.SIZE;
+    private static final int RECEIVE_TIMEOUT = 10000; // ms sin datos; más allá se considera que no completó
+    private static final int RUNS = 5; // Se reporta la mediana (por CPU)
+    private static final double[] LOSSES = {0.0, 0.01, 0.05};
+
+    /** Contadores de una transferencia, por MB enviado. */
+    private static class Result implements Comparable<Result> {
+        boolean complete;
+        double seconds;
+        double sendsPerMb;
+        double encodedPerMb;
+        double wakeupsPerMb;
+        double cpuMsPerMb;
+        double resentShare; // Fracción de los bytes enviados que fueron retransmisiones
+
+        @Override
+        public int compareTo(Result o) {
+            return Double.compare(cpuMsPerMb, o.cpuMsPerMb);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String trackId = args.length > 0 ? args[0] : SongCatalog.DEFAULT_TRACK;
+        SongCatalog catalog = SongCatalog.fromResources();
+        if (catalog.resolve(trackId) == null) {
+            System.err.println("Pista no encontrada: " + trackId + " (disponibles: " + catalog.list() + ")");
+            return;
+        }
+        byte[] song = catalog.read(trackId);
+
+        PrintStream console = System.out;
+        console.println("=== Coste del envío por MB: armar cada vez vs. plantillas y lotes ===");
+        console.println("Pista: " + trackId + " (" + song.length / 1024 + " KB) | ventana: "
+                + GoBackNSender.WINDOW_SIZE + " | mediana de " + RUNS + " corridas\n");
+        console.printf("%-8s %-10s %9s %8s %11s %10s %11s %9s%n",
+                "Pérdida", "Camino", "Reenvío", "send()", "Armados", "Dormidas", "CPU", "Tiempo");
+
+        // Una corrida descartada para que el JIT no penalice a la primera medición
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            run(song, 0, true, 0);
+        } finally {
+            System.setOut(console);
+        }
+
+        for (double loss : LOSSES) {
+            for (boolean templates : new boolean[]{false, true}) {
+                Result[] results = new Result[RUNS];
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                try {
+                    for (int r = 0; r < RUNS; r++) {
+                        results[r] = run(song, loss, templates, r);
+                    }
+                } finally {
+                    System.setOut(console);
+                }
+                Arrays.sort(results);
+                Result m = results[RUNS / 2];
+                console.printf("%-8s %-10s %8.1f%% %8.0f %11.0f %10.0f %8.1f ms %8.2fs%s%n",
+                        String.format("%.0f%%", loss * 100), templates ? "plantillas" : "antes",
+                        m.resentShare * 100, m.sendsPerMb, m.encodedPerMb, m.wakeupsPerMb, m.cpuMsPerMb,
+                        m.seconds, m.complete ? "" : "  (no completó)");
+            }
+            console.println();
+        }
+        console.println("send(), armados, dormidas y CPU son por MB enviado (reenvíos incluidos).");
+    }
+
+    private static Result run(byte[] song, double loss, boolean templates, int seed) throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        int payload = Session.payloadFor(Session.DEFAULT_DATAGRAM, HEADER_SIZE, 0);
+        byte[][] packets = new Mp3Player().fragmentarMP3(song, payload);
+        Random random = new Random(seed * 31L + (long) (loss * 1000));
+
+        // La pérdida se aplica después de la llamada: el emisor paga el envío igual
+        DatagramSocket serverSocket = new DatagramSocket(0, loopback) {
+            @Override
+            public void send(DatagramPacket p) throws IOException {
+                if (random.nextDouble() >= loss) super.send(p);
+            }
+        };
+        DatagramChannel clientChannel = DatagramChannel.open().bind(new InetSocketAddress(loopback, 0));
+        clientChannel.socket().setSoTimeout(RECEIVE_TIMEOUT);
+        clientChannel.connect(new InetSocketAddress(loopback, serverSocket.getLocalPort()));
+
+        Session session = new Session("benchmark", payload + HEADER_SIZE, payload, packets.length, 0,
+                ContentHash.of(packets), false, 0, seed + 1);
+        GoBackNSender gbn = new GoBackNSender(serverSocket, session, packets, null, null, null, new byte[0],
+                loopback, clientChannel.socket().getLocalPort());
+        if (!templates) {
+            gbn.sendPath(1, false);
+        }
+        Thread sender = new Thread(() -> {
+            try {
+                gbn.run();
+            } catch (IOException e) {
+                // El receptor abandonó o se cerró el socket
+            }
+        });
+        sender.setDaemon(true);
+
+        File file = File.createTempFile("send-benchmark", ".part");
+        file.deleteOnExit();
+        Result result = new Result();
+        long start = System.nanoTime();
+        sender.start();
+        try (PacketFile received = new PacketFile(file, payload, packets.length, new BitSet())) {
+            result.complete = GoBackNReceiver.receive(clientChannel, loopback, serverSocket.getLocalPort(),
+                    session, received).isComplete();
+        }
+        result.seconds = (System.nanoTime() - start) / 1e9;
+        sender.join(1000);
+        serverSocket.close();
+        clientChannel.close();
+        file.delete();
+
+        double megabytes = Math.max(1, gbn.getBytesSent()) / 1e6;
+        result.sendsPerMb = gbn.getSends() / megabytes;
+        result.encodedPerMb = gbn.getEncoded() / megabytes;
+        result.wakeupsPerMb = gbn.getWakeups() / megabytes;
+        result.cpuMsPerMb = gbn.getCpuNanos() / 1e6 / megabytes;
+        result.resentShare = Math.max(0, gbn.getBytesSent() - song.length - (long) packets.length * HEADER_SIZE)
+                / (double) gbn.getBytesSent();
+        return result;
+    }
+}
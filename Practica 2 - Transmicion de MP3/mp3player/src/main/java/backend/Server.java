@@ -1,152 +1,245 @@
 package backend;
 import java.io.*;
 import java.net.*;
-import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Server {
-    private static final int WINDOW_SIZE = 10; // Tamaño de la ventana Go-Back-N
-    private static final int TIMEOUT = 500; // Timeout en ms                    
-    private static final int HEADER_SIZE = 8; // 4 bytes seq + 4 bytes total
+    private static final int HEADER_SIZE = PacketHeader.SIZE;
     
     public static void main(String[] args) {
+        Mp3Player player = new Mp3Player();
+        SongCatalog catalog = SongCatalog.fromResources();
+        SongCache cache = SongCache.fromSystemProperties();
+        Map<String, String> hashes = new ConcurrentHashMap<>(); // SHA-256 por entrada de caché
+        Map<String, AbrLadder> ladders = new ConcurrentHashMap<>(); // Escaleras de bitrate por pista
+        Map<String, Long> durations = new ConcurrentHashMap<>(); // Duración en ms por pista
+        System.out.println("Catálogo en " + catalog.getSongDir() + ": " + catalog.list());
+
+        // Iniciamos el servidor UDP
+        DatagramSocket serverSocket = null;
         try {
-            // Instanciamos Mp3Player
-            Mp3Player player = new Mp3Player();
-
-            // Leemos el archivo MP3
-            var resource = Mp3Player.class.getClassLoader().getResource("song/cancion.mp3");
-            if (resource == null) {
-                System.err.println("No se encontró cancion.mp3 en resources/song");
-                return;
-            }
-            String path = new File(resource.toURI()).getAbsolutePath();
-            byte[] mp3Bytes = player.leerArchivoMP3(path);
-
-            if (mp3Bytes == null) return;
-
-            // Fragmentamos el MP3 en paquetes de 6500 bytes (dejando espacio para header)
-            byte[][] paquetes = player.fragmentarMP3(mp3Bytes, 6500 - HEADER_SIZE);
-            System.out.println("MP3 fragmentado en " + paquetes.length + " paquetes");
-            System.out.println("Usando Go-Back-N con ventana de tamaño: " + WINDOW_SIZE);
-
-            // Iniciamos el servidor UDP
-            DatagramSocket serverSocket = null;
-            try {
-                serverSocket = new DatagramSocket(1234);
-                serverSocket.setReuseAddress(true);
-                serverSocket.setSoTimeout(TIMEOUT);
-                System.out.println("Servidor iniciado en el puerto: " + serverSocket.getLocalPort());
-                System.out.println("Esperando mensaje READY del cliente...");
-
-                // Esperar mensaje READY del cliente
-                byte[] readyBuffer = new byte[256];
+            serverSocket = new DatagramSocket(1234);
+            serverSocket.setReuseAddress(true);
+            System.out.println("Servidor iniciado en el puerto: " + serverSocket.getLocalPort());
+            System.out.println("Usando Go-Back-N con ventana de tamaño: " + GoBackNSender.WINDOW_SIZE);
+
+            // Atendemos una transferencia tras otra; la caché sobrevive entre sesiones
+            byte[] readyBuffer = new byte[Session.MAX_UDP_PAYLOAD];
+            while (true) {
+                System.out.println("\nEsperando mensaje READY (o RESUME, MANIFEST, SEGMENT) del cliente...");
+                serverSocket.setSoTimeout(0);
+
+                // Un RESUME lleva el mapa de bits de lo recibido: puede ocupar un datagrama grande
                 DatagramPacket readyPacket = new DatagramPacket(readyBuffer, readyBuffer.length);
-                serverSocket.setSoTimeout(10000); // 10 segundos para READY
                 serverSocket.receive(readyPacket);
-                
-                String message = new String(readyPacket.getData(), 0, readyPacket.getLength()).trim();
-                if (!message.equals("READY")) {
-                    System.err.println("Mensaje inesperado del cliente: " + message);
-                    return;
+
+                Handshake ready = Handshake.parse(readyPacket.getData(), readyPacket.getLength());
+                boolean resume = ready.is(PartialDownload.RESUME);
+                boolean segment = ready.is(AdaptiveDownload.SEGMENT);
+                if (!ready.is(Handshake.READY) && !resume && !segment && !ready.is(Manifest.COMMAND)) {
+                    // ACKs tardíos de una sesión anterior u otros datagramas sueltos
+                    System.err.println("Mensaje inesperado del cliente: " + ready);
+                    continue;
                 }
-                
+
                 InetAddress clientAddress = readyPacket.getAddress();
                 int clientPort = readyPacket.getPort();
-                System.out.println("Cliente listo en " + clientAddress + ":" + clientPort);
-                
-                // Implementación de Go-Back-N
-                goBackN(serverSocket, paquetes, clientAddress, clientPort);
-                
-                System.out.println("✓ Transmisión completada exitosamente");
-                
-            } finally {
-                if (serverSocket != null && !serverSocket.isClosed()) {
-                    serverSocket.close();
-                    System.out.println("Servidor cerrado correctamente");
+                String trackId = ready.getArgument() != null ? ready.getArgument() : SongCatalog.DEFAULT_TRACK;
+                System.out.println("Cliente listo en " + clientAddress + ":" + clientPort + " | pista: " + trackId);
+
+                if (catalog.resolve(trackId) == null) {
+                    System.err.println("Pista no encontrada: " + trackId);
+                    byte[] error = Handshake.error("Pista no encontrada: " + trackId).toBytes();
+                    serverSocket.send(new DatagramPacket(error, error.length, clientAddress, clientPort));
+                    continue;
                 }
+
+                try {
+                    // Streaming adaptativo: el cliente pide primero la escalera de bitrates
+                    if (ready.is(Manifest.COMMAND)) {
+                        Manifest manifest = ladderFor(ladders, catalog, trackId).toManifest();
+                        System.out.println("Manifiesto: " + manifest);
+                        byte[] reply = manifest.toHandshake().toBytes();
+                        serverSocket.send(new DatagramPacket(reply, reply.length, clientAddress, clientPort));
+                        continue;
+                    }
+
+                    // ...y después cada segmento con el bitrate elegido (SEGMENT|pista|rate=R|index=i)
+                    AbrLadder ladder = segment ? ladderFor(ladders, catalog, trackId) : null;
+                    int rate = ready.intOption("rate", 0);
+                    int index = ready.intOption("index", -1);
+                    if (segment && (!ladder.hasRate(rate) || index < 0 || index >= ladder.getSegments())) {
+                        System.err.println("Segmento inexistente: " + ready);
+                        byte[] error = Handshake.error("Segmento inexistente: " + rate + " kbit/s #" + index).toBytes();
+                        serverSocket.send(new DatagramPacket(error, error.length, clientAddress, clientPort));
+                        continue;
+                    }
+                    if (segment) {
+                        System.out.println("Segmento " + index + "/" + ladder.getSegments() + " a " + rate + " kbit/s");
+                    }
+
+                    // FEC opcional negociado en el handshake (READY|pista|fec=K)
+                    int fecK = Fec.clampK(ready.intOption("fec", 0));
+
+                    // Modo en vivo (READY|pista|live=1|delay=R): paquetes alineados a tramas, sin FEC
+                    int liveDelay = !segment && ready.intOption("live", 0) == 1
+                            ? LiveSchedule.clampDelay(ready.intOption("delay", LiveSchedule.DEFAULT_DELAY))
+                            : 0;
+                    if (liveDelay > 0) {
+                        fecK = 0;
+                    }
+
+                    // Tamaño de datagrama: el máximo que anuncia el cliente, confirmado con sondas.
+                    // Al reanudar se conserva el payload original para que los offsets en disco coincidan;
+                    // entre segmentos el cliente repite el payload ya sondeado.
+                    int clientMax = Math.max(Session.MIN_DATAGRAM, Math.min(Session.MAX_UDP_PAYLOAD,
+                            ready.intOption("mtu", Session.DEFAULT_DATAGRAM)));
+                    int payloadSize = resume || segment ? ready.intOption("payload", 0) : 0;
+                    if (payloadSize > 0 && fecK > 0 && payloadSize + HEADER_SIZE + Fec.PARITY_HEADER > clientMax) {
+                        fecK = 0; // La paridad no cabría en el datagrama acordado originalmente
+                    }
+                    int datagramSize;
+                    if (payloadSize > 0 && payloadSize + HEADER_SIZE <= Session.MAX_UDP_PAYLOAD) {
+                        datagramSize = payloadSize + HEADER_SIZE + (fecK > 0 ? Fec.PARITY_HEADER : 0);
+                    } else {
+                        datagramSize = MtuProbe.probe(serverSocket, clientAddress, clientPort, clientMax);
+                        payloadSize = Session.payloadFor(datagramSize, HEADER_SIZE, fecK);
+                    }
+                    System.out.println("Datagrama negociado: " + datagramSize + " bytes (máximo del cliente: "
+                            + clientMax + ") | payload: " + payloadSize + " bytes");
+
+                    // Leemos y fragmentamos el MP3 solo si no está ya en caché para ese tamaño de payload.
+                    // En vivo se fragmenta por tramas: un paquete saltado quita tramas enteras.
+                    final int fragmentSize = payloadSize;
+                    final boolean byFrames = liveDelay > 0;
+                    String cacheKey = trackId + "@" + payloadSize + (byFrames ? "/tramas" : "")
+                            + (segment ? "/" + rate + "k/" + index : "");
+                    byte[][] paquetes = cache.get(cacheKey, key -> {
+                        byte[] data = segment ? ladder.segment(rate, index) : catalog.read(trackId);
+                        byte[][] fragments = byFrames
+                                ? player.fragmentarPorTramas(data, fragmentSize)
+                                : player.fragmentarMP3(data, fragmentSize);
+                        hashes.put(key, ContentHash.of(fragments));
+                        return fragments;
+                    });
+                    String sha256 = hashes.computeIfAbsent(cacheKey, key -> ContentHash.of(paquetes));
+                    System.out.println("MP3 fragmentado en " + paquetes.length + " paquetes | SHA-256: " + sha256);
+
+                    // Descarga en paralelo (READY|pista|streams=K): solo para descargas completas nuevas
+                    int streams = !resume && !segment && liveDelay == 0
+                            ? Stripes.clamp(ready.intOption("streams", 1), paquetes.length)
+                            : 1;
+                    // Con varios flujos cada uno calcula la paridad de sus propios paquetes
+                    byte[][] paridades = fecK > 0 && streams == 1 ? Fec.encode(paquetes, fecK) : null;
+
+                    // Al reanudar solo se envía lo que le falta al cliente, si el contenido no cambió
+                    int[] pendientes = null;
+                    if (resume && sha256.equals(ready.option("sha256", ""))) {
+                        pendientes = missingPackets(PartialDownload.parseHave(ready), paquetes.length);
+                        System.out.println("Reanudando: faltan " + pendientes.length + "/" + paquetes.length + " paquetes");
+                    } else if (resume) {
+                        System.out.println("El contenido cambió desde la descarga parcial: se envía completo");
+                    }
+
+                    LiveSchedule live = liveDelay > 0
+                            ? new LiveSchedule(paquetes, liveDelay, Double.parseDouble(System.getProperty("mp3.live.speed", "1")))
+                            : null;
+
+                    // ID de sesión nuevo en cada ACCEPT: el cliente descarta datagramas de otras transferencias
+                    Session session = new Session(trackId, datagramSize, payloadSize, paquetes.length, fecK,
+                            sha256, pendientes != null, liveDelay, ThreadLocalRandom.current().nextInt());
+                    if (!segment) {
+                        session.withDuration(durationOf(durations, catalog, trackId));
+                    }
+                    DatagramSocket[] stripeSockets = streams > 1 ? Stripes.openSockets(streams) : null;
+                    if (stripeSockets != null) {
+                        String[] stripeHashes = new String[streams];
+                        for (int s = 0; s < streams; s++) {
+                            final int stripe = s;
+                            stripeHashes[s] = hashes.computeIfAbsent(cacheKey + "#" + s + "/" + streams,
+                                    key -> ContentHash.of(Stripes.split(paquetes, stripe, streams)));
+                        }
+                        session.withStreams(Stripes.ports(stripeSockets), stripeHashes);
+                    }
+                    byte[] accept = session.toAccept().toBytes();
+                    serverSocket.send(new DatagramPacket(accept, accept.length, clientAddress, clientPort));
+
+                    // Implementación de Go-Back-N: un flujo, o uno por socket en paralelo
+                    if (stripeSockets != null) {
+                        Stripes.send(stripeSockets, session, paquetes, accept);
+                    } else {
+                        goBackN(serverSocket, session, paquetes, paridades, pendientes, live, accept, clientAddress, clientPort);
+                    }
+
+                    System.out.println("✓ Transmisión completada exitosamente");
+                } catch (IOException e) {
+                    System.err.println("Error durante la transmisión: " + e.getMessage());
+                }
+                System.out.println(cache.stats());
             }
 
         } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            if (serverSocket != null && !serverSocket.isClosed()) {
+                serverSocket.close();
+                System.out.println("Servidor cerrado correctamente");
+            }
         }
     }
     
-    private static void goBackN(DatagramSocket socket, byte[][] paquetes, 
-                                InetAddress clientAddress, int clientPort) throws IOException {
-        int base = 0; // Base de la ventana
-        int nextSeqNum = 0; // Siguiente número de secuencia a enviar
-        int totalPackets = paquetes.length;
-
-        socket.setSoTimeout(TIMEOUT);
-        
-        System.out.println("\n=== Iniciando transmisión Go-Back-N ===");
-        System.out.println("Total de paquetes: " + totalPackets);
-        System.out.println("Ventana: " + WINDOW_SIZE + " | Timeout: " + TIMEOUT + "ms\n");
-        
-        long startTime = System.currentTimeMillis();
-        int totalSent = 0;
-        int retransmissions = 0;
-        
-        while (base < totalPackets) {
-            // Enviar paquetes dentro de la ventana
-            while (nextSeqNum < base + WINDOW_SIZE && nextSeqNum < totalPackets) {
-                sendPacket(socket, paquetes[nextSeqNum], nextSeqNum, totalPackets, 
-                          clientAddress, clientPort);
-                totalSent++;
-                nextSeqNum++;
-            }
-            
-            // Esperar ACK
-            try {
-                byte[] ackBuffer = new byte[256];
-                DatagramPacket ackPacket = new DatagramPacket(ackBuffer, ackBuffer.length);
-                socket.receive(ackPacket);
-                
-                String ackMsg = new String(ackPacket.getData(), 0, ackPacket.getLength()).trim();
-                
-                if (ackMsg.startsWith("ACK:")) {
-                    int ackNum = Integer.parseInt(ackMsg.substring(4));
-                    
-                    if (ackNum >= base) {
-                        base = ackNum + 1;
-                        
-                        // Mostrar progreso cada 50 paquetes confirmados
-                        if (base % 50 == 0 || base == totalPackets) {
-                            double progress = (base * 100.0) / totalPackets;
-                            System.out.printf("Progreso: %.1f%% (%d/%d paquetes confirmados)\n", 
-                                            progress, base, totalPackets);
-                        }
-                    }
-                }
-                
-            } catch (SocketTimeoutException e) {
-                // Timeout: retransmitir toda la ventana
-                System.out.println("⚠ TIMEOUT! Retransmitiendo desde paquete " + base);
-                retransmissions++;
-                nextSeqNum = base; // Volver a enviar desde base
-            }
+    /**
+     * Go-Back-N sobre la lista de paquetes a enviar: todos, o solo los que faltan al reanudar.
+     * La ventana avanza sobre posiciones de esa lista; el ACK acumulativo n confirma
+     * todas las posiciones cuyo número de secuencia es menor o igual a n.
+     *
+     * En vivo cada paquete se envía cuando está disponible según {@code live} y, en lugar de
+     * retransmitir los que ya vencieron su plazo de reproducción, se saltan con un SKIP.
+     *
+     * El envío va espaciado por el ancho de banda estimado y cada paquete tiene su propio plazo
+     * de retransmisión (ver GoBackNSender); los ACKs se reciben en otro hilo.
+     *
+     * @param session    parámetros acordados (ID de sesión y FEC)
+     * @param pendientes números de secuencia a enviar en orden, o null para todos
+     * @param live       calendario del modo en vivo, o null para una descarga normal
+     */
+    static void goBackN(DatagramSocket socket, Session session, byte[][] paquetes, byte[][] paridades,
+                        int[] pendientes, LiveSchedule live, byte[] accept,
+                        InetAddress clientAddress, int clientPort) throws IOException {
+        new GoBackNSender(socket, session, paquetes, paridades, pendientes, live, accept, clientAddress, clientPort).run();
+    }
+
+    /** Escalera de bitrates de la pista; se construye la primera vez que se pide. */
+    private static AbrLadder ladderFor(Map<String, AbrLadder> ladders, SongCatalog catalog,
+                                       String trackId) throws IOException {
+        AbrLadder ladder = ladders.get(trackId);
+        if (ladder == null) {
+            ladder = AbrLadder.build(catalog, trackId, Integer.getInteger("mp3.abr.segment", AbrLadder.DEFAULT_SEGMENT));
+            ladders.put(trackId, ladder);
         }
-        
-        long endTime = System.currentTimeMillis();
-        double timeSeconds = (endTime - startTime) / 1000.0;
-        
-        System.out.println("\n=== Estadísticas de transmisión ===");
-        System.out.println("Tiempo total: " + String.format("%.2f", timeSeconds) + " segundos");
-        System.out.println("Paquetes enviados: " + totalSent);
-        System.out.println("Retransmisiones: " + retransmissions);
-        System.out.println("Eficiencia: " + String.format("%.2f", (totalPackets * 100.0) / totalSent) + "%");
+        return ladder;
     }
-    
-    private static void sendPacket(DatagramSocket socket, byte[] data, int seqNum, 
-                                   int totalPackets, InetAddress address, int port) throws IOException {
-        // Crear paquete con header: [seqNum (4 bytes)][totalPackets (4 bytes)][data]
-        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + data.length);
-        buffer.putInt(seqNum);
-        buffer.putInt(totalPackets);
-        buffer.put(data);
-        
-        byte[] packetData = buffer.array();
-        DatagramPacket packet = new DatagramPacket(packetData, packetData.length, address, port);
-        socket.send(packet);
+
+    /** Duración de la pista en ms; se calcula la primera vez que se pide. */
+    private static long durationOf(Map<String, Long> durations, SongCatalog catalog,
+                                   String trackId) throws IOException {
+        Long duration = durations.get(trackId);
+        if (duration == null) {
+            duration = Mp3Frames.parse(catalog.read(trackId)).getDurationMicros() / 1000;
+            durations.put(trackId, duration);
+        }
+        return duration;
+    }
+
+    private static int[] missingPackets(BitSet have, int totalPackets) {
+        int[] missing = new int[totalPackets - have.get(0, totalPackets).cardinality()];
+        int n = 0;
+        for (int seq = have.nextClearBit(0); seq < totalPackets; seq = have.nextClearBit(seq + 1)) {
+            missing[n++] = seq;
+        }
+        return missing;
     }
 }
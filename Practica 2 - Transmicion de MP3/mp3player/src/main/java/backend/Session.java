@@ -0,0 +1,257 @@
+package backend;
+import java.io.IOException;
+import java.net.*;
+
+/**
+ * Parámetros negociados de una transferencia y el handshake del lado cliente.
+ *
+ * Cliente -> READY|pista|mtu=D[|fec=K]
+ * Servidor -> PROBE (varios tamaños) ; Cliente -> PROBE_ACK|tamaño
+ * Servidor -> ACCEPT|pista|mtu=D|payload=P|total=N|fec=K|sha256=H|resume=0/1|live=R|session=S   (o ERROR|motivo)
+ *
+ * En lugar de READY el cliente puede enviar RESUME (ver PartialDownload) para continuar
+ * una descarga incompleta; en ese caso no hay sondas y se conserva el payload original.
+ * Con live=1|delay=R en el READY se pide el modo en vivo (ver LiveSchedule) con R ms de
+ * retardo de reproducción; el ACCEPT confirma el retardo (live=0 es una descarga normal).
+ * S es el ID de sesión que llevan todos los datagramas de datos y ACKs (ver PacketHeader) y
+ * H el SHA-256 del archivo completo, que el receptor verifica al terminar.
+ * Con streams=K en el READY se pide la descarga en paralelo; el ACCEPT añade entonces
+ * streams=K|ports=...|hashes=... (ver Stripes).
+ * El ACCEPT de una pista completa lleva además duration=ms, la duración del audio, con la que
+ * el receptor estima su nivel de buffer (ver Telemetry).
+ */
+public class Session {
+    public static final String PROBE = "PROBE";
+    public static final String PROBE_ACK = "PROBE_ACK";
+    public static final String ACCEPT = "ACCEPT";
+
+    public static final int MAX_UDP_PAYLOAD = 65507; // 65535 - 20 (IP) - 8 (UDP)
+    public static final int DEFAULT_DATAGRAM = 1472; // Ethernet: 1500 - 20 (IP) - 8 (UDP)
+    public static final int MIN_DATAGRAM = 548; // 576 - 28, mínimo garantizado por IPv4
+
+    private static final int HANDSHAKE_TIMEOUT = 1000; // ms entre reintentos de READY
+    private static final int HANDSHAKE_RETRIES = 5;
+
+    private final String trackId;
+    private final int datagramSize;
+    private final int payloadSize;
+    private final int totalPackets;
+    private final int fecK;
+    private final String sha256;
+    private final boolean resumed;
+    private final int liveDelay;
+    private final int sessionId;
+    private int[] streamPorts = new int[0]; // Puertos de cada flujo en paralelo (vacío = un solo flujo)
+    private String[] streamHashes = new String[0];
+    private long durationMillis = 0; // Duración del audio (0 = desconocida)
+
+    public Session(String trackId, int datagramSize, int payloadSize, int totalPackets, int fecK,
+                   String sha256, boolean resumed, int liveDelay, int sessionId) {
+        this.trackId = trackId;
+        this.datagramSize = datagramSize;
+        this.payloadSize = payloadSize;
+        this.totalPackets = totalPackets;
+        this.fecK = fecK;
+        this.sha256 = sha256;
+        this.resumed = resumed;
+        this.liveDelay = liveDelay;
+        this.sessionId = sessionId;
+    }
+
+    /**
+     * Tamaño máximo de datagrama que anuncia el cliente (-Dmp3.maxDatagram, 1472 por defecto).
+     */
+    public static int configuredMaxDatagram() {
+        int max = Integer.getInteger("mp3.maxDatagram", DEFAULT_DATAGRAM);
+        return Math.max(MIN_DATAGRAM, Math.min(MAX_UDP_PAYLOAD, max));
+    }
+
+    /**
+     * Payload de datos que cabe en un datagrama, dejando sitio al header y,
+     * con FEC, al encabezado de paridad (la paridad es tan larga como el mayor paquete).
+     */
+    public static int payloadFor(int datagramSize, int headerSize, int fecK) {
+        return datagramSize - headerSize - (fecK > 0 ? Fec.PARITY_HEADER : 0);
+    }
+
+    /** Descarga en paralelo: puerto del servidor y SHA-256 de cada flujo. */
+    public Session withStreams(int[] ports, String[] hashes) {
+        this.streamPorts = ports;
+        this.streamHashes = hashes;
+        return this;
+    }
+
+    /** Duración del audio que se transfiere, en ms. */
+    public Session withDuration(long millis) {
+        this.durationMillis = millis;
+        return this;
+    }
+
+    /**
+     * Sesión de un flujo de la descarga en paralelo: sus paquetes numerados desde 0,
+     * su SHA-256 y un ID de sesión propio.
+     */
+    public Session stripe(int stripe) {
+        return new Session(trackId, datagramSize, payloadSize, Stripes.count(totalPackets, stripe, getStreams()),
+                fecK, streamHashes[stripe], false, 0, sessionId + stripe).withDuration(durationMillis);
+    }
+
+    public Handshake toAccept() {
+        Handshake accept = new Handshake(ACCEPT, trackId)
+                .with("mtu", datagramSize)
+                .with("payload", payloadSize)
+                .with("total", totalPackets)
+                .with("fec", fecK)
+                .with("sha256", sha256)
+                .with("resume", resumed ? 1 : 0)
+                .with("live", liveDelay)
+                .with("session", Integer.toUnsignedString(sessionId, 16));
+        if (durationMillis > 0) {
+            accept.with("duration", durationMillis);
+        }
+        if (getStreams() > 1) {
+            StringBuilder ports = new StringBuilder();
+            for (int port : streamPorts) {
+                ports.append(ports.length() > 0 ? "," : "").append(port);
+            }
+            accept.with("streams", getStreams())
+                    .with("ports", ports)
+                    .with("hashes", String.join(",", streamHashes));
+        }
+        return accept;
+    }
+
+    /**
+     * Envía READY (o RESUME) y completa el handshake: responde a las sondas de MTU del servidor
+     * y espera el ACCEPT. Reintenta READY si el servidor no contesta.
+     *
+     * @return la sesión aceptada, o null si el servidor la rechazó o no respondió
+     */
+    public static Session open(DatagramSocket socket, InetAddress serverAddress, int serverPort,
+                               Handshake ready) throws IOException {
+        int maxDatagram = ready.intOption("mtu", DEFAULT_DATAGRAM);
+        byte[] readyBytes = ready.toBytes();
+        byte[] buffer = new byte[maxDatagram];
+        int originalTimeout = socket.getSoTimeout();
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+
+        try {
+            socket.send(new DatagramPacket(readyBytes, readyBytes.length, serverAddress, serverPort));
+            System.out.println("Mensaje READY enviado al servidor: " + ready + "\n");
+
+            int attempt = 0;
+            while (true) {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                try {
+                    socket.receive(packet);
+                } catch (SocketTimeoutException e) {
+                    if (++attempt > HANDSHAKE_RETRIES) break;
+                    System.out.println("Reintentando READY (" + attempt + "/" + HANDSHAKE_RETRIES + ")");
+                    socket.send(new DatagramPacket(readyBytes, readyBytes.length, serverAddress, serverPort));
+                    continue;
+                }
+
+                if (Handshake.startsWith(packet.getData(), packet.getLength(), PROBE)) {
+                    // Confirmamos el tamaño que realmente llegó
+                    byte[] ack = new Handshake(PROBE_ACK, String.valueOf(packet.getLength())).toBytes();
+                    socket.send(new DatagramPacket(ack, ack.length, serverAddress, serverPort));
+                } else if (Handshake.startsWith(packet.getData(), packet.getLength(), ACCEPT)) {
+                    Handshake accept = Handshake.parse(packet.getData(), packet.getLength());
+                    Session session = new Session(accept.getArgument(),
+                            accept.intOption("mtu", maxDatagram),
+                            accept.intOption("payload", 0),
+                            accept.intOption("total", 0),
+                            accept.intOption("fec", 0),
+                            accept.option("sha256", ""),
+                            accept.intOption("resume", 0) == 1,
+                            accept.intOption("live", 0),
+                            Integer.parseUnsignedInt(accept.option("session", "0"), 16))
+                            .withDuration(Long.parseLong(accept.option("duration", "0")));
+                    if (accept.intOption("streams", 1) > 1) {
+                        String[] ports = accept.option("ports", "").split(",");
+                        int[] streamPorts = new int[ports.length];
+                        for (int s = 0; s < ports.length; s++) {
+                            streamPorts[s] = Integer.parseInt(ports[s]);
+                        }
+                        session.withStreams(streamPorts, accept.option("hashes", "").split(",", -1));
+                    }
+                    System.out.println("Sesión aceptada: " + session);
+                    return session;
+                } else if (Handshake.startsWith(packet.getData(), packet.getLength(), Handshake.ERROR)) {
+                    Handshake error = Handshake.parse(packet.getData(), packet.getLength());
+                    System.out.println("⚠ El servidor rechazó la solicitud: " + error.getArgument());
+                    return null;
+                }
+                // Otros datagramas (datos de una sesión anterior) se ignoran
+            }
+            System.out.println("⚠ El servidor no respondió al READY");
+            return null;
+        } finally {
+            socket.setSoTimeout(originalTimeout);
+        }
+    }
+
+    public String getTrackId() {
+        return trackId;
+    }
+
+    public int getDatagramSize() {
+        return datagramSize;
+    }
+
+    public int getPayloadSize() {
+        return payloadSize;
+    }
+
+    public int getTotalPackets() {
+        return totalPackets;
+    }
+
+    public int getFecK() {
+        return fecK;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public boolean isLive() {
+        return liveDelay > 0;
+    }
+
+    /** Retardo de reproducción del modo en vivo, en ms (0 = descarga normal). */
+    public int getLiveDelay() {
+        return liveDelay;
+    }
+
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    /** Duración del audio en ms, o 0 si el servidor no la anunció. */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /** Flujos en paralelo de la descarga (1 = uno solo). */
+    public int getStreams() {
+        return Math.max(1, streamPorts.length);
+    }
+
+    public int getStreamPort(int stripe) {
+        return streamPorts[stripe];
+    }
+
+    @Override
+    public String toString() {
+        return "sesión=" + Integer.toHexString(sessionId) + " pista=" + trackId + " datagrama=" + datagramSize + " payload=" + payloadSize
+                + " paquetes=" + totalPackets + " fec=" + (fecK > 0 ? fecK : "no")
+                + (resumed ? " (reanudada)" : "")
+                + (isLive() ? " en vivo (retardo " + liveDelay + " ms)" : "")
+                + (getStreams() > 1 ? " flujos=" + getStreams() : "");
+    }
+}
@@ -0,0 +1,148 @@
+package backend;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caché en memoria de canciones ya fragmentadas en paquetes.
+ * Acotada por bytes, con desalojo LRU o LFU y métricas de aciertos/fallos,
+ * para que las pistas populares se sirvan sin volver a leer el disco.
+ */
+public class SongCache {
+    public enum Policy { LRU, LFU }
+
+    /** Carga y fragmenta una pista cuando no está en caché. */
+    public interface Loader {
+        byte[][] load(String key) throws IOException;
+    }
+
+    private static class Entry {
+        final byte[][] packets;
+        final long bytes;
+        long hits;
+
+        Entry(byte[][] packets, long bytes) {
+            this.packets = packets;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final int ARRAY_OVERHEAD = 16; // Cabecera aproximada de cada byte[] en el heap
+
+    private final long capacityBytes;
+    private final Policy policy;
+    // Orden de acceso: el primer elemento es siempre el menos usado recientemente
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long usedBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public SongCache(long capacityBytes, Policy policy) {
+        this.capacityBytes = capacityBytes;
+        this.policy = policy;
+    }
+
+    /**
+     * Caché configurada con -Dmp3.cache.mb (64 por defecto) y -Dmp3.cache.policy (LRU|LFU).
+     */
+    public static SongCache fromSystemProperties() {
+        long mb = Long.getLong("mp3.cache.mb", 64);
+        Policy policy = Policy.valueOf(System.getProperty("mp3.cache.policy", "LRU").toUpperCase());
+        return new SongCache(mb * 1024 * 1024, policy);
+    }
+
+    /**
+     * Devuelve los paquetes de la pista, cargándolos con {@code loader} si no están en caché.
+     * La carga se hace fuera del candado para no bloquear a otros lectores durante la E/S.
+     */
+    public byte[][] get(String key, Loader loader) throws IOException {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                entry.hits++;
+                return entry.packets;
+            }
+            misses++;
+        }
+
+        byte[][] packets = loader.load(key);
+        long size = sizeOf(packets);
+
+        synchronized (this) {
+            Entry existing = entries.get(key);
+            if (existing != null) {
+                // Otro hilo la cargó mientras leíamos del disco
+                return existing.packets;
+            }
+            if (size > capacityBytes) {
+                System.out.println("Caché: '" + key + "' (" + (size / 1024) + " KB) excede la capacidad, no se almacena");
+                return packets;
+            }
+            while (usedBytes + size > capacityBytes && !entries.isEmpty()) {
+                evictOne();
+            }
+            entries.put(key, new Entry(packets, size));
+            usedBytes += size;
+        }
+        return packets;
+    }
+
+    private void evictOne() {
+        String victim;
+        if (policy == Policy.LRU) {
+            victim = entries.keySet().iterator().next();
+        } else {
+            // LFU: menor número de aciertos; en empate gana el menos reciente (orden de iteración)
+            victim = null;
+            long minHits = Long.MAX_VALUE;
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Entry> e = it.next();
+                if (e.getValue().hits < minHits) {
+                    minHits = e.getValue().hits;
+                    victim = e.getKey();
+                }
+            }
+        }
+        Entry removed = entries.remove(victim);
+        usedBytes -= removed.bytes;
+        evictions++;
+        System.out.println("Caché: desalojada '" + victim + "' (" + policy + ")");
+    }
+
+    private static long sizeOf(byte[][] packets) {
+        long size = ARRAY_OVERHEAD;
+        for (byte[] p : packets) {
+            size += ARRAY_OVERHEAD + p.length;
+        }
+        return size;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized String stats() {
+        long total = hits + misses;
+        double hitRate = total == 0 ? 0 : (hits * 100.0) / total;
+        return String.format("Caché %s: %d entradas, %d/%d KB | aciertos=%d fallos=%d (%.1f%% aciertos) | desalojos=%d",
+                policy, entries.size(), usedBytes / 1024, capacityBytes / 1024,
+                hits, misses, hitRate, evictions);
+    }
+}
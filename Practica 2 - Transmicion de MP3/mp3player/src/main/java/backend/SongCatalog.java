@@ -0,0 +1,107 @@
+package backend;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Catálogo de pistas disponibles en el servidor.
+ * Cada pista se identifica por el nombre de su archivo sin extensión
+ * dentro de resources/song (por ejemplo "cancion" -> song/cancion.mp3).
+ * Las versiones de la misma pista a otros bitrates se guardan como pista@kbps.mp3
+ * (por ejemplo song/cancion@64.mp3) y forman su escalera para streaming adaptativo.
+ */
+public class SongCatalog {
+    public static final String DEFAULT_TRACK = "cancion";
+
+    // Solo letras, dígitos, guion y guion bajo: evita rutas como "../../etc/passwd"
+    private static final Pattern VALID_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private final File songDir;
+
+    public SongCatalog(File songDir) {
+        this.songDir = songDir;
+    }
+
+    /**
+     * Catálogo sobre resources/song; si no está en el classpath usa la ruta del proyecto.
+     */
+    public static SongCatalog fromResources() {
+        var resource = SongCatalog.class.getClassLoader().getResource("song/");
+        if (resource != null) {
+            try {
+                return new SongCatalog(new File(resource.toURI()));
+            } catch (URISyntaxException e) {
+                System.err.println("Ruta de recursos inválida: " + e.getMessage());
+            }
+        }
+        return new SongCatalog(new File("src/main/resources/song"));
+    }
+
+    public boolean isValidId(String trackId) {
+        return trackId != null && VALID_ID.matcher(trackId).matches();
+    }
+
+    /**
+     * Devuelve el archivo de la pista o null si el ID no es válido o no existe.
+     */
+    public File resolve(String trackId) {
+        if (!isValidId(trackId)) return null;
+        File file = new File(songDir, trackId + ".mp3");
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * Lee la pista completa desde disco.
+     */
+    public byte[] read(String trackId) throws IOException {
+        File file = resolve(trackId);
+        if (file == null) {
+            throw new IOException("Pista no encontrada: " + trackId);
+        }
+        byte[] data = new Mp3Player().leerArchivoMP3(file.getAbsolutePath());
+        if (data == null) {
+            throw new IOException("No se pudo leer la pista: " + trackId);
+        }
+        return data;
+    }
+
+    /**
+     * Archivos de la pista: el original y sus versiones pista@kbps.mp3 (vacío si no existe).
+     */
+    public List<File> renditions(String trackId) {
+        List<File> files = new ArrayList<>();
+        File original = resolve(trackId);
+        if (original == null) return files;
+        files.add(original);
+        File[] others = songDir.listFiles((dir, name) -> name.startsWith(trackId + "@") && name.endsWith(".mp3"));
+        if (others != null) {
+            Arrays.sort(others);
+            files.addAll(Arrays.asList(others));
+        }
+        return files;
+    }
+
+    /**
+     * IDs de todas las pistas del catálogo (sin contar las recibidas por clientes).
+     */
+    public List<String> list() {
+        List<String> ids = new ArrayList<>();
+        File[] files = songDir.listFiles((dir, name) -> name.endsWith(".mp3"));
+        if (files == null) return ids;
+        for (File f : files) {
+            String id = f.getName().substring(0, f.getName().length() - 4);
+            if (isValidId(id) && !id.endsWith("_recibida") && !id.endsWith("_vivo")) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    public File getSongDir() {
+        return songDir;
+    }
+}
@@ -0,0 +1,113 @@
+package backend;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.*;
+import java.util.BitSet;
+
+/**
+ * Goodput de la descarga en paralelo (Stripes) según el número de flujos.
+ *
+ * Cada flujo pasa por su propio ImpairmentProxy con retardo, pero todos comparten la misma
+ * degradación: con un ancho de banda limitado comparten también el enlace, así que el goodput
+ * crece con los flujos hasta llenarlo. Usa el emisor y el receptor reales sobre loopback.
+ *
+ * Uso: java backend.StripeBenchmark [pista]
+ */
+public class StripeBenchmark {
+    private static final int HEADER_SIZE = PacketHeader.SIZE;
+    private static final int RECEIVE_TIMEOUT = 10000; // ms sin datos; más allá se considera que no completó
+    private static final int[] STREAMS = {1, 2, 4, 8};
+
+    public static void main(String[] args) throws Exception {
+        String trackId = args.length > 0 ? args[0] : SongCatalog.DEFAULT_TRACK;
+        SongCatalog catalog = SongCatalog.fromResources();
+        if (catalog.resolve(trackId) == null) {
+            System.err.println("Pista no encontrada: " + trackId + " (disponibles: " + catalog.list() + ")");
+            return;
+        }
+        byte[] song = catalog.read(trackId);
+
+        PrintStream console = System.out;
+        console.println("=== Descarga en paralelo: goodput según el número de flujos ===");
+        console.println("Pista: " + trackId + " (" + song.length / 1024 + " KB) | ventana por flujo: "
+                + GoBackNSender.WINDOW_SIZE + "\n");
+        console.printf("%-32s %7s %9s %12s%n", "Red", "Flujos", "Tiempo", "Goodput");
+
+        int[][] scenarios = {{2, 0}, {20, 0}, {20, 16000}}; // {retardo ms, kbit/s del enlace compartido}
+        for (int[] scenario : scenarios) {
+            for (int streams : STREAMS) {
+                Impairment up = Impairment.none(1).delay(scenario[0], 0);
+                Impairment down = Impairment.none(2).delay(scenario[0], 0);
+                if (scenario[1] > 0) {
+                    down.rate(scenario[1], 50);
+                }
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                double seconds;
+                try {
+                    seconds = run(song, streams, up, down);
+                } finally {
+                    System.setOut(console);
+                }
+                console.printf("%-32s %7d %8.2fs %12s%n", down.describe(), streams, seconds,
+                        seconds < 0 ? "no completó" : String.format("%.1f Mbit/s", song.length * 8 / 1e6 / seconds));
+            }
+            console.println();
+        }
+    }
+
+    /**
+     * Una descarga completa con {@code streams} flujos.
+     * @return segundos, o -1 si no completó
+     */
+    private static double run(byte[] song, int streams, Impairment up, Impairment down) throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        int payload = Session.payloadFor(Session.DEFAULT_DATAGRAM, HEADER_SIZE, 0);
+        byte[][] packets = new Mp3Player().fragmentarMP3(song, payload);
+
+        DatagramSocket[] sockets = Stripes.openSockets(streams);
+        ImpairmentProxy[] proxies = new ImpairmentProxy[streams];
+        int[] ports = new int[streams];
+        String[] hashes = new String[streams];
+        for (int s = 0; s < streams; s++) {
+            proxies[s] = new ImpairmentProxy(0, new InetSocketAddress(loopback, sockets[s].getLocalPort()),
+                    null, up, down).start();
+            ports[s] = proxies[s].getPort();
+            hashes[s] = ContentHash.of(Stripes.split(packets, s, streams));
+        }
+        // El cliente ve los puertos de los proxies como los de cada flujo
+        Session session = new Session("benchmark", payload + HEADER_SIZE, payload, packets.length, 0,
+                ContentHash.of(packets), false, 0, streams).withStreams(ports, hashes);
+
+        Thread sender = new Thread(() -> {
+            try {
+                Stripes.send(sockets, session, packets, new byte[0]);
+            } catch (IOException e) {
+                // El receptor abandonó
+            }
+        });
+        sender.setDaemon(true);
+
+        File file = File.createTempFile("stripe-benchmark", ".part");
+        file.deleteOnExit();
+        boolean complete;
+        long start = System.nanoTime();
+        sender.start();
+        try (PacketFile received = new PacketFile(file, payload, packets.length, new BitSet())) {
+            complete = Stripes.receive(loopback, session, received, RECEIVE_TIMEOUT).isComplete();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        // Si el último ACK de un flujo se perdió su emisor seguiría reintentando: al cerrar su socket se rinde
+        sender.join(1000);
+        for (DatagramSocket socket : sockets) {
+            socket.close();
+        }
+        for (ImpairmentProxy proxy : proxies) {
+            proxy.close();
+        }
+        file.delete();
+        return complete ? seconds : -1;
+    }
+}
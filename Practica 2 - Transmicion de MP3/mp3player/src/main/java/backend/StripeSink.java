@@ -0,0 +1,67 @@
+package backend;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Vista de un flujo de una descarga en paralelo (ver Stripes) sobre el PacketFile compartido.
+ *
+ * El flujo {@code stripe} de {@code streams} lleva los paquetes stripe, stripe + streams, ...
+ * numerados 0, 1, 2... dentro del flujo; aquí se traducen a su posición en el archivo, así que
+ * cada receptor escribe directamente en su sitio y el archivo queda armado sin copiar nada.
+ */
+public class StripeSink implements PacketSink {
+    private final PacketFile file;
+    private final int stripe;
+    private final int streams;
+    private final int totalPackets;
+
+    public StripeSink(PacketFile file, int stripe, int streams) {
+        this.file = file;
+        this.stripe = stripe;
+        this.streams = streams;
+        this.totalPackets = Stripes.count(file.getTotalPackets(), stripe, streams);
+    }
+
+    private int global(int seq) {
+        return seq * streams + stripe;
+    }
+
+    @Override
+    public int getTotalPackets() {
+        return totalPackets;
+    }
+
+    @Override
+    public boolean has(int seq) {
+        return file.has(global(seq));
+    }
+
+    @Override
+    public int firstMissing(int from) {
+        int seq = from;
+        while (seq < totalPackets && file.has(global(seq))) {
+            seq++;
+        }
+        return seq;
+    }
+
+    @Override
+    public int length(int seq) {
+        return file.length(global(seq));
+    }
+
+    @Override
+    public void write(int seq, ByteBuffer payload) throws IOException {
+        file.write(global(seq), payload);
+    }
+
+    @Override
+    public void read(int seq, ByteBuffer dst) throws IOException {
+        file.read(global(seq), dst);
+    }
+
+    @Override
+    public void skip(int seq) {
+        file.skip(global(seq));
+    }
+}
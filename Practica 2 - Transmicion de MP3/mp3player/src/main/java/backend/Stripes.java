@@ -0,0 +1,224 @@
+package backend;
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+
+/**
+ * Descarga en paralelo: la canción se reparte en K flujos intercalados (el paquete i va por
+ * el flujo i % K), cada uno con su socket UDP, su propio Go-Back-N y su hilo en cada extremo.
+ * Un solo flujo no pasa de ventana / RTT; con K flujos el límite es K veces mayor, hasta
+ * llenar el enlace.
+ *
+ * Cliente -> READY|pista|...|streams=K
+ * Servidor -> ACCEPT|...|streams=K|ports=p0,p1,...|hashes=h0,h1,...
+ * Cliente -> JOIN|pista|stripe=s|session=S   desde un canal nuevo por flujo al puerto ps
+ *
+ * Cada flujo es una transferencia normal de su subconjunto de paquetes (numerados 0, 1, 2...
+ * dentro del flujo), con ID de sesión S + s y el SHA-256 hs de sus paquetes. El receptor los
+ * escribe en su posición del archivo (ver StripeSink). Si el ACCEPT muestra streams=1 (en vivo,
+ * streaming adaptativo o reanudación) la descarga es de un solo flujo como siempre.
+ */
+public final class Stripes {
+    public static final String JOIN = "JOIN";
+    public static final int MAX_STREAMS = 8;
+    private static final int JOIN_TIMEOUT = 2000; // ms esperando el JOIN de un flujo
+    private static final int JOIN_COPIES = 3; // El JOIN no tiene respuesta: se envía repetido
+
+    private Stripes() {
+    }
+
+    /** Flujos pedidos con -Dmp3.streams (1 = un solo flujo). */
+    public static int configured() {
+        return clamp(Integer.getInteger("mp3.streams", 1), Integer.MAX_VALUE);
+    }
+
+    /** Entre 1 y MAX_STREAMS, y nunca más flujos que paquetes. */
+    public static int clamp(int streams, int totalPackets) {
+        return Math.max(1, Math.min(Math.min(MAX_STREAMS, streams), totalPackets));
+    }
+
+    /** Paquetes que lleva el flujo {@code stripe}. */
+    public static int count(int totalPackets, int stripe, int streams) {
+        return (totalPackets - stripe + streams - 1) / streams;
+    }
+
+    /** Paquetes del flujo {@code stripe}, sin copiarlos. */
+    public static byte[][] split(byte[][] paquetes, int stripe, int streams) {
+        byte[][] part = new byte[count(paquetes.length, stripe, streams)][];
+        for (int i = 0; i < part.length; i++) {
+            part[i] = paquetes[i * streams + stripe];
+        }
+        return part;
+    }
+
+    /** Un socket por flujo, en puertos libres; sus puertos van en el ACCEPT. */
+    public static DatagramSocket[] openSockets(int streams) throws IOException {
+        DatagramSocket[] sockets = new DatagramSocket[streams];
+        try {
+            for (int s = 0; s < streams; s++) {
+                sockets[s] = new DatagramSocket();
+            }
+        } catch (IOException e) {
+            close(sockets);
+            throw e;
+        }
+        return sockets;
+    }
+
+    public static int[] ports(DatagramSocket[] sockets) {
+        int[] ports = new int[sockets.length];
+        for (int s = 0; s < sockets.length; s++) {
+            ports[s] = sockets[s].getLocalPort();
+        }
+        return ports;
+    }
+
+    private static void close(DatagramSocket[] sockets) {
+        for (DatagramSocket socket : sockets) {
+            if (socket != null) socket.close();
+        }
+    }
+
+    /**
+     * Lado servidor: espera el JOIN de cada flujo y lo envía con Go-Back-N en su propio hilo.
+     * Vuelve cuando terminaron todos; cierra los sockets.
+     */
+    public static void send(DatagramSocket[] sockets, Session session, byte[][] paquetes,
+                            byte[] accept) throws IOException {
+        int streams = sockets.length;
+        Thread[] threads = new Thread[streams];
+        IOException[] failures = new IOException[streams];
+        System.out.println("Descarga en paralelo: " + streams + " flujos en los puertos " + Arrays.toString(ports(sockets)));
+        try {
+            for (int s = 0; s < streams; s++) {
+                final int stripe = s;
+                threads[s] = new Thread(() -> {
+                    try {
+                        sendStripe(sockets[stripe], session, paquetes, stripe, accept);
+                    } catch (IOException e) {
+                        failures[stripe] = e;
+                    } catch (RuntimeException e) {
+                        // Que un fallo inesperado no deje el flujo como enviado
+                        failures[stripe] = new IOException(e.toString(), e);
+                    }
+                }, "mp3-stripe-" + s);
+                threads[s].start();
+            }
+            join(threads);
+        } finally {
+            close(sockets);
+        }
+        for (int s = 0; s < streams; s++) {
+            if (failures[s] != null) {
+                throw new IOException("Flujo " + s + ": " + failures[s].getMessage(), failures[s]);
+            }
+        }
+    }
+
+    private static void sendStripe(DatagramSocket socket, Session session, byte[][] paquetes, int stripe,
+                                   byte[] accept) throws IOException {
+        int streams = session.getStreams();
+        Session stripeSession = session.stripe(stripe);
+
+        // El JOIN dice desde dónde recibe el cliente este flujo
+        socket.setSoTimeout(JOIN_TIMEOUT);
+        byte[] buffer = new byte[512];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (true) {
+            packet.setLength(buffer.length);
+            try {
+                socket.receive(packet);
+            } catch (SocketTimeoutException e) {
+                throw new IOException("el cliente no se unió al flujo " + stripe);
+            }
+            if (!Handshake.startsWith(buffer, packet.getLength(), JOIN)) continue;
+            Handshake join = Handshake.parse(buffer, packet.getLength());
+            try {
+                if (join.intOption("stripe", -1) == stripe
+                        && Integer.parseUnsignedInt(join.option("session", "0"), 16) == session.getSessionId()) {
+                    break;
+                }
+            } catch (NumberFormatException e) {
+                // JOIN mal formado: se ignora como cualquier datagrama ajeno
+            }
+        }
+
+        byte[][] part = split(paquetes, stripe, streams);
+        byte[][] paridades = session.getFecK() > 0 ? Fec.encode(part, session.getFecK()) : null;
+        new GoBackNSender(socket, stripeSession, part, paridades, null, null, accept,
+                packet.getAddress(), packet.getPort()).run();
+    }
+
+    /**
+     * Lado cliente: abre un canal por flujo, se une a cada uno y recibe todos en paralelo
+     * sobre el mismo archivo.
+     *
+     * @param idleTimeout ms sin datos antes de abandonar un flujo
+     * @return estadísticas sumadas de todos los flujos (el tiempo es el del más lento)
+     */
+    public static ReceiveStats receive(InetAddress serverAddress, Session session, PacketFile packets,
+                                       int idleTimeout) throws IOException {
+        int streams = session.getStreams();
+        Thread[] threads = new Thread[streams];
+        ReceiveStats[] results = new ReceiveStats[streams];
+        IOException[] failures = new IOException[streams];
+        DatagramChannel[] channels = new DatagramChannel[streams];
+        try {
+            for (int s = 0; s < streams; s++) {
+                // Conectado antes del JOIN: conectar después vaciaría lo que ya hubiera llegado
+                channels[s] = DatagramChannel.open().bind(new InetSocketAddress(0));
+                channels[s].connect(new InetSocketAddress(serverAddress, session.getStreamPort(s)));
+                channels[s].socket().setSoTimeout(idleTimeout);
+            }
+            for (int s = 0; s < streams; s++) {
+                final int stripe = s;
+                threads[s] = new Thread(() -> {
+                    try {
+                        byte[] join = new Handshake(JOIN, session.getTrackId())
+                                .with("stripe", stripe)
+                                .with("session", Integer.toUnsignedString(session.getSessionId(), 16))
+                                .toBytes();
+                        for (int i = 0; i < JOIN_COPIES; i++) {
+                            channels[stripe].write(ByteBuffer.wrap(join));
+                        }
+                        results[stripe] = GoBackNReceiver.receive(channels[stripe], serverAddress,
+                                session.getStreamPort(stripe), session.stripe(stripe),
+                                new StripeSink(packets, stripe, streams));
+                    } catch (IOException e) {
+                        failures[stripe] = e;
+                    }
+                }, "mp3-stripe-" + s);
+                threads[s].start();
+            }
+            join(threads);
+        } finally {
+            for (DatagramChannel channel : channels) {
+                if (channel != null) channel.close();
+            }
+        }
+        for (int s = 0; s < streams; s++) {
+            if (failures[s] != null) {
+                throw new IOException("Flujo " + s + ": " + failures[s].getMessage(), failures[s]);
+            }
+        }
+
+        ReceiveStats total = ReceiveStats.combine(results);
+        System.out.println("\n=== Descarga en paralelo: " + streams + " flujos ===");
+        System.out.println("Tiempo total: " + String.format("%.2f", total.getSeconds()) + " segundos | goodput: "
+                + String.format("%.1f Mbit/s", total.goodputKbps() / 1000));
+        return total;
+    }
+
+    private static void join(Thread[] threads) throws IOException {
+        try {
+            for (Thread thread : threads) {
+                if (thread != null) thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Descarga en paralelo interrumpida", e);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package backend;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Métricas muestreadas durante una transferencia, en los dos extremos.
+ *
+ * Cada emisor (GoBackNSender) y receptor (GoBackNReceiver) toma una muestra cada
+ * -Dmp3.telemetry.ms (250 por defecto) desde su propio bucle, sin hilos extra ni
+ * sincronización con el bucle. Las muestras van a:
+ *   -Dmp3.telemetry=archivo.csv     una fila por muestra, con cabecera
+ *   -Dmp3.telemetry=archivo.jsonl   un objeto JSON por línea
+ * y a un oyente opcional (ClientWebView las muestra en su interfaz).
+ *
+ * Todas las muestras tienen las mismas columnas; las que no aplican a un extremo quedan vacías
+ * en el CSV y se omiten en el JSON. Las tasas (goodput, pérdida, duplicados...) son del último
+ * intervalo, no acumuladas: sirven para ver cómo reacciona el protocolo mientras ocurre.
+ */
+public final class Telemetry {
+    public static final int DEFAULT_PERIOD = 250; // ms entre muestras
+
+    /** Columnas de una muestra. */
+    public enum Metric {
+        GOODPUT_KBPS("goodput_kbps"), // Datos útiles entregados en el intervalo
+        WINDOW("ventana"),
+        IN_FLIGHT("en_vuelo"), // Paquetes enviados y aún sin confirmar
+        SRTT_MS("srtt_ms"),
+        RTO_MS("rto_ms"),
+        PACING_KBPS("ritmo_kbps"), // Ritmo del Pacer
+        LOSS("perdida"), // Emisor: fracción de envíos que fueron retransmisiones
+        DUPLICATES("duplicados"), // Receptor: fracción de paquetes recibidos duplicados
+        OUT_OF_ORDER("fuera_de_orden"), // Receptor: fracción que llegó tras un hueco
+        PROGRESS("progreso"), // Fracción de la transferencia completada (en orden)
+        BUFFER_S("buffer_s"); // Segundos de audio recibidos por delante de la reproducción
+
+        private final String column;
+
+        Metric(String column) {
+            this.column = column;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+    }
+
+    private static final long PERIOD_NANOS = Math.max(10, Integer.getInteger("mp3.telemetry.ms", DEFAULT_PERIOD)) * 1_000_000L;
+    private static final long EPOCH = System.nanoTime(); // Origen de tiempo_ms, común a todas las muestras
+    private static Writer out;
+    private static boolean json;
+    private static boolean opened;
+    private static volatile Consumer<String> listener;
+
+    private Telemetry() {
+    }
+
+    /** Recibe cada muestra como JSON (desde el hilo de la transferencia). */
+    public static void setListener(Consumer<String> listener) {
+        Telemetry.listener = listener;
+    }
+
+    /**
+     * Muestreo de una transferencia.
+     * @param role  "emisor", "receptor", "abr"...
+     * @param label identifica la transferencia (el ID de sesión, distinto en cada flujo en paralelo)
+     */
+    public static Recorder recorder(String role, String label) {
+        return new Recorder(role, label, output() != null || listener != null);
+    }
+
+    /** Abre el archivo de -Dmp3.telemetry la primera vez; null si no se pidió. */
+    private static synchronized Writer output() {
+        if (!opened) {
+            opened = true;
+            String path = System.getProperty("mp3.telemetry");
+            if (path != null && !path.isEmpty()) {
+                try {
+                    out = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8);
+                    json = !path.endsWith(".csv");
+                    if (!json) {
+                        StringBuilder header = new StringBuilder("tiempo_ms,rol,sesion");
+                        for (Metric metric : Metric.values()) {
+                            header.append(',').append(metric.getColumn());
+                        }
+                        out.write(header.append('\n').toString());
+                        out.flush();
+                    }
+                    System.out.println("Telemetría: " + path + " cada " + PERIOD_NANOS / 1_000_000 + " ms");
+                } catch (IOException e) {
+                    System.err.println("No se pudo abrir la telemetría " + path + ": " + e.getMessage());
+                    out = null;
+                }
+            }
+        }
+        return out;
+    }
+
+    private static synchronized void write(String line) {
+        try {
+            out.write(line);
+            out.write('\n');
+            // Cada línea se vuelca: el archivo se puede seguir (tail -f) durante la transferencia
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Telemetría desactivada: " + e.getMessage());
+            out = null;
+        }
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value)
+                : String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * Muestras de una transferencia; solo la usa el hilo que la lleva a cabo. Si no hay
+     * archivo ni oyente due() siempre es false y el bucle no paga nada por medir.
+     */
+    public static final class Recorder {
+        private final String role;
+        private final String label;
+        private final boolean enabled;
+        private final double[] values = new double[Metric.values().length];
+        private long nextSample = System.nanoTime();
+        private long lastSample = nextSample;
+
+        private Recorder(String role, String label, boolean enabled) {
+            this.role = role;
+            this.label = label;
+            this.enabled = enabled;
+            Arrays.fill(values, Double.NaN);
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /** Toca tomar una muestra. */
+        public boolean due(long now) {
+            return enabled && now - nextSample >= 0;
+        }
+
+        /** Nanosegundos hasta la siguiente muestra, para no dormir más allá (Long.MAX_VALUE si no mide). */
+        public long nanosUntilDue(long now) {
+            return enabled ? Math.max(0, nextSample - now) : Long.MAX_VALUE;
+        }
+
+        /** Segundos desde la muestra anterior (o desde el inicio), para calcular tasas. */
+        public double interval(long now) {
+            return Math.max(1e-6, (now - lastSample) / 1e9);
+        }
+
+        public Recorder set(Metric metric, double value) {
+            values[metric.ordinal()] = value;
+            return this;
+        }
+
+        /** Emite la muestra con los valores fijados desde la anterior y programa la siguiente. */
+        public void emit(long now) {
+            if (!enabled) return;
+            lastSample = now;
+            nextSample = now + PERIOD_NANOS;
+            long millis = (now - EPOCH) / 1_000_000;
+
+            StringBuilder object = new StringBuilder("{\"tiempo_ms\":").append(millis)
+                    .append(",\"rol\":\"").append(role).append("\",\"sesion\":\"").append(label).append('"');
+            for (Metric metric : Metric.values()) {
+                double value = values[metric.ordinal()];
+                if (!Double.isNaN(value)) {
+                    object.append(",\"").append(metric.getColumn()).append("\":").append(format(value));
+                }
+            }
+            String line = object.append('}').toString();
+
+            if (output() != null) {
+                if (json) {
+                    write(line);
+                } else {
+                    StringBuilder row = new StringBuilder().append(millis).append(',').append(role).append(',').append(label);
+                    for (double value : values) {
+                        row.append(',');
+                        if (!Double.isNaN(value)) row.append(format(value));
+                    }
+                    write(row.toString());
+                }
+            }
+            Consumer<String> l = listener;
+            if (l != null) {
+                l.accept(line);
+            }
+            Arrays.fill(values, Double.NaN);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package backend;
+import java.util.Arrays;
+
+/**
+ * Rueda de temporizadores (hashed timing wheel) para los plazos de retransmisión por paquete.
+ *
+ * Cada temporizador cae en la ranura de su tick (tick mod número de ranuras); al avanzar la
+ * rueda solo se revisa la ranura del tick actual, así que programar y vencer cuesta O(1)
+ * sin importar cuántos paquetes haya en vuelo. Un plazo más lejano que una vuelta completa
+ * se queda en su ranura hasta la vuelta que le toca.
+ *
+ * No hay cancelación: cada temporizador lleva un sello (p. ej. el instante de envío) y quien
+ * lo recibe al vencer descarta los que ya no coinciden con el estado actual. Las entradas se
+ * guardan en arreglos reutilizados, sin reservar memoria por temporizador.
+ */
+public class TimerWheel {
+    /** Recibe cada temporizador vencido. */
+    public interface Expired {
+        void onExpired(int id, long stamp);
+    }
+
+    private static final int NONE = -1;
+
+    private final long tickNanos;
+    private final int mask;
+    private final int[] slotHead; // Primera entrada de cada ranura
+    private final long startNanos;
+    private long tick = 0; // Último tick procesado
+    private long earliest = Long.MAX_VALUE; // Tick del plazo más próximo; si ya pasó, hay que buscarlo
+
+    // Entradas en listas enlazadas por índice; las libres forman su propia lista
+    private int[] ids;
+    private long[] stamps;
+    private long[] deadlineTicks;
+    private int[] nextEntry;
+    private int free = NONE;
+    private int used = 0; // Entradas creadas alguna vez
+    private int size = 0; // Temporizadores pendientes
+
+    /**
+     * @param tickNanos resolución de la rueda
+     * @param slots     número de ranuras (se redondea a potencia de dos)
+     */
+    public TimerWheel(long tickNanos, int slots, long startNanos) {
+        int n = Integer.highestOneBit(Math.max(2, slots - 1)) << 1;
+        this.tickNanos = tickNanos;
+        this.mask = n - 1;
+        this.slotHead = new int[n];
+        Arrays.fill(slotHead, NONE);
+        this.startNanos = startNanos;
+        this.ids = new int[64];
+        this.stamps = new long[64];
+        this.deadlineTicks = new long[64];
+        this.nextEntry = new int[64];
+    }
+
+    public void schedule(int id, long stamp, long deadlineNanos) {
+        long deadlineTick = Math.max(tick + 1, (deadlineNanos - startNanos + tickNanos - 1) / tickNanos);
+        int e = allocate();
+        ids[e] = id;
+        stamps[e] = stamp;
+        deadlineTicks[e] = deadlineTick;
+        int slot = (int) (deadlineTick & mask);
+        nextEntry[e] = slotHead[slot];
+        slotHead[slot] = e;
+        size++;
+        earliest = Math.min(earliest, deadlineTick);
+    }
+
+    /**
+     * Avanza la rueda hasta {@code now} y entrega los temporizadores vencidos.
+     */
+    public void expire(long now, Expired callback) {
+        long target = (now - startNanos) / tickNanos;
+        while (tick < target && size > 0) {
+            tick++;
+            int slot = (int) (tick & mask);
+            // Se desengancha la ranura completa: los avisos pueden programar temporizadores en ella
+            int e = slotHead[slot];
+            slotHead[slot] = NONE;
+            while (e != NONE) {
+                int following = nextEntry[e];
+                if (deadlineTicks[e] <= tick) {
+                    int id = ids[e];
+                    long stamp = stamps[e];
+                    release(e);
+                    callback.onExpired(id, stamp);
+                } else {
+                    // Plazo de una vuelta posterior: vuelve a la ranura
+                    nextEntry[e] = slotHead[slot];
+                    slotHead[slot] = e;
+                }
+                e = following;
+            }
+        }
+        tick = Math.max(tick, target); // Sin temporizadores no hace falta recorrer los ticks vacíos
+    }
+
+    /**
+     * Instante del plazo pendiente más próximo (a la resolución de la rueda), o Long.MAX_VALUE
+     * si no hay temporizadores: quien espera puede dormir hasta entonces en lugar de despertar
+     * en cada tick. Puede ser el de un temporizador que el receptor ya no quiere.
+     */
+    public long nextDeadlineNanos() {
+        if (size == 0) return Long.MAX_VALUE;
+        if (earliest <= tick) {
+            earliest = findEarliest();
+        }
+        return startNanos + earliest * tickNanos;
+    }
+
+    /**
+     * Recorre las ranuras desde el tick actual hasta la primera con un plazo de esta vuelta.
+     * Solo se llama cuando el plazo anterior ya venció, así que cada ranura se recorre a lo
+     * sumo una vez por vuelta.
+     */
+    private long findEarliest() {
+        long min = Long.MAX_VALUE;
+        for (long t = tick + 1; t <= tick + slotHead.length; t++) {
+            for (int e = slotHead[(int) (t & mask)]; e != NONE; e = nextEntry[e]) {
+                min = Math.min(min, deadlineTicks[e]);
+            }
+            if (min <= t) break; // Las ranuras siguientes solo tienen plazos posteriores
+        }
+        return min;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int allocate() {
+        if (free != NONE) {
+            int e = free;
+            free = nextEntry[e];
+            return e;
+        }
+        if (used == ids.length) {
+            int n = used * 2;
+            ids = Arrays.copyOf(ids, n);
+            stamps = Arrays.copyOf(stamps, n);
+            deadlineTicks = Arrays.copyOf(deadlineTicks, n);
+            nextEntry = Arrays.copyOf(nextEntry, n);
+        }
+        return used++;
+    }
+
+    private void release(int e) {
+        nextEntry[e] = free;
+        free = e;
+        size--;
+    }
+}
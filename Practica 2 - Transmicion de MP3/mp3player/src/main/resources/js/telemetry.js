@@ -0,0 +1,72 @@
+(() => {
+  // Muestras de la telemetría del receptor (ver backend.Telemetry); ClientWebView llama a
+  // mostrarTelemetria() con cada una. En una descarga en paralelo llega una por flujo (sesión).
+  const HISTORY = 120; // Puntos del gráfico
+  const STALE = 1000; // ms sin muestras tras los que una sesión ya terminó (segmentos del ABR)
+  const latest = new Map(); // Última muestra de cada sesión
+  const history = [];
+  let abrBuffer; // Buffer del streaming adaptativo (una muestra por segmento)
+  const chart = document.getElementById('tChart');
+
+  function percent(value) {
+    return value === undefined ? '-' : `${(value * 100).toFixed(1)}%`;
+  }
+
+  function set(id, text) {
+    document.getElementById(id).textContent = text;
+  }
+
+  function draw() {
+    const ctx = chart.getContext('2d');
+    ctx.clearRect(0, 0, chart.width, chart.height);
+    const max = Math.max(1, ...history);
+    ctx.strokeStyle = '#00b4d8';
+    ctx.lineWidth = 2;
+    ctx.beginPath();
+    history.forEach((kbps, i) => {
+      const x = (i / (HISTORY - 1)) * chart.width;
+      const y = chart.height - (kbps / max) * (chart.height - 10);
+      if (i === 0) ctx.moveTo(x, y); else ctx.lineTo(x, y);
+    });
+    ctx.stroke();
+    ctx.fillStyle = '#90e0ef';
+    ctx.fillText(`${(max / 1000).toFixed(1)} Mbit/s`, 4, 12);
+  }
+
+  window.mostrarTelemetria = (sample) => {
+    if (sample.rol === 'abr') {
+      abrBuffer = sample.buffer_s;
+      set('tBuffer', `${abrBuffer.toFixed(1)} s`);
+      return;
+    }
+    if (sample.rol !== 'receptor') return;
+    latest.set(sample.sesion, sample);
+    latest.forEach((s, session) => {
+      if (sample.tiempo_ms - s.tiempo_ms > STALE) latest.delete(session);
+    });
+
+    // Los flujos se suman; el progreso y el buffer son los del flujo más atrasado
+    let goodput = 0, progress = 1, buffer = abrBuffer, duplicates = 0, outOfOrder = 0;
+    latest.forEach((s) => {
+      goodput += s.goodput_kbps || 0;
+      progress = Math.min(progress, s.progreso !== undefined ? s.progreso : 1);
+      if (s.buffer_s !== undefined) buffer = buffer === undefined ? s.buffer_s : Math.min(buffer, s.buffer_s);
+      duplicates = Math.max(duplicates, s.duplicados || 0);
+      outOfOrder = Math.max(outOfOrder, s.fuera_de_orden || 0);
+    });
+
+    set('tGoodput', `${(goodput / 1000).toFixed(2)} Mbit/s`);
+    set('tProgress', percent(progress));
+    set('tBuffer', buffer === undefined ? '-' : `${buffer.toFixed(1)} s`);
+    set('tDuplicates', percent(duplicates));
+    set('tOutOfOrder', percent(outOfOrder));
+    set('tStreams', String(latest.size));
+
+    // Un punto por periodo aunque lleguen muestras de varios flujos
+    if (sample.sesion === latest.keys().next().value) {
+      history.push(goodput);
+      if (history.length > HISTORY) history.shift();
+      draw();
+    }
+  };
+})();
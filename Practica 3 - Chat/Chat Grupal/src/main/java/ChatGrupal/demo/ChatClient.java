@@ -1,22 +1,52 @@
 package ChatGrupal.demo;
 
+import ChatGrupal.demo.udp.ReliablePeer;
+
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Cliente de Chat Grupal
  * Permite a los usuarios conectarse a salas y enviar/recibir mensajes
+ *
+ * Un hilo receptor lee todo lo que llega al socket: los mensajes (MSG, PRIVATE) se muestran
+ * al momento y las respuestas a JOIN y LIST se dejan en una cola para quien las espera.
+ *
+ * Todo va por ReliablePeer: cada comando lleva número de secuencia, se retransmite hasta que
+ * el servidor lo confirma y lo que envía el servidor se entrega en orden. El receptor revisa
+ * las retransmisiones cada RETRANSMIT_INTERVAL entre lectura y lectura y, si no se envió nada
+ * en LATIDO, manda un PING para que el servidor no dé por vencido su lease.
  */
 public class ChatClient {
     private static final String SERVER_IP = "localhost";
     private static final int SERVER_PORT = 5000;
+    private static final int RESPONSE_TIMEOUT = 5000; // ms esperando la respuesta a JOIN o LIST
+    private static final int RETRANSMIT_INTERVAL = 10; // ms
+    private static final long LATIDO = 10_000_000_000L; // ns sin enviar nada antes de un PING (el lease del servidor es de 30 s)
+    private static final byte[] PING = "PING".getBytes(StandardCharsets.US_ASCII);
+    private static final double PERDIDA = Double.parseDouble(System.getProperty("chat.perdida", "0"));
     private DatagramSocket clientSocket;
     private String nombreUsuario;
     private String salaActual;
+    private final BlockingQueue<String> respuestas = new LinkedBlockingQueue<>();
+    private final InetSocketAddress servidor;
+    private volatile ReliablePeer canal = new ReliablePeer();
+    private final ByteBuffer marco = ByteBuffer.allocate(8192); // Envíos del hilo principal
+    private volatile long ultimoEnvio = System.nanoTime();
 
     public ChatClient() throws SocketException {
         this.clientSocket = new DatagramSocket();
+        this.servidor = new InetSocketAddress(SERVER_IP, SERVER_PORT);
+        Thread receptor = new Thread(this::recibirMensajes, "chat-receptor");
+        receptor.setDaemon(true);
+        receptor.start();
     }
 
     public static void main(String[] args) {
@@ -137,8 +167,12 @@ public class ChatClient {
             return;
         }
 
-        System.out.println("[" + nombreUsuario + " en " + salaActual + "]: " + mensaje);
-        System.out.println("Mensaje enviado...");
+        try {
+            // El servidor lo reparte a la sala, incluido este cliente
+            enviarMensajeAlServidor("SEND|" + nombreUsuario + "|" + salaActual + "|" + mensaje);
+        } catch (IOException e) {
+            System.err.println("Error al enviar el mensaje: " + e.getMessage());
+        }
     }
 
     private void abandonarSala() {
@@ -157,17 +191,100 @@ public class ChatClient {
         }
     }
 
-    private void enviarMensajeAlServidor(String mensaje) throws IOException {
-        byte[] buffer = mensaje.getBytes();
-        InetAddress serverAddress = InetAddress.getByName(SERVER_IP);
-        DatagramPacket packet = new DatagramPacket(buffer, buffer.length, serverAddress, SERVER_PORT);
-        clientSocket.send(packet);
+    private synchronized void enviarMensajeAlServidor(String mensaje) throws IOException {
+        respuestas.clear(); // Una respuesta que llegó tarde no es la de este comando
+        // Si la ventana está llena queda en cola y sale al llegar los ACK
+        if (canal.enviar(mensaje.getBytes(StandardCharsets.UTF_8), marco, System.nanoTime())) {
+            enviar(marco);
+        }
+    }
+
+    private void enviar(ByteBuffer datagrama) throws IOException {
+        clientSocket.send(new DatagramPacket(datagrama.array(), datagrama.limit(), servidor));
+        ultimoEnvio = System.nanoTime();
     }
 
     private String recibirRespuesta() throws IOException {
-        byte[] buffer = new byte[1024];
+        try {
+            String respuesta = respuestas.poll(RESPONSE_TIMEOUT, TimeUnit.MILLISECONDS);
+            if (respuesta == null) throw new IOException("el servidor no respondió");
+            return respuesta;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrumpido esperando respuesta");
+        }
+    }
+
+    /**
+     * Hilo receptor, hasta que se cierra el socket: confirma y entrega en orden lo que llega,
+     * procesa los ACK del servidor y retransmite lo que venció.
+     */
+    private void recibirMensajes() {
+        byte[] buffer = new byte[8192];
         DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-        clientSocket.receive(packet);
-        return new String(packet.getData(), 0, packet.getLength());
+        ByteBuffer control = ByteBuffer.allocate(buffer.length + 64); // ACK y retransmisiones
+        try {
+            clientSocket.setSoTimeout(RETRANSMIT_INTERVAL);
+        } catch (SocketException e) {
+            return;
+        }
+        while (!clientSocket.isClosed()) {
+            try {
+                retransmitir(control);
+                if (System.nanoTime() - ultimoEnvio >= LATIDO) {
+                    enviar(ByteBuffer.wrap(PING));
+                }
+                packet.setLength(buffer.length);
+                clientSocket.receive(packet);
+                if (PERDIDA > 0 && ThreadLocalRandom.current().nextDouble() < PERDIDA) continue;
+
+                ByteBuffer datos = ByteBuffer.wrap(buffer, 0, packet.getLength());
+                ReliablePeer actual = canal;
+                if (ReliablePeer.esAck(datos)) {
+                    long ahora = System.nanoTime();
+                    actual.confirmar(datos, ahora);
+                    while (actual.siguienteEnCola(control, ahora)) {
+                        enviar(control);
+                    }
+                } else if (ReliablePeer.esDatos(datos)) {
+                    actual.recibir(datos, this::mostrar);
+                    actual.escribirAck(control);
+                    enviar(control);
+                } else {
+                    mostrar(datos);
+                }
+            } catch (SocketTimeoutException e) {
+                // Solo para revisar las retransmisiones
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void retransmitir(ByteBuffer control) throws IOException {
+        ReliablePeer actual = canal;
+        long ahora = System.nanoTime();
+        long seq = 0;
+        while ((seq = actual.vencido(seq + 1, ahora, control)) > 0) {
+            enviar(control);
+        }
+        if (actual.isCaido()) {
+            System.out.println("\n⚠️  El servidor no responde: se descartan " + actual.getPendientes() + " mensajes");
+            canal = new ReliablePeer();
+        }
+    }
+
+    /** Un mensaje o respuesta del servidor, ya en orden. */
+    private void mostrar(ByteBuffer cuerpo) {
+        String texto = new String(cuerpo.array(), cuerpo.arrayOffset() + cuerpo.position(), cuerpo.remaining(),
+                StandardCharsets.UTF_8);
+        String[] partes = texto.split("\\|", 4);
+        if ("MSG".equals(partes[0]) && partes.length == 4) {
+            System.out.println("\n[" + partes[1] + " en " + partes[2] + "]: " + partes[3]);
+        } else if ("PRIVATE".equals(partes[0]) && partes.length == 4) {
+            System.out.println("\n🔒 [" + partes[1] + " → " + partes[2] + "]: " + partes[3]);
+        } else {
+            respuestas.add(texto);
+        }
     }
 }
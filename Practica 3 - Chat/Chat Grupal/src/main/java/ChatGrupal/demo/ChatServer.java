@@ -1,19 +1,43 @@
 package ChatGrupal.demo;
 
-import java.io.*;
-import java.net.*;
-import java.nio.charset.StandardCharsets;
-import java.util.*;
+import ChatGrupal.demo.udp.CommandHandler;
+import ChatGrupal.demo.udp.Packet;
+import ChatGrupal.demo.udp.PacketPool;
+import ChatGrupal.demo.udp.Retransmitter;
+import ChatGrupal.demo.udp.Worker;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Servidor de Chat Grupal UDP con Hilos
  * Cumple requisitos: Sockets UDP + Manejo de hilos
+ *
+ * Un solo hilo (event loop) recibe todos los datagramas del DatagramChannel, cada uno en un
+ * Packet propio sacado de un PacketPool, y los reparte entre un número fijo de Worker según
+ * el remitente. Los hilos y los buffers se crean al arrancar: en régimen estable no se crea
+ * ningún hilo por datagrama.
+ *
+ * Un hilo más (Retransmitter) reenvía los mensajes confiables que no se confirmaron a tiempo
+ * y saca de las salas a los clientes que no enviaron nada en -Dchat.lease.segundos (30).
+ * Con -Dchat.perdida=P el servidor descarta al azar esa fracción de lo que recibe, para probar
+ * la entrega confiable con pérdida (ChatClient acepta la misma propiedad).
  */
 public class ChatServer {
     private static final int PORT = 5000;
-    private static Map<String, Set<String>> salas = new HashMap<>();
-    private static final Object lock = new Object();
-    private static int threadCounter = 0;
+    private static final int BUFFER_SIZE = 8192; // Mayor datagrama que se acepta
+    private static final int PACKETS = 1024; // Datagramas en vuelo como máximo
+    private static final int WORKERS = Integer.getInteger("chat.workers",
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+    private static final boolean VERBOSE = Boolean.getBoolean("chat.verbose");
+    private static final double PERDIDA = Double.parseDouble(System.getProperty("chat.perdida", "0"));
+    private static final long STATS_INTERVAL = 10_000_000_000L; // ns entre líneas de estadísticas
+    private static final long RETRANSMIT_INTERVAL = 10; // ms entre revisiones de mensajes sin confirmar
+    private static final long LEASE = Long.getLong("chat.lease.segundos", 30) * 1000; // ms sin datagramas de un cliente
 
     public static void main(String[] args) {
         System.out.println("╔════════════════════════════════════════════════════════╗");
@@ -21,178 +45,72 @@ public class ChatServer {
         System.out.println("╚════════════════════════════════════════════════════════╝");
         System.out.println();
         System.out.println("🔧 Configuración:");
-        System.out.println("   └─ Protocolo: UDP (DatagramSocket)");
+        System.out.println("   └─ Protocolo: UDP (DatagramChannel)");
         System.out.println("   └─ Puerto: " + PORT);
-        System.out.println("   └─ Manejo: Multihilo (Thread por cliente)");
+        System.out.println("   └─ Manejo: event loop + " + WORKERS + " hilos de trabajo (-Dchat.workers)");
+        System.out.println("   └─ Buffers: " + PACKETS + " de " + BUFFER_SIZE + " bytes");
+        System.out.println("   └─ Lease por cliente: " + LEASE / 1000 + " s sin datagramas (-Dchat.lease.segundos)");
+        System.out.println("   └─ Registro por comando: " + (VERBOSE ? "sí" : "no (-Dchat.verbose=true)"));
+        if (PERDIDA > 0) {
+            System.out.println("   └─ Pérdida simulada al recibir: " + PERDIDA * 100 + "%");
+        }
         System.out.println();
 
-        try (DatagramSocket serverSocket = new DatagramSocket(PORT)) {
-            System.out.println("✅ Socket UDP creado exitosamente");
-            System.out.println("   └─ Tipo: java.net.DatagramSocket");
-            System.out.println("   └─ Puerto local: " + serverSocket.getLocalPort());
-            System.out.println("   └─ Buffer tamaño: 1024 bytes");
-            System.out.println();
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, 4 * 1024 * 1024);
+            channel.bind(new InetSocketAddress(PORT));
+            System.out.println("✅ Socket UDP creado exitosamente en el puerto " + PORT);
             System.out.println("🎧 Servidor escuchando conexiones UDP...");
             System.out.println("════════════════════════════════════════════════════════");
             System.out.println();
-
-            byte[] receiveBuffer = new byte[1024];
-
-            while (true) {
-                DatagramPacket receivePacket = new DatagramPacket(receiveBuffer, receiveBuffer.length);
-                
-                // Bloquea hasta recibir paquete
-                serverSocket.receive(receivePacket);
-                
-                // Incrementar contador de hilos
-                threadCounter++;
-                
-                System.out.println("📨 [NUEVO PAQUETE UDP RECIBIDO]");
-                System.out.println("   ├─ Desde: " + receivePacket.getAddress().getHostAddress() + ":" + receivePacket.getPort());
-                System.out.println("   ├─ Tamaño: " + receivePacket.getLength() + " bytes");
-                System.out.println("   └─ Datos: " + new String(receivePacket.getData(), 0, receivePacket.getLength(), StandardCharsets.UTF_8));
-                
-                // Crear y lanzar nuevo hilo
-                Thread clientThread = new Thread(new ClientHandler(receivePacket, serverSocket, salas, threadCounter));
-                clientThread.setName("ClientHandler-" + threadCounter);
-                
-                System.out.println();
-                System.out.println("🧵 [CREANDO NUEVO HILO]");
-                System.out.println("   ├─ ID Hilo: #" + threadCounter);
-                System.out.println("   ├─ Nombre: " + clientThread.getName());
-                System.out.println("   ├─ Estado: " + clientThread.getState());
-                System.out.println("   └─ Cliente: " + receivePacket.getAddress().getHostAddress());
-                
-                clientThread.start();
-                
-                System.out.println("   ✅ Hilo iniciado");
-                System.out.println("   └─ Total hilos activos: ~" + Thread.activeCount());
-                System.out.println("════════════════════════════════════════════════════════");
-                System.out.println();
-            }
+            run(channel, WORKERS, VERBOSE);
         } catch (IOException e) {
             System.err.println("❌ Error en el servidor UDP: " + e.getMessage());
             e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
     /**
-     * Clase interna para manejar cada cliente en un hilo separado
+     * Event loop: recibe en un Packet libre y lo encola en el Worker del remitente.
+     * Cada STATS_INTERVAL imprime una línea con el ritmo de comandos procesados.
      */
-    static class ClientHandler implements Runnable {
-        private DatagramPacket packet;
-        private DatagramSocket socket;
-        private Map<String, Set<String>> salas;
-        private int threadId;
-
-        public ClientHandler(DatagramPacket packet, DatagramSocket socket, Map<String, Set<String>> salas, int threadId) {
-            this.packet = packet;
-            this.socket = socket;
-            this.salas = salas;
-            this.threadId = threadId;
-        }
-
-        @Override
-        public void run() {
-            String threadName = Thread.currentThread().getName();
-            System.out.println("🔄 [HILO #" + threadId + " EJECUTÁNDOSE]");
-            System.out.println("   └─ Thread: " + threadName);
-            
-            try {
-                String mensaje = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
-                String[] partes = mensaje.split("\\|");
-                String comando = partes[0];
-
-                System.out.println("   ├─ Procesando comando: " + comando);
-
-                if ("JOIN".equals(comando)) {
-                    String usuario = partes[1];
-                    String sala = partes[2];
-                    System.out.println("   ├─ Usuario: " + usuario);
-                    System.out.println("   └─ Sala: " + sala);
-                    agregarUsuarioASala(usuario, sala);
-                    responderAlCliente(usuario, sala);
-                } else if ("LEAVE".equals(comando)) {
-                    String usuario = partes[1];
-                    String sala = partes[2];
-                    System.out.println("   ├─ Usuario: " + usuario);
-                    System.out.println("   └─ Sala: " + sala);
-                    removerUsuarioDeSala(usuario, sala);
-                } else if ("LIST".equals(comando)) {
-                    String sala = partes[1];
-                    System.out.println("   └─ Sala: " + sala);
-                    responderListaUsuarios(sala);
-                } else if ("SEND".equals(comando)) {
-                    String usuario = partes[1];
-                    String sala = partes[2];
-                    String contenido = String.join("|", java.util.Arrays.copyOfRange(partes, 3, partes.length));
-                    System.out.println("   ├─ Usuario: " + usuario);
-                    System.out.println("   ├─ Sala: " + sala);
-                    System.out.println("   └─ Mensaje: " + contenido);
-                    // Solo registrar, el bridge maneja el broadcast
-                } else if ("PRIVATE".equals(comando)) {
-                    String fromUser = partes[1];
-                    String toUser = partes[2];
-                    String contenido = String.join("|", java.util.Arrays.copyOfRange(partes, 3, partes.length));
-                    System.out.println("   ├─ De: " + fromUser);
-                    System.out.println("   ├─ Para: " + toUser);
-                    System.out.println("   └─ Mensaje privado: " + contenido);
-                    // Solo registrar, el bridge maneja el envío privado
-                }
-                
-                System.out.println("   ✅ Hilo #" + threadId + " completado");
-            } catch (Exception e) {
-                System.err.println("   ❌ Error en hilo #" + threadId + ": " + e.getMessage());
-            }
+    static void run(DatagramChannel channel, int workers, boolean verbose) throws IOException, InterruptedException {
+        PacketPool pool = new PacketPool(PACKETS, BUFFER_SIZE);
+        CommandHandler handler = new CommandHandler(channel, verbose, LEASE);
+        Worker[] hilos = new Worker[workers];
+        for (int i = 0; i < workers; i++) {
+            hilos[i] = new Worker(i, PACKETS, BUFFER_SIZE, handler, pool);
+            hilos[i].start();
         }
-
-        private void agregarUsuarioASala(String usuario, String sala) {
-            synchronized (lock) {
-                salas.computeIfAbsent(sala, k -> new HashSet<>()).add(usuario);
-                System.out.println("   📝 Usuario '" + usuario + "' agregado a sala '" + sala + "'");
-                System.out.println("   └─ Usuarios en '" + sala + "': " + salas.get(sala));
-            }
-        }
-
-        private void removerUsuarioDeSala(String usuario, String sala) {
-            synchronized (lock) {
-                if (salas.containsKey(sala)) {
-                    salas.get(sala).remove(usuario);
-                    System.out.println("   🗑️  Usuario '" + usuario + "' removido de sala '" + sala + "'");
-                }
+        new Retransmitter(handler, RETRANSMIT_INTERVAL, BUFFER_SIZE).start();
+
+        long lastStats = System.nanoTime();
+        long lastCount = 0;
+        long lastSent = 0;
+        while (true) {
+            Packet packet = pool.tomar();
+            SocketAddress remitente = channel.receive(packet.prepararRecepcion());
+            packet.recibido(remitente);
+            if (PERDIDA > 0 && ThreadLocalRandom.current().nextDouble() < PERDIDA) {
+                pool.liberar(packet);
+                continue;
             }
-        }
-
-        private void responderAlCliente(String usuario, String sala) throws IOException {
-            synchronized (lock) {
-                Set<String> usuarios = salas.getOrDefault(sala, new HashSet<>());
-                String respuesta = "OK|" + String.join(",", usuarios);
-                
-                System.out.println("   📤 Enviando respuesta UDP:");
-                System.out.println("      ├─ Destino: " + packet.getAddress().getHostAddress() + ":" + packet.getPort());
-                System.out.println("      └─ Contenido: " + respuesta);
-                
-                enviarRespuesta(respuesta);
+            hilos[Math.floorMod(remitente.hashCode(), workers)].encolar(packet);
+
+            long now = System.nanoTime();
+            if (now - lastStats >= STATS_INTERVAL) {
+                long count = handler.getProcesados();
+                long sent = handler.getEntregados();
+                double seconds = (now - lastStats) / 1e9;
+                System.out.printf("📊 %.0f comandos/s | %.0f entregas/s | buffers libres: %d/%d | confiables: %d, %d retransmisiones | leases: %d, %d expirados%n",
+                        (count - lastCount) / seconds, (sent - lastSent) / seconds, pool.disponibles(), PACKETS,
+                        handler.getPares(), handler.getRetransmisiones(), handler.getLeases(), handler.getExpirados());
+                lastStats = now;
+                lastCount = count;
+                lastSent = sent;
             }
         }
-
-        private void responderListaUsuarios(String sala) throws IOException {
-            synchronized (lock) {
-                Set<String> usuarios = salas.getOrDefault(sala, new HashSet<>());
-                String respuesta = "LIST|" + String.join(",", usuarios);
-                enviarRespuesta(respuesta);
-            }
-        }
-
-        private void enviarRespuesta(String respuesta) throws IOException {
-            byte[] responseBuffer = respuesta.getBytes();
-            DatagramPacket responsePacket = new DatagramPacket(
-                    responseBuffer,
-                    responseBuffer.length,
-                    packet.getAddress(),
-                    packet.getPort()
-            );
-            socket.send(responsePacket);
-        }
     }
 }
@@ -0,0 +1,293 @@
+package ChatGrupal.demo.broker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cola de salida acotada de una sesión WebSocket, en lugar del ConcurrentWebSocketSessionDecorator
+ * de Spring. Quien envía solo encola y vuelve; la cola la escribe un hilo de OutboundWriters, uno
+ * por sesión a la vez, así un cliente lento no frena el reparto a los otros ni se queda con los
+ * hilos del canal de salida. Cuando la cola pasa de {@code maxMensajes} o {@code maxBytes}, se
+ * aplica la Politica:
+ *
+ * - DESCARTAR_ANTIGUOS: se descartan los más antiguos hasta volver al límite.
+ * - COALESCER_PRESENCIA: primero se descartan los deltas de presencia que tienen otro más nuevo
+ *   de la misma sala en la cola (el cliente ve el salto de versión y pide la lista); si no basta,
+ *   se descartan los más antiguos.
+ * - DESCONECTAR: se cierra la sesión.
+ *
+ * Un envío que lleva más de {@code tiempoEnvioMs} cierra la sesión con cualquier política: ese
+ * cliente no está leyendo. Lo detecta el vigía de OutboundWriters, y el cierre va a otro hilo para
+ * que nadie se quede esperando a que el contenedor logre escribir el frame de cierre.
+ */
+public class BoundedSessionDecorator extends WebSocketSessionDecorator {
+    private static final Logger logger = LoggerFactory.getLogger(BoundedSessionDecorator.class);
+    private static final String PRESENCIA_PREFIJO = "/topic/sala/";
+    private static final String PRESENCIA_SUFIJO = "/usuarios";
+
+    public enum Politica {
+        DESCARTAR_ANTIGUOS, COALESCER_PRESENCIA, DESCONECTAR;
+
+        /** "descartar-antiguos", "coalescer-presencia" o "desconectar". */
+        public static Politica de(String nombre) {
+            return valueOf(nombre.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    private static final class Pendiente {
+        final WebSocketMessage<?> mensaje;
+        final int bytes;
+        final String presencia; // Destino si es un delta de presencia
+
+        Pendiente(WebSocketMessage<?> mensaje, String presencia) {
+            this.mensaje = mensaje;
+            this.bytes = mensaje.getPayloadLength();
+            this.presencia = presencia;
+        }
+    }
+
+    private final int tiempoEnvioMs;
+    private final int maxBytes;
+    private final int maxMensajes;
+    private final Politica politica;
+    private final OutboundWriters escritores;
+    private final OutboundMetrics metricas;
+
+    private final ArrayDeque<Pendiente> cola = new ArrayDeque<>(); // Bajo su propio monitor
+    private int colaBytes;
+    private final AtomicBoolean programada = new AtomicBoolean(); // Hay un vaciado pendiente o en curso
+    private volatile long inicioEnvio; // 0 si no hay un envío en curso
+    private volatile boolean limiteExcedido;
+    private final AtomicBoolean cerrada = new AtomicBoolean();
+    private boolean avisada; // Ya se registró que la cola se llenó (bajo el monitor de la cola)
+
+    public BoundedSessionDecorator(WebSocketSession sesion, int tiempoEnvioMs, int maxBytes, int maxMensajes,
+                                   Politica politica, OutboundWriters escritores) {
+        super(sesion);
+        this.tiempoEnvioMs = tiempoEnvioMs;
+        this.maxBytes = maxBytes;
+        this.maxMensajes = maxMensajes;
+        this.politica = politica;
+        this.escritores = escritores;
+        this.metricas = escritores.getMetricas();
+        escritores.registrar(this);
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> mensaje) throws IOException {
+        if (limiteExcedido || cerrada.get()) return;
+        Pendiente pendiente = new Pendiente(mensaje,
+                politica == Politica.COALESCER_PRESENCIA ? destinoPresencia(mensaje) : null);
+        boolean llena;
+        synchronized (cola) {
+            cola.add(pendiente);
+            colaBytes += pendiente.bytes;
+            metricas.encolado(pendiente.bytes, cola.size());
+            llena = excedida();
+            if (llena && politica != Politica.DESCONECTAR) {
+                recortar();
+            }
+        }
+        if (llena && politica == Politica.DESCONECTAR) {
+            excederLimite();
+            throw new SessionLimitExceededException("cola de salida llena (" + maxMensajes + " mensajes / "
+                    + maxBytes + " bytes)", CloseStatus.SESSION_NOT_RELIABLE);
+        }
+        programar();
+    }
+
+    private void programar() {
+        if (programada.compareAndSet(false, true)) {
+            escritores.escribir(this::vaciar);
+        }
+    }
+
+    /** Escribe la cola en un hilo de OutboundWriters. */
+    private void vaciar() {
+        try {
+            Pendiente pendiente;
+            while (!limiteExcedido && !cerrada.get() && (pendiente = sacar()) != null) {
+                inicioEnvio = System.currentTimeMillis();
+                getDelegate().sendMessage(pendiente.mensaje);
+                inicioEnvio = 0;
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Sesion {}: fallo el envio: {}", getId(), e.getMessage());
+            if (!cerrada.get()) { // Si ya se cerró (el cliente se fue o la cerró el vigía) ya está contada
+                excederLimite();
+                cerrar(CloseStatus.SESSION_NOT_RELIABLE);
+            }
+        } finally {
+            inicioEnvio = 0;
+            programada.set(false);
+        }
+        // Otro hilo pudo encolar justo antes de soltar 'programada': se vuelve a mirar
+        if (hayPendientes() && !limiteExcedido && !cerrada.get()) {
+            programar();
+        }
+    }
+
+    private boolean hayPendientes() {
+        synchronized (cola) {
+            return !cola.isEmpty();
+        }
+    }
+
+    private Pendiente sacar() {
+        synchronized (cola) {
+            Pendiente pendiente = cola.poll();
+            if (pendiente != null) {
+                colaBytes -= pendiente.bytes;
+                metricas.desencolado(pendiente.bytes);
+            }
+            return pendiente;
+        }
+    }
+
+    private boolean excedida() {
+        return cola.size() > maxMensajes || colaBytes > maxBytes;
+    }
+
+    /** Aplica la política hasta volver al límite; el mensaje recién encolado nunca se descarta. */
+    private void recortar() {
+        if (politica == Politica.COALESCER_PRESENCIA) {
+            Set<String> vistos = new HashSet<>();
+            Iterator<Pendiente> it = cola.descendingIterator(); // Del más nuevo al más antiguo
+            while (it.hasNext() && excedida()) {
+                Pendiente pendiente = it.next();
+                if (pendiente.presencia != null && !vistos.add(pendiente.presencia)) {
+                    it.remove();
+                    colaBytes -= pendiente.bytes;
+                    metricas.coalescido(pendiente.bytes);
+                }
+            }
+        }
+        while (excedida() && cola.size() > 1) {
+            Pendiente pendiente = cola.poll();
+            colaBytes -= pendiente.bytes;
+            metricas.descartado(pendiente.bytes);
+        }
+        if (!avisada) {
+            avisada = true;
+            logger.warn("Sesion {}: cola de salida llena ({} mensajes / {} bytes), se aplica {}",
+                    getId(), maxMensajes, maxBytes, politica);
+        }
+    }
+
+    /** Marca la sesión para cerrarla y la cuenta como desconexión, una sola vez. */
+    private void excederLimite() {
+        synchronized (cola) {
+            if (limiteExcedido) return;
+            limiteExcedido = true;
+        }
+        vaciarCola();
+        metricas.desconectada();
+    }
+
+    /** Lo llama el vigía cuando el envío en curso pasó de {@code tiempoEnvioMs}. */
+    void atascada(long ms) {
+        if (limiteExcedido || cerrada.get()) return;
+        logger.warn("Sesion {}: un envio lleva {} ms (limite {} ms), se cierra", getId(), ms, tiempoEnvioMs);
+        excederLimite();
+        cerrar(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    /** La sesión ya se cerró del lado del contenedor: se suelta lo que quedaba en cola. */
+    void descartar() {
+        cerrada.set(true);
+        vaciarCola();
+    }
+
+    private void cerrar(CloseStatus estado) {
+        try {
+            close(estado);
+        } catch (IOException e) {
+            logger.debug("Sesion {}: fallo el cierre: {}", getId(), e.getMessage());
+        }
+    }
+
+    private void vaciarCola() {
+        synchronized (cola) {
+            for (Pendiente pendiente : cola) {
+                metricas.desencolado(pendiente.bytes);
+            }
+            cola.clear();
+            colaBytes = 0;
+        }
+    }
+
+    @Override
+    public void close(CloseStatus estado) throws IOException {
+        if (!cerrada.compareAndSet(false, true)) return;
+        vaciarCola();
+        escritores.quitar(getId());
+        if (!limiteExcedido) {
+            super.close(estado);
+            return;
+        }
+        // Con un envío atascado, el contenedor puede tardar en escribir el cierre: que no espere este hilo
+        escritores.cerrar(() -> {
+            try {
+                getDelegate().close(estado);
+            } catch (IOException | RuntimeException e) {
+                logger.debug("Sesion {}: fallo el cierre: {}", getId(), e.getMessage());
+            }
+        });
+    }
+
+    /** Destino del frame MESSAGE si es de presencia (/topic/sala/{sala}/usuarios); null si no. */
+    private static String destinoPresencia(WebSocketMessage<?> mensaje) {
+        if (!(mensaje instanceof TextMessage texto)) return null;
+        String frame = texto.getPayload();
+        if (!frame.startsWith("MESSAGE\n")) return null;
+        int fin = frame.indexOf("\n\n");
+        int inicio = frame.indexOf("\ndestination:");
+        if (inicio < 0 || (fin >= 0 && inicio > fin)) return null;
+        inicio += "\ndestination:".length();
+        int finLinea = frame.indexOf('\n', inicio);
+        String destino = frame.substring(inicio, finLinea < 0 ? frame.length() : finLinea);
+        return destino.startsWith(PRESENCIA_PREFIJO) && destino.endsWith(PRESENCIA_SUFIJO) ? destino : null;
+    }
+
+    /** Mensajes que esperan en la cola de esta sesión. */
+    public int getMensajesEnCola() {
+        synchronized (cola) {
+            return cola.size();
+        }
+    }
+
+    public int getBytesEnCola() {
+        synchronized (cola) {
+            return colaBytes;
+        }
+    }
+
+    int getTiempoEnvioMs() {
+        return tiempoEnvioMs;
+    }
+
+    /** Milisegundos que lleva el envío en curso, o 0. */
+    public long getTiempoEnvio() {
+        long inicio = inicioEnvio;
+        return inicio != 0 ? System.currentTimeMillis() - inicio : 0;
+    }
+
+    @Override
+    public String toString() {
+        return getDelegate() + ", cola=" + getMensajesEnCola() + " mensajes/" + getBytesEnCola() + " bytes";
+    }
+}
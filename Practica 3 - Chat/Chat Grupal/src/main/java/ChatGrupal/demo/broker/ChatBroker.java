@@ -0,0 +1,373 @@
+package ChatGrupal.demo.broker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.AntPathMatcher;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Broker STOMP en memoria que reemplaza al SimpleBrokerMessageHandler de Spring (se elige con
+ * chat.broker; ver BrokerConfig). Con los mismos prefijos y el mismo protocolo hacia el cliente,
+ * cambia cómo se reparte cada publicación:
+ *
+ * - Las suscripciones están en un árbol por segmentos del destino (/topic, sala, General...). Cada
+ *   nodo guarda sus suscriptores en un arreglo que se copia al cambiar (copy-on-write), así que
+ *   buscar los de una sala no toma candados ni compara patrones: es recorrer el destino.
+ *   Admite segmentos literales, "*" y un "**" final; el resto de patrones Ant van a una lista
+ *   aparte que se compara mensaje a mensaje, como hace el simple broker.
+ * - Cada copia lleva ya un StompHeaderAccessor y la misma Publicacion: FrameEncoder codifica el
+ *   frame una sola vez por publicación y a cada sesión solo le antepone sus cabeceras
+ *   subscription y message-id.
+ *
+ * Las altas y bajas se serializan con un candado; las publicaciones no lo toman. Igual que el
+ * simple broker sin TaskScheduler, no envía heartbeats.
+ */
+public class ChatBroker extends AbstractBrokerMessageHandler {
+    private static final Logger logger = LoggerFactory.getLogger(ChatBroker.class);
+    private static final byte[] VACIO = new byte[0];
+    private static final Suscripcion[] NINGUNA = new Suscripcion[0];
+    private static final String UNO = "*";
+    private static final String RESTO = "**";
+
+    /** Cabecera con la que FrameEncoder reconoce las copias de una misma publicación. */
+    static final String PUBLICACION = "chatPublicacion";
+
+    /** Una publicación: las cabeceras nativas comunes y, una vez codificado, el frame sin las de cada sesión. */
+    static final class Publicacion {
+        final Map<String, List<String>> nativas;
+        volatile byte[] cola; // Lo rellena FrameEncoder con la primera copia
+
+        Publicacion(Map<String, List<String>> nativas) {
+            this.nativas = nativas;
+        }
+    }
+
+    private static final class Nodo {
+        final Nodo padre;
+        final String segmento;
+        final Map<String, Nodo> hijos = new ConcurrentHashMap<>();
+        volatile Suscripcion[] suscripciones = NINGUNA;
+
+        Nodo(Nodo padre, String segmento) {
+            this.padre = padre;
+            this.segmento = segmento;
+        }
+    }
+
+    private static final class Suscripcion {
+        final Sesion sesion;
+        final String id;
+        final String destino;
+        final Nodo nodo; // null si el patrón está en la lista aparte
+
+        Suscripcion(Sesion sesion, String id, String destino, Nodo nodo) {
+            this.sesion = sesion;
+            this.id = id;
+            this.destino = destino;
+            this.nodo = nodo;
+        }
+    }
+
+    private static final class Sesion {
+        final String id;
+        final MessageChannel canal;
+        final Map<String, Suscripcion> suscripciones = new HashMap<>(); // Bajo el candado de cambios
+
+        Sesion(String id, MessageChannel canal) {
+            this.id = id;
+            this.canal = canal;
+        }
+    }
+
+    private final Nodo raiz = new Nodo(null, "");
+    private volatile Suscripcion[] patrones = NINGUNA; // Patrones que el árbol no resuelve
+    private final AntPathMatcher matcher = new AntPathMatcher();
+    private final Map<String, Sesion> sesiones = new ConcurrentHashMap<>();
+    private final Object cambios = new Object();
+    private final AtomicLong mensajeIds = new AtomicLong();
+    private final LongAdder publicaciones = new LongAdder();
+    private final LongAdder entregas = new LongAdder();
+    private int totalSuscripciones; // Bajo el candado de cambios
+
+    public ChatBroker(SubscribableChannel clientInboundChannel, MessageChannel clientOutboundChannel,
+                      SubscribableChannel brokerChannel, Collection<String> destinationPrefixes) {
+        super(clientInboundChannel, clientOutboundChannel, brokerChannel, destinationPrefixes);
+    }
+
+    @Override
+    protected void startInternal() {
+        publishBrokerAvailableEvent();
+        logger.info("Broker del chat iniciado para {}", getDestinationPrefixes());
+    }
+
+    @Override
+    protected void stopInternal() {
+        publishBrokerUnavailableEvent();
+    }
+
+    @Override
+    protected void handleMessageInternal(Message<?> message) {
+        Map<String, Object> headers = message.getHeaders();
+        String destino = SimpMessageHeaderAccessor.getDestination(headers);
+        String sesion = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (!checkDestinationPrefix(destino)) return;
+
+        SimpMessageType tipo = SimpMessageHeaderAccessor.getMessageType(headers);
+        if (tipo == SimpMessageType.MESSAGE) {
+            publicar(destino, message);
+        } else if (tipo == SimpMessageType.CONNECT) {
+            conectar(sesion, message);
+        } else if (tipo == SimpMessageType.DISCONNECT) {
+            desconectar(sesion, message);
+        } else if (tipo == SimpMessageType.SUBSCRIBE) {
+            suscribir(sesion, SimpMessageHeaderAccessor.getSubscriptionId(headers), destino);
+        } else if (tipo == SimpMessageType.UNSUBSCRIBE) {
+            desuscribir(sesion, SimpMessageHeaderAccessor.getSubscriptionId(headers));
+        }
+    }
+
+    private void conectar(String sesion, Message<?> message) {
+        if (sesion == null) return;
+        sesiones.putIfAbsent(sesion, new Sesion(sesion, getClientOutboundChannelForSession(sesion)));
+        SimpMessageHeaderAccessor ack = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT_ACK);
+        ack.setSessionId(sesion);
+        ack.setUser(SimpMessageHeaderAccessor.getUser(message.getHeaders()));
+        ack.setHeader(SimpMessageHeaderAccessor.CONNECT_MESSAGE_HEADER, message);
+        ack.setHeader(SimpMessageHeaderAccessor.HEART_BEAT_HEADER, new long[] {0, 0});
+        getClientOutboundChannel().send(MessageBuilder.createMessage(VACIO, ack.getMessageHeaders()));
+    }
+
+    private void desconectar(String sesion, Message<?> message) {
+        if (sesion == null) return;
+        Sesion datos = sesiones.remove(sesion);
+        if (datos != null) {
+            synchronized (cambios) {
+                for (Suscripcion suscripcion : datos.suscripciones.values()) {
+                    quitar(suscripcion);
+                }
+                datos.suscripciones.clear();
+            }
+        }
+        Principal usuario = SimpMessageHeaderAccessor.getUser(message.getHeaders());
+        SimpMessageHeaderAccessor ack = SimpMessageHeaderAccessor.create(SimpMessageType.DISCONNECT_ACK);
+        ack.setSessionId(sesion);
+        ack.setUser(usuario);
+        ack.setHeader(SimpMessageHeaderAccessor.DISCONNECT_MESSAGE_HEADER, message);
+        getClientOutboundChannel().send(MessageBuilder.createMessage(VACIO, ack.getMessageHeaders()));
+    }
+
+    private void suscribir(String sesion, String id, String destino) {
+        if (sesion == null || id == null || destino == null) {
+            logger.warn("SUBSCRIBE incompleto (sesion={}, id={}, destino={})", sesion, id, destino);
+            return;
+        }
+        Sesion datos = sesiones.computeIfAbsent(sesion,
+                s -> new Sesion(s, getClientOutboundChannelForSession(s)));
+        synchronized (cambios) {
+            if (datos.suscripciones.containsKey(id)) {
+                quitar(datos.suscripciones.remove(id)); // Mismo id: la nueva reemplaza a la anterior
+            }
+            String[] segmentos = segmentos(destino);
+            Suscripcion suscripcion;
+            if (enArbol(destino, segmentos)) {
+                Nodo nodo = raiz;
+                for (String segmento : segmentos) {
+                    Nodo padre = nodo;
+                    nodo = padre.hijos.computeIfAbsent(segmento, s -> new Nodo(padre, s));
+                }
+                suscripcion = new Suscripcion(datos, id, destino, nodo);
+                nodo.suscripciones = agregar(nodo.suscripciones, suscripcion);
+            } else {
+                suscripcion = new Suscripcion(datos, id, destino, null);
+                patrones = agregar(patrones, suscripcion);
+            }
+            datos.suscripciones.put(id, suscripcion);
+            totalSuscripciones++;
+        }
+    }
+
+    private void desuscribir(String sesion, String id) {
+        Sesion datos = sesion != null ? sesiones.get(sesion) : null;
+        if (datos == null || id == null) return;
+        synchronized (cambios) {
+            Suscripcion suscripcion = datos.suscripciones.remove(id);
+            if (suscripcion != null) quitar(suscripcion);
+        }
+    }
+
+    /** Saca la suscripción del árbol (o de la lista de patrones) y poda los nodos que quedan vacíos. */
+    private void quitar(Suscripcion suscripcion) {
+        totalSuscripciones--;
+        Nodo nodo = suscripcion.nodo;
+        if (nodo == null) {
+            patrones = sin(patrones, suscripcion);
+            return;
+        }
+        nodo.suscripciones = sin(nodo.suscripciones, suscripcion);
+        while (nodo.padre != null && nodo.suscripciones.length == 0 && nodo.hijos.isEmpty()) {
+            nodo.padre.hijos.remove(nodo.segmento, nodo);
+            nodo = nodo.padre;
+        }
+    }
+
+    /** Reparte el mensaje a cada suscripción que coincide con el destino. */
+    private void publicar(String destino, Message<?> message) {
+        if (destino == null) return;
+        List<Suscripcion[]> encontradas = new ArrayList<>(2);
+        buscar(raiz, segmentos(destino), 0, encontradas);
+        Suscripcion[] conPatron = patrones;
+        List<Suscripcion> porPatron = null;
+        for (Suscripcion suscripcion : conPatron) {
+            if (matcher.match(suscripcion.destino, destino)) {
+                if (porPatron == null) porPatron = new ArrayList<>();
+                porPatron.add(suscripcion);
+            }
+        }
+        if (porPatron != null) encontradas.add(porPatron.toArray(NINGUNA));
+        if (encontradas.isEmpty()) return;
+
+        publicaciones.increment();
+        Publicacion publicacion = new Publicacion(nativas(message));
+        for (Suscripcion[] suscripciones : encontradas) {
+            for (Suscripcion suscripcion : suscripciones) {
+                enviar(suscripcion, publicacion, message);
+            }
+        }
+    }
+
+    private void buscar(Nodo nodo, String[] segmentos, int i, List<Suscripcion[]> encontradas) {
+        Nodo resto = nodo.hijos.get(RESTO);
+        if (resto != null && resto.suscripciones.length > 0) encontradas.add(resto.suscripciones);
+        if (i == segmentos.length) {
+            if (nodo.suscripciones.length > 0) encontradas.add(nodo.suscripciones);
+            return;
+        }
+        String segmento = segmentos[i];
+        if (!segmento.equals(UNO) && !segmento.equals(RESTO)) {
+            Nodo literal = nodo.hijos.get(segmento);
+            if (literal != null) buscar(literal, segmentos, i + 1, encontradas);
+        }
+        Nodo uno = nodo.hijos.get(UNO);
+        if (uno != null) buscar(uno, segmentos, i + 1, encontradas);
+    }
+
+    private void enviar(Suscripcion suscripcion, Publicacion publicacion, Message<?> message) {
+        Sesion sesion = suscripcion.sesion;
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE, publicacion.nativas);
+        accessor.setSessionId(sesion.id);
+        accessor.setSubscriptionId(suscripcion.id);
+        accessor.setMessageId(sesion.id + "-" + mensajeIds.getAndIncrement());
+        accessor.copyHeadersIfAbsent(message.getHeaders());
+        accessor.setHeader(PUBLICACION, publicacion);
+        accessor.setLeaveMutable(true);
+        try {
+            sesion.canal.send(MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders()));
+            entregas.increment();
+        } catch (RuntimeException e) {
+            logger.error("No se pudo entregar a la sesion {}: {}", sesion.id, e.getMessage());
+        }
+    }
+
+    /**
+     * Cabeceras nativas comunes a todas las copias: las del mensaje, con el destino que ve el
+     * cliente (el original si era /user/...) y sin las que son de cada sesión.
+     */
+    private static Map<String, List<String>> nativas(Message<?> message) {
+        StompHeaderAccessor origen = StompHeaderAccessor.wrap(message); // Pasa destino y content-type a nativas
+        Map<String, List<String>> nativas = new LinkedHashMap<>(origen.toNativeHeaderMap());
+        List<String> original = nativas.remove(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION);
+        if (original != null && !original.isEmpty()) {
+            nativas.put(StompHeaderAccessor.STOMP_DESTINATION_HEADER, List.of(original.get(0)));
+        }
+        nativas.remove(StompHeaderAccessor.STOMP_SUBSCRIPTION_HEADER);
+        nativas.remove(StompHeaderAccessor.STOMP_MESSAGE_ID_HEADER);
+        return nativas;
+    }
+
+    /** Segmentos del destino; como AntPathMatcher, ignora los vacíos ("/a//b" es /a/b). */
+    private static String[] segmentos(String destino) {
+        List<String> segmentos = new ArrayList<>(4);
+        int inicio = 0;
+        for (int i = 0; i <= destino.length(); i++) {
+            if (i == destino.length() || destino.charAt(i) == '/') {
+                if (i > inicio) segmentos.add(destino.substring(inicio, i));
+                inicio = i + 1;
+            }
+        }
+        return segmentos.toArray(new String[0]);
+    }
+
+    /** Si el árbol resuelve el destino: segmentos literales, "*" enteros y, como mucho, un "**" final. */
+    private boolean enArbol(String destino, String[] segmentos) {
+        if (!matcher.isPattern(destino)) return true;
+        if (destino.indexOf('?') >= 0 || destino.indexOf('{') >= 0) return false;
+        for (int i = 0; i < segmentos.length; i++) {
+            String segmento = segmentos[i];
+            if (segmento.equals(UNO)) continue;
+            if (segmento.equals(RESTO) && i == segmentos.length - 1) continue;
+            if (segmento.indexOf('*') >= 0) return false;
+        }
+        return true;
+    }
+
+    private static Suscripcion[] agregar(Suscripcion[] actuales, Suscripcion nueva) {
+        Suscripcion[] copia = Arrays.copyOf(actuales, actuales.length + 1);
+        copia[actuales.length] = nueva;
+        return copia;
+    }
+
+    private static Suscripcion[] sin(Suscripcion[] actuales, Suscripcion quitada) {
+        for (int i = 0; i < actuales.length; i++) {
+            if (actuales[i] == quitada) {
+                Suscripcion[] copia = new Suscripcion[actuales.length - 1];
+                System.arraycopy(actuales, 0, copia, 0, i);
+                System.arraycopy(actuales, i + 1, copia, i, actuales.length - i - 1);
+                return copia;
+            }
+        }
+        return actuales;
+    }
+
+    /** Suscripciones activas. */
+    public int getSuscripciones() {
+        synchronized (cambios) {
+            return totalSuscripciones;
+        }
+    }
+
+    /** Mensajes publicados que tenían al menos un suscriptor. */
+    public long getPublicaciones() {
+        return publicaciones.sum();
+    }
+
+    /** Copias entregadas al canal de salida de las sesiones. */
+    public long getEntregas() {
+        return entregas.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ChatBroker[sesiones=" + sesiones.size() + ", suscripciones=" + getSuscripciones()
+                + ", publicaciones=" + getPublicaciones() + ", entregas=" + getEntregas() + "]";
+    }
+}
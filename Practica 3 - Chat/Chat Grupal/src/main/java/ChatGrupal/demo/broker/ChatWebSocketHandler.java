@@ -0,0 +1,72 @@
+package ChatGrupal.demo.broker;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+/**
+ * SubProtocolWebSocketHandler que deja al handler STOMP con FrameEncoder, para que las copias
+ * de una publicación de ChatBroker no se vuelvan a codificar una por una, y que pone a cada
+ * sesión una cola de salida acotada (BoundedSessionDecorator) con la política configurada. Las
+ * colas las escriben los hilos de OutboundWriters, que se detienen con el contexto.
+ *
+ * Los límites de bytes y de tiempo de envío son los del transporte (setSendBufferSizeLimit y
+ * setSendTimeLimit); el de mensajes y la política se ponen aquí.
+ */
+public class ChatWebSocketHandler extends SubProtocolWebSocketHandler implements DisposableBean {
+    private final OutboundWriters escritores = new OutboundWriters();
+    private int maxMensajes = 1000;
+    private BoundedSessionDecorator.Politica politica = BoundedSessionDecorator.Politica.COALESCER_PRESENCIA;
+
+    public ChatWebSocketHandler(MessageChannel clientInboundChannel, SubscribableChannel clientOutboundChannel) {
+        super(clientInboundChannel, clientOutboundChannel);
+    }
+
+    @Override
+    public void addProtocolHandler(SubProtocolHandler handler) {
+        if (handler instanceof StompSubProtocolHandler stomp) {
+            stomp.setEncoder(new FrameEncoder());
+        }
+        super.addProtocolHandler(handler);
+    }
+
+    @Override
+    protected WebSocketSession decorateSession(WebSocketSession session) {
+        return new BoundedSessionDecorator(session, getSendTimeLimit(), getSendBufferSizeLimit(), maxMensajes,
+                politica, escritores);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        escritores.quitar(session.getId());
+        super.afterConnectionClosed(session, closeStatus);
+    }
+
+    public void setMaxMensajes(int maxMensajes) {
+        this.maxMensajes = maxMensajes;
+    }
+
+    public void setPolitica(BoundedSessionDecorator.Politica politica) {
+        this.politica = politica;
+    }
+
+    public OutboundMetrics getMetricas() {
+        return escritores.getMetricas();
+    }
+
+    /** Lo incluye el registro periódico de WebSocketMessageBrokerStats. */
+    @Override
+    public String getStatsInfo() {
+        return super.getStatsInfo() + ", " + escritores.getMetricas() + ", " + escritores.getHilos() + " hilos de escritura";
+    }
+
+    @Override
+    public void destroy() {
+        escritores.detener();
+    }
+}
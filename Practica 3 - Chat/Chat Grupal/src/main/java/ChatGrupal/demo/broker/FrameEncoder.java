@@ -0,0 +1,92 @@
+package ChatGrupal.demo.broker;
+
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * StompEncoder que codifica una sola vez cada publicación de ChatBroker: la primera copia
+ * guarda en la Publicacion el frame sin las cabeceras de la sesión (destino, content-type,
+ * content-length y cuerpo) y las demás solo le anteponen "MESSAGE", subscription y message-id.
+ * Cualquier otro frame (CONNECTED, RECEIPT, ERROR...) se codifica como siempre.
+ */
+public class FrameEncoder extends StompEncoder {
+    private static final byte[] COMANDO = "MESSAGE\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SUSCRIPCION = "subscription:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MENSAJE_ID = "message-id:".getBytes(StandardCharsets.UTF_8);
+
+    @Override
+    public byte[] encode(Map<String, Object> headers, byte[] payload) {
+        if (!(headers.get(ChatBroker.PUBLICACION) instanceof ChatBroker.Publicacion publicacion)) {
+            return super.encode(headers, payload);
+        }
+        String suscripcion = nativa(headers, StompHeaderAccessor.STOMP_SUBSCRIPTION_HEADER);
+        String mensajeId = nativa(headers, StompHeaderAccessor.STOMP_MESSAGE_ID_HEADER);
+        if (suscripcion == null || mensajeId == null) {
+            return super.encode(headers, payload);
+        }
+        byte[] cola = publicacion.cola;
+        if (cola == null) {
+            // Si dos hilos llegan a la vez, ambos la calculan igual: no hace falta candado
+            byte[] frame = super.encode(StompHeaderAccessor.create(StompCommand.MESSAGE, publicacion.nativas)
+                    .getMessageHeaders(), payload);
+            cola = Arrays.copyOfRange(frame, COMANDO.length, frame.length);
+            publicacion.cola = cola;
+        }
+        byte[] sub = escapar(suscripcion).getBytes(StandardCharsets.UTF_8);
+        byte[] id = escapar(mensajeId).getBytes(StandardCharsets.UTF_8);
+        byte[] resultado = new byte[COMANDO.length + SUSCRIPCION.length + sub.length + 1
+                + MENSAJE_ID.length + id.length + 1 + cola.length];
+        int pos = copiar(COMANDO, resultado, 0);
+        pos = copiar(SUSCRIPCION, resultado, pos);
+        pos = copiar(sub, resultado, pos);
+        resultado[pos++] = '\n';
+        pos = copiar(MENSAJE_ID, resultado, pos);
+        pos = copiar(id, resultado, pos);
+        resultado[pos++] = '\n';
+        copiar(cola, resultado, pos);
+        return resultado;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String nativa(Map<String, Object> headers, String nombre) {
+        Object nativas = headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+        if (!(nativas instanceof Map)) return null;
+        List<String> valores = ((Map<String, List<String>>) nativas).get(nombre);
+        return valores != null && !valores.isEmpty() ? valores.get(0) : null;
+    }
+
+    /** Escapado de valores de cabecera de STOMP 1.2. */
+    private static String escapar(String valor) {
+        StringBuilder sb = null;
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            String escape = switch (c) {
+                case '\\' -> "\\\\";
+                case ':' -> "\\c";
+                case '\n' -> "\\n";
+                case '\r' -> "\\r";
+                default -> null;
+            };
+            if (escape != null && sb == null) {
+                sb = new StringBuilder(valor.length() + 8).append(valor, 0, i);
+            }
+            if (sb != null) {
+                if (escape != null) sb.append(escape);
+                else sb.append(c);
+            }
+        }
+        return sb != null ? sb.toString() : valor;
+    }
+
+    private static int copiar(byte[] origen, byte[] destino, int pos) {
+        System.arraycopy(origen, 0, destino, pos, origen.length);
+        return pos + origen.length;
+    }
+}
@@ -0,0 +1,78 @@
+package ChatGrupal.demo.broker;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas de las colas de salida de todas las sesiones (ver BoundedSessionDecorator). Son
+ * contadores sin contención: se actualizan en cada envío desde varios hilos a la vez.
+ */
+public class OutboundMetrics {
+    private final LongAdder mensajesEnCola = new LongAdder();
+    private final LongAdder bytesEnCola = new LongAdder();
+    private final LongAccumulator colaMaxima = new LongAccumulator(Math::max, 0);
+    private final LongAdder descartados = new LongAdder();
+    private final LongAdder coalescidos = new LongAdder();
+    private final LongAdder desconexiones = new LongAdder();
+
+    void encolado(int bytes, int profundidad) {
+        mensajesEnCola.increment();
+        bytesEnCola.add(bytes);
+        colaMaxima.accumulate(profundidad);
+    }
+
+    void desencolado(int bytes) {
+        mensajesEnCola.decrement();
+        bytesEnCola.add(-bytes);
+    }
+
+    void descartado(int bytes) {
+        desencolado(bytes);
+        descartados.increment();
+    }
+
+    void coalescido(int bytes) {
+        desencolado(bytes);
+        coalescidos.increment();
+    }
+
+    void desconectada() {
+        desconexiones.increment();
+    }
+
+    /** Mensajes esperando en las colas de todas las sesiones. */
+    public long getMensajesEnCola() {
+        return mensajesEnCola.sum();
+    }
+
+    public long getBytesEnCola() {
+        return bytesEnCola.sum();
+    }
+
+    /** Mayor profundidad que ha tenido la cola de una sesión desde el arranque. */
+    public long getColaMaxima() {
+        return colaMaxima.get();
+    }
+
+    /** Mensajes descartados por la política descartar-antiguos (o coalescer-presencia sin nada que coalescer). */
+    public long getDescartados() {
+        return descartados.sum();
+    }
+
+    /** Deltas de presencia descartados porque en la cola había uno más nuevo de la misma sala. */
+    public long getCoalescidos() {
+        return coalescidos.sum();
+    }
+
+    /** Sesiones cerradas por cola llena (política desconectar), por un envío atascado o por uno que falló. */
+    public long getDesconexiones() {
+        return desconexiones.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "colas de salida[" + getMensajesEnCola() + " mensajes, " + getBytesEnCola() + " bytes, maxima "
+                + getColaMaxima() + ", " + getDescartados() + " descartados, " + getCoalescidos() + " coalescidos, "
+                + getDesconexiones() + " desconexiones]";
+    }
+}
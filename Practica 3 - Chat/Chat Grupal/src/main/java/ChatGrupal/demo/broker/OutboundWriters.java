@@ -0,0 +1,121 @@
+package ChatGrupal.demo.broker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hilos que escriben las colas de salida de las sesiones (BoundedSessionDecorator). El hilo que
+ * reparte un mensaje solo lo encola; escribir al socket, que con un cliente que no lee se queda
+ * bloqueado, se hace aquí. Así un cliente lento nunca ocupa los hilos del canal de salida.
+ *
+ * Cada REVISION_MS un vigía recorre las sesiones:
+ * - La que lleva más de su límite de tiempo en un envío se cierra (sin esperar a que le llegue
+ *   otro mensaje, como hace el decorador de Spring).
+ * - Por cada envío que lleva más de LENTO_MS se suma un hilo al pool, para que los atascados no
+ *   dejen sin hilos a las sesiones sanas. Al destrabarse, el pool vuelve a su tamaño.
+ */
+public class OutboundWriters {
+    private static final Logger logger = LoggerFactory.getLogger(OutboundWriters.class);
+    private static final long REVISION_MS = 100;
+    private static final long LENTO_MS = 200;
+    private static final int MAX_EXTRA = 1000; // Hilos de más como mucho, por envíos atascados
+
+    private final int base;
+    private final ThreadPoolExecutor escritores;
+    private final ThreadPoolExecutor cierres;
+    private final ScheduledExecutorService vigia;
+    private final Map<String, BoundedSessionDecorator> sesiones = new ConcurrentHashMap<>();
+    private final OutboundMetrics metricas = new OutboundMetrics();
+
+    public OutboundWriters() {
+        this(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+    }
+
+    public OutboundWriters(int hilos) {
+        this.base = hilos;
+        this.escritores = new ThreadPoolExecutor(hilos, hilos, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                hilos("chat-salida"));
+        this.cierres = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), hilos("chat-cierres"));
+        this.vigia = Executors.newSingleThreadScheduledExecutor(hilos("chat-salida-vigia"));
+        vigia.scheduleWithFixedDelay(this::revisar, REVISION_MS, REVISION_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static ThreadFactory hilos(String nombre) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, nombre + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    void registrar(BoundedSessionDecorator sesion) {
+        sesiones.put(sesion.getId(), sesion);
+    }
+
+    /** La sesión se cerró: se descarta lo que tenía en cola. */
+    public void quitar(String sesionId) {
+        BoundedSessionDecorator sesion = sesiones.remove(sesionId);
+        if (sesion != null) sesion.descartar();
+    }
+
+    void escribir(Runnable vaciado) {
+        escritores.execute(vaciado);
+    }
+
+    /** Cierra en otro hilo: con un envío atascado, el contenedor puede tardar en escribir el cierre. */
+    void cerrar(Runnable cierre) {
+        cierres.execute(cierre);
+    }
+
+    public OutboundMetrics getMetricas() {
+        return metricas;
+    }
+
+    private void revisar() {
+        try {
+            int lentas = 0;
+            for (BoundedSessionDecorator sesion : sesiones.values()) {
+                long enviando = sesion.getTiempoEnvio();
+                if (enviando > sesion.getTiempoEnvioMs()) {
+                    sesion.atascada(enviando);
+                } else if (enviando > LENTO_MS) {
+                    lentas++;
+                }
+            }
+            int objetivo = base + Math.min(lentas, MAX_EXTRA);
+            if (objetivo > escritores.getCorePoolSize()) {
+                escritores.setMaximumPoolSize(objetivo);
+                escritores.setCorePoolSize(objetivo);
+            } else if (objetivo < escritores.getCorePoolSize()) {
+                escritores.setCorePoolSize(objetivo);
+                escritores.setMaximumPoolSize(objetivo);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Error al revisar las colas de salida: {}", e.getMessage(), e);
+        }
+    }
+
+    /** Hilos escribiendo ahora, incluidos los que se sumaron por envíos atascados. */
+    public int getHilos() {
+        return escritores.getPoolSize();
+    }
+
+    public void detener() {
+        vigia.shutdownNow();
+        escritores.shutdownNow();
+        cierres.shutdownNow();
+    }
+}
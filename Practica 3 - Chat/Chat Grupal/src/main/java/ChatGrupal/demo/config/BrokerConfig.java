@@ -0,0 +1,86 @@
+package ChatGrupal.demo.config;
+
+import ChatGrupal.demo.broker.BoundedSessionDecorator;
+import ChatGrupal.demo.broker.ChatBroker;
+import ChatGrupal.demo.broker.ChatWebSocketHandler;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.user.UserDestinationResolver;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.config.WebSocketMessageBrokerStats;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuración de mensajería STOMP (lo que antes activaba @EnableWebSocketMessageBroker), con
+ * el broker elegido por chat.broker.tipo: "chat" usa ChatBroker y "simple" el de Spring. Los
+ * prefijos, el endpoint y el transporte siguen en WebSocketConfig; aquí se completa la cola de
+ * salida de cada sesión (límite de mensajes y política al llenarse) y cada cuánto se registran
+ * las estadísticas, que incluyen las de esas colas.
+ */
+@Configuration
+public class BrokerConfig extends DelegatingWebSocketMessageBrokerConfiguration {
+
+    @Value("${chat.broker.tipo:chat}")
+    private String tipo;
+
+    @Value("${chat.broker.sesion-buffer-mensajes:1000}")
+    private int sesionBufferMensajes;
+
+    @Value("${chat.broker.sesion-politica:coalescer-presencia}")
+    private String sesionPolitica;
+
+    @Value("${chat.broker.metricas-segundos:60}")
+    private long metricasSegundos;
+
+    @Bean
+    @Override
+    public AbstractBrokerMessageHandler simpleBrokerMessageHandler(AbstractSubscribableChannel clientInboundChannel,
+                                                                   AbstractSubscribableChannel clientOutboundChannel,
+                                                                   AbstractSubscribableChannel brokerChannel,
+                                                                   UserDestinationResolver userDestinationResolver) {
+        // El de Spring se arma igual: de él salen los prefijos y el orden de publicación configurados
+        AbstractBrokerMessageHandler simple = super.simpleBrokerMessageHandler(clientInboundChannel,
+                clientOutboundChannel, brokerChannel, userDestinationResolver);
+        if (simple == null || "simple".equals(tipo)) {
+            return simple;
+        }
+        ChatBroker broker = new ChatBroker(clientInboundChannel, clientOutboundChannel, brokerChannel,
+                simple.getDestinationPrefixes());
+        broker.setPreservePublishOrder(simple.isPreservePublishOrder());
+        return broker;
+    }
+
+    @Bean
+    @Override
+    public WebSocketHandler subProtocolWebSocketHandler(AbstractSubscribableChannel clientInboundChannel,
+                                                        AbstractSubscribableChannel clientOutboundChannel) {
+        ChatWebSocketHandler handler = new ChatWebSocketHandler(clientInboundChannel, clientOutboundChannel);
+        handler.setPhase(getPhase());
+        handler.setMaxMensajes(sesionBufferMensajes);
+        handler.setPolitica(BoundedSessionDecorator.Politica.de(sesionPolitica));
+        return handler;
+    }
+
+    @Bean
+    @Override
+    public WebSocketMessageBrokerStats webSocketMessageBrokerStats(
+            @Nullable AbstractBrokerMessageHandler stompBrokerRelayMessageHandler,
+            WebSocketHandler subProtocolWebSocketHandler,
+            @Qualifier("clientInboundChannelExecutor") TaskExecutor inboundExecutor,
+            @Qualifier("clientOutboundChannelExecutor") TaskExecutor outboundExecutor,
+            @Qualifier("messageBrokerTaskScheduler") TaskScheduler scheduler) {
+        WebSocketMessageBrokerStats stats = super.webSocketMessageBrokerStats(stompBrokerRelayMessageHandler,
+                subProtocolWebSocketHandler, inboundExecutor, outboundExecutor, scheduler);
+        stats.setLoggingPeriod(TimeUnit.SECONDS.toMillis(metricasSegundos));
+        return stats;
+    }
+}
@@ -1,15 +1,22 @@
 package ChatGrupal.demo.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+// La mensajería la activa BrokerConfig (en lugar de @EnableWebSocketMessageBroker)
 @Configuration
-@EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    @Value("${chat.broker.sesion-buffer-bytes:524288}")
+    private int sesionBufferBytes;
+
+    @Value("${chat.broker.sesion-envio-ms:10000}")
+    private int sesionEnvioMs;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         config.enableSimpleBroker("/topic", "/queue");
@@ -22,4 +29,13 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
     }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Cola de salida de cada sesión (BoundedSessionDecorator): lo que espera a que los hilos de
+        // escritura lo manden. El límite de mensajes y qué hacer al llenarse están en BrokerConfig;
+        // un envío que tarda más que el límite de tiempo cierra la sesión.
+        registration.setSendBufferSizeLimit(sesionBufferBytes);
+        registration.setSendTimeLimit(sesionEnvioMs);
+    }
 }
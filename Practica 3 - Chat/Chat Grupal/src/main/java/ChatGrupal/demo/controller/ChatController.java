@@ -1,6 +1,10 @@
 package ChatGrupal.demo.controller;
 
 import ChatGrupal.demo.model.ChatMessage;
+import ChatGrupal.demo.model.HistoryPage;
+import ChatGrupal.demo.model.HistoryRequest;
+import ChatGrupal.demo.model.PresenceSnapshot;
+import ChatGrupal.demo.service.PresenceService;
 import ChatGrupal.demo.service.SalaService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,7 +12,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.stereotype.Controller;
 
 import java.time.LocalDateTime;
@@ -19,6 +26,9 @@ import java.util.UUID;
 public class ChatController {
     
     private static final Logger logger = LoggerFactory.getLogger(ChatController.class);
+    private static final String HISTORIAL = "/queue/historial"; // El cliente se suscribe a /user/queue/historial
+    private static final String PRESENCIA = "/queue/usuarios"; // Lista completa: /user/queue/usuarios
+    private static final int PAGINA_HISTORIAL = 50;
 
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
@@ -26,11 +36,15 @@ public class ChatController {
     @Autowired
     private SalaService salaService;
 
+    @Autowired
+    private PresenceService presenceService;
+
     /**
      * Usuario se une a una sala
      */
     @MessageMapping("/chat/{sala}/join")
-    public void unirseASala(@DestinationVariable String sala, ChatMessage mensaje) {
+    public void unirseASala(@DestinationVariable String sala, ChatMessage mensaje,
+                            SimpMessageHeaderAccessor headerAccessor) {
         logger.info("==================================================================");
         logger.info("[CLIENTE -> SERVIDOR] Operacion: JOIN");
         logger.info("  Usuario: {}", mensaje.getUsuario());
@@ -40,6 +54,12 @@ public class ChatController {
         
         // Agregar usuario a la sala
         Set<String> usuarios = salaService.agregarUsuarioASala(sala, mensaje.getUsuario());
+
+        // Los ultimos mensajes solo a la sesion que se une, antes de la bienvenida
+        HistoryPage historial = salaService.historialAlUnirse(sala);
+        enviarASesion(headerAccessor.getSessionId(), HISTORIAL, historial);
+        logger.info("[SERVIDOR -> CLIENTE] Historial enviado a {}: {} mensajes", mensaje.getUsuario(),
+                historial.getMensajes().size());
         
         // Crear mensaje de bienvenida
         ChatMessage bienvenida = new ChatMessage();
@@ -54,16 +74,12 @@ public class ChatController {
         messagingTemplate.convertAndSend("/topic/sala/" + sala, bienvenida);
         logger.info("[SERVIDOR -> CLIENTES] Mensaje de bienvenida enviado a sala: {}", sala);
         
-        // Enviar lista actualizada de usuarios
-        ChatMessage usuariosMsg = new ChatMessage();
-        usuariosMsg.setId(UUID.randomUUID().toString());
-        usuariosMsg.setTipo(ChatMessage.TipoMensaje.USUARIOS_ACTUALIZADOS);
-        usuariosMsg.setSala(sala);
-        usuariosMsg.setContenido(String.join(",", usuarios));
-        usuariosMsg.setTimestamp(LocalDateTime.now());
-        
-        messagingTemplate.convertAndSend("/topic/sala/" + sala + "/usuarios", usuariosMsg);
-        logger.info("[SERVIDOR -> CLIENTES] Lista de usuarios actualizada: {}", usuarios);
+        // La entrada sale en el proximo delta de presencia; la lista completa solo a quien se une
+        presenceService.unirse(sala, mensaje.getUsuario());
+        PresenceSnapshot presencia = presenceService.foto(sala);
+        enviarASesion(headerAccessor.getSessionId(), PRESENCIA, presencia);
+        logger.info("[SERVIDOR -> CLIENTE] Presencia enviada a {}: v{}, {} usuarios", mensaje.getUsuario(),
+                presencia.getVersion(), presencia.getUsuarios().size());
     }
 
     /**
@@ -94,16 +110,9 @@ public class ChatController {
         messagingTemplate.convertAndSend("/topic/sala/" + sala, despedida);
         logger.info("[SERVIDOR -> CLIENTES] Mensaje de despedida enviado a sala: {}", sala);
         
-        // Enviar lista actualizada de usuarios
-        ChatMessage usuariosMsg = new ChatMessage();
-        usuariosMsg.setId(UUID.randomUUID().toString());
-        usuariosMsg.setTipo(ChatMessage.TipoMensaje.USUARIOS_ACTUALIZADOS);
-        usuariosMsg.setSala(sala);
-        usuariosMsg.setContenido(String.join(",", usuarios));
-        usuariosMsg.setTimestamp(LocalDateTime.now());
-        
-        messagingTemplate.convertAndSend("/topic/sala/" + sala + "/usuarios", usuariosMsg);
-        logger.info("[SERVIDOR -> CLIENTES] Lista de usuarios actualizada: {}", usuarios);
+        // La salida sale en el proximo delta de presencia
+        presenceService.salir(sala, mensaje.getUsuario());
+        logger.info("[SERVIDOR -> CLIENTES] Usuarios restantes en '{}': {}", sala, usuarios.size());
     }
 
     /**
@@ -123,6 +132,7 @@ public class ChatController {
         mensaje.setId(UUID.randomUUID().toString());
         mensaje.setSala(sala);
         mensaje.setTimestamp(LocalDateTime.now());
+        salaService.registrarMensaje(sala, mensaje);
         
         logger.info("[SERVIDOR -> CLIENTES] Mensaje retransmitido a sala: {}", sala);
         logger.info("  ID Mensaje: {}", mensaje.getId());
@@ -130,6 +140,61 @@ public class ChatController {
         return mensaje;
     }
 
+    /**
+     * Cargar mensajes anteriores del historial; responde solo a la sesion que lo pide
+     */
+    @MessageMapping("/chat/{sala}/historial")
+    @SendToUser(destinations = HISTORIAL, broadcast = false)
+    public HistoryPage cargarHistorial(@DestinationVariable String sala, HistoryRequest solicitud) {
+        int cantidad = solicitud.getCantidad() != null ? solicitud.getCantidad() : PAGINA_HISTORIAL;
+        if (solicitud.getDesde() != null || solicitud.getDesdeTiempo() != null) {
+            HistoryPage pagina = salaService.historialDesde(sala, solicitud.getDesde(), solicitud.getDesdeTiempo(),
+                    cantidad);
+            logger.info("[SERVIDOR -> CLIENTE] Historial de '{}' desde {}: {} mensajes", sala,
+                    solicitud.getDesde() != null ? solicitud.getDesde() : "t=" + solicitud.getDesdeTiempo(),
+                    pagina.getMensajes().size());
+            return pagina;
+        }
+        HistoryPage pagina = salaService.historial(sala, solicitud.getAntesDe(), cantidad);
+        logger.info("[SERVIDOR -> CLIENTE] Historial de '{}' antes de {}: {} mensajes", sala,
+                solicitud.getAntesDe(), pagina.getMensajes().size());
+        return pagina;
+    }
+
+    /**
+     * Latido de un miembro para que no venza su lease; si ya vencio, vuelve a la sala
+     */
+    @MessageMapping("/chat/{sala}/latido")
+    public void latido(@DestinationVariable String sala, ChatMessage mensaje) {
+        if (mensaje.getUsuario() == null || salaService.latido(sala, mensaje.getUsuario())) return;
+        salaService.agregarUsuarioASala(sala, mensaje.getUsuario());
+        presenceService.unirse(sala, mensaje.getUsuario());
+        logger.info("[CLIENTE -> SERVIDOR] Latido de {} tras vencer su lease: vuelve a '{}'", mensaje.getUsuario(), sala);
+    }
+
+    /**
+     * Lista completa de usuarios de la sala, para quien vio un salto en la version de los deltas
+     */
+    @MessageMapping("/chat/{sala}/usuarios")
+    @SendToUser(destinations = PRESENCIA, broadcast = false)
+    public PresenceSnapshot obtenerUsuarios(@DestinationVariable String sala) {
+        PresenceSnapshot presencia = presenceService.foto(sala);
+        logger.info("[SERVIDOR -> CLIENTE] Presencia de '{}' pedida: v{}, {} usuarios", sala,
+                presencia.getVersion(), presencia.getUsuarios().size());
+        return presencia;
+    }
+
+    /**
+     * Envia a una sola sesion WebSocket por su id (sin usuario autenticado, el id de sesion
+     * hace de usuario en /user/...)
+     */
+    private void enviarASesion(String sessionId, String destino, Object payload) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setLeaveMutable(true);
+        messagingTemplate.convertAndSendToUser(sessionId, destino, payload, headers.getMessageHeaders());
+    }
+
     /**
      * Enviar mensaje privado (incluye soporte para emojis)
      */
@@ -12,6 +12,7 @@ public class ChatMessage {
     private LocalDateTime timestamp;
     @JsonProperty("destinatario")
     private String destinatario; // Para mensajes privados
+    private Long secuencia; // Posición en el historial de la sala (null si no se guarda)
 
     public enum TipoMensaje {
         TEXTO,
@@ -93,6 +94,14 @@ public class ChatMessage {
         this.destinatario = destinatario;
     }
 
+    public Long getSecuencia() {
+        return secuencia;
+    }
+
+    public void setSecuencia(Long secuencia) {
+        this.secuencia = secuencia;
+    }
+
     @Override
     public String toString() {
         return "ChatMessage{" +
@@ -103,6 +112,7 @@ public class ChatMessage {
                 ", tipo=" + tipo +
                 ", timestamp=" + timestamp +
                 ", destinatario='" + destinatario + '\'' +
+                ", secuencia=" + secuencia +
                 '}';
     }
 }
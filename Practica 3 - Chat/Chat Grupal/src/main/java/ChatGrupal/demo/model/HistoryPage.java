@@ -0,0 +1,46 @@
+package ChatGrupal.demo.model;
+
+import java.util.List;
+
+/**
+ * Una página del historial de una sala, del mensaje más antiguo al más reciente.
+ * Para cargar la anterior se pide con antesDe = la secuencia del primer mensaje.
+ */
+public class HistoryPage {
+    private String sala;
+    private List<ChatMessage> mensajes;
+    private boolean hayMas;
+
+    public HistoryPage() {
+    }
+
+    public HistoryPage(String sala, List<ChatMessage> mensajes, boolean hayMas) {
+        this.sala = sala;
+        this.mensajes = mensajes;
+        this.hayMas = hayMas;
+    }
+
+    public String getSala() {
+        return sala;
+    }
+
+    public void setSala(String sala) {
+        this.sala = sala;
+    }
+
+    public List<ChatMessage> getMensajes() {
+        return mensajes;
+    }
+
+    public void setMensajes(List<ChatMessage> mensajes) {
+        this.mensajes = mensajes;
+    }
+
+    public boolean isHayMas() {
+        return hayMas;
+    }
+
+    public void setHayMas(boolean hayMas) {
+        this.hayMas = hayMas;
+    }
+}
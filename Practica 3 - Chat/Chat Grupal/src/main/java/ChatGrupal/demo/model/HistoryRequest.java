@@ -0,0 +1,47 @@
+package ChatGrupal.demo.model;
+
+/**
+ * Petición de mensajes anteriores: hasta {@code cantidad} con secuencia menor que {@code antesDe}
+ * (sin antesDe, los más recientes).
+ *
+ * Con {@code desde} (una secuencia) o {@code desdeTiempo} (epoch en ms) se lee hacia adelante
+ * desde ese punto del log de la sala; hayMas indica entonces si hay mensajes posteriores.
+ */
+public class HistoryRequest {
+    private Long antesDe;
+    private Long desde;
+    private Long desdeTiempo;
+    private Integer cantidad;
+
+    public Long getAntesDe() {
+        return antesDe;
+    }
+
+    public void setAntesDe(Long antesDe) {
+        this.antesDe = antesDe;
+    }
+
+    public Long getDesde() {
+        return desde;
+    }
+
+    public void setDesde(Long desde) {
+        this.desde = desde;
+    }
+
+    public Long getDesdeTiempo() {
+        return desdeTiempo;
+    }
+
+    public void setDesdeTiempo(Long desdeTiempo) {
+        this.desdeTiempo = desdeTiempo;
+    }
+
+    public Integer getCantidad() {
+        return cantidad;
+    }
+
+    public void setCantidad(Integer cantidad) {
+        this.cantidad = cantidad;
+    }
+}
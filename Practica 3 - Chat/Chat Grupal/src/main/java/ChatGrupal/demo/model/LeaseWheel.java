@@ -0,0 +1,173 @@
+package ChatGrupal.demo.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Leases de presencia que vencen si no se renuevan, con una rueda de tiempo (hashed timing
+ * wheel): cada lease está en la ranura de su tick de vencimiento y en cada tick solo se revisa
+ * una ranura, así que el coste no depende de cuántos leases haya.
+ *
+ * Renovar no mueve el lease de ranura, solo cambia su vencimiento (un candado sin contención). Al
+ * pasar por su ranura, un lease renovado se vuelve a colocar en la de su nuevo vencimiento:
+ * como mucho una recolocación por vuelta de la rueda, sea cual sea la frecuencia de los latidos.
+ * Cada ranura es una pila sin candados; el tick se la lleva entera con un getAndSet.
+ *
+ * Los ticks los da quien la usa llamando a avanzar() con frecuencia; los vencidos se quitan y se
+ * pasan a {@code alVencer} en ese mismo hilo, que no debe lanzar excepciones.
+ */
+public class LeaseWheel<K> {
+    private static final class Lease<K> {
+        final K clave;
+        long vence; // Tick de vencimiento
+        boolean vencido;
+        Lease<K> siguiente; // En la pila de su ranura
+
+        Lease(K clave, long vence) {
+            this.clave = clave;
+            this.vence = vence;
+        }
+    }
+
+    private final int mascara;
+    private final long tickNanos;
+    private final long duracionTicks;
+    private final Consumer<K> alVencer;
+    private final long inicio = System.nanoTime();
+    private final AtomicReferenceArray<Lease<K>> ranuras;
+    private final ConcurrentMap<K, Lease<K>> leases = new ConcurrentHashMap<>();
+    private final LongAdder vencidos = new LongAdder();
+    private volatile long actual; // Último tick procesado; solo lo avanza avanzar()
+
+    /**
+     * @param ranuras  tamaño de la rueda (se redondea a potencia de 2)
+     * @param tickMs   resolución: un lease vence hasta un tick después de su duración
+     * @param duracionMs tiempo sin renovar tras el que el lease vence
+     */
+    public LeaseWheel(int ranuras, long tickMs, long duracionMs, Consumer<K> alVencer) {
+        int n = Integer.highestOneBit(Math.max(2, ranuras - 1)) << 1;
+        this.mascara = n - 1;
+        this.ranuras = new AtomicReferenceArray<>(n);
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMs));
+        this.duracionTicks = Math.max(1, (duracionMs + tickMs - 1) / Math.max(1, tickMs));
+        this.alVencer = alVencer;
+    }
+
+    /** Crea el lease de {@code clave} o, si ya existe, lo extiende una duración desde ahora. */
+    public void renovar(K clave) {
+        long vence = tick() + duracionTicks;
+        while (true) {
+            Lease<K> lease = leases.get(clave);
+            if (lease == null) {
+                Lease<K> nuevo = new Lease<>(clave, vence);
+                if (leases.putIfAbsent(clave, nuevo) == null) {
+                    empujar(nuevo);
+                    return;
+                }
+                continue;
+            }
+            synchronized (lease) {
+                if (!lease.vencido) {
+                    lease.vence = Math.max(lease.vence, vence);
+                    return;
+                }
+            }
+            leases.remove(clave, lease); // Venció justo ahora: se crea otro
+        }
+    }
+
+    /**
+     * Extiende el lease de {@code clave} solo si existe.
+     * @return false si no hay lease (nunca se creó, se quitó o ya venció)
+     */
+    public boolean extender(K clave) {
+        Lease<K> lease = leases.get(clave);
+        if (lease == null) return false;
+        long vence = tick() + duracionTicks;
+        synchronized (lease) {
+            if (lease.vencido) return false;
+            lease.vence = Math.max(lease.vence, vence);
+            return true;
+        }
+    }
+
+    /** Quita el lease sin contarlo como vencido (p. ej. LEAVE). */
+    public void quitar(K clave) {
+        Lease<K> lease = leases.remove(clave);
+        if (lease != null) {
+            synchronized (lease) {
+                lease.vencido = true; // La rueda lo descarta al pasar por su ranura
+            }
+        }
+    }
+
+    public boolean contiene(K clave) {
+        return leases.containsKey(clave);
+    }
+
+    /**
+     * Procesa los ticks transcurridos desde la última llamada; debe llamarla un solo hilo.
+     * @return leases vencidos en esta llamada
+     */
+    public int avanzar() {
+        long objetivo = tick();
+        int vencidosAhora = 0;
+        while (actual < objetivo) {
+            actual++;
+            Lease<K> lease = ranuras.getAndSet((int) (actual & mascara), null);
+            while (lease != null) {
+                Lease<K> siguiente = lease.siguiente;
+                lease.siguiente = null;
+                boolean vence;
+                synchronized (lease) {
+                    if (lease.vencido) {
+                        lease = siguiente;
+                        continue;
+                    }
+                    vence = lease.vence <= actual;
+                    lease.vencido = vence;
+                }
+                if (vence) {
+                    leases.remove(lease.clave, lease);
+                    vencidos.increment();
+                    vencidosAhora++;
+                    alVencer.accept(lease.clave);
+                } else {
+                    empujar(lease); // Se renovó: a la ranura de su nuevo vencimiento
+                }
+                lease = siguiente;
+            }
+        }
+        return vencidosAhora;
+    }
+
+    private void empujar(Lease<K> lease) {
+        int ranura;
+        synchronized (lease) {
+            ranura = (int) (Math.max(lease.vence, actual + 1) & mascara);
+        }
+        Lease<K> cabeza;
+        do {
+            cabeza = ranuras.get(ranura);
+            lease.siguiente = cabeza;
+        } while (!ranuras.compareAndSet(ranura, cabeza, lease));
+    }
+
+    private long tick() {
+        return (System.nanoTime() - inicio) / tickNanos;
+    }
+
+    /** Leases vigentes. */
+    public int size() {
+        return leases.size();
+    }
+
+    /** Leases que vencieron sin renovarse desde el arranque. */
+    public long getVencidos() {
+        return vencidos.sum();
+    }
+}
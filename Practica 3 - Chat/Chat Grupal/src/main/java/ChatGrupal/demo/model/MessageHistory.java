@@ -0,0 +1,134 @@
+package ChatGrupal.demo.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Últimos mensajes de una sala en un buffer circular sin candados.
+ *
+ * Cada mensaje recibe un número de secuencia (AtomicLong) que decide su casilla; escribir es
+ * un getAndSet sobre la casilla, así que los envíos de una sala no se esperan entre sí. Se
+ * guardan a lo sumo {@code capacidad} mensajes y, aproximadamente, {@code maxBytes} de texto:
+ * al pasarse se descartan los más antiguos. Quien lee comprueba la secuencia de cada casilla y
+ * se salta las que se sobrescribieron mientras tanto.
+ */
+public class MessageHistory {
+    private static final int BYTES_BASE = 64; // Estimación del objeto sin contar el texto
+
+    private static final class Entrada {
+        final long secuencia;
+        final ChatMessage mensaje;
+        final int bytes;
+
+        Entrada(long secuencia, ChatMessage mensaje) {
+            this.secuencia = secuencia;
+            this.mensaje = mensaje;
+            this.bytes = BYTES_BASE + 2 * (largo(mensaje.getContenido()) + largo(mensaje.getUsuario())
+                    + largo(mensaje.getId()));
+        }
+
+        private static int largo(String texto) {
+            return texto != null ? texto.length() : 0;
+        }
+    }
+
+    private final int capacidad;
+    private final long maxBytes;
+    private final AtomicReferenceArray<Entrada> casillas;
+    private final AtomicLong siguiente = new AtomicLong(1); // Secuencia del próximo mensaje
+    private final AtomicLong primero = new AtomicLong(1); // Anterior a esta, descartado por memoria
+    private final AtomicLong bytes = new AtomicLong();
+
+    public MessageHistory(int capacidad, long maxBytes) {
+        this.capacidad = Math.max(1, capacidad);
+        this.maxBytes = Math.max(1, maxBytes);
+        this.casillas = new AtomicReferenceArray<>(this.capacidad);
+    }
+
+    /**
+     * Guarda el mensaje y devuelve su secuencia. Si ya trae una (su offset en el log de la
+     * sala) se respeta; si no, se le asigna la siguiente.
+     */
+    public long agregar(ChatMessage mensaje) {
+        long secuencia;
+        if (mensaje.getSecuencia() != null) {
+            secuencia = mensaje.getSecuencia();
+            siguiente.accumulateAndGet(secuencia + 1, Math::max);
+        } else {
+            secuencia = siguiente.getAndIncrement();
+            mensaje.setSecuencia(secuencia);
+        }
+        Entrada entrada = new Entrada(secuencia, mensaje);
+        Entrada anterior = casillas.getAndSet(casilla(secuencia), entrada);
+        bytes.addAndGet(entrada.bytes - (anterior != null ? anterior.bytes : 0));
+        recortar(secuencia);
+        return secuencia;
+    }
+
+    /**
+     * Descarta los más antiguos mientras se pase de maxBytes; el último siempre se queda. Las
+     * secuencias cuyas casillas ya pisó el anillo se saltan de una vez, sin recorrerlas.
+     */
+    private void recortar(long ultimo) {
+        while (bytes.get() > maxBytes) {
+            long actual = primero.get();
+            long antiguo = Math.max(actual, siguiente.get() - capacidad);
+            if (antiguo >= ultimo) return;
+            if (!primero.compareAndSet(actual, antiguo + 1)) continue;
+            Entrada entrada = casillas.get(casilla(antiguo));
+            if (entrada != null && entrada.secuencia == antiguo
+                    && casillas.compareAndSet(casilla(antiguo), entrada, null)) {
+                bytes.addAndGet(-entrada.bytes);
+            }
+        }
+    }
+
+    /** Los últimos {@code cantidad} mensajes, del más antiguo al más reciente. */
+    public List<ChatMessage> ultimos(int cantidad) {
+        return anteriores(Long.MAX_VALUE, cantidad);
+    }
+
+    /**
+     * Hasta {@code cantidad} mensajes con secuencia menor que {@code antesDe}, del más antiguo
+     * al más reciente: para ir cargando la conversación hacia atrás.
+     */
+    public List<ChatMessage> anteriores(long antesDe, int cantidad) {
+        long ultimo = Math.min(antesDe, siguiente.get()) - 1;
+        long limite = masAntigua();
+        List<ChatMessage> mensajes = new ArrayList<>(Math.min(Math.max(0, cantidad), capacidad));
+        for (long secuencia = ultimo; secuencia >= limite && mensajes.size() < cantidad; secuencia--) {
+            Entrada entrada = casillas.get(casilla(secuencia));
+            if (entrada != null && entrada.secuencia == secuencia) {
+                mensajes.add(entrada.mensaje);
+            }
+        }
+        Collections.reverse(mensajes);
+        return mensajes;
+    }
+
+    /** Hay mensajes guardados con secuencia menor que {@code secuencia}. */
+    public boolean hayAnteriores(long secuencia) {
+        return secuencia > masAntigua();
+    }
+
+    /** Secuencia del mensaje más antiguo que puede seguir guardado. */
+    private long masAntigua() {
+        return Math.max(primero.get(), siguiente.get() - capacidad);
+    }
+
+    public int getCapacidad() {
+        return capacidad;
+    }
+
+    /** Memoria estimada de los mensajes guardados. */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    private int casilla(long secuencia) {
+        return (int) (secuencia % capacidad);
+    }
+}
@@ -0,0 +1,47 @@
+package ChatGrupal.demo.model;
+
+import java.util.List;
+
+/**
+ * Cambios de presencia de una sala desde la versión anterior: "+usuario" entró, "-usuario" salió.
+ * Si {@code version} no es la que se tenía más uno, se perdió un delta y hay que pedir la lista
+ * completa (PresenceSnapshot).
+ */
+public class PresenceDelta {
+    private String sala;
+    private long version;
+    private List<String> cambios;
+
+    public PresenceDelta() {
+    }
+
+    public PresenceDelta(String sala, long version, List<String> cambios) {
+        this.sala = sala;
+        this.version = version;
+        this.cambios = cambios;
+    }
+
+    public String getSala() {
+        return sala;
+    }
+
+    public void setSala(String sala) {
+        this.sala = sala;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public List<String> getCambios() {
+        return cambios;
+    }
+
+    public void setCambios(List<String> cambios) {
+        this.cambios = cambios;
+    }
+}
@@ -0,0 +1,46 @@
+package ChatGrupal.demo.model;
+
+import java.util.List;
+
+/**
+ * Lista completa de usuarios de una sala en una versión de su presencia. A partir de aquí se
+ * aplican los deltas con versión mayor.
+ */
+public class PresenceSnapshot {
+    private String sala;
+    private long version;
+    private List<String> usuarios;
+
+    public PresenceSnapshot() {
+    }
+
+    public PresenceSnapshot(String sala, long version, List<String> usuarios) {
+        this.sala = sala;
+        this.version = version;
+        this.usuarios = usuarios;
+    }
+
+    public String getSala() {
+        return sala;
+    }
+
+    public void setSala(String sala) {
+        this.sala = sala;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public List<String> getUsuarios() {
+        return usuarios;
+    }
+
+    public void setUsuarios(List<String> usuarios) {
+        this.usuarios = usuarios;
+    }
+}
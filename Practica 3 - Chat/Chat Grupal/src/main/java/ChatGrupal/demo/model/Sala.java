@@ -1,19 +1,25 @@
 package ChatGrupal.demo.model;
 
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Sala {
     private String nombre;
-    private Set<String> usuarios;
+    private Set<String> usuarios; // Concurrente: las entradas y salidas llegan desde varios hilos
+    private MessageHistory historial;
 
     public Sala() {
-        this.usuarios = new HashSet<>();
+        this.usuarios = ConcurrentHashMap.newKeySet();
     }
 
     public Sala(String nombre) {
         this.nombre = nombre;
-        this.usuarios = new HashSet<>();
+        this.usuarios = ConcurrentHashMap.newKeySet();
+    }
+
+    public Sala(String nombre, MessageHistory historial) {
+        this(nombre);
+        this.historial = historial;
     }
 
     public String getNombre() {
@@ -32,6 +38,14 @@ public class Sala {
         this.usuarios = usuarios;
     }
 
+    public MessageHistory getHistorial() {
+        return historial;
+    }
+
+    public void setHistorial(MessageHistory historial) {
+        this.historial = historial;
+    }
+
     public void agregarUsuario(String usuario) {
         this.usuarios.add(usuario);
     }
@@ -0,0 +1,150 @@
+package ChatGrupal.demo.service;
+
+import ChatGrupal.demo.model.PresenceDelta;
+import ChatGrupal.demo.model.PresenceSnapshot;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Presencia de cada sala por deltas versionados, en lugar de reenviar la lista completa en cada
+ * entrada o salida (que en una avalancha de entradas crece con el cuadrado de la sala).
+ *
+ * Las entradas y salidas se acumulan y cada chat.presencia.tick-ms se publica, por sala con
+ * cambios, un único PresenceDelta en /topic/sala/{sala}/usuarios con la versión siguiente. Un
+ * usuario que entra y sale dentro del mismo tick no genera nada. La lista completa
+ * (PresenceSnapshot) solo se envía a quien se une y a quien la pide: el cliente la vuelve a
+ * pedir si ve un salto de versión.
+ */
+@Service
+public class PresenceService {
+    private static final Logger logger = LoggerFactory.getLogger(PresenceService.class);
+
+    /** Presencia publicada de una sala y los cambios que esperan al próximo tick. */
+    private static final class Presencia {
+        private final Set<String> usuarios = new LinkedHashSet<>();
+        private final Map<String, Boolean> pendientes = new LinkedHashMap<>(); // usuario -> entra
+        private long version;
+
+        synchronized void cambiar(String usuario, boolean entra) {
+            if (usuarios.contains(usuario) == entra) {
+                pendientes.remove(usuario); // Vuelve a como estaba publicado
+            } else {
+                pendientes.put(usuario, entra);
+            }
+        }
+
+        /** Aplica los pendientes y devuelve el delta, o null si no hubo cambio neto. */
+        synchronized PresenceDelta publicar(String sala) {
+            if (pendientes.isEmpty()) return null;
+            List<String> cambios = new ArrayList<>(pendientes.size());
+            for (Map.Entry<String, Boolean> cambio : pendientes.entrySet()) {
+                if (cambio.getValue()) {
+                    usuarios.add(cambio.getKey());
+                    cambios.add("+" + cambio.getKey());
+                } else {
+                    usuarios.remove(cambio.getKey());
+                    cambios.add("-" + cambio.getKey());
+                }
+            }
+            pendientes.clear();
+            return new PresenceDelta(sala, ++version, cambios);
+        }
+
+        synchronized PresenceSnapshot foto(String sala) {
+            return new PresenceSnapshot(sala, version, new ArrayList<>(usuarios));
+        }
+
+        synchronized boolean vacia() {
+            return usuarios.isEmpty() && pendientes.isEmpty();
+        }
+    }
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final Map<String, Presencia> presencias = new ConcurrentHashMap<>();
+    private final Set<String> conCambios = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService tareas;
+
+    @Value("${chat.presencia.tick-ms:100}")
+    private long tickMs;
+
+    public PresenceService(SimpMessagingTemplate messagingTemplate) {
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    @PostConstruct
+    void iniciar() {
+        tareas = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chat-presencia");
+            t.setDaemon(true);
+            return t;
+        });
+        tareas.scheduleWithFixedDelay(this::publicar, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void detener() {
+        tareas.shutdownNow();
+    }
+
+    public void unirse(String sala, String usuario) {
+        cambiar(sala, usuario, true);
+    }
+
+    public void salir(String sala, String usuario) {
+        cambiar(sala, usuario, false);
+    }
+
+    private void cambiar(String sala, String usuario, boolean entra) {
+        // Dentro de compute para no cambiar una presencia que publicar() está quitando del mapa
+        presencias.compute(sala, (nombre, presencia) -> {
+            if (presencia == null) presencia = new Presencia();
+            presencia.cambiar(usuario, entra);
+            return presencia;
+        });
+        conCambios.add(sala);
+    }
+
+    /**
+     * Lista completa de la sala en la versión publicada (sin los cambios que esperan al tick)
+     */
+    public PresenceSnapshot foto(String sala) {
+        Presencia presencia = presencias.get(sala);
+        return presencia != null ? presencia.foto(sala) : new PresenceSnapshot(sala, 0, List.of());
+    }
+
+    /** Un tick: un delta por sala con cambios. Un solo hilo publica, así las versiones salen en orden. */
+    private void publicar() {
+        try {
+            for (String sala : conCambios) {
+                conCambios.remove(sala);
+                Presencia presencia = presencias.get(sala);
+                if (presencia == null) continue;
+                PresenceDelta delta = presencia.publicar(sala);
+                if (delta != null) {
+                    messagingTemplate.convertAndSend("/topic/sala/" + sala + "/usuarios", delta);
+                    logger.debug("[SERVIDOR -> CLIENTES] Presencia de '{}' v{}: {} cambios", sala,
+                            delta.getVersion(), delta.getCambios().size());
+                }
+                presencias.computeIfPresent(sala, (nombre, p) -> p.vacia() ? null : p);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Error al publicar la presencia: {}", e.getMessage(), e);
+        }
+    }
+}
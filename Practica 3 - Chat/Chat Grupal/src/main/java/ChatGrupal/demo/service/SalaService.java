@@ -1,32 +1,169 @@
 package ChatGrupal.demo.service;
 
+import ChatGrupal.demo.model.ChatMessage;
+import ChatGrupal.demo.model.HistoryPage;
+import ChatGrupal.demo.model.LeaseWheel;
+import ChatGrupal.demo.model.MessageHistory;
 import ChatGrupal.demo.model.Sala;
+import ChatGrupal.demo.storage.MessageLog;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Salas del chat WebSocket: miembros, historial y presencia.
+ *
+ * Cada miembro de una sala tiene un lease de chat.presencia.lease-segundos que renuevan el
+ * JOIN, sus mensajes y los latidos (/app/chat/{sala}/latido). Si vence, el usuario sale de la
+ * sala como con un LEAVE: quien cierra la pestaña sin despedirse no se queda para siempre. Los
+ * vencimientos los lleva una LeaseWheel, con un tick cada chat.presencia.lease-tick-ms.
+ */
 @Service
 public class SalaService {
     
     private static final Logger logger = LoggerFactory.getLogger(SalaService.class);
     private final Map<String, Sala> salas = new ConcurrentHashMap<>();
+    private final MessageLog messageLog;
+    private final PresenceService presenceService;
+    private LeaseWheel<String> leases;
+    private ScheduledExecutorService tareas;
+
+    @Value("${chat.historial.mensajes:200}")
+    private int historialMensajes;
+
+    @Value("${chat.historial.max-bytes:262144}")
+    private long historialMaxBytes;
+
+    @Value("${chat.historial.al-unirse:50}")
+    private int historialAlUnirse;
+
+    @Value("${chat.presencia.lease-segundos:60}")
+    private long leaseSegundos;
+
+    @Value("${chat.presencia.lease-tick-ms:500}")
+    private long leaseTickMs;
+
+    public SalaService(MessageLog messageLog, PresenceService presenceService) {
+        this.messageLog = messageLog;
+        this.presenceService = presenceService;
+    }
+
+    @PostConstruct
+    void iniciarLeases() {
+        leases = new LeaseWheel<>(512, leaseTickMs, TimeUnit.SECONDS.toMillis(leaseSegundos), this::vencer);
+        tareas = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chat-leases");
+            t.setDaemon(true);
+            return t;
+        });
+        tareas.scheduleWithFixedDelay(leases::avanzar, leaseTickMs, leaseTickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void detenerLeases() {
+        tareas.shutdownNow();
+    }
 
     /**
-     * Obtiene o crea una sala
+     * Obtiene o crea una sala; al crearla, su historial en memoria se carga con lo último del log
      */
     public Sala obtenerOCrearSala(String nombreSala) {
-        return salas.computeIfAbsent(nombreSala, Sala::new);
+        return salas.computeIfAbsent(nombreSala, this::crearSala);
+    }
+
+    private Sala crearSala(String nombre) {
+        MessageHistory historial = new MessageHistory(historialMensajes, historialMaxBytes);
+        for (ChatMessage mensaje : messageLog.anteriores(nombre, Long.MAX_VALUE, historialMensajes)) {
+            historial.agregar(mensaje);
+        }
+        return new Sala(nombre, historial);
     }
 
     /**
-     * Agrega un usuario a una sala
+     * Guarda un mensaje en el log y en el historial de la sala y le asigna su secuencia. Si el
+     * log está habilitado y falla la escritura, el mensaje queda sin secuencia y fuera del
+     * historial: inventarle una chocaría con el offset del próximo registro del log
      */
-    public Set<String> agregarUsuarioASala(String nombreSala, String usuario) {
+    public void registrarMensaje(String nombreSala, ChatMessage mensaje) {
+        if (mensaje.getUsuario() != null) {
+            leases.extender(clave(nombreSala, mensaje.getUsuario()));
+        }
         Sala sala = obtenerOCrearSala(nombreSala);
-        sala.agregarUsuario(usuario);
+        if (messageLog.agregar(nombreSala, mensaje) < 0 && messageLog.isHabilitado()) {
+            return;
+        }
+        sala.getHistorial().agregar(mensaje);
+    }
+
+    /**
+     * Mensajes que se reenvían a quien se une (chat.historial.al-unirse)
+     */
+    public HistoryPage historialAlUnirse(String nombreSala) {
+        return historial(nombreSala, null, historialAlUnirse);
+    }
+
+    /**
+     * Página del historial: hasta {@code cantidad} mensajes anteriores a la secuencia
+     * {@code antesDe} (o los más recientes si es null)
+     */
+    public HistoryPage historial(String nombreSala, Long antesDe, int cantidad) {
+        cantidad = Math.min(cantidad, historialMensajes);
+        if (cantidad <= 0) {
+            return new HistoryPage(nombreSala, List.of(), false);
+        }
+        long antes = antesDe != null ? antesDe : Long.MAX_VALUE;
+        Sala sala = salas.get(nombreSala);
+        List<ChatMessage> mensajes = sala != null ? sala.getHistorial().anteriores(antes, cantidad) : List.of();
+        if (!messageLog.isHabilitado()) {
+            boolean hayMas = !mensajes.isEmpty()
+                    && sala.getHistorial().hayAnteriores(mensajes.get(0).getSecuencia());
+            return new HistoryPage(nombreSala, mensajes, hayMas);
+        }
+        // Lo que ya no está en memoria (o la sala entera, si no está abierta) se lee del log
+        long primero = messageLog.primerOffset(nombreSala);
+        if (mensajes.size() < cantidad && (mensajes.isEmpty() || mensajes.get(0).getSecuencia() > primero)) {
+            mensajes = messageLog.anteriores(nombreSala, antes, cantidad);
+        }
+        boolean hayMas = !mensajes.isEmpty() && mensajes.get(0).getSecuencia() > primero;
+        return new HistoryPage(nombreSala, mensajes, hayMas);
+    }
+
+    /**
+     * Página del log hacia adelante: hasta {@code cantidad} mensajes desde la secuencia
+     * {@code desde} o, si es null, desde el primero guardado en {@code desdeTiempo} (epoch ms)
+     */
+    public HistoryPage historialDesde(String nombreSala, Long desde, Long desdeTiempo, int cantidad) {
+        cantidad = Math.min(cantidad, historialMensajes);
+        if (cantidad <= 0 || !messageLog.isHabilitado()) {
+            return new HistoryPage(nombreSala, List.of(), false);
+        }
+        long inicio = desde != null ? desde : messageLog.offsetPorTiempo(nombreSala, desdeTiempo);
+        List<ChatMessage> mensajes = messageLog.leer(nombreSala, Math.max(inicio, 1), cantidad);
+        boolean hayMas = !mensajes.isEmpty()
+                && mensajes.get(mensajes.size() - 1).getSecuencia() + 1 < messageLog.siguienteOffset(nombreSala);
+        return new HistoryPage(nombreSala, mensajes, hayMas);
+    }
+
+    /**
+     * Agrega un usuario a una sala. Entradas y salidas se hacen dentro de compute sobre la
+     * entrada del mapa: una sala que se vacía no se elimina con alguien recién unido
+     */
+    public Set<String> agregarUsuarioASala(String nombreSala, String usuario) {
+        Sala sala = salas.compute(nombreSala, (nombre, actual) -> {
+            Sala destino = actual != null ? actual : crearSala(nombre);
+            destino.agregarUsuario(usuario);
+            return destino;
+        });
+        leases.renovar(clave(nombreSala, usuario));
         logger.debug("[SERVICIO] Nueva sala creada/accedida: '{}'", nombreSala);
         logger.info("  Usuario '{}' se unio a la sala '{}'", usuario, nombreSala);
         logger.info("  Usuarios actuales en '{}': {}", nombreSala, sala.getUsuarios());
@@ -37,22 +174,55 @@ public class SalaService {
      * Remueve un usuario de una sala
      */
     public Set<String> removerUsuarioDeSala(String nombreSala, String usuario) {
-        Sala sala = salas.get(nombreSala);
-        if (sala != null) {
+        leases.quitar(clave(nombreSala, usuario));
+        Set<String> restantes = new HashSet<>();
+        salas.computeIfPresent(nombreSala, (nombre, sala) -> {
             sala.removerUsuario(usuario);
-            logger.warn("  Usuario '{}' abandono la sala '{}'", usuario, nombreSala);
-            
+            logger.warn("  Usuario '{}' abandono la sala '{}'", usuario, nombre);
+            restantes.addAll(sala.getUsuarios());
+
             // Si la sala queda vacia, la eliminamos
-            if (sala.getUsuarios().isEmpty()) {
-                salas.remove(nombreSala);
-                logger.warn("  Sala '{}' eliminada (vacia)", nombreSala);
-            } else {
-                logger.info("  Usuarios restantes en '{}': {}", nombreSala, sala.getUsuarios());
+            if (restantes.isEmpty()) {
+                logger.warn("  Sala '{}' eliminada (vacia)", nombre);
+                return null;
             }
-            
-            return new HashSet<>(sala.getUsuarios());
+            logger.info("  Usuarios restantes en '{}': {}", nombre, restantes);
+            return sala;
+        });
+        return restantes;
+    }
+
+    /**
+     * Latido de un miembro: extiende su lease
+     * @return false si el usuario ya no esta en la sala (su lease vencio) y debe volver a unirse
+     */
+    public boolean latido(String nombreSala, String usuario) {
+        return leases.extender(clave(nombreSala, usuario));
+    }
+
+    /**
+     * Sesiones (usuario en una sala) que salieron por vencer su lease, desde el arranque
+     */
+    public long getSesionesExpiradas() {
+        return leases.getVencidos();
+    }
+
+    private void vencer(String clave) {
+        int separador = clave.indexOf('\0');
+        String nombreSala = clave.substring(0, separador);
+        String usuario = clave.substring(separador + 1);
+        try {
+            logger.warn("  Lease vencido: '{}' sale de la sala '{}' ({} sesiones expiradas)", usuario, nombreSala,
+                    leases.getVencidos());
+            removerUsuarioDeSala(nombreSala, usuario);
+            presenceService.salir(nombreSala, usuario);
+        } catch (RuntimeException e) {
+            logger.error("Error al sacar a '{}' de '{}' por lease vencido", usuario, nombreSala, e);
         }
-        return new HashSet<>();
+    }
+
+    private static String clave(String sala, String usuario) {
+        return sala + '\0' + usuario;
     }
 
     /**
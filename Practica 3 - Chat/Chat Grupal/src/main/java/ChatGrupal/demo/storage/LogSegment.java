@@ -0,0 +1,372 @@
+package ChatGrupal.demo.storage;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Un segmento del log de una sala: un archivo de solo anexar con los registros y, al lado, su
+ * índice disperso.
+ *
+ *   00000000000000000001.log    [largo int][offset long][tiempo long][crc int][datos]...
+ *   00000000000000000001.index  [offset long][posición int][tiempo long]...
+ *
+ * El nombre es el offset del primer registro. El índice tiene una entrada cada
+ * {@code intervaloIndice} bytes de log, para buscar por offset o por tiempo sin recorrer todo
+ * el segmento. Las lecturas son posicionales (FileChannel.read por bloques), sin pasar por el
+ * candado de las escrituras más que para tomar el tamaño y el índice. No se mapea el archivo:
+ * en Windows un archivo mapeado no se puede borrar hasta que el GC suelta el mapa, y la
+ * retención dejaría segmentos que vuelven al reiniciar.
+ *
+ * Solo el segmento activo tiene sus archivos abiertos. Al sellarlo (cuando el log pasa al
+ * siguiente) se cierran; el índice queda en memoria y cada lectura abre el .log por su cuenta,
+ * así una sala con muchos segmentos ocupa dos descriptores y no dos por segmento.
+ *
+ * Al abrir se recorre el final (desde la última entrada del índice) comprobando el CRC de cada
+ * registro: lo que quedó a medias por una caída se trunca.
+ */
+class LogSegment implements Closeable {
+    static final int CABECERA = 4 + 8 + 8 + 4; // largo, offset, tiempo, crc
+    private static final int ENTRADA_INDICE = 8 + 4 + 8;
+    private static final int BLOQUE = 64 * 1024; // Bytes por lectura
+
+    /** Un registro leído del log. */
+    static final class Registro {
+        final long offset;
+        final long tiempo;
+        final byte[] datos;
+
+        Registro(long offset, long tiempo, byte[] datos) {
+            this.offset = offset;
+            this.tiempo = tiempo;
+            this.datos = datos;
+        }
+    }
+
+    private final long base;
+    private final Path archivo;
+    private final Path archivoIndice;
+    private volatile FileChannel canal; // null si está sellado o cerrado
+    private volatile FileChannel canalIndice;
+    private final int intervaloIndice;
+    private final CRC32 crc = new CRC32();
+
+    private volatile long tamaño; // Bytes de registros completos
+    private long siguiente; // Offset del próximo registro
+    private long ultimoTiempo = -1;
+    private long bytesDesdeIndice;
+
+    private long[] indiceOffset = new long[64];
+    private int[] indicePosicion = new int[64];
+    private long[] indiceTiempo = new long[64];
+    private int entradas;
+
+    private LogSegment(Path dir, long base, int intervaloIndice) throws IOException {
+        this.base = base;
+        this.archivo = dir.resolve(nombre(base) + ".log");
+        this.archivoIndice = dir.resolve(nombre(base) + ".index");
+        this.intervaloIndice = intervaloIndice;
+        this.canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.canalIndice = FileChannel.open(archivoIndice, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.siguiente = base;
+    }
+
+    /** Abre (o crea) el segmento que empieza en {@code base} y recupera su estado del disco. */
+    static LogSegment abrir(Path dir, long base, int intervaloIndice) throws IOException {
+        LogSegment segmento = new LogSegment(dir, base, intervaloIndice);
+        try {
+            segmento.recuperar();
+        } catch (IOException e) {
+            segmento.close();
+            throw e;
+        }
+        return segmento;
+    }
+
+    static String nombre(long base) {
+        return String.format("%020d", base);
+    }
+
+    private void recuperar() throws IOException {
+        // Entradas del índice que apuntan a registros ya escritos
+        long largoIndice = canalIndice.size() - canalIndice.size() % ENTRADA_INDICE;
+        long largoLog = canal.size();
+        ByteBuffer entrada = ByteBuffer.allocate(ENTRADA_INDICE);
+        for (long p = 0; p < largoIndice; p += ENTRADA_INDICE) {
+            entrada.clear();
+            canalIndice.read(entrada, p);
+            entrada.flip();
+            long offset = entrada.getLong();
+            int posicion = entrada.getInt();
+            long tiempo = entrada.getLong();
+            if (posicion >= largoLog || (entradas > 0 && posicion <= indicePosicion[entradas - 1])) break;
+            agregarEntrada(offset, posicion, tiempo);
+        }
+
+        // Desde la última entrada, registro por registro hasta el primero incompleto o dañado
+        int ultimaEntrada = entradas - 1;
+        long posicion = ultimaEntrada >= 0 ? indicePosicion[ultimaEntrada] : 0;
+        siguiente = ultimaEntrada >= 0 ? indiceOffset[ultimaEntrada] : base;
+        ByteBuffer cabecera = ByteBuffer.allocate(CABECERA);
+        while (posicion + CABECERA <= largoLog) {
+            cabecera.clear();
+            canal.read(cabecera, posicion);
+            cabecera.flip();
+            int largo = cabecera.getInt();
+            long offset = cabecera.getLong();
+            long tiempo = cabecera.getLong();
+            int suma = cabecera.getInt();
+            if (largo < 0 || offset != siguiente || posicion + CABECERA + largo > largoLog) break;
+            ByteBuffer datos = ByteBuffer.allocate(largo);
+            canal.read(datos, posicion + CABECERA);
+            if (crc(datos.array()) != suma) break;
+            if (entradas == 0 || (posicion > indicePosicion[entradas - 1] && bytesDesdeIndice >= intervaloIndice)) {
+                agregarEntrada(offset, (int) posicion, tiempo);
+                bytesDesdeIndice = 0;
+            }
+            ultimoTiempo = tiempo;
+            siguiente = offset + 1;
+            posicion += CABECERA + largo;
+            bytesDesdeIndice += CABECERA + largo;
+        }
+        tamaño = posicion;
+        if (largoLog > posicion) {
+            canal.truncate(posicion);
+        }
+
+        // Se descartan las entradas que quedaron más allá de lo válido y se reescribe el índice
+        while (entradas > 0 && indicePosicion[entradas - 1] >= posicion) {
+            entradas--;
+        }
+        canalIndice.truncate(0);
+        ByteBuffer indice = ByteBuffer.allocate(entradas * ENTRADA_INDICE);
+        for (int i = 0; i < entradas; i++) {
+            indice.putLong(indiceOffset[i]).putInt(indicePosicion[i]).putLong(indiceTiempo[i]);
+        }
+        indice.flip();
+        while (indice.hasRemaining()) {
+            canalIndice.write(indice, indice.position());
+        }
+    }
+
+    /** Anexa un registro; no fuerza a disco (ver forzar). */
+    synchronized long agregar(byte[] datos, long tiempo) throws IOException {
+        long offset = siguiente;
+        long posicion = tamaño;
+        if (entradas == 0 || bytesDesdeIndice >= intervaloIndice) {
+            agregarEntrada(offset, (int) posicion, tiempo);
+            ByteBuffer entrada = ByteBuffer.allocate(ENTRADA_INDICE);
+            entrada.putLong(offset).putInt((int) posicion).putLong(tiempo).flip();
+            canalIndice.write(entrada, (long) (entradas - 1) * ENTRADA_INDICE);
+            bytesDesdeIndice = 0;
+        }
+        ByteBuffer registro = ByteBuffer.allocate(CABECERA + datos.length);
+        registro.putInt(datos.length).putLong(offset).putLong(tiempo).putInt(crc(datos)).put(datos).flip();
+        long escrito = posicion;
+        while (registro.hasRemaining()) {
+            escrito += canal.write(registro, escrito);
+        }
+        ultimoTiempo = tiempo;
+        bytesDesdeIndice += registro.limit();
+        siguiente = offset + 1;
+        tamaño = escrito;
+        return offset;
+    }
+
+    private void agregarEntrada(long offset, int posicion, long tiempo) {
+        if (entradas == indiceOffset.length) {
+            indiceOffset = Arrays.copyOf(indiceOffset, entradas * 2);
+            indicePosicion = Arrays.copyOf(indicePosicion, entradas * 2);
+            indiceTiempo = Arrays.copyOf(indiceTiempo, entradas * 2);
+        }
+        indiceOffset[entradas] = offset;
+        indicePosicion[entradas] = posicion;
+        indiceTiempo[entradas] = tiempo;
+        entradas++;
+    }
+
+    private int crc(byte[] datos) {
+        crc.reset();
+        crc.update(datos);
+        return (int) crc.getValue();
+    }
+
+    /** Lleva a disco lo escrito (fsync de datos, sin metadatos). */
+    void forzar() throws IOException {
+        FileChannel log = canal;
+        FileChannel indice = canalIndice;
+        if (log == null) return;
+        log.force(false);
+        indice.force(false);
+    }
+
+    /** Ya no recibirá escrituras: lo lleva a disco y cierra sus archivos; las lecturas los abren al leer. */
+    void sellar() throws IOException {
+        forzar();
+        close();
+    }
+
+    /**
+     * Agrega a {@code salida} los registros con offset en [desde, hasta), como mucho {@code max}.
+     */
+    void leer(long desde, long hasta, int max, List<Registro> salida) throws IOException {
+        long limite;
+        long posicion;
+        synchronized (this) {
+            limite = tamaño;
+            if (limite == 0 || desde >= siguiente) return;
+            int i = buscar(indiceOffset, desde);
+            posicion = i >= 0 ? indicePosicion[i] : 0;
+        }
+        FileChannel abierto = canal;
+        if (abierto != null) {
+            int antes = salida.size();
+            try {
+                recorrer(abierto, posicion, limite, desde, hasta, max, salida);
+                return;
+            } catch (ClosedChannelException e) {
+                if (canal == abierto) throw e;
+                // Se selló o se cerró mientras se leía: se repite con el archivo abierto aparte
+                salida.subList(antes, salida.size()).clear();
+            }
+        }
+        try (FileChannel lectura = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            recorrer(lectura, posicion, limite, desde, hasta, max, salida);
+        }
+    }
+
+    private void recorrer(FileChannel lectura, long posicion, long limite, long desde, long hasta, int max,
+                          List<Registro> salida) throws IOException {
+        ByteBuffer bloque = ByteBuffer.allocate(0);
+        long inicioBloque = posicion; // Posición en el archivo del byte 0 de bloque
+        while (posicion + CABECERA <= limite && salida.size() < max) {
+            int enBloque = (int) (posicion - inicioBloque);
+            if (enBloque + CABECERA > bloque.limit()) {
+                bloque = leerBloque(lectura, bloque, posicion, limite, CABECERA);
+                inicioBloque = posicion;
+                enBloque = 0;
+            }
+            int largo = bloque.getInt(enBloque);
+            if (posicion + CABECERA + largo > limite) break;
+            if (enBloque + CABECERA + largo > bloque.limit()) {
+                bloque = leerBloque(lectura, bloque, posicion, limite, CABECERA + largo);
+                inicioBloque = posicion;
+                enBloque = 0;
+            }
+            long offset = bloque.getLong(enBloque + 4);
+            if (offset >= hasta) break;
+            if (offset >= desde) {
+                byte[] datos = new byte[largo];
+                bloque.get(enBloque + CABECERA, datos);
+                salida.add(new Registro(offset, bloque.getLong(enBloque + 12), datos));
+            }
+            posicion += CABECERA + largo;
+        }
+    }
+
+    /**
+     * Lee desde {@code posicion} un bloque de BLOQUE bytes (al menos {@code minimo}, sin pasar
+     * de {@code limite}). Reusa {@code bloque} si le cabe; se lee con índices absolutos.
+     */
+    private ByteBuffer leerBloque(FileChannel lectura, ByteBuffer bloque, long posicion, long limite, int minimo)
+            throws IOException {
+        int largo = (int) Math.min(limite - posicion, Math.max(BLOQUE, minimo));
+        if (bloque.capacity() < largo) {
+            bloque = ByteBuffer.allocate(largo);
+        }
+        bloque.clear().limit(largo);
+        while (bloque.hasRemaining()) {
+            if (lectura.read(bloque, posicion + bloque.position()) < 0) {
+                throw new EOFException(archivo + " terminó antes de " + (posicion + largo));
+            }
+        }
+        return bloque;
+    }
+
+    /** Offset del primer registro con tiempo >= {@code tiempo}, o -1 si no hay ninguno aquí. */
+    long offsetPorTiempo(long tiempo) throws IOException {
+        long desde;
+        synchronized (this) {
+            if (ultimoTiempo < tiempo) return -1;
+            int i = buscar(indiceTiempo, tiempo);
+            // La entrada anterior es la última que empieza antes de ese tiempo
+            desde = i >= 0 ? indiceOffset[i] : base;
+        }
+        List<Registro> registros = new ArrayList<>();
+        while (true) {
+            registros.clear();
+            leer(desde, Long.MAX_VALUE, 256, registros);
+            if (registros.isEmpty()) return -1;
+            for (Registro registro : registros) {
+                if (registro.tiempo >= tiempo) return registro.offset;
+            }
+            desde = registros.get(registros.size() - 1).offset + 1;
+        }
+    }
+
+    /** Índice de la última entrada con valor <= {@code clave}, o -1. */
+    private int buscar(long[] valores, long clave) {
+        int bajo = 0;
+        int alto = entradas - 1;
+        int encontrado = -1;
+        while (bajo <= alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (valores[medio] <= clave) {
+                encontrado = medio;
+                bajo = medio + 1;
+            } else {
+                alto = medio - 1;
+            }
+        }
+        return encontrado;
+    }
+
+    long getBase() {
+        return base;
+    }
+
+    synchronized long getSiguiente() {
+        return siguiente;
+    }
+
+    long getTamaño() {
+        return tamaño;
+    }
+
+    synchronized long getUltimoTiempo() {
+        return ultimoTiempo;
+    }
+
+    @Override
+    public void close() throws IOException {
+        FileChannel log = canal;
+        FileChannel indice = canalIndice;
+        canal = null;
+        canalIndice = null;
+        if (log == null) return;
+        try {
+            log.close();
+        } finally {
+            indice.close();
+        }
+    }
+
+    /** Cierra y borra sus archivos (retención). Un lector que lo estaba leyendo recibe un error. */
+    void borrar() throws IOException {
+        close();
+        Files.deleteIfExists(archivo);
+        Files.deleteIfExists(archivoIndice);
+    }
+}
@@ -0,0 +1,285 @@
+package ChatGrupal.demo.storage;
+
+import ChatGrupal.demo.model.ChatMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Log durable de los mensajes de cada sala, para que el historial sobreviva a un reinicio y se
+ * pueda leer desde cualquier offset, no solo lo que cabe en memoria.
+ *
+ * Cada sala tiene su directorio bajo chat.log.dir con segmentos de solo anexar (ver RoomLog y
+ * LogSegment); el offset de un mensaje es su secuencia en el historial. El fsync va por lotes:
+ * cada chat.log.fsync-ms o cada chat.log.fsync-mensajes mensajes, lo que llegue antes; una caída
+ * puede perder, como mucho, lo escrito en esa ventana. La retención borra segmentos completos
+ * cuando la sala pasa de chat.log.retencion-bytes o son más viejos que chat.log.retencion-horas.
+ *
+ * De cada sala solo está abierto el segmento activo, y el log de una sala que lleva
+ * chat.log.inactivo-minutos sin mensajes se cierra: se vuelve a abrir con el próximo mensaje o
+ * la próxima lectura. Así los archivos abiertos dependen de las salas con actividad, no de
+ * todas las que alguna vez escribieron.
+ *
+ * Los errores de disco se registran y no cortan el chat: el mensaje que no se pudo guardar se
+ * reparte igual, pero no recibe secuencia ni entra en el historial.
+ */
+@Component
+public class MessageLog {
+    private static final Logger logger = LoggerFactory.getLogger(MessageLog.class);
+    private static final int MAX_NOMBRE = 100; // Nombres de directorio más largos se resumen
+
+    private final ObjectMapper json;
+    private final Map<String, RoomLog> logs = new ConcurrentHashMap<>();
+    private ScheduledExecutorService tareas;
+
+    @Value("${chat.log.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${chat.log.dir:data/chat-log}")
+    private String dir;
+
+    @Value("${chat.log.segmento-bytes:8388608}")
+    private long segmentoBytes;
+
+    @Value("${chat.log.indice-bytes:4096}")
+    private int indiceBytes;
+
+    @Value("${chat.log.fsync-ms:200}")
+    private long fsyncMs;
+
+    @Value("${chat.log.fsync-mensajes:1000}")
+    private int fsyncMensajes;
+
+    @Value("${chat.log.retencion-bytes:268435456}")
+    private long retencionBytes;
+
+    @Value("${chat.log.retencion-horas:168}")
+    private long retencionHoras;
+
+    @Value("${chat.log.inactivo-minutos:10}")
+    private long inactivoMinutos;
+
+    public MessageLog(ObjectMapper json) {
+        this.json = json;
+    }
+
+    @PostConstruct
+    void iniciar() {
+        if (!habilitado) return;
+        tareas = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chat-log-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        tareas.scheduleWithFixedDelay(this::forzar, fsyncMs, fsyncMs, TimeUnit.MILLISECONDS);
+        tareas.scheduleWithFixedDelay(this::aplicarRetencion, 1, 1, TimeUnit.MINUTES);
+        tareas.scheduleWithFixedDelay(this::cerrarInactivos, 1, 1, TimeUnit.MINUTES);
+        logger.info("Log de mensajes en '{}' (fsync cada {} ms o {} mensajes)",
+                Paths.get(dir).toAbsolutePath(), fsyncMs, fsyncMensajes);
+    }
+
+    public boolean isHabilitado() {
+        return habilitado;
+    }
+
+    /**
+     * Anexa el mensaje al log de la sala y le asigna como secuencia su offset.
+     * @return el offset, o -1 si el log está deshabilitado o falló la escritura
+     */
+    public long agregar(String sala, ChatMessage mensaje) {
+        if (!habilitado) return -1;
+        try {
+            // La secuencia se escribe aparte: el offset se conoce al anexar
+            mensaje.setSecuencia(null);
+            byte[] datos = json.writeValueAsBytes(mensaje);
+            long offset;
+            do {
+                offset = log(sala).agregar(datos, System.currentTimeMillis());
+            } while (offset < 0); // Se cerró por inactividad justo ahora: log() abre otro
+            mensaje.setSecuencia(offset);
+            return offset;
+        } catch (IOException | UncheckedIOException e) {
+            logger.error("No se pudo guardar el mensaje en el log de '{}': {}", sala, e.getMessage());
+            return -1;
+        }
+    }
+
+    /** Hasta {@code max} mensajes desde el offset {@code desde} (incluido), en orden. */
+    public List<ChatMessage> leer(String sala, long desde, int max) {
+        return leer(sala, desde, Long.MAX_VALUE, max);
+    }
+
+    /**
+     * Hasta {@code cantidad} mensajes anteriores al offset {@code antesDe}, del más antiguo al
+     * más reciente.
+     */
+    public List<ChatMessage> anteriores(String sala, long antesDe, int cantidad) {
+        RoomLog log = existente(sala);
+        if (log == null || cantidad <= 0) return List.of();
+        long hasta = Math.min(antesDe, log.getSiguiente());
+        long desde = Math.max(log.getPrimero(), hasta - cantidad);
+        return leer(sala, desde, hasta, cantidad);
+    }
+
+    private List<ChatMessage> leer(String sala, long desde, long hasta, int max) {
+        RoomLog log = existente(sala);
+        if (log == null || max <= 0) return List.of();
+        try {
+            List<LogSegment.Registro> registros = log.leer(desde, hasta, max);
+            List<ChatMessage> mensajes = new ArrayList<>(registros.size());
+            for (LogSegment.Registro registro : registros) {
+                ChatMessage mensaje = json.readValue(registro.datos, ChatMessage.class);
+                mensaje.setSecuencia(registro.offset);
+                mensajes.add(mensaje);
+            }
+            return mensajes;
+        } catch (IOException | UncheckedIOException e) {
+            logger.error("No se pudo leer el log de '{}': {}", sala, e.getMessage());
+            return List.of();
+        }
+    }
+
+    /** Offset del mensaje más antiguo que se conserva de la sala (0 si no tiene log). */
+    public long primerOffset(String sala) {
+        RoomLog log = existente(sala);
+        return log != null ? log.getPrimero() : 0;
+    }
+
+    /** Offset que tendrá el próximo mensaje de la sala (1 si no tiene log). */
+    public long siguienteOffset(String sala) {
+        RoomLog log = existente(sala);
+        return log != null ? log.getSiguiente() : 1;
+    }
+
+    /** Offset del primer mensaje guardado en o después de {@code epochMs}. */
+    public long offsetPorTiempo(String sala, long epochMs) {
+        RoomLog log = existente(sala);
+        if (log == null) return 1;
+        try {
+            return log.offsetPorTiempo(epochMs);
+        } catch (IOException e) {
+            logger.error("No se pudo buscar en el log de '{}': {}", sala, e.getMessage());
+            return log.getSiguiente();
+        }
+    }
+
+    /** El log de la sala, abriéndolo o creándolo. */
+    private RoomLog log(String sala) {
+        return logs.computeIfAbsent(sala, nombre -> {
+            try {
+                return RoomLog.abrir(directorio(nombre), segmentoBytes, indiceBytes, fsyncMensajes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /** El log de la sala si ya está abierto o existe en disco; null si la sala nunca escribió. */
+    private RoomLog existente(String sala) {
+        if (!habilitado) return null;
+        RoomLog log = logs.get(sala);
+        if (log != null || !directorio(sala).toFile().isDirectory()) return log;
+        try {
+            return log(sala);
+        } catch (UncheckedIOException e) {
+            logger.error("No se pudo abrir el log de '{}': {}", sala, e.getMessage());
+            return null;
+        }
+    }
+
+    /** Directorio de la sala: su nombre codificado para que sea un nombre de archivo válido. */
+    private Path directorio(String sala) {
+        String nombre = URLEncoder.encode(sala, StandardCharsets.UTF_8).replace(".", "%2E").replace("*", "%2A");
+        if (nombre.length() > MAX_NOMBRE) {
+            nombre = nombre.substring(0, 40) + "-" + resumen(sala);
+        }
+        return Paths.get(dir, nombre);
+    }
+
+    private static String resumen(String sala) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(sala.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void forzar() {
+        logs.forEach((sala, log) -> {
+            try {
+                log.forzar();
+            } catch (IOException e) {
+                logger.error("Fallo el fsync del log de '{}': {}", sala, e.getMessage());
+            }
+        });
+    }
+
+    private void aplicarRetencion() {
+        long antesDe = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(retencionHoras);
+        logs.forEach((sala, log) -> {
+            try {
+                int borrados = log.aplicarRetencion(retencionBytes, antesDe);
+                if (borrados > 0) {
+                    logger.info("Log de '{}': {} segmento(s) borrados por retencion", sala, borrados);
+                }
+            } catch (IOException e) {
+                logger.error("Fallo la retencion del log de '{}': {}", sala, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Cierra los logs sin escrituras en chat.log.inactivo-minutos. Se quitan del mapa dentro de
+     * compute: nadie puede abrir otro log de la misma sala hasta que este quedó cerrado.
+     */
+    private void cerrarInactivos() {
+        long antesDe = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(inactivoMinutos);
+        for (String sala : logs.keySet()) {
+            logs.computeIfPresent(sala, (nombre, log) -> {
+                try {
+                    return log.cerrarSiInactivo(antesDe) ? null : log;
+                } catch (IOException e) {
+                    logger.error("No se pudo cerrar el log de '{}': {}", nombre, e.getMessage());
+                    return null; // Ya quedó marcado como cerrado
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    void cerrar() {
+        if (tareas != null) {
+            tareas.shutdownNow();
+        }
+        logs.forEach((sala, log) -> {
+            try {
+                log.close();
+            } catch (IOException e) {
+                logger.error("No se pudo cerrar el log de '{}': {}", sala, e.getMessage());
+            }
+        });
+        logs.clear();
+    }
+}
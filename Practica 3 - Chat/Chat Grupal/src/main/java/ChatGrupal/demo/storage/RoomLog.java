@@ -0,0 +1,194 @@
+package ChatGrupal.demo.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Log de una sala: sus segmentos en un directorio, de los que solo el último (activo) recibe
+ * escrituras. Los offsets empiezan en 1 y son consecutivos, como la secuencia del historial.
+ *
+ * Las escrituras se serializan con el candado del log y solo anexan al segmento activo; al
+ * pasar de {@code bytesSegmento} se abre uno nuevo. El fsync va por lotes: cada
+ * {@code fsyncMensajes} mensajes aquí mismo y, si no, cuando lo pide MessageLog cada pocos ms.
+ * Las lecturas no toman este candado.
+ *
+ * Solo el segmento activo tiene sus archivos abiertos: los anteriores se sellan (ver
+ * LogSegment). MessageLog cierra el log entero cuando lleva un rato sin escrituras; lo que
+ * quede leyéndolo sigue funcionando y quien intente escribir recibe -1 y abre otro.
+ */
+class RoomLog implements Closeable {
+    private final Path dir;
+    private final long bytesSegmento;
+    private final int intervaloIndice;
+    private final int fsyncMensajes;
+    private final ConcurrentSkipListMap<Long, LogSegment> segmentos = new ConcurrentSkipListMap<>();
+    private LogSegment activo;
+    private int sinForzar;
+    private volatile long ultimaEscritura = System.currentTimeMillis();
+    private boolean cerrado;
+
+    private RoomLog(Path dir, long bytesSegmento, int intervaloIndice, int fsyncMensajes) {
+        this.dir = dir;
+        this.bytesSegmento = bytesSegmento;
+        this.intervaloIndice = intervaloIndice;
+        this.fsyncMensajes = fsyncMensajes;
+    }
+
+    /**
+     * Abre los segmentos que haya en {@code dir} (creándolo si hace falta) y sella todos menos
+     * el último. Los .log cuyo nombre no es un offset no son segmentos y se ignoran.
+     */
+    static RoomLog abrir(Path dir, long bytesSegmento, int intervaloIndice, int fsyncMensajes) throws IOException {
+        Files.createDirectories(dir);
+        RoomLog log = new RoomLog(dir, bytesSegmento, intervaloIndice, fsyncMensajes);
+        List<Long> bases = new ArrayList<>();
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(dir, "*.log")) {
+            for (Path archivo : archivos) {
+                String nombre = archivo.getFileName().toString();
+                long base;
+                try {
+                    base = Long.parseLong(nombre.substring(0, nombre.length() - ".log".length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (base < 1 || !nombre.equals(LogSegment.nombre(base) + ".log")) continue;
+                bases.add(base);
+            }
+        }
+        if (bases.isEmpty()) {
+            bases.add(1L);
+        }
+        bases.sort(null);
+        long ultima = bases.get(bases.size() - 1);
+        try {
+            for (long base : bases) {
+                LogSegment segmento = LogSegment.abrir(dir, base, intervaloIndice);
+                log.segmentos.put(base, segmento);
+                if (base != ultima) {
+                    segmento.sellar();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+        log.activo = log.segmentos.lastEntry().getValue();
+        return log;
+    }
+
+    /** Anexa un registro y devuelve su offset, o -1 si el log ya se cerró. */
+    synchronized long agregar(byte[] datos, long tiempo) throws IOException {
+        if (cerrado) return -1;
+        ultimaEscritura = System.currentTimeMillis();
+        if (activo.getTamaño() >= bytesSegmento) {
+            activo.sellar();
+            sinForzar = 0;
+            long base = activo.getSiguiente();
+            activo = LogSegment.abrir(dir, base, intervaloIndice);
+            segmentos.put(base, activo);
+        }
+        long offset = activo.agregar(datos, tiempo);
+        if (++sinForzar >= fsyncMensajes) {
+            forzar();
+        }
+        return offset;
+    }
+
+    /** Lleva a disco lo anexado desde el último fsync. */
+    synchronized void forzar() throws IOException {
+        if (sinForzar > 0) {
+            activo.forzar();
+            sinForzar = 0;
+        }
+    }
+
+    /** Registros con offset en [desde, hasta), como mucho {@code max}, en orden. */
+    List<LogSegment.Registro> leer(long desde, long hasta, int max) throws IOException {
+        List<LogSegment.Registro> registros = new ArrayList<>();
+        Long inicio = segmentos.floorKey(desde);
+        for (LogSegment segmento : segmentos.tailMap(inicio != null ? inicio : segmentos.firstKey()).values()) {
+            if (registros.size() >= max || segmento.getBase() >= hasta) break;
+            segmento.leer(desde, hasta, max, registros);
+        }
+        return registros;
+    }
+
+    /** Offset del primer registro con tiempo >= {@code tiempo}; el siguiente offset si no hay. */
+    long offsetPorTiempo(long tiempo) throws IOException {
+        for (LogSegment segmento : segmentos.values()) {
+            long offset = segmento.offsetPorTiempo(tiempo);
+            if (offset >= 0) return offset;
+        }
+        return getSiguiente();
+    }
+
+    /** Offset del registro más antiguo que se conserva. */
+    long getPrimero() {
+        return segmentos.firstKey();
+    }
+
+    /** Offset que tendrá el próximo registro. */
+    long getSiguiente() {
+        return segmentos.lastEntry().getValue().getSiguiente();
+    }
+
+    long getBytes() {
+        long total = 0;
+        for (LogSegment segmento : segmentos.values()) {
+            total += segmento.getTamaño();
+        }
+        return total;
+    }
+
+    /**
+     * Borra los segmentos más antiguos mientras el log pase de {@code maxBytes} o su último
+     * mensaje sea anterior a {@code antesDe} (ms). El segmento activo nunca se borra.
+     * @return segmentos borrados
+     */
+    synchronized int aplicarRetencion(long maxBytes, long antesDe) throws IOException {
+        if (cerrado) return 0;
+        int borrados = 0;
+        long total = getBytes();
+        while (segmentos.size() > 1) {
+            Map.Entry<Long, LogSegment> primero = segmentos.firstEntry();
+            LogSegment segmento = primero.getValue();
+            if (total <= maxBytes && segmento.getUltimoTiempo() >= antesDe) break;
+            segmentos.remove(primero.getKey());
+            total -= segmento.getTamaño();
+            segmento.borrar();
+            borrados++;
+        }
+        return borrados;
+    }
+
+    /** Cierra el log si no se escribió en él desde {@code antesDe} (ms). */
+    synchronized boolean cerrarSiInactivo(long antesDe) throws IOException {
+        if (cerrado || ultimaEscritura >= antesDe) return false;
+        close();
+        return true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (cerrado) return;
+        cerrado = true;
+        sinForzar = 0;
+        IOException error = null;
+        for (LogSegment segmento : segmentos.values()) {
+            try {
+                if (segmento == activo) segmento.forzar();
+                segmento.close();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) throw error;
+    }
+}
@@ -0,0 +1,298 @@
+package ChatGrupal.demo.udp;
+
+import ChatGrupal.demo.model.LeaseWheel;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Procesa los comandos del protocolo UDP (JOIN, LEAVE, LIST, SEND, PRIVATE, PING) y guarda las salas.
+ * Lo usan todos los Worker a la vez; las respuestas salen por el mismo canal del servidor.
+ * El estado de las salas está en RoomDirectory, con un candado por sala, y las respuestas se
+ * arman con la lista de miembros ya leída: ningún envío ocurre con un candado tomado.
+ *
+ * El servidor entrega los mensajes él mismo, a la dirección con la que cada miembro hizo JOIN:
+ *   SEND|usuario|sala|texto      →  MSG|usuario|sala|texto        a cada miembro de la sala
+ *   PRIVATE|de|para|texto        →  PRIVATE|de|para|texto         al destinatario y al remitente
+ * Un SEND se codifica una sola vez en el buffer de salida del Worker y ese mismo buffer se envía
+ * a todos los destinos de la sala: una sala de 1000 miembros cuesta un armado y 1000 send(). A
+ * los miembros confiables se les enmarca de uno en uno en otro buffer del Worker; lo único que
+ * se crea por mensaje es la copia que guardan los ReliablePeer hasta la confirmación.
+ *
+ * Los clientes que envían con ReliablePeer (R|sesion|base|seq|comando) reciben todo lo que les
+ * manda el servidor (respuestas, MSG, PRIVATE) también por ReliablePeer, con retransmisión y en
+ * orden; los demás (el puente Node.js) siguen con datagramas sueltos. Los mensajes de una sala
+ * se reparten de uno en uno con el candado de reparto de la sala, así que todos los miembros
+ * confiables los reciben en el mismo orden.
+ *
+ * Cada dirección que envía algo tiene un lease que se renueva con cualquier datagrama suyo
+ * (PING es solo para eso: un cliente callado debe enviarlo antes de que pase la duración). Si
+ * vence, sus usuarios salen de todas sus salas como si hubieran enviado LEAVE y se olvida su
+ * estado de entrega confiable: un cliente que se cierra sin LEAVE no se queda en las salas.
+ */
+public class CommandHandler {
+    /** Lo más que puede crecer un datagrama al reenviarlo (la cabecera R|sesion|base|seq|). */
+    public static final int CABECERA_MAXIMA = 64;
+    private static final byte[] MSG = "MSG|".getBytes(StandardCharsets.US_ASCII);
+    private static final int SEND_PREFIJO = "SEND|".length();
+    private static final int RANURAS_LEASE = 512;
+    private static final long TICK_LEASE = 250; // ms
+
+    private final DatagramChannel channel;
+    private final boolean verbose;
+    private final RoomDirectory salas = new RoomDirectory();
+    private final LongAdder procesados = new LongAdder();
+    private final LongAdder entregados = new LongAdder();
+    private final LongAdder retransmisiones = new LongAdder();
+    private final ConcurrentMap<SocketAddress, ReliablePeer> pares = new ConcurrentHashMap<>();
+    private final LeaseWheel<SocketAddress> leases;
+
+    /**
+     * @param verbose  una línea por comando en la consola (-Dchat.verbose=true)
+     * @param leaseMs  tiempo sin recibir nada de una dirección tras el que sus usuarios salen de las salas
+     */
+    public CommandHandler(DatagramChannel channel, boolean verbose, long leaseMs) {
+        this.channel = channel;
+        this.verbose = verbose;
+        this.leases = new LeaseWheel<>(RANURAS_LEASE, TICK_LEASE, leaseMs, this::vencer);
+    }
+
+    /**
+     * @param buffers memoria de trabajo del Worker que procesa, para armar lo que se reparte
+     */
+    public void procesar(Packet packet, FanOutBuffers buffers) throws IOException {
+        ByteBuffer salida = buffers.salida;
+        SocketAddress remitente = packet.getRemitente();
+        ByteBuffer datos = packet.datos(0);
+        leases.renovar(remitente);
+        if (ReliablePeer.esAck(datos)) {
+            ReliablePeer par = pares.get(remitente);
+            if (par != null) {
+                long ahora = System.nanoTime();
+                par.confirmar(datos, ahora);
+                while (par.siguienteEnCola(salida, ahora)) {
+                    enviado(channel.send(salida, remitente));
+                }
+            }
+        } else if (ReliablePeer.esDatos(datos)) {
+            ReliablePeer par = pares.computeIfAbsent(remitente, r -> new ReliablePeer());
+            par.recibir(datos, cuerpo -> ejecutar(cuerpo, remitente, buffers));
+            par.escribirAck(salida);
+            channel.send(salida, remitente);
+        } else {
+            ejecutar(datos, remitente, buffers);
+        }
+    }
+
+    /** Un comando; {@code cuerpo} va de su posición a su límite y es un buffer en el heap. */
+    private void ejecutar(ByteBuffer cuerpo, SocketAddress remitente, FanOutBuffers buffers) throws IOException {
+        ByteBuffer salida = buffers.salida;
+        procesados.increment();
+        int inicio = cuerpo.position();
+        String mensaje = new String(cuerpo.array(), cuerpo.arrayOffset() + inicio, cuerpo.remaining(),
+                StandardCharsets.UTF_8);
+        String[] partes = mensaje.split("\\|");
+        String comando = partes[0];
+
+        if ("JOIN".equals(comando) && partes.length >= 3) {
+            String usuario = partes[1];
+            String sala = partes[2];
+            log("➕ JOIN " + usuario + " → " + sala + " (" + direccion(remitente) + ")");
+            Room room = salas.unirse(sala, usuario, remitente);
+            enviarRespuesta(remitente, "OK|" + String.join(",", room.getUsuarios()), salida);
+        } else if ("LEAVE".equals(comando) && partes.length >= 3) {
+            String usuario = partes[1];
+            String sala = partes[2];
+            log("➖ LEAVE " + usuario + " ← " + sala);
+            salas.abandonar(sala, usuario);
+        } else if ("LIST".equals(comando) && partes.length >= 2) {
+            log("📋 LIST " + partes[1]);
+            Room room = salas.get(partes[1]);
+            enviarRespuesta(remitente, "LIST|" + (room != null ? String.join(",", room.getUsuarios()) : ""), salida);
+        } else if ("SEND".equals(comando) && partes.length >= 3) {
+            log("💬 SEND " + partes[1] + " en " + partes[2] + ": " + contenido(partes));
+            Room room = salas.get(partes[2]);
+            if (room != null) {
+                // MSG| + lo que seguía a SEND|, copiado una vez
+                salida.clear();
+                salida.put(MSG).put(cuerpo.position(inicio + SEND_PREFIJO)).flip();
+                repartir(buffers, room);
+            }
+        } else if ("PRIVATE".equals(comando) && partes.length >= 3) {
+            log("🔒 PRIVATE " + partes[1] + " → " + partes[2] + ": " + contenido(partes));
+            SocketAddress destino = salas.direccionDe(partes[2]);
+            if (destino != null) {
+                // Se reenvía tal cual; el remitente recibe su copia como confirmación
+                entregar(cuerpo.position(inicio), destino, salida);
+                if (!destino.equals(remitente)) {
+                    entregar(cuerpo.position(inicio), remitente, salida);
+                }
+            }
+        } else if ("PING".equals(comando)) {
+            log("💓 PING de " + direccion(remitente)); // El lease ya se renovó al recibirlo
+        } else {
+            log("⚠️  Comando desconocido de " + direccion(remitente) + ": " + mensaje);
+        }
+    }
+
+    /** Comandos procesados desde el arranque. */
+    public long getProcesados() {
+        return procesados.sum();
+    }
+
+    /**
+     * Datagramas que salieron hacia los clientes (respuestas, MSG, PRIVATE) desde el arranque. Un
+     * mensaje que espera en la cola de un cliente confiable cuenta cuando sale; las
+     * retransmisiones no cuentan.
+     */
+    public long getEntregados() {
+        return entregados.sum();
+    }
+
+    /** Retransmisiones desde el arranque. */
+    public long getRetransmisiones() {
+        return retransmisiones.sum();
+    }
+
+    /** Direcciones con lease vigente. */
+    public int getLeases() {
+        return leases.size();
+    }
+
+    /** Direcciones cuyo lease venció (clientes que desaparecieron sin LEAVE) desde el arranque. */
+    public long getExpirados() {
+        return leases.getVencidos();
+    }
+
+    /** Clientes que usan entrega confiable. */
+    public int getPares() {
+        return pares.size();
+    }
+
+    /**
+     * Reparte el mensaje armado en {@code buffers.salida} a los destinos de la sala. Con el
+     * candado de reparto solo se numera el mensaje en cada ReliablePeer (para que todos lo
+     * reciban en el mismo orden) y se copia una vez a un arreglo, que cada par guarda hasta que
+     * lo confirmen. Los send() van después, para que un envío lento no frene a los demás Workers
+     * que reparten en la sala: a los destinos sin entrega confiable va el mismo buffer, solo
+     * rebobinado, y a los confiables se les enmarca en {@code buffers.marco} justo antes de enviar.
+     */
+    private void repartir(FanOutBuffers buffers, Room room) throws IOException {
+        ByteBuffer salida = buffers.salida;
+        SocketAddress[] destinos;
+        synchronized (room.reparto) {
+            destinos = room.getDestinos();
+            buffers.preparar(destinos.length);
+            byte[] cuerpo = null;
+            long ahora = System.nanoTime();
+            for (int i = 0; i < destinos.length; i++) {
+                ReliablePeer par = pares.get(destinos[i]);
+                buffers.pares[i] = par;
+                if (par == null) continue;
+                if (cuerpo == null) {
+                    cuerpo = new byte[salida.limit()];
+                    salida.get(0, cuerpo);
+                }
+                buffers.numeros[i] = par.numerar(cuerpo, ahora); // -1 si quedó en cola: sale con el ACK que le haga sitio
+            }
+        }
+        int enviados = 0;
+        for (int i = 0; i < destinos.length; i++) {
+            ReliablePeer par = buffers.pares[i];
+            buffers.pares[i] = null;
+            ByteBuffer datagrama;
+            if (par == null) {
+                datagrama = salida.rewind();
+            } else if (buffers.numeros[i] >= 0 && par.armar(buffers.numeros[i], buffers.marco)) {
+                datagrama = buffers.marco;
+            } else {
+                continue;
+            }
+            if (channel.send(datagrama, destinos[i]) > 0) enviados++;
+        }
+        entregados.add(enviados);
+    }
+
+    /** Un mensaje a un destino, enmarcado si el destino usa entrega confiable. */
+    private void entregar(ByteBuffer mensaje, SocketAddress destino, ByteBuffer salida) throws IOException {
+        ReliablePeer par = pares.get(destino);
+        if (par == null) {
+            enviado(channel.send(mensaje, destino));
+        } else {
+            byte[] cuerpo = new byte[mensaje.remaining()];
+            mensaje.get(mensaje.position(), cuerpo);
+            if (par.enviar(cuerpo, salida, System.nanoTime())) {
+                enviado(channel.send(salida, destino));
+            }
+        }
+    }
+
+    private void enviado(int bytes) {
+        if (bytes > 0) entregados.increment();
+    }
+
+    private void enviarRespuesta(SocketAddress destino, String respuesta, ByteBuffer salida) throws IOException {
+        entregar(ByteBuffer.wrap(respuesta.getBytes(StandardCharsets.UTF_8)), destino, salida);
+    }
+
+    /**
+     * Reenvía lo que venció sin confirmar a cada cliente confiable; a los que no confirman tras
+     * ReliablePeer.MAX_INTENTOS se les deja de tratar como confiables. Lo llama Retransmitter.
+     */
+    public void retransmitir(ByteBuffer marco) throws IOException {
+        long ahora = System.nanoTime();
+        for (Map.Entry<SocketAddress, ReliablePeer> entrada : pares.entrySet()) {
+            ReliablePeer par = entrada.getValue();
+            long seq = 0;
+            while ((seq = par.vencido(seq + 1, ahora, marco)) > 0) {
+                channel.send(marco, entrada.getKey());
+                retransmisiones.increment();
+            }
+            if (par.isCaido() && pares.remove(entrada.getKey(), par)) {
+                System.out.println("⚠️  " + direccion(entrada.getKey()) + " no confirma: "
+                        + par.getPendientes() + " mensajes sin entregar");
+            }
+        }
+    }
+
+    /** Procesa los ticks de la rueda de leases; lo llama Retransmitter. */
+    public void expirar() {
+        leases.avanzar();
+    }
+
+    private void vencer(SocketAddress direccion) {
+        int usuarios = salas.olvidar(direccion);
+        pares.remove(direccion);
+        if (usuarios > 0) {
+            System.out.println("⌛ " + direccion(direccion) + " dejó de responder: " + usuarios
+                    + " usuario(s) fuera de sus salas");
+        }
+    }
+
+    private static String contenido(String[] partes) {
+        return partes.length > 3 ? String.join("|", Arrays.copyOfRange(partes, 3, partes.length)) : "";
+    }
+
+    private static String direccion(SocketAddress address) {
+        if (address instanceof InetSocketAddress) {
+            InetSocketAddress inet = (InetSocketAddress) address;
+            return inet.getAddress().getHostAddress() + ":" + inet.getPort();
+        }
+        return String.valueOf(address);
+    }
+
+    private void log(String linea) {
+        if (verbose) {
+            System.out.println(linea);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package ChatGrupal.demo.udp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Memoria de trabajo de un Worker para repartir: el buffer donde se arma lo que se envía, otro
+ * donde se enmarca cada datagrama confiable justo antes de su send(), y por destino el par
+ * confiable y el número que le tocó. Los arreglos solo crecen, cuando una sala tiene más
+ * destinos que cualquiera de las anteriores, así que repartir no crea nada por miembro.
+ */
+public class FanOutBuffers {
+    final ByteBuffer salida;
+    final ByteBuffer marco;
+    ReliablePeer[] pares = new ReliablePeer[16];
+    long[] numeros = new long[16];
+
+    /**
+     * @param tamaño mayor datagrama que puede llegar; los buffers dejan sitio para la cabecera
+     */
+    public FanOutBuffers(int tamaño) {
+        this.salida = ByteBuffer.allocateDirect(tamaño + CommandHandler.CABECERA_MAXIMA);
+        this.marco = ByteBuffer.allocateDirect(tamaño + CommandHandler.CABECERA_MAXIMA);
+    }
+
+    /** Deja sitio para {@code destinos} destinos. */
+    void preparar(int destinos) {
+        if (destinos > pares.length) {
+            int n = Math.max(destinos, 2 * pares.length);
+            pares = new ReliablePeer[n];
+            numeros = new long[n];
+        }
+    }
+}
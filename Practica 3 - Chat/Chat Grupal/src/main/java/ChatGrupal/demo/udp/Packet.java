@@ -0,0 +1,52 @@
+package ChatGrupal.demo.udp;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Datagrama recibido, reutilizable: el event loop lo saca de PacketPool, recibe en su buffer
+ * y se lo pasa a un Worker, que lo devuelve al pool cuando termina de procesarlo.
+ * Así el buffer nunca se comparte entre dos datagramas en vuelo.
+ */
+public class Packet {
+    private final ByteBuffer buffer;
+    private SocketAddress remitente;
+
+    Packet(int size) {
+        this.buffer = ByteBuffer.allocate(size);
+    }
+
+    /** Buffer listo para recibir (posición 0, límite al final). */
+    public ByteBuffer prepararRecepcion() {
+        buffer.clear();
+        remitente = null;
+        return buffer;
+    }
+
+    public void recibido(SocketAddress remitente) {
+        this.remitente = remitente;
+        buffer.flip();
+    }
+
+    public SocketAddress getRemitente() {
+        return remitente;
+    }
+
+    public int getLongitud() {
+        return buffer.limit();
+    }
+
+    /**
+     * Los bytes del datagrama desde {@code desde}; send() avanza la posición, así que hay que
+     * pedirlo de nuevo (o rebobinar) antes de cada envío.
+     */
+    public ByteBuffer datos(int desde) {
+        buffer.position(desde);
+        return buffer;
+    }
+
+    public String comoTexto() {
+        return new String(buffer.array(), 0, buffer.limit(), StandardCharsets.UTF_8);
+    }
+}
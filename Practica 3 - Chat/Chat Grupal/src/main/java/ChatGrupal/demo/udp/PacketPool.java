@@ -0,0 +1,32 @@
+package ChatGrupal.demo.udp;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Conjunto fijo de Packet creados al arrancar. Si todos están en vuelo (los workers no dan
+ * abasto) el event loop espera a que se libere uno y, mientras, los datagramas se acumulan en
+ * el buffer del socket del sistema operativo en lugar de en memoria del servidor.
+ */
+public class PacketPool {
+    private final BlockingQueue<Packet> libres;
+
+    public PacketPool(int paquetes, int tamano) {
+        this.libres = new ArrayBlockingQueue<>(paquetes);
+        for (int i = 0; i < paquetes; i++) {
+            libres.add(new Packet(tamano));
+        }
+    }
+
+    public Packet tomar() throws InterruptedException {
+        return libres.take();
+    }
+
+    public void liberar(Packet packet) {
+        libres.offer(packet);
+    }
+
+    public int disponibles() {
+        return libres.size();
+    }
+}
@@ -0,0 +1,335 @@
+package ChatGrupal.demo.udp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Entrega confiable y en orden sobre UDP con el otro extremo de una conversación: el servidor
+ * tiene uno por cliente confiable y ChatClient uno para el servidor.
+ *
+ *   R|sesion|base|seq|cuerpo    datos; cuerpo es un comando o mensaje normal del protocolo
+ *   ACK|sesion|n                confirma todo hasta n (acumulativo) de esa sesión
+ *
+ * Cada extremo numera lo que envía desde 1 y guarda los mensajes sin confirmar en una ventana
+ * de VENTANA; lo que no cabe espera en una cola hasta que lleguen confirmaciones. Los
+ * retransmite cuando vence su RTO (estimado como en TCP, duplicándose en cada reintento) y da
+ * al otro extremo por caído tras MAX_INTENTOS. El receptor entrega en orden, guarda lo que
+ * llega adelantado y confirma con cada datagrama de datos.
+ *
+ * La sesión es un número al azar de quien envía y base su primer mensaje sin confirmar: si
+ * un extremo se reinicia, el otro ve una sesión nueva y empieza a esperar desde base, sin
+ * negociar nada. No hay conexión ni saludo: el primer mensaje ya lleva datos, y la cabecera
+ * son unos 15 bytes de texto.
+ *
+ * La salida (enviar, numerar, armar, confirmar, vencido) y la entrada (recibir, escribirAck)
+ * tienen candados distintos: la entrega de un mensaje recibido puede repartirlo a otros pares sin riesgo de
+ * que dos hilos se esperen mutuamente. Ningún método envía: arman el datagrama en el buffer
+ * que reciben y quien llama lo envía fuera del candado.
+ */
+public class ReliablePeer {
+    public static final int VENTANA = 256; // Mensajes sin confirmar como máximo
+    public static final int COLA = 4096; // Mensajes esperando sitio en la ventana; más allá se descartan
+    public static final int MAX_INTENTOS = 8; // Envíos de un mismo mensaje antes de dar al otro por caído
+    private static final long RTO_INICIAL = 250_000_000L; // ns, antes de tener muestras de RTT
+    private static final long RTO_MIN = 50_000_000L;
+    private static final long RTO_MAX = 2_000_000_000L;
+    private static final byte[] DATOS = "R|".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ACK = "ACK|".getBytes(StandardCharsets.US_ASCII);
+
+    /** Recibe cada cuerpo en orden; el buffer solo es válido durante la llamada. */
+    public interface Entrega {
+        void entregar(ByteBuffer cuerpo) throws IOException;
+    }
+
+    // Salida
+    private final long sesion = ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
+    private long siguiente = 1; // Número del próximo mensaje
+    private long confirmado = 0; // Todo hasta aquí está confirmado
+    private final byte[][] cuerpos = new byte[VENTANA][];
+    private final long[] enviadoEn = new long[VENTANA];
+    private final int[] intentos = new int[VENTANA];
+    private final ArrayDeque<byte[]> cola = new ArrayDeque<>();
+    private long srtt = -1;
+    private long rttvar;
+    private long rto = RTO_INICIAL;
+    private boolean caido = false;
+    private long retransmitidos = 0;
+    private long descartados = 0;
+
+    // Entrada
+    private final Object entrada = new Object();
+    private long sesionRemota = 0;
+    private long esperado = 1;
+    private final TreeMap<Long, byte[]> adelantados = new TreeMap<>();
+    private long duplicados = 0;
+    private long fueraDeOrden = 0;
+
+    /** El datagrama que empieza en la posición de {@code datos} es un mensaje confiable. */
+    public static boolean esDatos(ByteBuffer datos) {
+        return empieza(datos, DATOS);
+    }
+
+    public static boolean esAck(ByteBuffer datos) {
+        return empieza(datos, ACK);
+    }
+
+    /**
+     * Registra {@code cuerpo} como el siguiente mensaje y, si cabe en la ventana, arma su
+     * datagrama en {@code marco}. El arreglo se guarda hasta que se confirme: no se debe modificar después.
+     * @return true si hay que enviar {@code marco}; false si el mensaje quedó en cola (o se
+     *         descartó porque la cola también está llena)
+     */
+    public synchronized boolean enviar(byte[] cuerpo, ByteBuffer marco, long ahora) {
+        long seq = numerar(cuerpo, ahora);
+        if (seq < 0) return false;
+        enmarcar(seq, marco);
+        return true;
+    }
+
+    /**
+     * Como enviar, pero sin armar el datagrama: quien reparte numera con su propio candado tomado
+     * y enmarca después, fuera de él, con armar.
+     * @return el número del mensaje, o -1 si quedó en cola (o se descartó)
+     */
+    public synchronized long numerar(byte[] cuerpo, long ahora) {
+        if (caido || cola.size() >= COLA) {
+            descartados++;
+            return -1;
+        }
+        if (!cola.isEmpty() || siguiente - confirmado > VENTANA) {
+            cola.add(cuerpo);
+            return -1;
+        }
+        return registrar(cuerpo, ahora);
+    }
+
+    /**
+     * Arma en {@code marco} el datagrama del mensaje {@code seq} que devolvió numerar.
+     * @return false si ya no hace falta enviarlo: lo confirmó una retransmisión o el otro extremo se da por caído
+     */
+    public synchronized boolean armar(long seq, ByteBuffer marco) {
+        if (caido || seq <= confirmado) return false;
+        enmarcar(seq, marco);
+        return true;
+    }
+
+    /**
+     * Después de un ACK: pasa a la ventana el siguiente mensaje en cola y arma su datagrama.
+     * Quien llama lo envía y repite mientras devuelva true.
+     */
+    public synchronized boolean siguienteEnCola(ByteBuffer marco, long ahora) {
+        if (caido || cola.isEmpty() || siguiente - confirmado > VENTANA) return false;
+        enmarcar(registrar(cola.poll(), ahora), marco);
+        return true;
+    }
+
+    private long registrar(byte[] cuerpo, long ahora) {
+        long seq = siguiente++;
+        int i = indice(seq);
+        cuerpos[i] = cuerpo;
+        enviadoEn[i] = ahora;
+        intentos[i] = 1;
+        return seq;
+    }
+
+    /** Procesa un ACK; {@code ack} empieza en el datagrama completo. */
+    public synchronized void confirmar(ByteBuffer ack, long ahora) {
+        ack.position(ack.position() + ACK.length);
+        long sesionAck = leerNumero(ack);
+        long hasta = leerNumero(ack);
+        if (sesionAck != sesion || hasta <= confirmado || hasta >= siguiente) return;
+        // Karn: solo se mide el RTT de mensajes que no se retransmitieron
+        int ultimo = indice(hasta);
+        if (intentos[ultimo] == 1) {
+            muestraRtt(ahora - enviadoEn[ultimo]);
+        }
+        for (long seq = confirmado + 1; seq <= hasta; seq++) {
+            cuerpos[indice(seq)] = null;
+        }
+        confirmado = hasta;
+    }
+
+    /**
+     * Busca, desde {@code desde}, el primer mensaje cuyo RTO venció y arma su retransmisión en
+     * {@code marco}. Quien llama lo envía y sigue desde el número devuelto más uno.
+     * @return el número retransmitido, o -1 si no queda ninguno vencido (o el otro extremo se da por caído)
+     */
+    public synchronized long vencido(long desde, long ahora, ByteBuffer marco) {
+        for (long seq = Math.max(desde, confirmado + 1); seq < siguiente && !caido; seq++) {
+            int i = indice(seq);
+            long espera = Math.min(RTO_MAX, rto << (intentos[i] - 1));
+            if (ahora - enviadoEn[i] < espera) continue;
+            if (intentos[i] >= MAX_INTENTOS) {
+                caido = true;
+                return -1;
+            }
+            intentos[i]++;
+            enviadoEn[i] = ahora;
+            retransmitidos++;
+            enmarcar(seq, marco);
+            return seq;
+        }
+        return -1;
+    }
+
+    /**
+     * Procesa un datagrama de datos ({@code datos} empieza en "R|") y entrega en orden lo que
+     * ya se pueda. Después hay que enviar el ACK (escribirAck), también si era un duplicado.
+     */
+    public void recibir(ByteBuffer datos, Entrega entrega) throws IOException {
+        synchronized (entrada) {
+            datos.position(datos.position() + DATOS.length);
+            long sesionDatos = leerNumero(datos);
+            long base = leerNumero(datos);
+            long seq = leerNumero(datos);
+            if (sesionDatos <= 0 || base <= 0 || seq < base) return;
+            if (sesionDatos != sesionRemota) {
+                // Primer mensaje del otro extremo, o se reinició: lo anterior a base ya no llegará
+                sesionRemota = sesionDatos;
+                esperado = base;
+                adelantados.clear();
+            } else if (base > esperado) {
+                // El emisor dejó de esperar confirmación de lo anterior a base
+                adelantados.headMap(base).clear();
+                esperado = base;
+                entregarAdelantados(entrega);
+            }
+
+            if (seq == esperado) {
+                esperado++;
+                entrega.entregar(datos);
+                entregarAdelantados(entrega);
+            } else if (seq > esperado && seq < esperado + VENTANA) {
+                if (adelantados.putIfAbsent(seq, copia(datos)) == null) fueraDeOrden++;
+                else duplicados++;
+            } else {
+                duplicados++;
+            }
+        }
+    }
+
+    private void entregarAdelantados(Entrega entrega) throws IOException {
+        byte[] cuerpo;
+        while ((cuerpo = adelantados.remove(esperado)) != null) {
+            esperado++;
+            entrega.entregar(ByteBuffer.wrap(cuerpo));
+        }
+    }
+
+    /** Arma en {@code marco} el ACK acumulativo de lo recibido hasta ahora. */
+    public void escribirAck(ByteBuffer marco) {
+        synchronized (entrada) {
+            marco.clear();
+            marco.put(ACK);
+            escribirNumero(marco, sesionRemota);
+            marco.put((byte) '|');
+            escribirNumero(marco, esperado - 1);
+            marco.flip();
+        }
+    }
+
+    private void enmarcar(long seq, ByteBuffer marco) {
+        marco.clear();
+        marco.put(DATOS);
+        escribirNumero(marco, sesion);
+        marco.put((byte) '|');
+        escribirNumero(marco, confirmado + 1);
+        marco.put((byte) '|');
+        escribirNumero(marco, seq);
+        marco.put((byte) '|');
+        marco.put(cuerpos[indice(seq)]);
+        marco.flip();
+    }
+
+    /** Estimación de RTT y RTO de RFC 6298. */
+    private void muestraRtt(long rtt) {
+        if (srtt < 0) {
+            srtt = rtt;
+            rttvar = rtt / 2;
+        } else {
+            rttvar = (3 * rttvar + Math.abs(srtt - rtt)) / 4;
+            srtt = (7 * srtt + rtt) / 8;
+        }
+        rto = Math.max(RTO_MIN, Math.min(RTO_MAX, srtt + 4 * rttvar));
+    }
+
+    private static int indice(long seq) {
+        return (int) (seq % VENTANA);
+    }
+
+    private static byte[] copia(ByteBuffer datos) {
+        byte[] cuerpo = new byte[datos.remaining()];
+        datos.get(datos.position(), cuerpo);
+        return cuerpo;
+    }
+
+    private static boolean empieza(ByteBuffer datos, byte[] prefijo) {
+        if (datos.remaining() < prefijo.length) return false;
+        for (int i = 0; i < prefijo.length; i++) {
+            if (datos.get(datos.position() + i) != prefijo[i]) return false;
+        }
+        return true;
+    }
+
+    /** Lee un número decimal hasta el siguiente '|' (que se consume); -1 si no es un número. */
+    private static long leerNumero(ByteBuffer datos) {
+        long n = 0;
+        int digitos = 0;
+        while (datos.hasRemaining()) {
+            byte c = datos.get();
+            if (c == '|') break;
+            if (c < '0' || c > '9' || ++digitos > 18) return -1;
+            n = n * 10 + (c - '0');
+        }
+        return digitos > 0 ? n : -1;
+    }
+
+    /** Escribe {@code n} en decimal sin crear objetos. */
+    private static void escribirNumero(ByteBuffer marco, long n) {
+        int inicio = marco.position();
+        do {
+            marco.put((byte) ('0' + n % 10));
+            n /= 10;
+        } while (n > 0);
+        for (int i = inicio, j = marco.position() - 1; i < j; i++, j--) {
+            byte t = marco.get(i);
+            marco.put(i, marco.get(j));
+            marco.put(j, t);
+        }
+    }
+
+    /** El otro extremo no confirmó un mensaje tras MAX_INTENTOS envíos. */
+    public synchronized boolean isCaido() {
+        return caido;
+    }
+
+    /** Mensajes sin confirmar, en la ventana o en cola. */
+    public synchronized int getPendientes() {
+        return (int) (siguiente - 1 - confirmado) + cola.size();
+    }
+
+    public synchronized long getRetransmitidos() {
+        return retransmitidos;
+    }
+
+    /** Mensajes que no se enviaron por tener la ventana y la cola llenas. */
+    public synchronized long getDescartados() {
+        return descartados;
+    }
+
+    public long getDuplicados() {
+        synchronized (entrada) {
+            return duplicados;
+        }
+    }
+
+    public long getFueraDeOrden() {
+        synchronized (entrada) {
+            return fueraDeOrden;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package ChatGrupal.demo.udp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Hilo que cada pocos milisegundos reenvía los mensajes confiables cuyo RTO venció
+ * (CommandHandler.retransmitir) y da los ticks de la rueda de leases (CommandHandler.expirar).
+ * Tiene su propio buffer para armar las retransmisiones.
+ */
+public class Retransmitter extends Thread {
+    private final CommandHandler handler;
+    private final long intervalo;
+    private final ByteBuffer marco;
+
+    /**
+     * @param intervalo ms entre revisiones; acota cuánto se pasa un mensaje de su RTO
+     * @param tamaño    mayor datagrama que puede llegar
+     */
+    public Retransmitter(CommandHandler handler, long intervalo, int tamaño) {
+        super("chat-retransmisor");
+        this.handler = handler;
+        this.intervalo = intervalo;
+        this.marco = ByteBuffer.allocateDirect(tamaño + CommandHandler.CABECERA_MAXIMA);
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                Thread.sleep(intervalo);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                handler.retransmitir(marco);
+            } catch (IOException e) {
+                System.err.println("❌ Error retransmitiendo: " + e.getMessage());
+            }
+            handler.expirar();
+        }
+    }
+}
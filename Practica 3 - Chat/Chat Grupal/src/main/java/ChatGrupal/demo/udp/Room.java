@@ -0,0 +1,136 @@
+package ChatGrupal.demo.udp;
+
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Una sala del servidor UDP. Cada sala tiene su propio candado: un JOIN o LEAVE en una sala
+ * no espera a lo que ocurra en las demás.
+ *
+ * Los miembros se guardan en una instantánea inmutable que se reemplaza en cada cambio
+ * (copy-on-write): los cambios se serializan con el candado de la sala, pero leer la lista
+ * (LIST, la respuesta de un JOIN, el reparto de un mensaje) no toma ningún candado, solo lee
+ * la última versión. En un chat los mensajes son mucho más frecuentes que las entradas y salidas.
+ */
+public class Room {
+    /** Miembros en un momento dado; nunca cambia. */
+    private static final class Miembros {
+        final String[] usuarios;
+        final SocketAddress[] direcciones; // Dirección UDP de cada usuario (la de su último JOIN)
+        final SocketAddress[] destinos; // Direcciones distintas: a cada una se le envía una sola copia
+
+        Miembros(String[] usuarios, SocketAddress[] direcciones) {
+            this.usuarios = usuarios;
+            this.direcciones = direcciones;
+            // El bridge de Node se une en nombre de todos sus usuarios desde la misma dirección
+            this.destinos = Arrays.stream(direcciones).distinct().toArray(SocketAddress[]::new);
+        }
+    }
+
+    private static final Miembros VACIA = new Miembros(new String[0], new SocketAddress[0]);
+
+    private final String nombre;
+    /** Lo toma el reparto de cada mensaje: fija un único orden de los mensajes de la sala. */
+    final Object reparto = new Object();
+    private volatile Miembros miembros = VACIA;
+    private boolean cerrada = false; // Se quitó del directorio por quedar vacía
+
+    public Room(String nombre) {
+        this.nombre = nombre;
+    }
+
+    /**
+     * Agrega al usuario o, si ya estaba, actualiza su dirección.
+     * @return false si la sala ya se cerró (quien llama debe buscar o crear la nueva)
+     */
+    synchronized boolean agregar(String usuario, SocketAddress direccion) {
+        if (cerrada) return false;
+        Miembros actuales = miembros;
+        int i = indice(actuales, usuario);
+        if (i >= 0 && actuales.direcciones[i].equals(direccion)) return true;
+        int n = actuales.usuarios.length;
+        String[] usuarios = Arrays.copyOf(actuales.usuarios, i >= 0 ? n : n + 1);
+        SocketAddress[] direcciones = Arrays.copyOf(actuales.direcciones, usuarios.length);
+        usuarios[i >= 0 ? i : n] = usuario;
+        direcciones[i >= 0 ? i : n] = direccion;
+        miembros = new Miembros(usuarios, direcciones);
+        return true;
+    }
+
+    /**
+     * Quita al usuario; si la sala queda vacía se marca cerrada.
+     * @return true si la sala se cerró y hay que quitarla del directorio
+     */
+    synchronized boolean remover(String usuario) {
+        Miembros actuales = miembros;
+        int i = indice(actuales, usuario);
+        if (i >= 0) {
+            int n = actuales.usuarios.length;
+            String[] usuarios = new String[n - 1];
+            SocketAddress[] direcciones = new SocketAddress[n - 1];
+            System.arraycopy(actuales.usuarios, 0, usuarios, 0, i);
+            System.arraycopy(actuales.usuarios, i + 1, usuarios, i, n - i - 1);
+            System.arraycopy(actuales.direcciones, 0, direcciones, 0, i);
+            System.arraycopy(actuales.direcciones, i + 1, direcciones, i, n - i - 1);
+            miembros = usuarios.length == 0 ? VACIA : new Miembros(usuarios, direcciones);
+        }
+        if (miembros.usuarios.length == 0 && !cerrada) {
+            cerrada = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Quita a todos los miembros que se unieron desde {@code direccion} (un cliente que dejó de
+     * dar señales) y agrega sus nombres a {@code quitados}; si la sala queda vacía se marca cerrada.
+     * @return true si la sala se cerró y hay que quitarla del directorio
+     */
+    synchronized boolean removerDireccion(SocketAddress direccion, List<String> quitados) {
+        Miembros actuales = miembros;
+        int quedan = 0;
+        for (SocketAddress d : actuales.direcciones) {
+            if (!d.equals(direccion)) quedan++;
+        }
+        if (quedan < actuales.usuarios.length) {
+            String[] usuarios = new String[quedan];
+            SocketAddress[] direcciones = new SocketAddress[quedan];
+            for (int i = 0, j = 0; i < actuales.usuarios.length; i++) {
+                if (actuales.direcciones[i].equals(direccion)) {
+                    quitados.add(actuales.usuarios[i]);
+                } else {
+                    usuarios[j] = actuales.usuarios[i];
+                    direcciones[j++] = actuales.direcciones[i];
+                }
+            }
+            miembros = quedan == 0 ? VACIA : new Miembros(usuarios, direcciones);
+        }
+        if (miembros.usuarios.length == 0 && !cerrada) {
+            cerrada = true;
+            return true;
+        }
+        return false;
+    }
+
+    private static int indice(Miembros miembros, String usuario) {
+        for (int i = 0; i < miembros.usuarios.length; i++) {
+            if (miembros.usuarios[i].equals(usuario)) return i;
+        }
+        return -1;
+    }
+
+    /** Miembros actuales; el arreglo no cambia nunca, se puede recorrer sin candado. */
+    public String[] getUsuarios() {
+        return miembros.usuarios;
+    }
+
+    /** Direcciones a las que hay que repartir un mensaje de la sala, sin repetir. */
+    public SocketAddress[] getDestinos() {
+        return miembros.destinos;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+}
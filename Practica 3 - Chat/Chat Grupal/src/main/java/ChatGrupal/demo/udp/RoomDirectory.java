@@ -0,0 +1,77 @@
+package ChatGrupal.demo.udp;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Directorio de salas: un ConcurrentHashMap de nombre a Room, sin candado global.
+ *
+ * Las salas vacías se quitan. Una sala se cierra (bajo su propio candado) en el mismo momento
+ * en que queda vacía, así que un JOIN que llegue a la vez o la encuentra abierta y la vuelve a
+ * llenar, o la encuentra cerrada y crea una nueva.
+ *
+ * También recuerda la dirección UDP de cada usuario (la de su último JOIN) para los PRIVATE y,
+ * por dirección, las salas a las que se unió alguien desde ella: cuando el lease de una
+ * dirección vence (olvidar) se la saca de esas salas sin recorrer las demás.
+ */
+public class RoomDirectory {
+    private final ConcurrentMap<String, Room> salas = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, SocketAddress> usuarios = new ConcurrentHashMap<>();
+    private final ConcurrentMap<SocketAddress, Set<String>> salasPorDireccion = new ConcurrentHashMap<>();
+
+    /** Agrega al usuario (creando la sala si hace falta) y devuelve la sala. */
+    public Room unirse(String nombre, String usuario, SocketAddress direccion) {
+        usuarios.put(usuario, direccion);
+        salasPorDireccion.computeIfAbsent(direccion, d -> ConcurrentHashMap.newKeySet()).add(nombre);
+        while (true) {
+            Room sala = salas.computeIfAbsent(nombre, Room::new);
+            if (sala.agregar(usuario, direccion)) return sala;
+            salas.remove(nombre, sala); // Cerrada mientras tanto: que la quite quien llegue primero
+        }
+    }
+
+    public void abandonar(String nombre, String usuario) {
+        Room sala = salas.get(nombre);
+        if (sala != null && sala.remover(usuario)) {
+            salas.remove(nombre, sala);
+        }
+    }
+
+    /**
+     * Saca de todas sus salas a los usuarios que se unieron desde {@code direccion}.
+     * @return usuarios quitados (un mismo usuario cuenta una vez por sala)
+     */
+    public int olvidar(SocketAddress direccion) {
+        Set<String> nombres = salasPorDireccion.remove(direccion);
+        if (nombres == null) return 0;
+        List<String> quitados = new ArrayList<>();
+        for (String nombre : nombres) {
+            Room sala = salas.get(nombre);
+            if (sala != null && sala.removerDireccion(direccion, quitados)) {
+                salas.remove(nombre, sala);
+            }
+        }
+        for (String usuario : quitados) {
+            usuarios.remove(usuario, direccion);
+        }
+        return quitados.size();
+    }
+
+    /** La sala, o null si no existe. */
+    public Room get(String nombre) {
+        return salas.get(nombre);
+    }
+
+    /** Dirección UDP del usuario, o null si nunca se unió a una sala. */
+    public SocketAddress direccionDe(String usuario) {
+        return usuarios.get(usuario);
+    }
+
+    public int size() {
+        return salas.size();
+    }
+}
@@ -0,0 +1,55 @@
+package ChatGrupal.demo.udp;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Hilo de trabajo con su propia cola. ChatServer reparte los datagramas por remitente, así que
+ * los comandos de un mismo cliente se procesan siempre en el mismo hilo y en orden (un JOIN
+ * nunca se adelanta a un SEND enviado antes).
+ *
+ * Cada Worker tiene además sus FanOutBuffers, donde CommandHandler arma y enmarca lo que
+ * reparte sin pedir memoria nueva por destino.
+ */
+public class Worker extends Thread {
+    private final BlockingQueue<Packet> cola;
+    private final CommandHandler handler;
+    private final PacketPool pool;
+    private final FanOutBuffers buffers;
+
+    /**
+     * @param tamaño mayor datagrama que puede llegar
+     */
+    public Worker(int id, int capacidad, int tamaño, CommandHandler handler, PacketPool pool) {
+        super("chat-worker-" + id);
+        this.cola = new ArrayBlockingQueue<>(capacidad);
+        this.handler = handler;
+        this.pool = pool;
+        this.buffers = new FanOutBuffers(tamaño);
+        setDaemon(true);
+    }
+
+    /** La cola tiene sitio para todos los Packet del pool: nunca bloquea al event loop. */
+    public void encolar(Packet packet) {
+        cola.add(packet);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Packet packet;
+            try {
+                packet = cola.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                handler.procesar(packet, buffers);
+            } catch (Exception e) {
+                System.err.println("❌ Error procesando datagrama de " + packet.getRemitente() + ": " + e.getMessage());
+            } finally {
+                pool.liberar(packet);
+            }
+        }
+    }
+}
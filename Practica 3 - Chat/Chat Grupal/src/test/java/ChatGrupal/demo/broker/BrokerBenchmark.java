@@ -0,0 +1,203 @@
+package ChatGrupal.demo.broker;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Compara ChatBroker con el SimpleBrokerMessageHandler de Spring repartiendo a muchas sesiones
+ * por el camino completo: frames STOMP de entrada, broker, StompSubProtocolHandler y la sesión
+ * (falsa: solo cuenta lo que le llega). Los canales son síncronos; con ChatWebSocketHandler las
+ * sesiones las escriben los hilos de OutboundWriters, así que se mide hasta la última entrega y
+ * se cuentan los bytes asignados en todos los hilos.
+ *
+ * Uso: java -cp target/test-classes:target/classes:(dependencias) ChatGrupal.demo.broker.BrokerBenchmark
+ *      [suscriptores=10000] [mensajes=200] [salas=1]
+ * Con varias salas los suscriptores se reparten entre ellas y cada mensaje va a una sala, por turnos.
+ */
+public class BrokerBenchmark {
+
+    /** Sesión WebSocket que no escribe en ningún lado: cuenta mensajes y bytes. */
+    static final class SesionFalsa implements WebSocketSession {
+        final String id;
+        final Map<String, Object> atributos = new HashMap<>();
+        volatile long mensajes; // Un solo hilo escribe a la vez, pero no siempre el mismo
+        volatile long bytes;
+        volatile String ultimo;
+
+        SesionFalsa(String id) {
+            this.id = id;
+        }
+
+        @Override public String getId() { return id; }
+        @Override public URI getUri() { return URI.create("ws://localhost/ws-chat"); }
+        @Override public HttpHeaders getHandshakeHeaders() { return new HttpHeaders(); }
+        @Override public Map<String, Object> getAttributes() { return atributos; }
+        @Override public Principal getPrincipal() { return null; }
+        @Override public InetSocketAddress getLocalAddress() { return null; }
+        @Override public InetSocketAddress getRemoteAddress() { return null; }
+        @Override public String getAcceptedProtocol() { return "v12.stomp"; }
+        @Override public void setTextMessageSizeLimit(int limite) { }
+        @Override public int getTextMessageSizeLimit() { return 64 * 1024; }
+        @Override public void setBinaryMessageSizeLimit(int limite) { }
+        @Override public int getBinaryMessageSizeLimit() { return 64 * 1024; }
+        @Override public List<WebSocketExtension> getExtensions() { return List.of(); }
+        @Override public boolean isOpen() { return true; }
+        @Override public void close() { }
+        @Override public void close(CloseStatus estado) { }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> mensaje) {
+            mensajes++;
+            bytes += mensaje.getPayloadLength();
+            if (mensaje instanceof TextMessage texto) ultimo = texto.getPayload();
+        }
+    }
+
+    record Resultado(String broker, double usPorMensaje, double nsPorEntrega, double bytesAsignadosPorEntrega,
+                     long entregas, long esperadas, String ultimoFrame) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int suscriptores = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int mensajes = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int salas = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        // Sin la configuración de Spring Boot, logback registra todo en DEBUG
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        System.out.printf("%d suscriptores en %d sala(s), %d mensajes%n", suscriptores, salas, mensajes);
+        for (int ronda = 0; ronda < 3; ronda++) { // Las primeras rondas calientan el JIT
+            boolean ultima = ronda == 2;
+            Resultado simple = medir(false, suscriptores, mensajes, salas);
+            Resultado chat = medir(true, suscriptores, mensajes, salas);
+            if (!ultima) continue;
+            for (Resultado r : List.of(simple, chat)) {
+                System.out.printf("%-8s %9.1f us/mensaje  %7.1f ns/entrega  %7.0f B asignados/entrega  entregas=%d/%d%n",
+                        r.broker(), r.usPorMensaje(), r.nsPorEntrega(), r.bytesAsignadosPorEntrega(),
+                        r.entregas(), r.esperadas());
+            }
+            System.out.printf("ChatBroker: %.1fx mas rapido, frames equivalentes=%b%n",
+                    simple.usPorMensaje() / chat.usPorMensaje(),
+                    cabeceras(simple.ultimoFrame()).equals(cabeceras(chat.ultimoFrame())));
+        }
+    }
+
+    static Resultado medir(boolean chat, int suscriptores, int mensajes, int salas) throws Exception {
+        ExecutorSubscribableChannel entrada = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel salida = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+        List<String> prefijos = List.of("/topic", "/queue");
+
+        AbstractBrokerMessageHandler broker = chat
+                ? new ChatBroker(entrada, salida, brokerChannel, prefijos)
+                : new SimpleBrokerMessageHandler(entrada, salida, brokerChannel, prefijos);
+        SubProtocolWebSocketHandler handler = chat
+                ? new ChatWebSocketHandler(entrada, salida)
+                : new SubProtocolWebSocketHandler(entrada, salida);
+        handler.addProtocolHandler(new StompSubProtocolHandler());
+        broker.start();
+        handler.start();
+
+        List<SesionFalsa> sesiones = new ArrayList<>(suscriptores);
+        for (int i = 0; i < suscriptores; i++) {
+            SesionFalsa sesion = new SesionFalsa("s" + i);
+            sesiones.add(sesion);
+            handler.afterConnectionEstablished(sesion);
+            handler.handleMessage(sesion, new TextMessage("CONNECT\naccept-version:1.2\nhost:localhost\n\n\0"));
+            handler.handleMessage(sesion, new TextMessage("SUBSCRIBE\nid:sub-0\ndestination:/topic/sala/sala"
+                    + (i % salas) + "\n\n\0"));
+        }
+
+        SimpMessagingTemplate template = new SimpMessagingTemplate(brokerChannel);
+        template.setMessageConverter(new MappingJackson2MessageConverter());
+        Map<String, Object> cuerpo = new LinkedHashMap<>();
+        cuerpo.put("usuario", "ana");
+        cuerpo.put("contenido", "Hola a todos, este es un mensaje de prueba del chat grupal");
+        cuerpo.put("tipo", "TEXTO");
+        cuerpo.put("timestamp", "2025-11-16T10:45:23");
+        long antes = esperar(sesiones, suscriptores); // Los CONNECTED
+        long esperadas = 0;
+        for (int m = 0; m < mensajes; m++) {
+            int sala = m % salas;
+            esperadas += suscriptores / salas + (sala < suscriptores % salas ? 1 : 0);
+        }
+
+        com.sun.management.ThreadMXBean hilos = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long asignadosAntes = asignados(hilos);
+        long inicio = System.nanoTime();
+        for (int m = 0; m < mensajes; m++) {
+            cuerpo.put("secuencia", m);
+            template.convertAndSend("/topic/sala/sala" + (m % salas), cuerpo);
+        }
+        long entregas = esperar(sesiones, antes + esperadas) - antes;
+        long nanos = System.nanoTime() - inicio;
+        long asignados = asignados(hilos) - asignadosAntes;
+
+        handler.stop();
+        broker.stop();
+        if (handler instanceof ChatWebSocketHandler chatHandler) chatHandler.destroy();
+        return new Resultado(chat ? "chat" : "simple", nanos / 1000.0 / mensajes,
+                (double) nanos / Math.max(1, entregas), (double) asignados / Math.max(1, entregas),
+                entregas, esperadas, sesiones.get(0).ultimo);
+    }
+
+    /** Espera hasta que las sesiones recibieron {@code total} mensajes o dejan de recibir; devuelve cuántos. */
+    static long esperar(List<SesionFalsa> sesiones, long total) {
+        long recibidos = 0;
+        long limite = System.nanoTime() + 30_000_000_000L;
+        while (System.nanoTime() < limite) {
+            recibidos = 0;
+            for (SesionFalsa sesion : sesiones) recibidos += sesion.mensajes;
+            if (recibidos >= total) break;
+            LockSupport.parkNanos(100_000);
+        }
+        return recibidos;
+    }
+
+    /** Bytes asignados por todos los hilos vivos. */
+    static long asignados(com.sun.management.ThreadMXBean hilos) {
+        long total = 0;
+        for (long bytes : hilos.getThreadAllocatedBytes(hilos.getAllThreadIds())) {
+            if (bytes > 0) total += bytes;
+        }
+        return total;
+    }
+
+    /** Comando, cabeceras (sin message-id, que cambia) y cuerpo del frame, sin importar el orden de las cabeceras. */
+    static Set<String> cabeceras(String frame) {
+        if (frame == null) return Set.of();
+        String[] partes = frame.split("\n\n", 2);
+        Set<String> lineas = new TreeSet<>(Arrays.asList(partes[0].split("\n")));
+        lineas.removeIf(linea -> linea.startsWith("message-id:"));
+        lineas.add(new String(partes.length > 1 ? partes[1].getBytes(StandardCharsets.UTF_8) : new byte[0],
+                StandardCharsets.UTF_8));
+        return lineas;
+    }
+}
@@ -91,6 +91,12 @@ udpServer.on('message', (msg, rinfo) => {
     const mensaje = msg.toString().trim();
     console.log(`\n[UDP] Recibido de ${rinfo.address}:${rinfo.port}`);
     console.log(`[UDP] Mensaje: ${mensaje}`);
+
+    // Lo que llega del servidor Java son entregas, no comandos de un cliente
+    if (rinfo.port === JAVA_SERVER_PORT) {
+        procesarEntregaJava(mensaje);
+        return;
+    }
     
     // Guardar referencia del cliente UDP
     const clientKey = `${rinfo.address}:${rinfo.port}`;
@@ -124,6 +130,16 @@ udpServer.on('error', (err) => {
 
 udpServer.bind(UDP_PORT, HOST);
 
+// El servidor Java saca de las salas a quien no le envía nada en 30 s (lease por dirección):
+// todos los usuarios del puente comparten esta dirección, así que se le avisa que sigue vivo
+const LATIDO_MS = 10000;
+const PING = Buffer.from('PING');
+setInterval(() => {
+    udpServer.send(PING, 0, PING.length, JAVA_SERVER_PORT, HOST, (err) => {
+        if (err) console.error(`[ERROR] No se pudo enviar PING al servidor Java: ${err.message}`);
+    });
+}, LATIDO_MS);
+
 // ============================================================
 // 2. SERVIDOR EXPRESS + WebSocket
 // ============================================================
@@ -317,6 +333,61 @@ function procesarComandoUDP(comando, clientKey, rinfo) {
     }
 }
 
+/**
+ * Procesa lo que el servidor Java entrega al puente (por los usuarios web que unió): los MSG
+ * de una sala van a los usuarios web de esa sala y los PRIVATE a su destinatario. Lo que mandó
+ * un usuario de este puente ya se entregó aquí antes de reenviarlo a Java: se ignora. No se
+ * guarda ni se devuelve nada a Java.
+ */
+function procesarEntregaJava(mensaje) {
+    const partes = mensaje.split('|');
+    const tipo = partes[0];
+    if ((tipo !== 'PRIVATE' && tipo !== 'MSG') || partes.length < 4) return; // OK, LIST...
+
+    // MSG|usuario|sala|message...  o  PRIVATE|fromUser|toUser|message...
+    const fromUser = partes[1];
+    const contenido = partes.slice(3).join('|');
+    const local = [...wsClients.values()].some((info) => info.usuario === fromUser);
+    if (local) return;
+
+    if (tipo === 'MSG') {
+        const sala = partes[2];
+        console.log(`[JAVA UDP → BRIDGE] Mensaje de ${fromUser} en ${sala}`);
+        const datos = JSON.stringify({
+            tipo: 'NUEVO_MENSAJE',
+            usuario: fromUser,
+            sala: sala,
+            contenido: contenido,
+            timestamp: new Date().toISOString(),
+            privado: false,
+            tipoMensaje: 'TEXTO'
+        });
+        wsClients.forEach((info, ws) => {
+            if (info.sala === sala && ws.readyState === WebSocket.OPEN) {
+                ws.send(datos);
+            }
+        });
+        return;
+    }
+
+    const toUser = partes[2];
+    console.log(`[JAVA UDP → BRIDGE] Privado de ${fromUser} para ${toUser}`);
+    wsClients.forEach((info, ws) => {
+        if (info.usuario === toUser && ws.readyState === WebSocket.OPEN) {
+            ws.send(JSON.stringify({
+                tipo: 'NUEVO_MENSAJE',
+                usuario: fromUser,
+                sala: null,
+                contenido: contenido,
+                timestamp: new Date().toISOString(),
+                privado: true,
+                destinatario: toUser,
+                tipoMensaje: 'PRIVADO'
+            }));
+        }
+    });
+}
+
 /**
  * Procesa comando WebSocket desde frontend Angular
  */